@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.app.algorithm.AgentStatusUpdater;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper;
+import com.chatopera.cc.app.model.AgentStatus;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 分配和结束服务时修改坐席的服务人数：原来在 static synchronized 方法中再加集群锁 "LOCK" 读改写，
+ * 现在用 {@link AgentStatusUpdater} 在坐席所在分区上原子修改
+ * <p>
+ * 16 个线程随机选择坐席加一或减一，模拟高峰期数百个坐席同时分配和结束会话；原来修改前的 PagingPredicate 重新计数不在对比范围内。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class AgentStatusContentionBenchmark {
+
+    private final static String ORGI = "cskefu";
+
+    @Param({"100", "500"})
+    private int agents;
+
+    private HazelcastInstance hazelcast;
+
+    private IMap<String, AgentStatus> map;
+
+    private Lock lock;
+
+    @Setup
+    public void setup() {
+        hazelcast = BenchmarkHazelcast.start();
+        map = hazelcast.getMap(HazlcastCacheHelper.CacheServiceEnum.HAZLCAST_CLUSTER_AGENT_STATUS_CACHE.toString());
+        lock = hazelcast.getLock("LOCK");
+        for (int i = 0; i < agents; i++) {
+            AgentStatus agentStatus = new AgentStatus();
+            agentStatus.setId("agentstatus" + i);
+            agentStatus.setAgentno(agentno(i));
+            agentStatus.setUsername("坐席" + i);
+            agentStatus.setOrgi(ORGI);
+            agentStatus.setSkill("skill" + (i % 10));
+            agentStatus.setUsers(5);
+            agentStatus.setUpdatetime(new Date());
+            map.set(agentStatus.getAgentno(), agentStatus);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        hazelcast.shutdown();
+    }
+
+    private static String agentno(int i) {
+        return "agent" + i;
+    }
+
+    /**
+     * 原 updateAgentStatus 的加锁方式
+     */
+    @Benchmark
+    public AgentStatus globalLock() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return lockedUpdate(agentno(random.nextInt(agents)), random.nextBoolean() ? 1 : -1);
+    }
+
+    private synchronized AgentStatus lockedUpdate(String agentno, int delta) {
+        lock.lock();
+        try {
+            AgentStatus agentStatus = map.get(agentno);
+            if (agentStatus != null) {
+                agentStatus.setUsers(Math.max(0, agentStatus.getUsers() + delta));
+                agentStatus.setUpdatetime(new Date());
+                map.put(agentno, agentStatus);
+            }
+            return agentStatus;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public Object entryProcessor() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return map.executeOnKey(agentno(random.nextInt(agents)), AgentStatusUpdater.users(random.nextBoolean() ? 1 : -1, new Date()));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.app.algorithm.AgentUserQueue;
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper;
+import com.chatopera.cc.app.model.AgentUser;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.PagingPredicate;
+import com.hazelcast.query.SqlPredicate;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 坐席就绪时取排队访客：原来对 agentuser 缓存做 PagingPredicate 扫描，现在从 {@link AgentUserQueue} 的索引中取
+ * <p>
+ * 排队访客 3/4 请求技能组、1/20 指定坐席，其余进入默认队列，和高峰期的分布接近。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentUserQueueBenchmark {
+
+    private final static String ORGI = "cskefu";
+    private final static String SKILL = "skill3";
+    private final static String AGENTNO = "agent7";
+
+    @Param({"1000", "10000"})
+    private int queued;
+
+    private HazelcastInstance hazelcast;
+
+    private IMap<String, AgentUser> map;
+
+    private AgentUserQueue queue;
+
+    @Setup
+    public void setup() {
+        hazelcast = BenchmarkHazelcast.start();
+        map = hazelcast.getMap(HazlcastCacheHelper.CacheServiceEnum.HAZLCAST_CLUSTER_QUENE_USER_CACHE.toString());
+        queue = new AgentUserQueue();
+        ReflectionTestUtils.setField(queue, "hazelcastInstance", hazelcast);
+        long logindate = System.currentTimeMillis();
+        for (int i = 0; i < queued; i++) {
+            AgentUser agentUser = new AgentUser();
+            agentUser.setId("agentuser" + i);
+            agentUser.setUserid("user" + i);
+            agentUser.setUsername("访客" + i);
+            agentUser.setOrgi(ORGI);
+            agentUser.setStatus(MainContext.AgentUserStatusEnum.INQUENE.toString());
+            agentUser.setSkill(i % 4 != 0 ? "skill" + (i % 10) : null);
+            agentUser.setAgent(i % 20 == 0 ? "agent" + (i % 50) : null);
+            agentUser.setLogindate(new Date(logindate + i));
+            map.set(agentUser.getUserid(), agentUser);
+            queue.index(agentUser.getUserid(), agentUser);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        hazelcast.shutdown();
+    }
+
+    /**
+     * 原 allotAgent 的查询
+     */
+    @Benchmark
+    public Collection<AgentUser> predicateAllot() {
+        return map.values(new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND ((agent = null AND skill = null) OR (skill = '"
+                + SKILL + "' AND agent = null) OR agent = '" + AGENTNO + "') AND orgi = '" + ORGI + "'"), 10));
+    }
+
+    /**
+     * 只从索引中取缓存键
+     */
+    @Benchmark
+    public List<String> indexedPeek() {
+        return queue.peek(ORGI, AGENTNO, SKILL, 10);
+    }
+
+    /**
+     * 从索引中取缓存键后再批量读取缓存校验状态，和 allotAgent 现在的路径相同
+     */
+    @Benchmark
+    public List<AgentUser> indexedPeekAgentUsers() {
+        return queue.peekAgentUsers(ORGI, AGENTNO, SKILL, 10);
+    }
+
+    /**
+     * 原 getQueneIndex 按技能组统计排队人数
+     */
+    @Benchmark
+    public int predicateQueueSize() {
+        return map.values(new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND skill = '" + SKILL + "'  AND orgi = '" + ORGI + "'"), 100)).size();
+    }
+
+    @Benchmark
+    public int indexedQueueSize() {
+        return queue.getSkillQueneSize(ORGI, SKILL);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.app.cache.hazelcast.CachePortableFactory;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * 基准测试使用的单节点 Hazelcast，不加入集群，注册和 hazelcast.xml 相同的 Portable 序列化
+ */
+final class BenchmarkHazelcast {
+
+    private BenchmarkHazelcast() {
+    }
+
+    static Config config() {
+        Config config = new Config("benchmark-" + System.nanoTime());
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        config.getSerializationConfig().addPortableFactory(CachePortableFactory.FACTORY_ID, new CachePortableFactory());
+        return config;
+    }
+
+    static HazelcastInstance start() {
+        return start(config());
+    }
+
+    static HazelcastInstance start(Config config) {
+        return Hazelcast.newHazelcastInstance(config);
+    }
+}
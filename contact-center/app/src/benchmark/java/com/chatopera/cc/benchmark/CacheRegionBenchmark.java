@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.app.cache.hazelcast.CacheRegion;
+import com.hazelcast.core.HazelcastInstance;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存读取的单次开销：原来每次读写都按名称 getMap 查找代理，现在由 {@link CacheRegion} 持有解析好的代理
+ * <p>
+ * 单节点内读取，没有网络开销，差别主要是代理查找；批量读取对比逐个读取和一次 getAll。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CacheRegionBenchmark {
+
+    private final static String NAME = "benchmark_region";
+    private final static int ENTRIES = 1000;
+    private final static int BATCH = 20;
+
+    private HazelcastInstance hazelcast;
+
+    private CacheRegion<String, String> region;
+
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+        hazelcast = BenchmarkHazelcast.start();
+        region = CacheRegion.of(hazelcast, NAME);
+        keys = new String[ENTRIES];
+        Map<String, String> values = new HashMap<String, String>();
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = "key" + i;
+            values.put(keys[i], "value" + i);
+        }
+        region.putAll(values);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hazelcast.shutdown();
+    }
+
+    private String key() {
+        return keys[ThreadLocalRandom.current().nextInt(ENTRIES)];
+    }
+
+    @Benchmark
+    public Object lookupPerCall() {
+        return hazelcast.getMap(NAME).get(key());
+    }
+
+    @Benchmark
+    public String region() {
+        return region.get(key());
+    }
+
+    @Benchmark
+    public int batchLookupPerCall() {
+        int found = 0;
+        for (int i = 0; i < BATCH; i++) {
+            if (hazelcast.getMap(NAME).get(key()) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int batchRegionGetAll() {
+        Set<String> batch = new HashSet<String>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(key());
+        }
+        return region.getAll(batch).size();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.app.im.codec.BinaryPayloadCodec;
+import com.chatopera.cc.app.im.codec.IMEnvelope;
+import com.chatopera.cc.app.im.codec.JavaPayloadCodec;
+import com.chatopera.cc.app.im.message.ChatMessage;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跨节点消息的编解码：原来 Java 序列化后 Base64 放进 JSON 字符串，现在 {@link BinaryPayloadCodec} 编码后放进 {@link IMEnvelope}
+ * <p>
+ * 每种格式的消息大小在启动时输出，耗时为单条消息编码或解码的平均时间。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IMEnvelopeBenchmark {
+
+    private final static String NODE = "node1";
+    private final static String EVENT = "message";
+
+    private final JavaPayloadCodec java = new JavaPayloadCodec();
+    private final BinaryPayloadCodec binary = new BinaryPayloadCodec();
+
+    private ChatMessage message;
+
+    private String legacy;
+
+    private byte[] envelope;
+
+    private long seq;
+
+    @Setup
+    public void setup() throws IOException {
+        message = new ChatMessage();
+        message.setId("4e9f1c2a7b3d4e5f8a9b0c1d2e3f4a5b");
+        message.setAppid("104eac");
+        message.setUserid("8a2f9c1e6b7d4a3f9e0c1b2a3d4e5f60");
+        message.setUsession(message.getUserid());
+        message.setTouser("a1b2c3d4e5f6a7b8c9d0e1f2a3b4c5d6");
+        message.setUsername("访客 8a2f9c");
+        message.setTousername("客服 小李");
+        message.setOrgi("cskefu");
+        message.setChannel("webim");
+        message.setType("message");
+        message.setMsgtype("text");
+        message.setCalltype("in");
+        message.setContextid("c0ffee00c0ffee00c0ffee00c0ffee00");
+        message.setAgentserviceid("5d6e7f8091a2b3c4d5e6f708192a3b4c");
+        message.setAgentuser("0f1e2d3c4b5a69788796a5b4c3d2e1f0");
+        message.setSessionid(message.getContextid());
+        message.setMessage("你好，我想咨询一下订单 20181019-000123 的发货时间，昨天付款后一直没有物流信息。");
+        message.setCreatetime("2018-10-19 10:24:36");
+        message.setTokenum(12);
+        message.setLastagentmsgtime(new Date());
+        message.setLastmsgtime(new Date());
+
+        legacy = legacyEncode();
+        envelope = envelopeEncode();
+        System.out.println("[benchmark] legacy json " + legacy.getBytes(StandardCharsets.UTF_8).length
+                + " bytes, envelope " + envelope.length + " bytes");
+    }
+
+    @Benchmark
+    public String legacyEncode() throws IOException {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("event", EVENT);
+        payload.addProperty("id", message.getTouser());
+        payload.addProperty("data", Base64.getEncoder().encodeToString(java.encode(message)));
+        payload.addProperty("node", NODE);
+        return payload.toString();
+    }
+
+    @Benchmark
+    public Object legacyDecode() throws IOException, ClassNotFoundException {
+        JsonObject payload = new JsonParser().parse(legacy).getAsJsonObject();
+        return java.decode(Base64.getDecoder().decode(payload.get("data").getAsString()));
+    }
+
+    @Benchmark
+    public byte[] envelopeEncode() throws IOException {
+        return new IMEnvelope(NODE, ++seq, message.getTouser(), EVENT, binary.encode(message)).toBytes();
+    }
+
+    @Benchmark
+    public Object envelopeDecode() throws IOException, ClassNotFoundException {
+        return binary.decode(IMEnvelope.fromBytes(envelope).getData());
+    }
+}
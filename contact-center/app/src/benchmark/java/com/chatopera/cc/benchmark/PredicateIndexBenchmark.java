@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper;
+import com.chatopera.cc.app.model.AgentStatus;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MapIndexConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.PagingPredicate;
+import com.hazelcast.query.SqlPredicate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 坐席状态的条件查询：Portable 序列化下按字段读取属性，对比有无 hazelcast.xml 中配置的索引
+ * <p>
+ * 查询条件和 AutomaticServiceDist 中为访客选择空闲坐席、按技能组列出坐席的查询相同，每个技能组约 1/100 的条目。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredicateIndexBenchmark {
+
+    private final static String NAME = HazlcastCacheHelper.CacheServiceEnum.HAZLCAST_CLUSTER_AGENT_STATUS_CACHE.toString();
+    private final static String ORGI = "cskefu";
+    private final static String SKILL = "skill37";
+
+    @Param({"10000", "100000"})
+    private int entries;
+
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private HazelcastInstance hazelcast;
+
+    private IMap<String, AgentStatus> map;
+
+    @Setup
+    public void setup() {
+        Config config = BenchmarkHazelcast.config();
+        if (indexed) {
+            MapConfig mapConfig = config.getMapConfig(NAME);
+            for (String attribute : new String[]{"orgi", "skill", "busy", "agentno"}) {
+                mapConfig.addMapIndexConfig(new MapIndexConfig(attribute, false));
+            }
+        }
+        hazelcast = BenchmarkHazelcast.start(config);
+        map = hazelcast.getMap(NAME);
+        Map<String, AgentStatus> batch = new HashMap<String, AgentStatus>();
+        for (int i = 0; i < entries; i++) {
+            AgentStatus agentStatus = new AgentStatus();
+            agentStatus.setId("agentstatus" + i);
+            agentStatus.setAgentno("agent" + i);
+            agentStatus.setUsername("坐席" + i);
+            agentStatus.setOrgi(ORGI);
+            agentStatus.setSkill("skill" + (i % 100));
+            agentStatus.setBusy(i % 3 == 0);
+            agentStatus.setUpdatetime(new Date());
+            batch.put(agentStatus.getAgentno(), agentStatus);
+            if (batch.size() >= 1000) {
+                map.putAll(batch);
+                batch.clear();
+            }
+        }
+        map.putAll(batch);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hazelcast.shutdown();
+    }
+
+    /**
+     * 为请求技能组的访客选择空闲坐席
+     */
+    @Benchmark
+    public Collection<AgentStatus> idleAgentOfSkill() {
+        return map.values(new PagingPredicate<String, AgentStatus>(new SqlPredicate(" busy = false AND skill = '" + SKILL + "' AND orgi = '" + ORGI + "'"), 1));
+    }
+
+    /**
+     * 为指定坐席的访客查询坐席
+     */
+    @Benchmark
+    public Collection<AgentStatus> idleAgentByAgentno() {
+        return map.values(new PagingPredicate<String, AgentStatus>(new SqlPredicate(" busy = false AND agentno = 'agent4242' AND orgi = '" + ORGI + "'"), 1));
+    }
+
+    /**
+     * 按技能组列出坐席
+     */
+    @Benchmark
+    public Collection<AgentStatus> agentsOfSkill() {
+        return map.values(new SqlPredicate("skill = '" + SKILL + "' AND orgi = '" + ORGI + "'"));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.benchmark;
+
+import com.chatopera.cc.util.TempletCache;
+import com.chatopera.cc.util.TempletLoader;
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MainUtils.getTemplet 的渲染：原来每次新建 Configuration 并解析模板，现在从 {@link TempletCache} 取编译好的模板
+ * <p>
+ * 模板为报表统计 SQL，带条件和循环，和 ReportCubeService 渲染的模板规模相当。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TempletCacheBenchmark {
+
+    private final static String TEMPLET = "SELECT <#list dimensions as dim>${dim}, </#list>COUNT(id) AS total, SUM(sessiontimes) AS times\n"
+            + "FROM uk_agentservice WHERE orgi = '${orgi}'\n"
+            + "<#if begin??>AND createtime >= '${begin}'</#if>\n"
+            + "<#if end??>AND createtime < '${end}'</#if>\n"
+            + "<#if skill?? && skill?length gt 0>AND agentskill = '${skill}'</#if>\n"
+            + "GROUP BY <#list dimensions as dim>${dim}<#if dim_has_next>, </#if></#list>\n"
+            + "ORDER BY total DESC";
+
+    private Map<String, Object> values;
+
+    @Setup
+    public void setup() {
+        List<String> dimensions = new ArrayList<String>();
+        dimensions.add("agentno");
+        dimensions.add("channel");
+        dimensions.add("DATE_FORMAT(createtime, '%Y-%m-%d')");
+        values = new HashMap<String, Object>();
+        values.put("orgi", "cskefu");
+        values.put("begin", "2018-10-01 00:00:00");
+        values.put("end", "2018-10-19 00:00:00");
+        values.put("skill", "4028838b5b565caf015b566d11d80010");
+        values.put("dimensions", dimensions);
+        TempletCache.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("[benchmark] templet cache hits " + TempletCache.getHits() + ", misses " + TempletCache.getMisses()
+                + ", parse " + TempletCache.getParseMillis() + " ms");
+    }
+
+    /**
+     * 原 MainUtils.getTemplet 的实现
+     */
+    @SuppressWarnings("deprecation")
+    @Benchmark
+    public String parseEveryCall() throws IOException, TemplateException {
+        StringWriter writer = new StringWriter();
+        Configuration cfg = new Configuration();
+        cfg.setTemplateLoader(new TempletLoader(TEMPLET));
+        cfg.setDefaultEncoding("UTF-8");
+        cfg.getTemplate("").process(values, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String cached() throws IOException, TemplateException {
+        StringWriter writer = new StringWriter();
+        TempletCache.getTemplate(TEMPLET).process(values, writer);
+        return writer.toString();
+    }
+}
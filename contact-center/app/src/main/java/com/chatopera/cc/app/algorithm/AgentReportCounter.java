@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.algorithm;
+
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper;
+import com.chatopera.cc.app.model.AgentReport;
+import com.chatopera.cc.app.model.AgentStatus;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.projection.Projections;
+import com.hazelcast.query.Predicates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 坐席服务状态计数
+ * <p>
+ * 按租户(orgi)维护在线坐席数、忙碌坐席数，随 agentstatus 缓存的状态变化增量更新；
+ * 服务中和排队中的访客数由 {@link AgentUserQueue} 维护。读取为 O(1)，
+ * 取代每次渲染页面时对坐席状态和访客缓存做四次分布式聚合。
+ * <p>
+ * 计数可能因节点重启或丢失事件产生偏差，由 {@link #reconcile()} 定期和缓存校对。
+ */
+@Component
+public class AgentReportCounter implements EntryAddedListener<String, Object>, EntryUpdatedListener<String, Object>,
+        EntryRemovedListener<String, Object>, EntryEvictedListener<String, Object>, MapClearedListener {
+    private final static Logger logger = LoggerFactory.getLogger(AgentReportCounter.class);
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private AgentUserQueue agentUserQueue;
+
+    private final ConcurrentMap<String, AgentSnapshot> snapshots = new ConcurrentHashMap<String, AgentSnapshot>();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    @PostConstruct
+    private void init() {
+        getMap().addEntryListener(this, true);
+        reconcile();
+    }
+
+    public IMap<String, Object> getMap() {
+        return hazelcastInstance.getMap(HazlcastCacheHelper.CacheServiceEnum.HAZLCAST_CLUSTER_AGENT_STATUS_CACHE.toString());
+    }
+
+    /**
+     * 获得租户当前的服务状态
+     *
+     * @param orgi
+     * @return
+     */
+    public AgentReport getAgentReport(final String orgi) {
+        AgentReport report = new AgentReport();
+        Counter counter = counters.get(String.valueOf(orgi));
+        if (counter != null) {
+            report.setAgents(counter.agents.get());
+            report.setBusy(counter.busy.get());
+        }
+        report.setUsers(agentUserQueue.getInServiceSize(orgi));
+        report.setInquene(agentUserQueue.getQueneSize(orgi));
+        report.setOrgi(orgi);
+        return report;
+    }
+
+    public void index(final String key, final Object value) {
+        index(key, value, Long.MAX_VALUE);
+    }
+
+    /**
+     * 校对时使用：before 之后更新过的计数以事件为准
+     */
+    private void index(final String key, final Object value, final long before) {
+        if (!(value instanceof AgentStatus)) {
+            unindex(key, before);
+            return;
+        }
+        final AgentStatus agentStatus = (AgentStatus) value;
+        final AgentSnapshot current = new AgentSnapshot(agentStatus.getOrgi(), agentStatus.isBusy());
+        snapshots.compute(key, (k, previous) -> {
+            if (previous != null) {
+                if (previous.indexed >= before) {
+                    return previous;
+                }
+                counter(previous.orgi).update(previous, -1);
+            }
+            counter(current.orgi).update(current, 1);
+            return current;
+        });
+    }
+
+    public void unindex(final String key) {
+        unindex(key, Long.MAX_VALUE);
+    }
+
+    private boolean unindex(final String key, final long before) {
+        if (key == null) {
+            return false;
+        }
+        final boolean[] removed = new boolean[1];
+        snapshots.computeIfPresent(key, (k, previous) -> {
+            if (previous.indexed >= before) {
+                return previous;
+            }
+            counter(previous.orgi).update(previous, -1);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    public void clear() {
+        snapshots.clear();
+        counters.clear();
+    }
+
+    /**
+     * 和缓存中的坐席状态、访客状态校对，修正计数偏差
+     * <p>
+     * 和 {@link AgentUserQueue#reconcile()} 相同：分批读取所有分区的坐席状态重新计数，
+     * 校对开始后更新过的计数不覆盖，移除前确认缓存中确实不存在。
+     * 同时按缓存中服务中的访客校对本节点分区中坐席状态的 users，修正增量累计的偏差，每个坐席只由所在分区的节点修正。
+     */
+    public void reconcile() {
+        final long start = System.nanoTime();
+        final IMap<String, Object> map = getMap();
+        final Set<String> local = map.localKeySet();
+        final Date since = new Date();
+        final Map<String, Integer> serving = local.size() > 0 ? countInService() : new HashMap<String, Integer>();
+        int recounted = 0;
+        Set<String> found = new HashSet<String>();
+        Set<String> batch = new HashSet<String>();
+        Iterator<String> iterator = map.keySet().iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() >= AgentUserQueue.RECONCILE_BATCH || !iterator.hasNext()) {
+                for (Map.Entry<String, Object> entry : map.getAll(batch).entrySet()) {
+                    index(entry.getKey(), entry.getValue(), start);
+                    found.add(entry.getKey());
+                    if (local.contains(entry.getKey()) && entry.getValue() instanceof AgentStatus) {
+                        Integer users = serving.get(entry.getKey());
+                        int expected = users != null ? users : 0;
+                        if (((AgentStatus) entry.getValue()).getUsers() != expected
+                                && map.executeOnKey(entry.getKey(), AgentStatusUpdater.recount(expected, since)) != null) {
+                            recounted++;
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        }
+        int removed = 0;
+        for (Map.Entry<String, AgentSnapshot> entry : snapshots.entrySet()) {
+            String key = entry.getKey();
+            if (entry.getValue().indexed < start && !found.contains(key) && !map.containsKey(key) && unindex(key, start)) {
+                removed++;
+            }
+        }
+        int queneRemoved = agentUserQueue.reconcile();
+        if (removed > 0 || queneRemoved > 0 || recounted > 0) {
+            logger.info("[acd] reconcile agent report, removed {} stale agent status and {} stale agent user entries, recounted {} agent users", removed, queneRemoved, recounted);
+        }
+    }
+
+    /**
+     * 在各分区上统计每个坐席服务中的访客数量，只传回坐席编号
+     */
+    private Map<String, Integer> countInService() {
+        Collection<String> agentnos = agentUserQueue.getMap().project(Projections.<Map.Entry<String, Object>, String>singleAttribute("agentno"),
+                Predicates.equal("status", MainContext.AgentUserStatusEnum.INSERVICE.toString()));
+        Map<String, Integer> serving = new HashMap<String, Integer>();
+        for (String agentno : agentnos) {
+            if (agentno != null) {
+                Integer users = serving.get(agentno);
+                serving.put(agentno, users != null ? users + 1 : 1);
+            }
+        }
+        return serving;
+    }
+
+    @Override
+    public void entryAdded(EntryEvent<String, Object> event) {
+        if (!isLocal(event)) {
+            index(event.getKey(), event.getValue());
+        }
+    }
+
+    @Override
+    public void entryUpdated(EntryEvent<String, Object> event) {
+        if (!isLocal(event)) {
+            index(event.getKey(), event.getValue());
+        }
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<String, Object> event) {
+        if (!isLocal(event)) {
+            unindex(event.getKey());
+        }
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<String, Object> event) {
+        unindex(event.getKey());
+    }
+
+    @Override
+    public void mapCleared(MapEvent event) {
+        clear();
+    }
+
+    /**
+     * 本节点发起的写入已经在 AgentStatusCache 中同步计数
+     */
+    private boolean isLocal(EntryEvent<String, Object> event) {
+        return event.getMember() != null && event.getMember().localMember();
+    }
+
+    private Counter counter(final String orgi) {
+        String key = String.valueOf(orgi);
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter();
+            Counter exist = counters.putIfAbsent(key, counter);
+            if (exist != null) {
+                counter = exist;
+            }
+        }
+        return counter;
+    }
+
+    private static class Counter {
+        private final AtomicInteger agents = new AtomicInteger();
+        private final AtomicInteger busy = new AtomicInteger();
+
+        private void update(AgentSnapshot snapshot, int delta) {
+            agents.addAndGet(delta);
+            if (snapshot.busy) {
+                busy.addAndGet(delta);
+            }
+        }
+    }
+
+    private static class AgentSnapshot {
+        private final String orgi;
+        private final boolean busy;
+        private final long indexed = System.nanoTime();
+
+        private AgentSnapshot(String orgi, boolean busy) {
+            this.orgi = orgi;
+            this.busy = busy;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.algorithm;
+
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.model.AgentReport;
+import com.chatopera.cc.app.persistence.repository.AgentReportRepository;
+import com.corundumstudio.socketio.SocketIONamespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 坐席服务状态的合并发布
+ * <p>
+ * ACD 事件只标记租户需要发布，每隔 {@code cskefu.acd.report.publish.interval} 毫秒由一个线程统一发布：
+ * 每个租户最多生成一次状态，和上次推送的数量相同时不推送；其它节点上的事件引起的计数变化也会在下一次检查时推送。
+ * 历史记录（uk_agentreport）只由产生事件的节点写入，每个租户每 {@code cskefu.acd.report.history.interval} 毫秒最多一条，
+ * 记录最后一次事件的类型和结果。
+ */
+@Component
+public class AgentReportPublisher {
+    private final static Logger logger = LoggerFactory.getLogger(AgentReportPublisher.class);
+
+    @Value("${cskefu.acd.report.history.interval:60000}")
+    private long historyInterval;
+
+    @Autowired
+    private AgentReportCounter agentReportCounter;
+
+    @Autowired
+    private AgentReportRepository agentReportRes;
+
+    /**
+     * 租户 → 上次发布后最近的一次事件
+     */
+    private final ConcurrentMap<String, Work> dirty = new ConcurrentHashMap<String, Work>();
+
+    /**
+     * 租户的发布状态，只由发布线程读写
+     */
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+
+    /**
+     * 坐席状态改变，通知监测服务
+     *
+     * @param orgi
+     * @param worktype
+     * @param workresult
+     * @param dataid
+     */
+    public void publish(final String orgi, final String worktype, final String workresult, final String dataid) {
+        dirty.put(String.valueOf(orgi), new Work(worktype, workresult, dataid));
+    }
+
+    @Scheduled(fixedDelayString = "${cskefu.acd.report.publish.interval:500}")
+    public void flush() {
+        final Set<String> orgis = new HashSet<String>(tenants.keySet());
+        orgis.addAll(dirty.keySet());
+        final long now = System.currentTimeMillis();
+        for (String orgi : orgis) {
+            try {
+                flush(orgi, now);
+            } catch (Exception e) {
+                logger.error("[acd] fail to publish agent report of {}", orgi, e);
+            }
+        }
+    }
+
+    private void flush(final String orgi, final long now) {
+        final Work work = dirty.remove(orgi);
+        Tenant tenant = tenants.get(orgi);
+        if (tenant == null) {
+            tenant = new Tenant();
+            tenants.put(orgi, tenant);
+        }
+        if (work != null) {
+            tenant.work = work;
+            tenant.unsaved = true;
+        }
+
+        final AgentReport report = agentReportCounter.getAgentReport(orgi);
+        report.setOrgi(orgi);
+        if (tenant.work != null) {
+            report.setWorktype(tenant.work.worktype);
+            report.setWorkresult(tenant.work.workresult);
+            report.setDataid(tenant.work.dataid);
+        }
+        if (tenant.published == null || changed(tenant.published, report)) {
+            MainContext.getContext().getBean("agentNamespace", SocketIONamespace.class).getBroadcastOperations().sendEvent("status", report);
+            tenant.published = report;
+        }
+        if (tenant.unsaved && now - tenant.saved >= historyInterval) {
+            agentReportRes.save(report);
+            tenant.saved = now;
+            tenant.unsaved = false;
+        }
+    }
+
+    private static boolean changed(final AgentReport previous, final AgentReport current) {
+        return previous.getAgents() != current.getAgents() || previous.getBusy() != current.getBusy()
+                || previous.getUsers() != current.getUsers() || previous.getInquene() != current.getInquene();
+    }
+
+    private static class Work {
+        private final String worktype;
+        private final String workresult;
+        private final String dataid;
+
+        private Work(String worktype, String workresult, String dataid) {
+            this.worktype = worktype;
+            this.workresult = workresult;
+            this.dataid = dataid;
+        }
+    }
+
+    private static class Tenant {
+        private Work work;
+        private AgentReport published;      // 上次推送的状态
+        private boolean unsaved;            // 有本节点的事件还没有写入历史记录
+        private long saved;                 // 上次写入历史记录的时间
+    }
+}
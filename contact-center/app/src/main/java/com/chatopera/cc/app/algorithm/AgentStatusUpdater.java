@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.algorithm;
+
+import com.chatopera.cc.app.model.AgentStatus;
+import com.hazelcast.map.AbstractEntryProcessor;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 在坐席状态所在的分区上原子地修改坐席状态
+ * <p>
+ * 同一分区的操作由同一个分区线程顺序执行，不需要分布式锁；只修改指定的字段，
+ * 其它节点同时修改的字段不会被覆盖。坐席不在缓存中（已离线）时不做修改，返回 null，
+ * 否则返回修改后的坐席状态。备份分区执行同样的修改，修改时间由调用方指定，主备一致。
+ * <p>
+ * 访客数量按增量修改：调用方各自节点上的索引可能还没有收到其它节点的变化，写入绝对值会覆盖其它节点的修改。
+ * 增量可能因节点故障或重复结束服务产生偏差，由 {@link #recount(int, Date)} 定期按缓存中服务中的访客重新计数。
+ */
+public class AgentStatusUpdater extends AbstractEntryProcessor<String, Object> {
+    private static final long serialVersionUID = 1L;
+
+    private final int delta;
+    private final Boolean busy;
+    private final Date updatetime;
+    private final Integer users;
+    private final Date before;
+
+    private AgentStatusUpdater(final int delta, final Boolean busy, final Date updatetime, final Integer users, final Date before) {
+        this.delta = delta;
+        this.busy = busy;
+        this.updatetime = updatetime;
+        this.users = users;
+        this.before = before;
+    }
+
+    /**
+     * 坐席服务中的访客数量加减，结果不小于 0
+     *
+     * @param delta      新分配访客时为 1，结束服务时为 -1
+     * @param updatetime
+     * @return
+     */
+    public static AgentStatusUpdater users(final int delta, final Date updatetime) {
+        return new AgentStatusUpdater(delta, null, updatetime, null, null);
+    }
+
+    /**
+     * 置忙、置闲
+     *
+     * @param busy
+     * @param updatetime
+     * @return
+     */
+    public static AgentStatusUpdater busy(final boolean busy, final Date updatetime) {
+        return new AgentStatusUpdater(0, busy, updatetime, null, null);
+    }
+
+    /**
+     * 校对服务中的访客数量：只有 before 之后没有修改过的坐席状态才写入，
+     * 校对期间分配或结束服务的增量不会被统计时读到的旧数量覆盖，留到下一次校对；不修改 updatetime
+     *
+     * @param users  缓存中该坐席服务中的访客数量
+     * @param before 开始统计的时间
+     * @return
+     */
+    public static AgentStatusUpdater recount(final int users, final Date before) {
+        return new AgentStatusUpdater(0, null, null, users, before);
+    }
+
+    @Override
+    public Object process(final Map.Entry<String, Object> entry) {
+        if (!(entry.getValue() instanceof AgentStatus)) {
+            return null;
+        }
+        final AgentStatus agentStatus = (AgentStatus) entry.getValue();
+        if (users != null) {
+            if (agentStatus.getUpdatetime() != null && !agentStatus.getUpdatetime().before(before)) {
+                return null;
+            }
+            agentStatus.setUsers(users);
+        }
+        if (delta != 0) {
+            agentStatus.setUsers(Math.max(0, agentStatus.getUsers() + delta));
+        }
+        if (busy != null) {
+            agentStatus.setBusy(busy);
+        }
+        if (updatetime != null) {
+            agentStatus.setUpdatetime(updatetime);
+        }
+        entry.setValue(agentStatus);
+        return agentStatus;
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.algorithm;
+
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper;
+import com.chatopera.cc.app.model.AgentUser;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ACD 排队索引
+ * <p>
+ * 按租户(orgi)维护排队中访客的优先队列：未指定技能组和坐席的默认队列、按技能组的队列、按指定坐席的队列，
+ * 以及每个坐席服务中的访客集合。索引随 agentuser 缓存同步更新：本节点的写入在 {@link #index(String, Object)}
+ * 中立即生效，其他节点的写入通过 IMap 的 EntryListener 到达，分配坐席时不再对整个 IMap 做 SqlPredicate 扫描。
+ * <p>
+ * 出队为 O(log n)，排队人数和坐席服务人数为 O(1)。
+ */
+@Component
+public class AgentUserQueue implements EntryAddedListener<String, Object>, EntryUpdatedListener<String, Object>,
+        EntryRemovedListener<String, Object>, EntryEvictedListener<String, Object>, MapClearedListener {
+    private final static Logger logger = LoggerFactory.getLogger(AgentUserQueue.class);
+
+    /**
+     * 先按登录时间，再按缓存键排序，和 AgentUser.compareTo 的顺序一致
+     */
+    private final static Comparator<QueueEntry> ORDER = new Comparator<QueueEntry>() {
+        @Override
+        public int compare(QueueEntry o1, QueueEntry o2) {
+            int ret = Long.compare(o1.ordertime, o2.ordertime);
+            return ret != 0 ? ret : o1.key.compareTo(o2.key);
+        }
+    };
+
+    /**
+     * 校对时每次 getAll 读取的 key 数量
+     */
+    final static int RECONCILE_BATCH = 500;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private final ConcurrentMap<String, QueueEntry> entries = new ConcurrentHashMap<String, QueueEntry>();
+
+    private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+
+    @PostConstruct
+    private void init() {
+        getMap().addEntryListener(this, true);
+        reconcile();
+        logger.info("[acd] agent user queue loaded with {} entries", entries.size());
+    }
+
+    public IMap<String, Object> getMap() {
+        return hazelcastInstance.getMap(HazlcastCacheHelper.CacheServiceEnum.HAZLCAST_CLUSTER_QUENE_USER_CACHE.toString());
+    }
+
+    /**
+     * 更新缓存键对应的索引项，非 AgentUser 的值视为删除
+     *
+     * @param key
+     * @param value
+     */
+    public void index(final String key, final Object value) {
+        index(key, value, Long.MAX_VALUE);
+    }
+
+    /**
+     * 只替换 before 之前建立的索引项；before 之后由事件或本节点写入建立的索引项比校对时读到的值新，保留不变
+     */
+    private void index(final String key, final Object value, final long before) {
+        if (!(value instanceof AgentUser)) {
+            unindex(key, before);
+            return;
+        }
+        final QueueEntry current = new QueueEntry(key, (AgentUser) value);
+        entries.compute(key, (k, previous) -> {
+            if (previous != null) {
+                if (previous.indexed >= before) {
+                    return previous;
+                }
+                tenant(previous.orgi).remove(previous);
+            }
+            tenant(current.orgi).add(current);
+            return current;
+        });
+    }
+
+    public void unindex(final String key) {
+        unindex(key, Long.MAX_VALUE);
+    }
+
+    private boolean unindex(final String key, final long before) {
+        if (key == null) {
+            return false;
+        }
+        final boolean[] removed = new boolean[1];
+        entries.computeIfPresent(key, (k, previous) -> {
+            if (previous.indexed >= before) {
+                return previous;
+            }
+            tenant(previous.orgi).remove(previous);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    public void clear() {
+        entries.clear();
+        tenants.clear();
+    }
+
+    /**
+     * 和缓存校对
+     * <p>
+     * 索引是每个节点各自的，其它节点分区中的访客丢失事件后同样会过期，所以按 key 分批读取所有分区的访客重新索引，
+     * 移除缓存中已不存在的索引项。校对开始后通过事件或本节点写入更新过的索引项不会被校对时读到的旧值覆盖，
+     * 移除前再用 containsKey 确认，校对期间新加入的访客不会被移除。
+     *
+     * @return 移除的索引项数量
+     */
+    public int reconcile() {
+        final long start = System.nanoTime();
+        final IMap<String, Object> map = getMap();
+        Set<String> found = new HashSet<String>();
+        Set<String> batch = new HashSet<String>();
+        Iterator<String> iterator = map.keySet().iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() >= RECONCILE_BATCH || !iterator.hasNext()) {
+                for (Map.Entry<String, Object> entry : map.getAll(batch).entrySet()) {
+                    index(entry.getKey(), entry.getValue(), start);
+                    found.add(entry.getKey());
+                }
+                batch.clear();
+            }
+        }
+        int removed = 0;
+        for (Map.Entry<String, QueueEntry> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            if (entry.getValue().indexed < start && !found.contains(key) && !map.containsKey(key) && unindex(key, start)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 坐席就绪时可以分配的排队访客：未指定技能组和坐席的、请求坐席所在技能组的、以及指定该坐席的，按排队顺序合并
+     *
+     * @param orgi
+     * @param agentno
+     * @param skill   坐席所在技能组，为空时只取默认队列和指定坐席的队列
+     * @param limit
+     * @return 排队访客的缓存键
+     */
+    public List<String> peek(final String orgi, final String agentno, final String skill, final int limit) {
+        Tenant tenant = tenants.get(String.valueOf(orgi));
+        List<QueueEntry> merged = new ArrayList<QueueEntry>();
+        if (tenant != null) {
+            head(tenant.anyone, limit, merged);
+            if (StringUtils.isNotBlank(skill)) {
+                head(tenant.skills.get(skill), limit, merged);
+            }
+            if (StringUtils.isNotBlank(agentno)) {
+                head(tenant.agents.get(agentno), limit, merged);
+            }
+        }
+        Collections.sort(merged, ORDER);
+        List<String> keys = new ArrayList<String>(Math.min(limit, merged.size()));
+        for (QueueEntry entry : merged) {
+            if (keys.size() >= limit) {
+                break;
+            }
+            keys.add(entry.key);
+        }
+        return keys;
+    }
+
+    /**
+     * 获取排队访客，并校验缓存中的最新状态，已被其他节点分配的访客会被跳过，
+     * 同时按缓存中的值重新索引，避免丢失事件的旧索引项一直留在队首
+     *
+     * @param orgi
+     * @param agentno
+     * @param skill
+     * @param limit
+     * @return
+     */
+    public List<AgentUser> peekAgentUsers(final String orgi, final String agentno, final String skill, final int limit) {
+        List<String> keys = peek(orgi, agentno, skill, limit);
+        List<AgentUser> agentUsers = new ArrayList<AgentUser>(keys.size());
+        if (keys.size() > 0) {
+            Map<String, Object> values = getMap().getAll(new HashSet<String>(keys));
+            for (String key : keys) {
+                Object value = values.get(key);
+                if (value instanceof AgentUser) {
+                    AgentUser agentUser = (AgentUser) value;
+                    if (MainContext.AgentUserStatusEnum.INQUENE.toString().equals(agentUser.getStatus()) && StringUtils.equals(orgi, agentUser.getOrgi())) {
+                        agentUsers.add(agentUser);
+                    } else {
+                        index(key, agentUser);
+                    }
+                } else {
+                    unindex(key);
+                }
+            }
+        }
+        return agentUsers;
+    }
+
+    /**
+     * 租户下排队中的访客数量
+     */
+    public int getQueneSize(final String orgi) {
+        Tenant tenant = tenants.get(String.valueOf(orgi));
+        return tenant != null ? tenant.inquene.get() : 0;
+    }
+
+    /**
+     * 租户下服务中的访客数量
+     */
+    public int getInServiceSize(final String orgi) {
+        Tenant tenant = tenants.get(String.valueOf(orgi));
+        return tenant != null ? tenant.inservice.get() : 0;
+    }
+
+    /**
+     * 请求了该技能组的排队访客数量
+     */
+    public int getSkillQueneSize(final String orgi, final String skill) {
+        Tenant tenant = tenants.get(String.valueOf(orgi));
+        return tenant != null ? count(tenant.skillCount, skill) : 0;
+    }
+
+    /**
+     * 请求了该坐席的排队访客数量
+     */
+    public int getAgentQueneSize(final String orgi, final String agent) {
+        Tenant tenant = tenants.get(String.valueOf(orgi));
+        return tenant != null ? count(tenant.agentCount, agent) : 0;
+    }
+
+    /**
+     * 坐席服务中的访客数量
+     */
+    public int getAgentUsers(final String orgi, final String agentno) {
+        Tenant tenant = tenants.get(String.valueOf(orgi));
+        if (tenant != null && agentno != null) {
+            Set<String> users = tenant.serving.get(agentno);
+            return users != null ? users.size() : 0;
+        }
+        return 0;
+    }
+
+    @Override
+    public void entryAdded(EntryEvent<String, Object> event) {
+        if (!isLocal(event)) {
+            index(event.getKey(), event.getValue());
+        }
+    }
+
+    @Override
+    public void entryUpdated(EntryEvent<String, Object> event) {
+        if (!isLocal(event)) {
+            index(event.getKey(), event.getValue());
+        }
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<String, Object> event) {
+        if (!isLocal(event)) {
+            unindex(event.getKey());
+        }
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<String, Object> event) {
+        // 过期由集群触发，本节点也需要处理
+        unindex(event.getKey());
+    }
+
+    @Override
+    public void mapCleared(MapEvent event) {
+        clear();
+    }
+
+    /**
+     * 本节点发起的写入已经在 AgentUserCache 中同步索引，忽略其事件避免旧值覆盖新值
+     */
+    private boolean isLocal(EntryEvent<String, Object> event) {
+        return event.getMember() != null && event.getMember().localMember();
+    }
+
+    private Tenant tenant(final String orgi) {
+        String key = String.valueOf(orgi);
+        Tenant tenant = tenants.get(key);
+        if (tenant == null) {
+            tenant = new Tenant();
+            Tenant exist = tenants.putIfAbsent(key, tenant);
+            if (exist != null) {
+                tenant = exist;
+            }
+        }
+        return tenant;
+    }
+
+    private static void head(Set<QueueEntry> queue, int limit, List<QueueEntry> to) {
+        if (queue != null) {
+            Iterator<QueueEntry> iterator = queue.iterator();
+            for (int i = 0; i < limit && iterator.hasNext(); i++) {
+                to.add(iterator.next());
+            }
+        }
+    }
+
+    private static int count(ConcurrentMap<String, AtomicInteger> counter, String key) {
+        if (key != null) {
+            AtomicInteger value = counter.get(key);
+            return value != null ? value.get() : 0;
+        }
+        return 0;
+    }
+
+    private static void increment(ConcurrentMap<String, AtomicInteger> counter, String key, int delta) {
+        AtomicInteger value = counter.get(key);
+        if (value == null) {
+            value = new AtomicInteger();
+            AtomicInteger exist = counter.putIfAbsent(key, value);
+            if (exist != null) {
+                value = exist;
+            }
+        }
+        value.addAndGet(delta);
+    }
+
+    private static ConcurrentSkipListSet<QueueEntry> queue(ConcurrentMap<String, ConcurrentSkipListSet<QueueEntry>> queues, String key) {
+        ConcurrentSkipListSet<QueueEntry> queue = queues.get(key);
+        if (queue == null) {
+            queue = new ConcurrentSkipListSet<QueueEntry>(ORDER);
+            ConcurrentSkipListSet<QueueEntry> exist = queues.putIfAbsent(key, queue);
+            if (exist != null) {
+                queue = exist;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * 单个租户的排队和服务索引
+     */
+    private static class Tenant {
+        private final ConcurrentSkipListSet<QueueEntry> anyone = new ConcurrentSkipListSet<QueueEntry>(ORDER);
+        private final ConcurrentMap<String, ConcurrentSkipListSet<QueueEntry>> skills = new ConcurrentHashMap<String, ConcurrentSkipListSet<QueueEntry>>();
+        private final ConcurrentMap<String, ConcurrentSkipListSet<QueueEntry>> agents = new ConcurrentHashMap<String, ConcurrentSkipListSet<QueueEntry>>();
+
+        private final AtomicInteger inquene = new AtomicInteger();
+        private final AtomicInteger inservice = new AtomicInteger();
+        private final ConcurrentMap<String, AtomicInteger> skillCount = new ConcurrentHashMap<String, AtomicInteger>();
+        private final ConcurrentMap<String, AtomicInteger> agentCount = new ConcurrentHashMap<String, AtomicInteger>();
+
+        private final ConcurrentMap<String, Set<String>> serving = new ConcurrentHashMap<String, Set<String>>();
+
+        private void add(QueueEntry entry) {
+            update(entry, true);
+        }
+
+        private void remove(QueueEntry entry) {
+            update(entry, false);
+        }
+
+        private void update(QueueEntry entry, boolean add) {
+            int delta = add ? 1 : -1;
+            if (entry.inquene) {
+                inquene.addAndGet(delta);
+                if (entry.skill != null) {
+                    increment(skillCount, entry.skill, delta);
+                }
+                if (entry.agent != null) {
+                    increment(agentCount, entry.agent, delta);
+                }
+                Set<QueueEntry> queue;
+                if (entry.agent != null) {
+                    queue = queue(agents, entry.agent);
+                } else if (entry.skill != null) {
+                    queue = queue(skills, entry.skill);
+                } else {
+                    queue = anyone;
+                }
+                if (add) {
+                    queue.add(entry);
+                } else {
+                    queue.remove(entry);
+                }
+            } else if (entry.inservice) {
+                inservice.addAndGet(delta);
+                if (entry.agentno == null) {
+                    return;
+                }
+                Set<String> users = serving.get(entry.agentno);
+                if (users == null) {
+                    users = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                    Set<String> exist = serving.putIfAbsent(entry.agentno, users);
+                    if (exist != null) {
+                        users = exist;
+                    }
+                }
+                if (add) {
+                    users.add(entry.key);
+                } else {
+                    users.remove(entry.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 索引项，保存入队时 AgentUser 的快照，删除时用同一快照定位
+     */
+    private static class QueueEntry {
+        private final String key;
+        private final String orgi;
+        private final String skill;
+        private final String agent;
+        private final String agentno;
+        private final boolean inquene;
+        private final boolean inservice;
+        private final long ordertime;
+        private final long indexed = System.nanoTime();    // 建立索引的时间，校对时不覆盖之后更新的索引项
+
+        private QueueEntry(String key, AgentUser agentUser) {
+            this.key = key;
+            this.orgi = agentUser.getOrgi();
+            this.skill = StringUtils.isNotBlank(agentUser.getSkill()) ? agentUser.getSkill() : null;
+            this.agent = StringUtils.isNotBlank(agentUser.getAgent()) ? agentUser.getAgent() : null;
+            this.agentno = agentUser.getAgentno();
+            this.inquene = MainContext.AgentUserStatusEnum.INQUENE.toString().equals(agentUser.getStatus());
+            this.inservice = MainContext.AgentUserStatusEnum.INSERVICE.toString().equals(agentUser.getStatus());
+            this.ordertime = agentUser.getLogindate() != null ? agentUser.getLogindate().getTime() : 0L;
+        }
+    }
+}
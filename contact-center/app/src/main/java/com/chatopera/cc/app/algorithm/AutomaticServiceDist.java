@@ -16,23 +16,19 @@
  */
 package com.chatopera.cc.app.algorithm;
 
-import com.chatopera.cc.aggregation.filter.AgentStatusBusyOrgiFilter;
-import com.chatopera.cc.aggregation.filter.AgentStatusOrgiFilter;
-import com.chatopera.cc.aggregation.filter.AgentUserOrgiFilter;
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.basic.MainUtils;
 import com.chatopera.cc.app.cache.CacheHelper;
+import com.chatopera.cc.app.cache.hazelcast.impl.AgentStatusCache;
 import com.chatopera.cc.app.im.client.NettyClients;
 import com.chatopera.cc.app.im.router.OutMessageRouter;
 import com.chatopera.cc.app.model.*;
 import com.chatopera.cc.app.persistence.repository.*;
 import com.chatopera.cc.util.WebIMReport;
-import com.corundumstudio.socketio.SocketIONamespace;
 import com.hazelcast.core.IMap;
-import com.hazelcast.mapreduce.aggregation.Aggregations;
-import com.hazelcast.mapreduce.aggregation.Supplier;
 import com.hazelcast.query.PagingPredicate;
-import com.hazelcast.query.SqlPredicate;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +36,6 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
 
 /**
  * Automatic Call Distribution
@@ -93,32 +88,11 @@ public class AutomaticServiceDist {
      * @param orgi
      * @return
      */
-    @SuppressWarnings({"unchecked", "rawtypes"})
     public static AgentReport getAgentReport(String orgi) {
         /**
-         * 统计当前在线的坐席数量
+         * 在线坐席、忙碌坐席、服务中和排队中的访客数量，随状态变化增量维护
          */
-        AgentReport report = new AgentReport();
-        IMap agentStatusMap = (IMap<String, Object>) CacheHelper.getAgentStatusCacheBean().getCache();
-        AgentStatusOrgiFilter filter = new AgentStatusOrgiFilter(orgi);
-        Long agents = (Long) agentStatusMap.aggregate(Supplier.fromKeyPredicate(filter), Aggregations.count());
-        report.setAgents(agents.intValue());
-
-        Long busyAgent = (Long) agentStatusMap.aggregate(Supplier.fromKeyPredicate(new AgentStatusBusyOrgiFilter(orgi)), Aggregations.count());
-        report.setBusy(busyAgent.intValue());
-        report.setOrgi(orgi);
-
-        /**
-         * 统计当前服务中的用户数量
-         */
-        IMap agentUserMap = (IMap<String, Object>) CacheHelper.getAgentUserCacheBean().getCache();
-        Long users = (Long) agentUserMap.aggregate(Supplier.fromKeyPredicate(new AgentUserOrgiFilter(orgi, MainContext.AgentUserStatusEnum.INSERVICE.toString())), Aggregations.count());
-        report.setUsers(users.intValue());
-
-        Long queneUsers = (Long) agentUserMap.aggregate(Supplier.fromKeyPredicate(new AgentUserOrgiFilter(orgi, MainContext.AgentUserStatusEnum.INQUENE.toString())), Aggregations.count());
-        report.setInquene(queneUsers.intValue());
-
-        return report;
+        return MainContext.getContext().getBean(AgentReportCounter.class).getAgentReport(orgi);
     }
 
     public static int getQueneIndex(String userid, String orgi, long ordertime) {
@@ -134,42 +108,40 @@ public class AutomaticServiceDist {
         return queneUsers;
     }
 
-    @SuppressWarnings("unchecked")
-    public static int getQueneIndex(String agent, String orgi, String skill) {
-
-        int queneUsers = 0;
+    /**
+     * ACD 排队索引
+     *
+     * @return
+     */
+    public static AgentUserQueue getAgentUserQueue() {
+        return MainContext.getContext().getBean(AgentUserQueue.class);
+    }
 
-        PagingPredicate<String, AgentUser> pagingPredicate = null;
+    public static int getQueneIndex(String agent, String orgi, String skill) {
+        AgentUserQueue agentUserQueue = getAgentUserQueue();
         if (StringUtils.isNotBlank(skill)) {
-            pagingPredicate = new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND skill = '" + skill + "'  AND orgi = '" + orgi + "'"), 100);
+            return agentUserQueue.getSkillQueneSize(orgi, skill);
         } else if (StringUtils.isNotBlank(agent)) {
-            pagingPredicate = new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND agent = '" + agent + "' AND orgi = '" + orgi + "'"), 100);
-        } else {
-            pagingPredicate = new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND orgi = '" + orgi + "'"), 100);
+            return agentUserQueue.getAgentQueneSize(orgi, agent);
         }
-        queneUsers = ((IMap<String, AgentUser>) CacheHelper.getAgentUserCacheBean().getCache()).values(pagingPredicate).size();
-        return queneUsers;
+        return agentUserQueue.getQueneSize(orgi);
     }
 
-    @SuppressWarnings("unchecked")
     public static int getAgentUsers(String agent, String orgi) {
         /**
          * agentno自动是 服务的坐席， agent 是请求的坐席
          */
-        PagingPredicate<String, AgentUser> pagingPredicate = new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inservice' AND agentno = '" + agent + "'  AND orgi = '" + orgi + "'"), 100);
-        List<AgentUser> agentUserList = new ArrayList<AgentUser>();
-        agentUserList.addAll(((IMap<String, AgentUser>) CacheHelper.getAgentUserCacheBean().getCache()).values(pagingPredicate));
-        return agentUserList.size();
+        return getAgentUserQueue().getAgentUsers(orgi, agent);
     }
 
 
     @SuppressWarnings("unchecked")
     public static List<AgentStatus> getAgentStatus(String skill, String orgi) {
-        PagingPredicate<String, AgentStatus> pagingPredicate = new PagingPredicate<String, AgentStatus>(new SqlPredicate("orgi = '" + orgi + "'"), 100);
-
+        Predicate<String, AgentStatus> predicate = Predicates.equal("orgi", orgi);
         if (StringUtils.isNotBlank(skill)) {
-            pagingPredicate = new PagingPredicate<String, AgentStatus>(new SqlPredicate("skill = '" + skill + "' AND orgi = '" + orgi + "'"), 100);
+            predicate = Predicates.and(Predicates.equal("skill", skill), predicate);
         }
+        PagingPredicate<String, AgentStatus> pagingPredicate = new PagingPredicate<String, AgentStatus>(predicate, 100);
         List<AgentStatus> agentList = new ArrayList<AgentStatus>();
         agentList.addAll(((IMap<String, AgentStatus>) CacheHelper.getAgentStatusCacheBean().getCache()).values(pagingPredicate));
         return agentList;
@@ -180,17 +152,12 @@ public class AutomaticServiceDist {
      *
      * @param agentStatus
      */
-    @SuppressWarnings("unchecked")
     public static void allotAgent(String agentno, String orgi) {
         AgentStatus agentStatus = (AgentStatus) CacheHelper.getAgentStatusCacheBean().getCacheObject(agentno, orgi);
-        List<AgentUser> agentStatusList = new ArrayList<AgentUser>();
-        PagingPredicate<String, AgentUser> pagingPredicate = null;
-        if (agentStatus != null && StringUtils.isNotBlank(agentStatus.getSkill())) {
-            pagingPredicate = new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND ((agent = null AND skill = null) OR (skill = '" + agentStatus.getSkill() + "' AND agent = null) OR agent = '" + agentno + "') AND orgi = '" + orgi + "'"), 10);
-        } else {
-            pagingPredicate = new PagingPredicate<String, AgentUser>(new SqlPredicate("status = 'inquene' AND ((agent = null AND skill = null) OR agent = '" + agentno + "') AND orgi = '" + orgi + "'"), 10);
-        }
-        agentStatusList.addAll(((IMap<String, AgentUser>) CacheHelper.getAgentUserCacheBean().getCache()).values(pagingPredicate));
+        /**
+         * 未指定技能组和坐席的、请求坐席所在技能组的、以及指定该坐席的排队访客，按排队顺序取前10个
+         */
+        List<AgentUser> agentStatusList = getAgentUserQueue().peekAgentUsers(orgi, agentno, agentStatus != null ? agentStatus.getSkill() : null, 10);
         for (AgentUser agentUser : agentStatusList) {
             SessionConfig sessionConfig = AutomaticServiceDist.initSessionConfig(orgi);
             long maxusers = sessionConfig != null ? sessionConfig.getMaxuser() : MainContext.AGENT_STATUS_MAX_USER;
@@ -237,7 +204,13 @@ public class AutomaticServiceDist {
             if (MainContext.AgentUserStatusEnum.INSERVICE.toString().equals(agentUser.getStatus()) && agentUser.getAgentno() != null) {
                 agentStatus = (AgentStatus) CacheHelper.getAgentStatusCacheBean().getCacheObject(agentUser.getAgentno(), orgi);
             }
-            CacheHelper.getAgentUserCacheBean().delete(agentUser.getUserid(), orgi);
+            /**
+             * 只有真正从缓存中移除了服务中的访客才减少坐席的服务人数，并发或重复结束同一会话时只减一次
+             */
+            Object removed = CacheHelper.getAgentUserCacheBean().delete(agentUser.getUserid(), orgi);
+            final boolean released = removed instanceof AgentUser
+                    && MainContext.AgentUserStatusEnum.INSERVICE.toString().equals(((AgentUser) removed).getStatus())
+                    && agentUser.getAgentno() != null && agentUser.getAgentno().equals(((AgentUser) removed).getAgentno());
 
             AgentUserRepository agentUserRepository = MainContext.getContext().getBean(AgentUserRepository.class);
 
@@ -331,7 +304,7 @@ public class AutomaticServiceDist {
                 }
             }
 
-            if (agentStatus != null) {
+            if (agentStatus != null && released) {
                 updateAgentStatus(agentStatus, agentUser, orgi, false);
 
                 long maxusers = sessionConfig != null ? sessionConfig.getMaxuser() : MainContext.AGENT_STATUS_MAX_USER;
@@ -344,40 +317,43 @@ public class AutomaticServiceDist {
     }
 
     /**
-     * 更新坐席当前服务中的用户状态，需要分布式锁
+     * 更新坐席当前服务中的用户数量
+     * <p>
+     * 在坐席状态所在分区上原子地将 users 加一（分配访客）或减一（结束服务），同时修改 updatetime，
+     * 不加锁，也不覆盖其它节点同时修改的字段；坐席已离线（不在缓存中）时不再写回。
      *
      * @param agentStatus
      * @param agentUser
      * @param orgi
+     * @param in          分配访客为 true，结束服务为 false
      */
-    public synchronized static void updateAgentStatus(AgentStatus agentStatus, AgentUser agentUser, String orgi, boolean in) {
-        int users = getAgentUsers(agentStatus.getAgentno(), orgi);
-        Lock lock = CacheHelper.getAgentStatusCacheBean().getLock("LOCK", orgi);
-        lock.lock();
-        try {
-            agentStatus.setUsers(users);
-            agentStatus.setUpdatetime(new Date());
-            CacheHelper.getAgentStatusCacheBean().put(agentStatus.getAgentno(), agentStatus, orgi);
-        } finally {
-            lock.unlock();
-        }
+    public static void updateAgentStatus(AgentStatus agentStatus, AgentUser agentUser, String orgi, boolean in) {
+        Date updatetime = new Date();
+        AgentStatus updated = getAgentStatusCache().update(agentStatus.getAgentno(), AgentStatusUpdater.users(in ? 1 : -1, updatetime));
+        agentStatus.setUsers(updated != null ? updated.getUsers() : getAgentUsers(agentStatus.getAgentno(), orgi));
+        agentStatus.setUpdatetime(updatetime);
+    }
+
+    /**
+     * 置忙、置闲，只修改缓存中坐席状态的 busy 和 updatetime
+     *
+     * @param agentStatus
+     * @param orgi
+     * @return 坐席不在缓存中时返回 false
+     */
+    public static boolean updateAgentBusy(AgentStatus agentStatus, String orgi) {
+        return getAgentStatusCache().update(agentStatus.getAgentno(), AgentStatusUpdater.busy(agentStatus.isBusy(), agentStatus.getUpdatetime())) != null;
+    }
+
+    private static AgentStatusCache getAgentStatusCache() {
+        return MainContext.getContext().getBean(AgentStatusCache.class);
     }
 
     public static void publishMessage(String orgi, String worktype, String workresult, String dataid) {
         /**
-         * 坐席状态改变，通知监测服务
+         * 坐席状态改变，通知监测服务，由 AgentReportPublisher 合并后定时推送
          */
-        AgentReport agentReport = AutomaticServiceDist.getAgentReport(orgi);
-        AgentReportRepository agentReportRes = MainContext.getContext().getBean(AgentReportRepository.class);
-        if (agentReportRes != null) {
-            agentReport.setOrgi(orgi);
-            agentReport.setWorktype(worktype);
-            agentReport.setWorkresult(workresult);
-            agentReport.setDataid(dataid);
-
-            agentReportRes.save(agentReport);
-        }
-        MainContext.getContext().getBean("agentNamespace", SocketIONamespace.class).getBroadcastOperations().sendEvent("status", agentReport);
+        MainContext.getContext().getBean(AgentReportPublisher.class).publish(orgi, worktype, workresult, dataid);
     }
 
     /**
@@ -446,17 +422,16 @@ public class AutomaticServiceDist {
          */
 
         List<AgentStatus> agentStatusList = new ArrayList<AgentStatus>();
-        PagingPredicate<String, AgentStatus> pagingPredicate = null;
+        Predicate<String, AgentStatus> predicate = Predicates.and(Predicates.equal("busy", false), Predicates.equal("orgi", orgi));
         /**
          * 处理ACD 的 技能组请求和 坐席请求
          */
         if (StringUtils.isNotBlank(agentUser.getAgent())) {
-            pagingPredicate = new PagingPredicate<String, AgentStatus>(new SqlPredicate(" busy = false AND agentno = '" + agentUser.getAgent() + "' AND orgi = '" + orgi + "'"), 1);
+            predicate = Predicates.and(predicate, Predicates.equal("agentno", agentUser.getAgent()));
         } else if (StringUtils.isNotBlank(agentUser.getSkill())) {
-            pagingPredicate = new PagingPredicate<String, AgentStatus>(new SqlPredicate(" busy = false AND skill = '" + agentUser.getSkill() + "' AND orgi = '" + orgi + "'"), 1);
-        } else {
-            pagingPredicate = new PagingPredicate<String, AgentStatus>(new SqlPredicate(" busy = false AND orgi = '" + orgi + "'"), 1);
+            predicate = Predicates.and(predicate, Predicates.equal("skill", agentUser.getSkill()));
         }
+        PagingPredicate<String, AgentStatus> pagingPredicate = new PagingPredicate<String, AgentStatus>(predicate, 1);
 
         agentStatusList.addAll(((IMap<String, AgentStatus>) CacheHelper.getAgentStatusCacheBean().getCache()).values(pagingPredicate));
         AgentStatus agentStatus = null;
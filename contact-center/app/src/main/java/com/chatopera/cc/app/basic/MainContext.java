@@ -21,15 +21,12 @@ import com.chatopera.cc.util.Constants;
 import com.chatopera.cc.util.DateConverter;
 import com.chatopera.cc.app.basic.resource.ActivityResource;
 import com.chatopera.cc.app.basic.resource.BatchResource;
-import com.chatopera.cc.app.model.Log;
 import org.apache.commons.beanutils.ConvertUtils;
 import org.springframework.context.ApplicationContext;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class MainContext {
 
@@ -106,8 +103,6 @@ public class MainContext {
 
     private static ElasticsearchTemplate templet;
 
-    public static BlockingQueue<Log> tempLogQueue = new LinkedBlockingQueue<Log>();
-
     static {
         ConvertUtils.register(new DateConverter(), java.util.Date.class);
         model.put("report", true);
@@ -40,7 +40,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.googlecode.aviator.AviatorEvaluator;
 import com.lmax.disruptor.dsl.Disruptor;
-import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
 import io.netty.handler.codec.http.HttpHeaders;
 import net.coobird.thumbnailator.Thumbnails;
@@ -81,8 +80,6 @@ import java.util.regex.Pattern;
 
 
 public class MainUtils {
-    private static MD5 md5 = new MD5();
-
     public static SimpleDateFormat dateFormate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     public static SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -110,12 +107,19 @@ public class MainUtils {
         return session.replaceAll("-", "");
     }
 
+    /**
+     * MD5 保存计算中的状态，不能在线程间共享，每次计算使用新的实例；结果和原来相同
+     *
+     * @param str
+     * @return
+     */
     public static String md5(String str) {
+        MD5 md5 = new MD5();
         return md5.getMD5ofStr(md5.getMD5ofStr(str));
     }
 
     public static String md5(byte[] bytes) {
-        return md5.getMD5ofByte(bytes);
+        return new MD5().getMD5ofByte(bytes);
     }
 
     public static void copyProperties(Object source, Object target, String... ignoreProperties)
@@ -982,22 +986,16 @@ public class MainUtils {
     }
 
     /**
+     * 渲染模板，编译后的模板由 {@link TempletCache} 缓存
+     *
      * @throws IOException
      * @throws TemplateException
      */
-    @SuppressWarnings("deprecation")
     public static String getTemplet(String templet, Map<String, Object> values) throws IOException, TemplateException {
-        StringWriter writer = new StringWriter();
-        Configuration cfg = null;
-        freemarker.template.Template template = null;
         String retValue = templet;
         if (templet != null && templet.length() > 0 && templet.indexOf("$") >= 0) {
-            cfg = new Configuration();
-            TempletLoader loader = new TempletLoader(templet);
-            cfg.setTemplateLoader(loader);
-            cfg.setDefaultEncoding("UTF-8");
-            template = cfg.getTemplate("");
-            template.process(values, writer);
+            StringWriter writer = new StringWriter();
+            TempletCache.getTemplate(templet).process(values, writer);
             retValue = writer.toString();
         }
         return retValue;
@@ -18,17 +18,20 @@ package com.chatopera.cc.app.basic.resource;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.model.JobDetail;
 import com.chatopera.cc.app.basic.MainUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
+import com.chatopera.cc.util.Constants;
 import com.chatopera.cc.util.es.SearchTools;
 import com.chatopera.cc.util.es.UKDataBean;
 import com.chatopera.cc.app.persistence.impl.BatchDataProcess;
+import com.chatopera.cc.app.persistence.impl.ESDataCursor;
 import com.chatopera.cc.app.persistence.impl.ESDataExchangeImpl;
 import com.chatopera.cc.app.persistence.repository.CallAgentRepository;
 import com.chatopera.cc.app.persistence.repository.UKefuCallOutFilterRepository;
@@ -45,11 +48,18 @@ import com.chatopera.cc.app.model.FormFilterItem;
 import com.chatopera.cc.app.model.MetadataTable;
 
 public class ActivityResource extends Resource{
+	
+	/**
+	 * 游标保存时间，超过后重新从头检索
+	 */
+	private final static long CURSOR_TTL = 7 ;
 
 	private JobDetail jobDetail ;
 	private FormFilterRepository formFilterRes ;
 	private FormFilterItemRepository formFilterItemRes ;
-	private PageImpl<UKDataBean> dataList ;
+	private ESDataCursor cursor ;
+	private String cursorKey ;
+	private StringRedisTemplate redis ;
 	private MetadataTable metadataTable ;
 	private FormFilter formFilter = null ;
 	private List<CallAgent> callAgentList ;
@@ -82,6 +92,7 @@ public class ActivityResource extends Resource{
 		this.callOutFilterRes = MainContext.getContext().getBean(UKefuCallOutFilterRepository.class);
 		this.batchRes = MainContext.getContext().getBean(JobDetailRepository.class);
 		this.metadataRes =  MainContext.getContext().getBean(MetadataRepository.class);
+		this.redis = MainContext.getContext().getBean(StringRedisTemplate.class);
 		this.batchDataProcess = new BatchDataProcess(null , MainContext.getContext().getBean(ESDataExchangeImpl.class)) ;
 	}
 	
@@ -104,13 +115,16 @@ public class ActivityResource extends Resource{
 			}
 			if(metadataTable!=null) {
 				/**
-				 * 只加载 未分配的有效名单数据
+				 * 只加载 未分配的有效名单数据，按页流式读取；上次执行中断时从保存的游标位置继续
 				 */
+				cursorKey = String.format(Constants.JOB_CURSOR, this.jobDetail.getId(), isRecovery() ? "recovery" : "dis") ;
+				String after = redis.opsForValue().get(cursorKey) ;
+				int batch = MainContext.getContext().getEnvironment().getProperty("cskefu.es.cursor.batch", Integer.class, 1000) ;
 				if(isRecovery()) {
 					//回收数据 , 需要传入回收的目标  ： 包括 批次ID，任务ID，筛选ID，活动ID
-					dataList = SearchTools.recoversearch(this.jobDetail.getOrgi(), this.jobDetail.getExectype(), this.jobDetail.getExectarget() , metadataTable ,(int) Math.ceil(this.jobDetail.getStartindex()/50000), 50000) ;
+					cursor = SearchTools.recovercursor(this.jobDetail.getOrgi(), this.jobDetail.getExectype(), this.jobDetail.getExectarget() , metadataTable , batch , after , this::checkpoint) ;
 				}else {
-					dataList = SearchTools.dissearch(this.jobDetail.getOrgi(), formFilter, formFilterList , metadataTable ,(int) Math.ceil(this.jobDetail.getStartindex()/50000), 50000) ;
+					cursor = SearchTools.discursor(this.jobDetail.getOrgi(), formFilter, formFilterList , metadataTable , batch , after , this::checkpoint) ;
 				}
 			}
 			this.callAgentList = MainContext.getContext().getBean(CallAgentRepository.class).findByActidAndOrgi(this.jobDetail.getId() , this.jobDetail.getOrgi()) ;
@@ -150,9 +164,9 @@ public class ActivityResource extends Resource{
 				task.setOrgan(this.jobDetail.getOrgan());
 				
 				task.setCreatetime(new Date());
-				if(this.dataList!=null) {
-					task.setNamenum((int) this.dataList.getTotalElements());
-					task.setNotassigned((int) this.dataList.getTotalElements());
+				if(this.cursor!=null) {
+					task.setNamenum((int) this.cursor.getTotal());
+					task.setNotassigned((int) this.cursor.getTotal());
 				}
 				
 				this.callOutTaskRes.save(task) ;
@@ -174,6 +188,12 @@ public class ActivityResource extends Resource{
 		if(this.atomInt.intValue() > 0) {
 			this.batchDataProcess.end();
 		}
+		/**
+		 * 名单已经读完，下次执行重新检索；没有读完（坐席分配数已满等）时保留游标，下次从该位置继续
+		 */
+		if(this.cursorKey != null && (this.cursor == null || this.cursor.isExhausted())) {
+			redis.delete(this.cursorKey) ;
+		}
 		//doNothing
 		/**
 		 * FormFilter的执行信息更新，执行次数
@@ -314,18 +334,18 @@ public class ActivityResource extends Resource{
 	@Override
 	public OutputTextFormat next() throws Exception {
 		OutputTextFormat outputTextFormat = null;
-		if(this.dataList!=null && this.current!=null) {
-			synchronized (this.dataList) {
-				if(atomInt.intValue() < this.dataList.getContent().size()) {
+		if(this.cursor!=null && this.current!=null) {
+			synchronized (this.cursor) {
+				if(this.cursor.hasNext()) {
 					if(this.isRecovery()) {
-						UKDataBean dataBean = this.dataList.getContent().get(atomInt.intValue()) ;
+						UKDataBean dataBean = this.cursor.next() ;
 						outputTextFormat = new OutputTextFormat(this.jobDetail);
 						if(this.formFilter!=null) {
 							outputTextFormat.setTitle(this.formFilter.getName());
 						}
 						outputTextFormat.setDataBean(dataBean);
 						atomInt.incrementAndGet() ;
-					}else if(this.dataList!=null) {
+					}else {
 						if(this.current.getDisnames().intValue() >= this.current.getDisnum() ) {
 							if(this.callAgentList.size() > 0) {
 								this.current = this.callAgentList.remove(0) ;
@@ -334,7 +354,7 @@ public class ActivityResource extends Resource{
 							}
 						}
 						if(this.current != null) {
-							UKDataBean dataBean = this.dataList.getContent().get(atomInt.intValue()) ;
+							UKDataBean dataBean = this.cursor.next() ;
 							outputTextFormat = new OutputTextFormat(this.jobDetail);
 							if(this.formFilter!=null) {
 								outputTextFormat.setTitle(this.formFilter.getName());
@@ -386,6 +406,17 @@ public class ActivityResource extends Resource{
 		this.jobDetail.setExecto(null);
 	}
 	
+	/**
+	 * 保存可以安全恢复的游标位置，先提交已累积的更新，位置之前的记录不会因为中断而丢失
+	 * @param position
+	 */
+	private void checkpoint(String position) {
+		if(position != null) {
+			batchDataProcess.flush();
+			redis.opsForValue().set(cursorKey, position, CURSOR_TTL, TimeUnit.DAYS);
+		}
+	}
+	
 	private boolean isRecovery() {
 		return !StringUtils.isBlank(this.jobDetail.getExecmd()) && this.jobDetail.getExecmd().equals("recovery") ;
 	}
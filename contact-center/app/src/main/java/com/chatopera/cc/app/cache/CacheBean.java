@@ -17,6 +17,7 @@
 package com.chatopera.cc.app.cache;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.locks.Lock;
 
 import com.hazelcast.com.eclipsesource.json.JsonObject;
@@ -27,6 +28,11 @@ public interface CacheBean {
 	 */
 	public void put(String key , Object value , String orgi) ;
 	
+	/**
+	 * 批量写入
+	 */
+	public void putAll(Map<String, ?> values , String orgi) ;
+	
 	/**
 	 * 
 	 */
@@ -54,6 +60,14 @@ public interface CacheBean {
 	 */
 	public Object getCacheObject(String key, String orgi,Object defaultValue) ;
 	
+	/**
+	 * 批量读取，不存在的 key 不在结果中
+	 * @param keys
+	 * @param orgi
+	 * @return
+	 */
+	public Map<String, Object> getAll(Collection<String> keys , String orgi) ;
+	
 	/**
 	 * 获取所有缓存对象
 	 * @param orgi
@@ -62,8 +76,6 @@ public interface CacheBean {
 	public Collection<?> getAllCacheObject(String orgi) ; 
 	
 	
-	public CacheBean getCacheInstance(String cacheName);
-	
 	public Object getCache();
 	
 	public JsonObject getStatics();
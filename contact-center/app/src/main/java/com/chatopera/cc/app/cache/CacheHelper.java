@@ -16,7 +16,10 @@
  */
 package com.chatopera.cc.app.cache;
 
+import com.chatopera.cc.app.cache.hazelcast.CacheRegion;
 import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper;
+import com.chatopera.cc.app.model.JobProgress;
+import com.chatopera.cc.util.freeswitch.model.CallCenterAgent;
 
 public class CacheHelper {
 	private static CacheHelper instance = new CacheHelper();
@@ -60,5 +63,14 @@ public class CacheHelper {
 	public static CacheBean getCallOutCacheBean() {
 		return cacheInstance!=null ? cacheInstance.getCallOutCacheBean(): null ;
 	}
+	public static CacheRegion<String, CallCenterAgent> getCallCenterAgentRegion() {
+		return cacheInstance!=null ? cacheInstance.getCallCenterAgentRegion(): null ;
+	}
+	public static CacheRegion<String, Object> getCallOutRegion() {
+		return cacheInstance!=null ? cacheInstance.getCallOutRegion(): null ;
+	}
+	public static CacheRegion<String, JobProgress> getJobProgressRegion() {
+		return cacheInstance!=null ? cacheInstance.getJobProgressRegion(): null ;
+	}
 	
 }
@@ -16,6 +16,9 @@
  */
 package com.chatopera.cc.app.cache;
 
+import com.chatopera.cc.app.cache.hazelcast.CacheRegion;
+import com.chatopera.cc.app.model.JobProgress;
+import com.chatopera.cc.util.freeswitch.model.CallCenterAgent;
 
 public interface CacheInstance {
 	/**
@@ -81,4 +84,22 @@ public interface CacheInstance {
 	 */
 	public CacheBean getCallOutCacheBean();
 	
+	/**
+	 * 呼叫中心坐席
+	 * @return
+	 */
+	public CacheRegion<String, CallCenterAgent> getCallCenterAgentRegion();
+	
+	/**
+	 * 外呼名单
+	 * @return
+	 */
+	public CacheRegion<String, Object> getCallOutRegion();
+	
+	/**
+	 * 作业执行进度
+	 * @return
+	 */
+	public CacheRegion<String, JobProgress> getJobProgressRegion();
+	
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.cache;
+
+import com.chatopera.cc.app.cache.hazelcast.impl.SystemCache;
+import com.chatopera.cc.util.TempletCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 通过 /metrics 暴露系统缓存一级缓存的命中、未命中、失效次数和对象数量，以及模板缓存的命中情况和编译耗时
+ */
+@Component
+public class CacheMetrics implements PublicMetrics {
+
+    @Autowired
+    private SystemCache systemCache;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        NearCache<String> nearCache = systemCache.getNearCache();
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Number>("cache.system.near.hits", nearCache.getHits()));
+        metrics.add(new Metric<Number>("cache.system.near.misses", nearCache.getMisses()));
+        metrics.add(new Metric<Number>("cache.system.near.invalidations", nearCache.getInvalidations()));
+        metrics.add(new Metric<Number>("cache.system.near.size", nearCache.size()));
+        metrics.add(new Metric<Number>("cache.templet.hits", TempletCache.getHits()));
+        metrics.add(new Metric<Number>("cache.templet.misses", TempletCache.getMisses()));
+        metrics.add(new Metric<Number>("cache.templet.evictions", TempletCache.getEvictions()));
+        metrics.add(new Metric<Number>("cache.templet.invalidations", TempletCache.getInvalidations()));
+        metrics.add(new Metric<Number>("cache.templet.size", TempletCache.size()));
+        metrics.add(new Metric<Number>("cache.templet.parse.millis", TempletCache.getParseMillis()));
+        return metrics;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.cache;
+
+import org.springframework.beans.BeanUtils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 本节点的一级缓存
+ * <p>
+ * 保存反序列化后的对象，只缓存指定类型（读多写少的配置类）的对象，避免每次读取都从集群缓存反序列化。
+ * 集群缓存中的对象修改、删除时由调用方 {@link #invalidate(Object)}；
+ * 读取集群缓存期间发生过失效的结果不放入一级缓存，防止旧值覆盖失效。
+ * <p>
+ * 缓存的类型都是只有简单属性的实体，每次返回一份浅拷贝（比反序列化开销小得多），
+ * 调用方修改返回的对象不会影响其它线程；修改后需要保存的仍然要重新写入缓存。
+ */
+public class NearCache<K> {
+
+    private final ConcurrentMap<K, Object> values = new ConcurrentHashMap<K, Object>();
+
+    private final Set<Class<?>> types;
+
+    private final int maxSize;
+
+    /**
+     * 失效次数，同时作为读取集群缓存期间是否发生过失效的版本号
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public NearCache(Set<Class<?>> types, int maxSize) {
+        this.types = types;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 读取对象，一级缓存中没有时从 loader 读取
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    public Object get(final K key, final Function<K, Object> loader) {
+        Object value = values.get(key);
+        if (value != null) {
+            hits.increment();
+            return copy(value);
+        }
+        misses.increment();
+        final long version = invalidations.get();
+        value = loader.apply(key);
+        if (value != null && types.contains(value.getClass()) && values.size() < maxSize) {
+            // 缓存一份拷贝，返回给调用方的对象可以被修改
+            final Object cached = copy(value);
+            values.put(key, cached);
+            if (invalidations.get() != version) {
+                // 读取期间有对象失效，可能读到的是旧值
+                values.remove(key, cached);
+            }
+        }
+        return value;
+    }
+
+    private static Object copy(final Object value) {
+        Object copy = BeanUtils.instantiateClass(value.getClass());
+        BeanUtils.copyProperties(value, copy);
+        return copy;
+    }
+
+    public void invalidate(final K key) {
+        invalidations.incrementAndGet();
+        if (key != null) {
+            values.remove(key);
+        }
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        values.clear();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+}
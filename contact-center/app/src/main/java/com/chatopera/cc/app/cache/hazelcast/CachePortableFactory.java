@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.cache.hazelcast;
+
+import com.chatopera.cc.app.model.AgentStatus;
+import com.chatopera.cc.app.model.AgentUser;
+import com.chatopera.cc.app.model.OnlineUser;
+import com.chatopera.cc.util.freeswitch.model.CallCenterAgent;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableFactory;
+
+/**
+ * 集群缓存中高频读写、按属性查询的对象使用 Portable 序列化
+ * <p>
+ * 相比 Java 序列化，Portable 不写类描述信息，体积更小；查询和建立索引时按字段名直接读取属性，
+ * 只有匹配的条目才反序列化为对象。在 hazelcast.xml 的 portable-factories 中注册。
+ * <p>
+ * 类型 ID 一经使用不能修改；对象增减字段时集群中的节点需要同时升级。
+ */
+public class CachePortableFactory implements PortableFactory {
+
+    public final static int FACTORY_ID = 1;
+
+    public final static int AGENT_STATUS = 1;
+    public final static int AGENT_USER = 2;
+    public final static int ONLINE_USER = 3;
+    public final static int CALLCENTER_AGENT = 4;
+
+    @Override
+    public Portable create(int classId) {
+        switch (classId) {
+            case AGENT_STATUS:
+                return new AgentStatus();
+            case AGENT_USER:
+                return new AgentUser();
+            case ONLINE_USER:
+                return new OnlineUser();
+            case CALLCENTER_AGENT:
+                return new CallCenterAgent();
+            default:
+                return null;
+        }
+    }
+}
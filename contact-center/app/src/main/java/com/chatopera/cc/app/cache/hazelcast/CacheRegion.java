@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.cache.hazelcast;
+
+import com.hazelcast.com.eclipsesource.json.JsonObject;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.query.Predicate;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 集群缓存区域
+ * <p>
+ * 创建时解析 IMap 代理，之后的读写不再按名称查找；名称和代理都不可变，可以在多个线程间共享。
+ *
+ * @param <K>
+ * @param <V>
+ */
+public final class CacheRegion<K, V> {
+
+    private final String name;
+
+    private final IMap<K, V> map;
+
+    public CacheRegion(final String name, final IMap<K, V> map) {
+        this.name = name;
+        this.map = map;
+    }
+
+    public static <K, V> CacheRegion<K, V> of(final HazelcastInstance hazelcastInstance, final String name) {
+        return new CacheRegion<K, V>(name, hazelcastInstance.<K, V>getMap(name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public IMap<K, V> getMap() {
+        return map;
+    }
+
+    public V get(final K key) {
+        return map.get(key);
+    }
+
+    /**
+     * 批量读取，一次请求按分区并行读取，不存在的 key 不在结果中
+     *
+     * @param keys
+     * @return
+     */
+    public Map<K, V> getAll(final Set<K> keys) {
+        return map.getAll(keys);
+    }
+
+    public V put(final K key, final V value) {
+        return map.put(key, value);
+    }
+
+    /**
+     * 写入并设置有效期，超过有效期后从集群中移除
+     *
+     * @param key
+     * @param value
+     * @param ttl   0 表示使用区域配置的有效期
+     * @param unit
+     * @return
+     */
+    public V put(final K key, final V value, final long ttl, final TimeUnit unit) {
+        return map.put(key, value, ttl, unit);
+    }
+
+    /**
+     * 写入但不返回旧值，省去旧值的读取和反序列化
+     *
+     * @param key
+     * @param value
+     */
+    public void set(final K key, final V value) {
+        map.set(key, value);
+    }
+
+    public void set(final K key, final V value, final long ttl, final TimeUnit unit) {
+        map.set(key, value, ttl, unit);
+    }
+
+    /**
+     * 批量写入，按分区分组后一次提交
+     *
+     * @param values
+     */
+    public void putAll(final Map<? extends K, ? extends V> values) {
+        map.putAll(values);
+    }
+
+    /**
+     * 在 key 所在的分区上执行，同一 key 的操作按顺序执行，不需要加锁
+     *
+     * @param key
+     * @param entryProcessor
+     * @return entryProcessor 的返回值
+     */
+    public Object executeOnKey(final K key, final EntryProcessor<K, V> entryProcessor) {
+        return map.executeOnKey(key, entryProcessor);
+    }
+
+    public V remove(final K key) {
+        return map.remove(key);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    public Collection<V> values(final Predicate<K, V> predicate) {
+        return map.values(predicate);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public JsonObject getStatics() {
+        return map.getLocalMapStats().toJson();
+    }
+}
@@ -22,13 +22,20 @@ import com.chatopera.cc.app.cache.CacheInstance;
 import com.chatopera.cc.app.cache.hazelcast.impl.AgentStatusCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.AgentUserCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.ApiUserCache;
+import com.chatopera.cc.app.cache.hazelcast.impl.CallCenterAgentCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.CallCenterCache;
+import com.chatopera.cc.app.cache.hazelcast.impl.CallOutCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.JobCache;
+import com.chatopera.cc.app.cache.hazelcast.impl.JobProgressCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.MultiCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.OnlineCache;
 import com.chatopera.cc.app.cache.hazelcast.impl.SystemCache;
+import com.chatopera.cc.app.model.JobProgress;
+import com.chatopera.cc.util.freeswitch.model.CallCenterAgent;
 /**
  * Hazlcast缓存处理实例类
+ * <p>
+ * 每个缓存区域对应一个 CacheBean 单例，区域在 Bean 创建时确定，不会被调用方切换
  * @author admin
  *
  */
@@ -39,7 +46,7 @@ public class HazlcastCacheHelper implements CacheInstance {
 	 *
 	 */
 	public enum CacheServiceEnum{
-		HAZLCAST_CLUSTER_AGENT_USER_CACHE, HAZLCAST_CLUSTER_AGENT_STATUS_CACHE, HAZLCAST_CLUSTER_QUENE_USER_CACHE,HAZLCAST_ONLINE_CACHE , HAZLCAST_CULUSTER_SYSTEM , HAZLCAST_IMR_CACHE , API_USER_CACHE , CALLCENTER_CURRENT_CALL ,CALLCENTER_AGENT,JOB_CACHE,HAZLCAST_CALLOUT_CACHE;
+		HAZLCAST_CLUSTER_AGENT_USER_CACHE, HAZLCAST_CLUSTER_AGENT_STATUS_CACHE, HAZLCAST_CLUSTER_QUENE_USER_CACHE,HAZLCAST_ONLINE_CACHE , HAZLCAST_CULUSTER_SYSTEM , HAZLCAST_IMR_CACHE , API_USER_CACHE , CALLCENTER_CURRENT_CALL ,CALLCENTER_AGENT,JOB_CACHE,HAZLCAST_CALLOUT_CACHE,JOB_PROGRESS_CACHE;
 		public String toString(){
 			return super.toString().toLowerCase();
 		}
@@ -48,44 +55,56 @@ public class HazlcastCacheHelper implements CacheInstance {
 	@Override
 	public CacheBean getAgentStatusCacheBean() {
 		// TODO Auto-generated method stub
-		return MainContext.getContext().getBean(AgentStatusCache.class).getCacheInstance(CacheServiceEnum.HAZLCAST_CLUSTER_AGENT_STATUS_CACHE.toString()) ;
+		return MainContext.getContext().getBean(AgentStatusCache.class) ;
 	}
 	@Override
 	public CacheBean getAgentUserCacheBean() {
 		// TODO Auto-generated method stub
-		return MainContext.getContext().getBean(AgentUserCache.class).getCacheInstance(CacheServiceEnum.HAZLCAST_CLUSTER_QUENE_USER_CACHE.toString()) ;
+		return MainContext.getContext().getBean(AgentUserCache.class) ;
 	}
 	@Override
 	public CacheBean getOnlineCacheBean() {
-		return MainContext.getContext().getBean(OnlineCache.class).getCacheInstance(CacheServiceEnum.HAZLCAST_ONLINE_CACHE.toString()) ;
+		return MainContext.getContext().getBean(OnlineCache.class) ;
 	}
 	@Override
 	public CacheBean getSystemCacheBean() {
-		return MainContext.getContext().getBean(SystemCache.class).getCacheInstance(CacheServiceEnum.HAZLCAST_CULUSTER_SYSTEM.toString()) ;
+		return MainContext.getContext().getBean(SystemCache.class) ;
 	}
 	@Override
 	public CacheBean getIMRCacheBean() {
-		return MainContext.getContext().getBean(MultiCache.class).getCacheInstance(CacheServiceEnum.HAZLCAST_IMR_CACHE.toString()) ;
+		return MainContext.getContext().getBean(MultiCache.class) ;
 	}
 	@Override
 	public CacheBean getCallCenterCacheBean() {
-		return MainContext.getContext().getBean(CallCenterCache.class).getCacheInstance(CacheServiceEnum.CALLCENTER_CURRENT_CALL.toString()) ;
+		return MainContext.getContext().getBean(CallCenterCache.class) ;
 	}
 	@Override
 	public CacheBean getCallCenterAgentCacheBean() {
-		return MainContext.getContext().getBean(CallCenterCache.class).getCacheInstance(CacheServiceEnum.CALLCENTER_AGENT.toString()) ;
+		return MainContext.getContext().getBean(CallCenterAgentCache.class) ;
 	}
 	@Override
 	public CacheBean getApiUserCacheBean() {
-		return MainContext.getContext().getBean(ApiUserCache.class).getCacheInstance(CacheServiceEnum.API_USER_CACHE.toString()) ;
+		return MainContext.getContext().getBean(ApiUserCache.class) ;
 	}
 	@Override
 	public CacheBean getJobCacheBean() {
-		return MainContext.getContext().getBean(JobCache.class).getCacheInstance(CacheServiceEnum.JOB_CACHE.toString()) ;
+		return MainContext.getContext().getBean(JobCache.class) ;
 	}
 	@Override
 	public CacheBean getCallOutCacheBean() {
 		// TODO Auto-generated method stub
-		return MainContext.getContext().getBean(JobCache.class).getCacheInstance(CacheServiceEnum.HAZLCAST_CALLOUT_CACHE.toString()) ;
+		return MainContext.getContext().getBean(CallOutCache.class) ;
+	}
+	@Override
+	public CacheRegion<String, CallCenterAgent> getCallCenterAgentRegion() {
+		return MainContext.getContext().getBean(CallCenterAgentCache.class).getRegion() ;
+	}
+	@Override
+	public CacheRegion<String, Object> getCallOutRegion() {
+		return MainContext.getContext().getBean(CallOutCache.class).getRegion() ;
+	}
+	@Override
+	public CacheRegion<String, JobProgress> getJobProgressRegion() {
+		return MainContext.getContext().getBean(JobProgressCache.class).getRegion() ;
 	}
 }
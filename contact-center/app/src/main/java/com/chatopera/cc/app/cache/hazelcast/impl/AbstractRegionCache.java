@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.cache.hazelcast.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.chatopera.cc.app.cache.CacheBean;
+import com.chatopera.cc.app.cache.hazelcast.CacheRegion;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper.CacheServiceEnum;
+import com.hazelcast.com.eclipsesource.json.JsonObject;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * 绑定到一个缓存区域的 CacheBean
+ * <p>
+ * 区域在创建时确定，不随调用方改变；IMap 代理在启动时解析一次。
+ * 需要在本节点写入后同步维护索引的缓存覆盖 {@link #onPut}、{@link #onRemove}、{@link #onClear}。
+ *
+ * @param <V> 缓存对象类型
+ */
+public abstract class AbstractRegionCache<V> implements CacheBean {
+	
+	@Autowired
+	public HazelcastInstance hazelcastInstance;
+	
+	private final String name ;
+	
+	private CacheRegion<String, V> region ;
+	
+	protected AbstractRegionCache(CacheServiceEnum type){
+		this.name = type.toString() ;
+	}
+	
+	@PostConstruct
+	private void initRegion(){
+		region = CacheRegion.of(hazelcastInstance, name) ;
+	}
+	
+	public HazelcastInstance getInstance(){
+		return hazelcastInstance ;
+	}
+	
+	public String getName() {
+		return name ;
+	}
+	
+	public CacheRegion<String, V> getRegion(){
+		return region ;
+	}
+	
+	/**
+	 * 本节点写入后调用
+	 */
+	protected void onPut(String key, Object value){
+	}
+	
+	/**
+	 * 本节点删除后调用
+	 */
+	protected void onRemove(String key){
+	}
+	
+	/**
+	 * 本节点清空后调用
+	 */
+	protected void onClear(){
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public void put(String key, Object value, String orgi) {
+		region.put(key, (V) value) ;
+		onPut(key, value);
+	}
+	
+	/**
+	 * 写入并设置有效期，只有 IMap 支持单个对象的有效期，不属于 CacheBean 的约定
+	 */
+	@SuppressWarnings("unchecked")
+	public void put(String key, Object value, long ttl, TimeUnit unit, String orgi) {
+		region.put(key, (V) value, ttl, unit) ;
+		onPut(key, value);
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public void putAll(Map<String, ?> values, String orgi) {
+		region.putAll((Map<String, V>) values) ;
+		for(Map.Entry<String, ?> entry : values.entrySet()){
+			onPut(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void clear(String orgi) {
+		region.clear();
+		onClear();
+	}
+
+	@Override
+	public Object delete(String key, String orgi) {
+		Object value = region.remove(key) ;
+		onRemove(key);
+		return value ;
+	}
+
+	@Override
+	public void update(String key, String orgi, Object value) {
+		put(key, value, orgi);
+	}
+
+	@Override
+	public Object getCacheObject(String key, String orgi) {
+		return region.get(key);
+	}
+	
+	@Override
+	public Object getCacheObject(String key, String orgi, Object defaultValue) {
+		return getCacheObject(key, orgi);
+	}
+	
+	@Override
+	public Map<String, Object> getAll(Collection<String> keys, String orgi) {
+		return new HashMap<String, Object>(region.getAll(new HashSet<String>(keys)));
+	}
+
+	@Override
+	public Collection<?> getAllCacheObject(String orgi) {
+		return region.keySet();
+	}
+	
+	@Override
+	public Object getCache() {
+		return region.getMap();
+	}
+	
+	@Override
+	public Lock getLock(String lock , String orgi) {
+		return getInstance().getLock(lock);
+	}
+	
+	@Override
+	public long getSize() {
+		return region.size();
+	}
+	
+	@Override
+	public long getAtomicLong(String cacheName) {
+		return getInstance().getAtomicLong(getName()).incrementAndGet();
+	}
+	
+	@Override
+	public void setAtomicLong(String cacheName, long start) {
+		getInstance().getAtomicLong(getName()).set(start);
+	}
+	
+	@Override
+	public JsonObject getStatics() {
+		return region.getStatics();
+	}
+}
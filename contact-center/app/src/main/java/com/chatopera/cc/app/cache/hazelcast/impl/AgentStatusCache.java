@@ -16,100 +16,54 @@
  */
 package com.chatopera.cc.app.cache.hazelcast.impl;
 
-import java.util.Collection;
-import java.util.concurrent.locks.Lock;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.hazelcast.com.eclipsesource.json.JsonObject;
-import com.hazelcast.core.HazelcastInstance;
-import com.chatopera.cc.app.cache.CacheBean;
+import com.chatopera.cc.app.algorithm.AgentReportCounter;
+import com.chatopera.cc.app.algorithm.AgentStatusUpdater;
+import com.chatopera.cc.app.model.AgentStatus;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper.CacheServiceEnum;
 
 @Service("agentstatus_cache")
-public class AgentStatusCache implements CacheBean{
+public class AgentStatusCache extends AbstractRegionCache<Object> {
 	
+	/**
+	 * 本节点写入后同步更新坐席状态计数
+	 */
 	@Autowired
-	public HazelcastInstance hazelcastInstance;	
-	
-	private String cacheName ; 
+	private AgentReportCounter agentReportCounter ;
 	
-	public HazelcastInstance getInstance(){
-		return hazelcastInstance ;
-	}
-	public CacheBean getCacheInstance(String cacheName){
-		this.cacheName = cacheName ;
-		return this ;
+	public AgentStatusCache(){
+		super(CacheServiceEnum.HAZLCAST_CLUSTER_AGENT_STATUS_CACHE) ;
 	}
 	
-	@Override
-	public void put(String key, Object value, String orgi) {
-		getInstance().getMap(getName()).put(key, value) ;
-	}
-
-	@Override
-	public void clear(String orgi) {
-		getInstance().getMap(getName()).clear();
-	}
-
-	@Override
-	public Object delete(String key, String orgi) {
-		return getInstance().getMap(getName()).remove(key) ;
+	/**
+	 * 原子地修改缓存中的坐席状态，坐席不在缓存中时返回 null
+	 * 
+	 * @param agentno
+	 * @param updater
+	 * @return 修改后的坐席状态
+	 */
+	public AgentStatus update(String agentno , AgentStatusUpdater updater){
+		AgentStatus agentStatus = (AgentStatus) getRegion().executeOnKey(agentno, updater) ;
+		if(agentStatus != null){
+			onPut(agentno, agentStatus);
+		}
+		return agentStatus ;
 	}
-
+	
 	@Override
-	public void update(String key, String orgi, Object value) {
-		getInstance().getMap(getName()).put(key, value);
+	protected void onPut(String key, Object value) {
+		agentReportCounter.index(key, value);
 	}
 
 	@Override
-	public Object getCacheObject(String key, String orgi) {
-		return getInstance().getMap(getName()).get(key);
-	}
-
-	public String getName() {
-		return cacheName ;
-	}
-
-//	@Override
-	public void service() throws Exception {
-		// TODO Auto-generated method stub
-		
+	protected void onRemove(String key) {
+		agentReportCounter.unindex(key);
 	}
 
 	@Override
-	public Collection<?> getAllCacheObject(String orgi) {
-		return getInstance().getMap(getName()).keySet();
-	}
-	@Override
-	public Object getCacheObject(String key, String orgi, Object defaultValue) {
-		return getCacheObject(key, orgi);
-	}
-	@Override
-	public Object getCache() {
-		return getInstance().getMap(cacheName);
-	}
-	
-	@Override
-	public Lock getLock(String lock , String orgi) {
-		// TODO Auto-generated method stub
-		return getInstance().getLock(lock);
-	}
-	@Override
-	public long getSize() {
-		return getInstance().getMap(getName()).size();
-	}
-	@Override
-	public long getAtomicLong(String cacheName) {
-		return getInstance().getAtomicLong(getName()).incrementAndGet();
-	}
-	@Override
-	public void setAtomicLong(String cacheName, long start) {
-		getInstance().getAtomicLong(getName()).set(start);
-	}
-	@Override
-	public JsonObject getStatics() {
-		// TODO Auto-generated method stub
-		return getInstance().getMap(getName()).getLocalMapStats().toJson();
+	protected void onClear() {
+		agentReportCounter.clear();
 	}
 }
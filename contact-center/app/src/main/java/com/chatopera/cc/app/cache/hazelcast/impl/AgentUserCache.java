@@ -16,100 +16,50 @@
  */
 package com.chatopera.cc.app.cache.hazelcast.impl;
 
-import java.util.Collection;
-import java.util.concurrent.locks.Lock;
-
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import com.hazelcast.com.eclipsesource.json.JsonObject;
-import com.hazelcast.core.HazelcastInstance;
-import com.chatopera.cc.app.cache.CacheBean;
+import com.chatopera.cc.app.algorithm.AgentUserQueue;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper.CacheServiceEnum;
+import com.chatopera.cc.app.model.AgentUser;
+import com.chatopera.cc.app.schedule.SessionTimeoutWheel;
 
 @Service("agentuser_cache")
-public class AgentUserCache implements CacheBean{
+public class AgentUserCache extends AbstractRegionCache<Object> {
 	
+	/**
+	 * 本节点写入后同步更新 ACD 排队索引
+	 */
 	@Autowired
-	public HazelcastInstance hazelcastInstance;	
+	private AgentUserQueue agentUserQueue ;
 	
-	private String cacheName ; 
+	/**
+	 * 会话进入排队、服务状态时登记超时检查
+	 */
+	@Lazy
+	@Autowired
+	private SessionTimeoutWheel sessionTimeoutWheel ;
 	
-	public HazelcastInstance getInstance(){
-		return hazelcastInstance ;
-	}
-	public CacheBean getCacheInstance(String cacheName){
-		this.cacheName = cacheName ;
-		return this ;
+	public AgentUserCache(){
+		super(CacheServiceEnum.HAZLCAST_CLUSTER_QUENE_USER_CACHE) ;
 	}
 	
 	@Override
-	public void put(String key, Object value, String orgi) {
-		getInstance().getMap(getName()).put(key, value) ;
-	}
-
-	@Override
-	public void clear(String orgi) {
-		getInstance().getMap(getName()).clear();
-	}
-
-	@Override
-	public Object delete(String key, String orgi) {
-		return getInstance().getMap(getName()).remove(key) ;
-	}
-
-	@Override
-	public void update(String key, String orgi, Object value) {
-		getInstance().getMap(getName()).put(key, value);
+	protected void onPut(String key, Object value) {
+		agentUserQueue.index(key, value);
+		if(value instanceof AgentUser){
+			sessionTimeoutWheel.schedule((AgentUser) value);
+		}
 	}
 
 	@Override
-	public Object getCacheObject(String key, String orgi) {
-		return getInstance().getMap(getName()).get(key);
-	}
-
-	public String getName() {
-		return cacheName ;
-	}
-
-//	@Override
-	public void service() throws Exception {
-		// TODO Auto-generated method stub
-		
+	protected void onRemove(String key) {
+		agentUserQueue.unindex(key);
 	}
 
 	@Override
-	public Collection<?> getAllCacheObject(String orgi) {
-		return getInstance().getMap(getName()).keySet();
-	}
-	@Override
-	public Object getCacheObject(String key, String orgi, Object defaultValue) {
-		return getCacheObject(key, orgi);
-	}
-	@Override
-	public Object getCache() {
-		return getInstance().getMap(cacheName);
-	}
-	
-	@Override
-	public Lock getLock(String lock , String orgi) {
-		// TODO Auto-generated method stub
-		return getInstance().getLock(lock);
-	}
-	@Override
-	public long getSize() {
-		return getInstance().getMap(getName()).size();
-	}
-	@Override
-	public long getAtomicLong(String cacheName) {
-		return getInstance().getAtomicLong(getName()).incrementAndGet();
-	}
-	@Override
-	public void setAtomicLong(String cacheName, long start) {
-		getInstance().getAtomicLong(getName()).set(start);
-	}
-	@Override
-	public JsonObject getStatics() {
-		// TODO Auto-generated method stub
-		return getInstance().getMap(getName()).getLocalMapStats().toJson();
+	protected void onClear() {
+		agentUserQueue.clear();
 	}
 }
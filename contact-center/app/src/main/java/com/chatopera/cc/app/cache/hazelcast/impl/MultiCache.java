@@ -17,14 +17,20 @@
 package com.chatopera.cc.app.cache.hazelcast.impl;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.Lock;
 
+import javax.annotation.PostConstruct;
+
 import com.chatopera.cc.app.cache.CacheBean;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper.CacheServiceEnum;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.hazelcast.com.eclipsesource.json.JsonObject;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MultiMap;
 
 @Service("multi_cache")
 public class MultiCache implements CacheBean {
@@ -32,54 +38,70 @@ public class MultiCache implements CacheBean {
 	@Autowired
 	public HazelcastInstance hazelcastInstance;	
 	
-	private String cacheName ; 
+	private final String cacheName = CacheServiceEnum.HAZLCAST_IMR_CACHE.toString() ; 
+	
+	private MultiMap<String, Object> multiMap ;
+	
+	@PostConstruct
+	private void init(){
+		multiMap = hazelcastInstance.getMultiMap(cacheName) ;
+	}
 	
 	public HazelcastInstance getInstance(){
 		return hazelcastInstance ;
 	}
-	public CacheBean getCacheInstance(String cacheName){
-		this.cacheName = cacheName ;
-		return this ;
-	}
 	
 	@Override
 	public void put(String key, Object value, String orgi) {
-		getInstance().getMultiMap(getName()).put(key, value) ;
+		multiMap.put(key, value) ;
+	}
+	
+	@Override
+	public void putAll(Map<String, ?> values, String orgi) {
+		for(Map.Entry<String, ?> entry : values.entrySet()){
+			multiMap.put(entry.getKey(), entry.getValue()) ;
+		}
 	}
 
 	@Override
 	public void clear(String orgi) {
-		getInstance().getMultiMap(getName()).clear();
+		multiMap.clear();
 	}
 
 	@Override
 	public Object delete(String key, String orgi) {
-		return getInstance().getMultiMap(getName()).remove(key) ;
+		return multiMap.remove(key) ;
 	}
 
 	@Override
 	public void update(String key, String orgi, Object value) {
-		getInstance().getMultiMap(getName()).put(key, value);
+		multiMap.put(key, value);
 	}
 
 	@Override
 	public Object getCacheObject(String key, String orgi) {
-		return getInstance().getMultiMap(getName()).get(key);
+		return multiMap.get(key);
+	}
+	
+	@Override
+	public Map<String, Object> getAll(Collection<String> keys, String orgi) {
+		Map<String, Object> values = new HashMap<String, Object>() ;
+		for(String key : keys){
+			Collection<Object> value = multiMap.get(key) ;
+			if(value != null && !value.isEmpty()){
+				values.put(key, value) ;
+			}
+		}
+		return values ;
 	}
 
 	public String getName() {
 		return cacheName ;
 	}
 
-//	@Override
-	public void service() throws Exception {
-		// TODO Auto-generated method stub
-		
-	}
-
 	@Override
 	public Collection<?> getAllCacheObject(String orgi) {
-		return getInstance().getMultiMap(getName()).keySet();
+		return multiMap.keySet();
 	}
 	@Override
 	public Object getCacheObject(String key, String orgi, Object defaultValue) {
@@ -88,17 +110,16 @@ public class MultiCache implements CacheBean {
 	}
 	@Override
 	public Object getCache() {
-		return getInstance().getMultiMap(cacheName);
+		return multiMap;
 	}
 	
 	@Override
 	public Lock getLock(String lock , String orgi) {
-		// TODO Auto-generated method stub
 		return getInstance().getLock(lock);
 	}
 	@Override
 	public long getSize() {
-		return getInstance().getMultiMap(getName()).size();
+		return multiMap.size();
 	}
 	@Override
 	public long getAtomicLong(String cacheName) {
@@ -111,7 +132,6 @@ public class MultiCache implements CacheBean {
 	
 	@Override
 	public JsonObject getStatics() {
-		// TODO Auto-generated method stub
-		return getInstance().getMultiMap(getName()).getLocalMultiMapStats().toJson();
+		return multiMap.getLocalMultiMapStats().toJson();
 	}
 }
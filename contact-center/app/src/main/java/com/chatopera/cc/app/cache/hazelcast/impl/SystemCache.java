@@ -16,101 +16,114 @@
  */
 package com.chatopera.cc.app.cache.hazelcast.impl;
 
-import java.util.Collection;
-import java.util.concurrent.locks.Lock;
+import java.util.Arrays;
+import java.util.HashSet;
 
-import com.chatopera.cc.app.cache.CacheBean;
-import org.springframework.beans.factory.annotation.Autowired;
+import javax.annotation.PostConstruct;
+
+import com.chatopera.cc.app.cache.NearCache;
+import com.chatopera.cc.app.cache.hazelcast.HazlcastCacheHelper.CacheServiceEnum;
+import com.chatopera.cc.app.model.CousultInvite;
+import com.chatopera.cc.app.model.SessionConfig;
+import com.chatopera.cc.app.model.SysDic;
+import com.chatopera.cc.app.model.SystemConfig;
+import com.chatopera.cc.app.model.Template;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.hazelcast.com.eclipsesource.json.JsonObject;
-import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
 
+/**
+ * 系统缓存：配置、字典、模板等
+ * <p>
+ * 读多写少的配置类对象在本节点保留一份反序列化后的实例（{@link NearCache}），读取时返回拷贝，
+ * 任意节点修改、删除后通过集群事件失效
+ */
 @Service("system_cache")
-public class SystemCache implements CacheBean {
+public class SystemCache extends AbstractRegionCache<Object> implements EntryUpdatedListener<String, Object>, EntryRemovedListener<String, Object>,
+		EntryEvictedListener<String, Object>, MapClearedListener, MapEvictedListener {
 	
-	@Autowired
-	public HazelcastInstance hazelcastInstance;	
+	@Value("${cskefu.cache.system.near.size:10000}")
+	private int nearCacheSize;
 	
-	private String cacheName ; 
+	private NearCache<String> nearCache ;
 	
-	public HazelcastInstance getInstance(){
-		return hazelcastInstance ;
+	public SystemCache(){
+		super(CacheServiceEnum.HAZLCAST_CULUSTER_SYSTEM) ;
 	}
-	public CacheBean getCacheInstance(String cacheName){
-		this.cacheName = cacheName ;
-		return this ;
+	
+	@PostConstruct
+	private void init(){
+		nearCache = new NearCache<String>(new HashSet<Class<?>>(Arrays.<Class<?>>asList(SystemConfig.class, SessionConfig.class, CousultInvite.class, SysDic.class, Template.class)), nearCacheSize) ;
+		getRegion().getMap().addEntryListener(this, false) ;
 	}
 	
-	@Override
-	public void put(String key, Object value, String orgi) {
-		getInstance().getMap(getName()).put(key, value) ;
+	public NearCache<String> getNearCache(){
+		return nearCache ;
 	}
-
+	
 	@Override
-	public void clear(String orgi) {
-		getInstance().getMap(getName()).clear();
+	protected void onPut(String key, Object value) {
+		nearCache.invalidate(key);
 	}
 
 	@Override
-	public Object delete(String key, String orgi) {
-		return getInstance().getMap(getName()).remove(key) ;
+	protected void onRemove(String key) {
+		nearCache.invalidate(key);
 	}
 
 	@Override
-	public void update(String key, String orgi, Object value) {
-		getInstance().getMap(getName()).put(key, value);
+	protected void onClear() {
+		nearCache.clear();
 	}
 
 	@Override
 	public Object getCacheObject(String key, String orgi) {
-		return getInstance().getMap(getName()).get(key);
-	}
-
-	public String getName() {
-		return cacheName ;
-	}
-
-//	@Override
-	public void service() throws Exception {
-		// TODO Auto-generated method stub
-		
-	}
-
-	@Override
-	public Collection<?> getAllCacheObject(String orgi) {
-		return getInstance().getMap(getName()).keySet();
-	}
-	@Override
-	public Object getCacheObject(String key, String orgi, Object defaultValue) {
-		return getCacheObject(key, orgi);
+		return nearCache.get(key, getRegion()::get) ;
 	}
+	
 	@Override
-	public Object getCache() {
-		return getInstance().getMap(cacheName);
+	public JsonObject getStatics() {
+		JsonObject statics = super.getStatics();
+		statics.add("nearCacheSize", nearCache.size()) ;
+		statics.add("nearCacheHits", nearCache.getHits()) ;
+		statics.add("nearCacheMisses", nearCache.getMisses()) ;
+		statics.add("nearCacheInvalidations", nearCache.getInvalidations()) ;
+		return statics ;
 	}
 	
+	/**
+	 * 其它节点（以及本节点）修改缓存后失效一级缓存
+	 */
 	@Override
-	public Lock getLock(String lock , String orgi) {
-		// TODO Auto-generated method stub
-		return getInstance().getLock(lock);
+	public void entryUpdated(EntryEvent<String, Object> event) {
+		nearCache.invalidate(event.getKey());
 	}
+	
 	@Override
-	public long getSize() {
-		return getInstance().getMap(getName()).size();
+	public void entryRemoved(EntryEvent<String, Object> event) {
+		nearCache.invalidate(event.getKey());
 	}
+	
 	@Override
-	public long getAtomicLong(String cacheName) {
-		return getInstance().getAtomicLong(getName()).incrementAndGet();
+	public void entryEvicted(EntryEvent<String, Object> event) {
+		nearCache.invalidate(event.getKey());
 	}
+	
 	@Override
-	public void setAtomicLong(String cacheName, long start) {
-		getInstance().getAtomicLong(getName()).set(start);
+	public void mapCleared(MapEvent event) {
+		nearCache.clear();
 	}
 	
 	@Override
-	public JsonObject getStatics() {
-		// TODO Auto-generated method stub
-		return getInstance().getMap(getName()).getLocalMapStats().toJson();
+	public void mapEvicted(MapEvent event) {
+		nearCache.clear();
 	}
 }
@@ -16,59 +16,117 @@
  */
 package com.chatopera.cc.app.config;
 
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManagerFactory;
 
 import com.chatopera.cc.concurrent.chatbot.ChatbotDisruptorExceptionHandler;
 import com.chatopera.cc.concurrent.chatbot.ChatbotEventFactory;
 import com.chatopera.cc.concurrent.chatbot.ChatbotEventHandler;
 import com.chatopera.cc.concurrent.multiupdate.MultiUpdateEventFactory;
 import com.chatopera.cc.concurrent.multiupdate.MultiUpdateEventHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 import com.chatopera.cc.concurrent.user.UserDataEvent;
 import com.chatopera.cc.concurrent.user.UserDataEventFactory;
 import com.chatopera.cc.concurrent.user.UserEventHandler;
 
+/**
+ * 三个 RingBuffer 都由请求线程、Socket 线程等多个线程同时发布，使用 ProducerType.MULTI；
+ * 容量（2 的幂）和等待策略（sleeping、blocking、yielding、busyspin）可配置
+ */
 @Component
 public class DisruptorConfigure {
-	@SuppressWarnings({ "unchecked", "deprecation" })
+	
+	@Value("${cskefu.disruptor.user.size:1024}")
+	private int userSize;
+	
+	@Value("${cskefu.disruptor.user.wait-strategy:sleeping}")
+	private String userWaitStrategy;
+	
+	@Value("${cskefu.disruptor.multiupdate.size:1024}")
+	private int multiupdateSize;
+	
+	@Value("${cskefu.disruptor.multiupdate.wait-strategy:sleeping}")
+	private String multiupdateWaitStrategy;
+	
+	@Value("${cskefu.disruptor.chatbot.size:1024}")
+	private int chatbotSize;
+	
+	@Value("${cskefu.disruptor.chatbot.wait-strategy:sleeping}")
+	private String chatbotWaitStrategy;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	
+	@SuppressWarnings({ "unchecked" })
 	@Bean(name="disruptor")   
     public Disruptor<UserDataEvent> disruptor() {   
-		Executor executor = Executors.newCachedThreadPool();
     	 UserDataEventFactory factory = new UserDataEventFactory();
-    	 Disruptor<UserDataEvent> disruptor = new Disruptor<UserDataEvent>(factory, 1024, executor, ProducerType.SINGLE , new SleepingWaitStrategy());
+    	 Disruptor<UserDataEvent> disruptor = new Disruptor<UserDataEvent>(factory, userSize, threadFactory("disruptor"), ProducerType.MULTI , waitStrategy(userWaitStrategy));
     	 disruptor.setDefaultExceptionHandler(new UKeFuExceptionHandler());
-    	 disruptor.handleEventsWith(new UserEventHandler());
+    	 disruptor.handleEventsWith(new UserEventHandler(transactionManager, entityManagerFactory));
     	 disruptor.start();
          return disruptor;   
     }  
     
-    @SuppressWarnings({ "unchecked", "deprecation" })
+    @SuppressWarnings({ "unchecked" })
 	@Bean(name="multiupdate")   
     public Disruptor<UserDataEvent> multiupdate() {   
-    	Executor executor = Executors.newCachedThreadPool();
     	 MultiUpdateEventFactory factory = new MultiUpdateEventFactory();
-    	 Disruptor<UserDataEvent> disruptor = new Disruptor<UserDataEvent>(factory, 1024, executor, ProducerType.SINGLE , new SleepingWaitStrategy());
+    	 Disruptor<UserDataEvent> disruptor = new Disruptor<UserDataEvent>(factory, multiupdateSize, threadFactory("multiupdate"), ProducerType.MULTI , waitStrategy(multiupdateWaitStrategy));
     	 disruptor.handleEventsWith(new MultiUpdateEventHandler());
     	 disruptor.setDefaultExceptionHandler(new UKeFuExceptionHandler());
     	 disruptor.start();
          return disruptor;   
     }
 
-	@SuppressWarnings({ "unchecked", "deprecation" })
+	@SuppressWarnings({"unchecked"})
 	@Bean(name="chatbot")
 	public Disruptor<UserDataEvent> chatbot() {
-		Executor executor = Executors.newCachedThreadPool();
 		ChatbotEventFactory factory = new ChatbotEventFactory();
-		Disruptor<UserDataEvent> disruptor = new Disruptor<UserDataEvent>(factory, 1024, executor, ProducerType.SINGLE , new SleepingWaitStrategy());
+		Disruptor<UserDataEvent> disruptor = new Disruptor<UserDataEvent>(factory, chatbotSize, threadFactory("chatbot"), ProducerType.MULTI , waitStrategy(chatbotWaitStrategy));
 		disruptor.handleEventsWith(new ChatbotEventHandler());
 		disruptor.setDefaultExceptionHandler(new ChatbotDisruptorExceptionHandler());
 		disruptor.start();
 		return disruptor;
 	}
+	
+	private static WaitStrategy waitStrategy(String name) {
+		if("blocking".equalsIgnoreCase(name)) {
+			return new BlockingWaitStrategy();
+		} else if("yielding".equalsIgnoreCase(name)) {
+			return new YieldingWaitStrategy();
+		} else if("busyspin".equalsIgnoreCase(name)) {
+			return new BusySpinWaitStrategy();
+		}
+		return new SleepingWaitStrategy();
+	}
+	
+	/**
+	 * 处理线程按 RingBuffer 命名，便于排查
+	 */
+	private static ThreadFactory threadFactory(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-handler-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
 }
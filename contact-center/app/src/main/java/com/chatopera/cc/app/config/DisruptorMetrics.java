@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.config;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过 /metrics 暴露各 RingBuffer 的容量、剩余容量和处理线程落后的事件数
+ */
+@Component
+public class DisruptorMetrics implements PublicMetrics {
+
+    @Autowired
+    private Map<String, Disruptor<?>> disruptors;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        for (Map.Entry<String, Disruptor<?>> entry : disruptors.entrySet()) {
+            RingBuffer<?> ringBuffer = entry.getValue().getRingBuffer();
+            String prefix = "disruptor." + entry.getKey();
+            metrics.add(new Metric<Number>(prefix + ".size", ringBuffer.getBufferSize()));
+            metrics.add(new Metric<Number>(prefix + ".remaining", ringBuffer.remainingCapacity()));
+            metrics.add(new Metric<Number>(prefix + ".lag", ringBuffer.getCursor() - ringBuffer.getMinimumGatingSequence()));
+        }
+        return metrics;
+    }
+}
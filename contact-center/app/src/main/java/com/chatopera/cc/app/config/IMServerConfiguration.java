@@ -26,6 +26,10 @@ import java.util.Properties;
 import javax.annotation.PreDestroy;
 
 import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.im.codec.BinaryPayloadCodec;
+import com.chatopera.cc.app.im.codec.IMPayloadCodec;
+import com.chatopera.cc.app.im.codec.JavaPayloadCodec;
+import com.chatopera.cc.app.im.util.IMServiceUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -55,6 +59,9 @@ public class IMServerConfiguration
     
     @Value("${uk.im.server.threads}")
     private String threads;
+
+    @Value("${cskefu.im.codec:binary}")
+    private String codec;
     
     private SocketIOServer server ;
     
@@ -112,6 +119,16 @@ public class IMServerConfiguration
         return server = new SocketIOServer(config);  
     }
     
+    /**
+     * 跨节点消息的编码方式：binary（默认，紧凑二进制）或 java（Java 序列化）
+     */
+    @Bean
+    public IMPayloadCodec imPayloadCodec() {
+    	IMPayloadCodec payloadCodec = "java".equalsIgnoreCase(codec) ? new JavaPayloadCodec() : new BinaryPayloadCodec();
+    	IMServiceUtils.setCodec(payloadCodec);
+    	return payloadCodec;
+    }
+    
     @Bean  
     public SpringAnnotationScanner springAnnotationScanner(SocketIOServer socketServer) {  
         return new SpringAnnotationScanner(socketServer);  
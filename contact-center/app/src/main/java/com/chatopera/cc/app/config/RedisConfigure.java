@@ -20,13 +20,18 @@ import com.chatopera.cc.app.schedule.WebIMAgentDispatcher;
 import com.chatopera.cc.app.schedule.WebIMOnlineUserDispatcher;
 import com.chatopera.cc.util.Constants;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.PatternTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executors;
 
 @Configuration
@@ -36,6 +41,9 @@ public class RedisConfigure {
     @Autowired
     JedisConnectionFactory jedisConnectionFactory;
 
+    @Value("${application.node.id}")
+    String appNodeId;
+
 
     @Autowired
     CallOutWireTask callOutWireTask;
@@ -72,9 +80,12 @@ public class RedisConfigure {
         return new MessageListenerAdapter(webIMAgentDispatcher);
     }
 
-    @Bean
-    PatternTopic imAgentEvents() {
-        return new PatternTopic(Constants.INSTANT_MESSAGING_WEBIM_AGENT_CHANNEL);
+    /**
+     * 只订阅发往本节点的频道和广播频道
+     */
+    List<Topic> imAgentEvents() {
+        return Arrays.<Topic>asList(new ChannelTopic(String.format(Constants.INSTANT_MESSTRING_WEBIM_AGENT_PATTERN, appNodeId)),
+                new ChannelTopic(Constants.INSTANT_MESSAGING_WEBIM_AGENT_BROADCAST_CHANNEL));
     }
 
     @Bean
@@ -82,9 +93,9 @@ public class RedisConfigure {
         return new MessageListenerAdapter(webIMOnlineUserDispatcher);
     }
 
-    @Bean
-    PatternTopic imOnlineUserEvents() {
-        return new PatternTopic(Constants.INSTANT_MESSAGING_WEBIM_ONLINE_USER_CHANNEL);
+    List<Topic> imOnlineUserEvents() {
+        return Arrays.<Topic>asList(new ChannelTopic(String.format(Constants.INSTANT_MESSTRING_WEBIM_ONLINE_USER_PATTERN, appNodeId)),
+                new ChannelTopic(Constants.INSTANT_MESSAGING_WEBIM_ONLINE_USER_BROADCAST_CHANNEL));
     }
 
 
@@ -35,6 +35,7 @@ import org.springframework.web.servlet.ModelAndView;
 
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.util.Menu;
+import com.chatopera.cc.util.TempletCache;
 import com.chatopera.cc.app.basic.MainUtils;
 import com.chatopera.cc.app.cache.CacheHelper;
 import com.chatopera.cc.app.persistence.repository.SysDicRepository;
@@ -88,6 +89,7 @@ public class TemplateController extends Handler{
     			for(Template template : templateList){
     				templateRes.save(template) ;
     			}
+    			TempletCache.clear();
     		}
     	}
     	return request(super.createRequestPageTempletResponse("redirect:/admin/template/index.html"));
@@ -168,6 +170,7 @@ public class TemplateController extends Handler{
     public ModelAndView codesave(HttpServletRequest request  , @Valid Template template) {
     	Template oldTemplate = templateRes.findByIdAndOrgi(template.getId(), super.getOrgi(request)) ;
     	if(oldTemplate!=null){
+    		TempletCache.invalidate(oldTemplate.getTemplettext());
     		oldTemplate.setTemplettext(template.getTemplettext());
     		oldTemplate.setTemplettitle(template.getTemplettitle());
     		templateRes.save(oldTemplate) ;
@@ -182,6 +185,7 @@ public class TemplateController extends Handler{
     public ModelAndView delete(HttpServletRequest request ,@Valid Template template) {
     	if(template!=null){
     		templateRes.delete(template) ;
+    		TempletCache.invalidate(template.getTemplettext());
     		
     		CacheHelper.getSystemCacheBean().delete(template.getId(), super.getOrgi(request)) ;
     	}
@@ -22,6 +22,7 @@ import com.chatopera.cc.aggregation.CallOutHangupAggsResult;
 import com.chatopera.cc.aggregation.CallOutHangupAuditResult;
 import com.chatopera.cc.aggregation.MathHelper;
 import com.chatopera.cc.exception.CallOutRecordException;
+import com.chatopera.cc.app.persistence.impl.StatusEventRollupService;
 import com.chatopera.cc.app.persistence.repository.OrganRepository;
 import com.chatopera.cc.app.persistence.repository.SNSAccountRepository;
 import com.chatopera.cc.app.persistence.repository.StatusEventRepository;
@@ -89,6 +90,9 @@ public class ApiCallRecordsController extends Handler {
     @Autowired
     UserRepository userRes;
 
+    @Autowired
+    StatusEventRollupService statusEventRollupService;
+
     /**
      * 处理日期格式
      *
@@ -322,7 +326,7 @@ public class ApiCallRecordsController extends Handler {
         final String datestr = j.get("datestr").getAsString();
         final String direction = j.get("direction").getAsString();
 
-        List<Object[]> aggResult = statusEventRes.queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection(datestr, channel, direction);
+        List<Object[]> aggResult = statusEventRollupService.queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection(datestr, channel, direction);
         logger.info("[callout records] aggResult size {}", aggResult.size());
 
         List<CallOutHangupAggsResult> results = new ArrayList<CallOutHangupAggsResult>();
@@ -477,7 +481,7 @@ public class ApiCallRecordsController extends Handler {
 
         final String organ = j.has("organ")? j.get("organ").getAsString() : null;
 
-        List<Object[]> z = statusEventRes.queryCalloutHangupAuditGroupByAgentAndDirection(channel,
+        List<Object[]> z = statusEventRollupService.queryCalloutHangupAuditGroupByAgentAndDirection(channel,
                 fromdate,
                 enddate,
                 organ,
@@ -557,6 +561,35 @@ public class ApiCallRecordsController extends Handler {
     }
 
 
+    /**
+     * 从原始通话记录重新汇总当前租户 [fromdate, enddate] 内的坐席报表和外呼日报数据
+     *
+     * @param request
+     * @param j
+     * @return
+     */
+    private JsonObject rollup(final HttpServletRequest request, final JsonObject j) {
+        JsonObject resp = new JsonObject();
+        try {
+            Date fromdate = fromdate(j);
+            Date enddate = enddate(j);
+            if (fromdate == null || enddate == null || fromdate.after(enddate)) {
+                resp.addProperty(RestUtils.RESP_KEY_RC, RestUtils.RESP_RC_FAIL_3);
+                resp.addProperty(RestUtils.RESP_KEY_ERROR, "起止日期参数错误。");
+                return resp;
+            }
+            int rows = statusEventRollupService.rebuild(super.getOrgi(request),
+                    Constants.QUERY_DATE_FORMATTER.format(fromdate),
+                    Constants.QUERY_DATE_FORMATTER.format(DateUtils.addDays(enddate, 1)));
+            resp.addProperty(RestUtils.RESP_KEY_RC, RestUtils.RESP_RC_SUCC);
+            resp.addProperty("data", rows);
+        } catch (ParseException e) {
+            resp.addProperty(RestUtils.RESP_KEY_RC, RestUtils.RESP_RC_FAIL_3);
+            resp.addProperty(RestUtils.RESP_KEY_ERROR, "日期格式错误。");
+        }
+        return resp;
+    }
+
     /**
      * 根据用户ID获取部门名称
      *
@@ -608,6 +641,9 @@ public class ApiCallRecordsController extends Handler {
                 case "audit": // 坐席报表
                     json = audit(j);
                     break;
+                case "rollup": // 重新汇总通话记录
+                    json = rollup(request, j);
+                    break;
                 default:
                     json.addProperty(RestUtils.RESP_KEY_RC, RestUtils.RESP_RC_FAIL_2);
                     json.addProperty(RestUtils.RESP_KEY_ERROR, "不合法的操作。");
@@ -24,6 +24,7 @@ import com.chatopera.cc.app.handler.Handler;
 import com.chatopera.cc.app.im.client.NettyClients;
 import com.chatopera.cc.app.im.message.ChatMessage;
 import com.chatopera.cc.app.im.router.OutMessageRouter;
+import com.chatopera.cc.app.im.util.ChatMessagePersister;
 import com.chatopera.cc.app.model.*;
 import com.chatopera.cc.app.persistence.blob.JpaBlobHelper;
 import com.chatopera.cc.app.persistence.es.ContactsRepository;
@@ -126,6 +127,9 @@ public class AgentController extends Handler {
     @Autowired
     private AgentUserTaskRepository agentUserTaskRes;
 
+    @Autowired
+    private ChatMessagePersister chatMessagePersister;
+
     @Autowired
     private SNSAccountRepository snsAccountRes;
 
@@ -348,6 +352,7 @@ public class AgentController extends Handler {
                 AgentUserTask agentUserTask = agentUserTaskList.get(0);
                 agentUserTask.setTokenum(0);
                 agentUserTaskRes.save(agentUserTask);
+                chatMessagePersister.evict(agentUserTask.getId());
             }
 
             if (StringUtils.isNotBlank(agentUser.getAgentserviceid())) {
@@ -539,7 +544,9 @@ public class AgentController extends Handler {
             AutomaticServiceDist.recordAgentStatus(agentStatus.getAgentno(), agentStatus.getUsername(), agentStatus.getAgentno(), agentStatus.getSkill(), "0".equals(super.getUser(request).getUsertype()), agentStatus.getAgentno(), MainContext.AgentStatusEnum.READY.toString(), MainContext.AgentStatusEnum.BUSY.toString(), MainContext.AgentWorkType.MEIDIACHAT.toString(), agentStatus.getOrgi(), agentStatus.getUpdatetime());
             agentStatus.setUpdatetime(new Date());
             agentStatusRepository.save(agentStatus);
-            CacheHelper.getAgentStatusCacheBean().put(agentStatus.getAgentno(), agentStatus, super.getOrgi(request));
+            if (!AutomaticServiceDist.updateAgentBusy(agentStatus, super.getOrgi(request))) {
+                CacheHelper.getAgentStatusCacheBean().put(agentStatus.getAgentno(), agentStatus, super.getOrgi(request));
+            }
         }
         AutomaticServiceDist.publishMessage(super.getOrgi(request), "agent", "busy", user.getId());
 
@@ -559,7 +566,9 @@ public class AgentController extends Handler {
 
             agentStatus.setUpdatetime(new Date());
             agentStatusRepository.save(agentStatus);
-            CacheHelper.getAgentStatusCacheBean().put(agentStatus.getAgentno(), agentStatus, super.getOrgi(request));
+            if (!AutomaticServiceDist.updateAgentBusy(agentStatus, super.getOrgi(request))) {
+                CacheHelper.getAgentStatusCacheBean().put(agentStatus.getAgentno(), agentStatus, super.getOrgi(request));
+            }
             AutomaticServiceDist.allotAgent(agentStatus.getAgentno(), super.getOrgi(request));
         }
         return request(super.createRequestPageTempletResponse("/public/success"));
@@ -612,6 +621,7 @@ public class AgentController extends Handler {
             AgentUserTask agentUserTask = agentUserTaskList.get(0);
             agentUserTask.setTokenum(0);
             agentUserTaskRes.save(agentUserTask);
+            chatMessagePersister.evict(agentUserTask.getId());
         }
         return request(super.createRequestPageTempletResponse("/public/success"));
     }
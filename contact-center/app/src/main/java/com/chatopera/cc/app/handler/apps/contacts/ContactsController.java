@@ -287,12 +287,9 @@ public class ContactsController extends Handler {
         if (ids != null && ids.length > 0) {
             Iterable<Contacts> contactsList = contactsRes.findAll(Arrays.asList(ids));
             MetadataTable table = metadataRes.findByTablename("uk_contacts");
-            List<Map<String, Object>> values = new ArrayList<Map<String, Object>>();
-            for (Contacts contacts : contactsList) {
-                values.add(MainUtils.transBean2Map(contacts));
-            }
+            Iterator<Map<String, Object>> values = ExcelExporterProcess.beans(contactsList);
 
-            response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+            response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
             ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
             excelProcess.process();
@@ -312,12 +309,9 @@ public class ContactsController extends Handler {
         Iterable<Contacts> contactsList = contactsRes.findByCreaterAndSharesAndOrgi(super.getUser(request).getId(), super.getUser(request).getId(), super.getOrgi(request), null, null, false, boolQueryBuilder, null, new PageRequest(super.getP(request), super.getPs(request)));
 
         MetadataTable table = metadataRes.findByTablename("uk_contacts");
-        List<Map<String, Object>> values = new ArrayList<Map<String, Object>>();
-        for (Contacts contacts : contactsList) {
-            values.add(MainUtils.transBean2Map(contacts));
-        }
+        Iterator<Map<String, Object>> values = ExcelExporterProcess.beans(contactsList);
 
-        response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
         ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
         excelProcess.process();
@@ -338,12 +332,9 @@ public class ContactsController extends Handler {
 
         Iterable<Contacts> contactsList = contactsRes.findByCreaterAndSharesAndOrgi(super.getUser(request).getId(), super.getUser(request).getId(), super.getOrgi(request), null, null, false, boolQueryBuilder, q, new PageRequest(super.getP(request), super.getPs(request)));
         MetadataTable table = metadataRes.findByTablename("uk_contacts");
-        List<Map<String, Object>> values = new ArrayList<Map<String, Object>>();
-        for (Contacts contacts : contactsList) {
-            values.add(MainUtils.transBean2Map(contacts));
-        }
+        Iterator<Map<String, Object>> values = ExcelExporterProcess.beans(contactsList);
 
-        response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
         ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
         excelProcess.process();
@@ -25,6 +25,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -334,12 +335,9 @@ public class CustomerController extends Handler{
     	if(ids!=null && ids.length > 0){
     		Iterable<EntCustomer> entCustomerList = entCustomerRes.findAll(Arrays.asList(ids)) ;
     		MetadataTable table = metadataRes.findByTablename("uk_entcustomer") ;
-    		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-    		for(EntCustomer customer : entCustomerList){
-    			values.add(MainUtils.transBean2Map(customer)) ;
-    		}
+    		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(entCustomerList) ;
     		
-    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-EntCustomer-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-EntCustomer-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
     		
     		ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
     		excelProcess.process();
@@ -361,12 +359,9 @@ public class CustomerController extends Handler{
     	Iterable<EntCustomer> entCustomerList = entCustomerRes.findByCreaterAndSharesAndOrgi(super.getUser(request).getId(), super.getUser(request).getId(),super.getOrgi(request), null , null , false, boolQueryBuilder , null , new PageRequest(super.getP(request) , super.getPs(request)));
     	
     	MetadataTable table = metadataRes.findByTablename("uk_entcustomer") ;
-		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-		for(EntCustomer customer : entCustomerList){
-			values.add(MainUtils.transBean2Map(customer)) ;
-		}
+		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(entCustomerList) ;
 		
-		response.setHeader("content-disposition", "attachment;filename=UCKeFu-EntCustomer-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+		response.setHeader("content-disposition", "attachment;filename=UCKeFu-EntCustomer-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 		
 		ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
 		excelProcess.process();
@@ -392,12 +387,9 @@ public class CustomerController extends Handler{
     	
     	Iterable<EntCustomer> entCustomerList = entCustomerRes.findByCreaterAndSharesAndOrgi(super.getUser(request).getId(), super.getUser(request).getId(),super.getOrgi(request), null , null , false, boolQueryBuilder ,q , new PageRequest(super.getP(request) , super.getPs(request)));
     	MetadataTable table = metadataRes.findByTablename("uk_entcustomer") ;
-    	List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-    	for(EntCustomer customer : entCustomerList){
-    		values.add(MainUtils.transBean2Map(customer)) ;
-    	}
+    	Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(entCustomerList) ;
 
-    	response.setHeader("content-disposition", "attachment;filename=UCKeFu-EntCustomer-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+    	response.setHeader("content-disposition", "attachment;filename=UCKeFu-EntCustomer-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 
     	ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
     	excelProcess.process();
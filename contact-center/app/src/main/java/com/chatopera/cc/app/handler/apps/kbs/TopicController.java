@@ -23,6 +23,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -414,12 +415,9 @@ public class TopicController extends Handler{
     	if(ids!=null && ids.length > 0){
     		Iterable<Topic> topicList = topicRes.findAll(Arrays.asList(ids)) ;
     		MetadataTable table = metadataRes.findByTablename("uk_xiaoe_topic") ;
-    		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-    		for(Topic topic : topicList){
-    			values.add(MainUtils.transBean2Map(topic)) ;
-    		}
+    		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
     		
-    		response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+    		response.setHeader("content-disposition", "attachment;filename=CSKefu-Contacts-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
     		if(table!=null){
     			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
     			excelProcess.process();
@@ -432,15 +430,12 @@ public class TopicController extends Handler{
     @RequestMapping("/topic/expall")
     @Menu(type = "xiaoe" , subtype = "knowledge")
     public void expall(ModelMap map , HttpServletRequest request , HttpServletResponse response,@Valid String type, @Valid String aiid) throws IOException {
-    	Iterable<Topic> topicList = topicRes.getTopicByOrgi(super.getOrgi(request) ,type , null) ;
+    	Iterator<Topic> topicList = topicRes.streamTopicByOrgi(super.getOrgi(request) ,type , null) ;
     	
     	MetadataTable table = metadataRes.findByTablename("uk_xiaoe_topic") ;
-		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-		for(Topic topic : topicList){
-			values.add(MainUtils.transBean2Map(topic)) ;
-		}
+		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
 		
-		response.setHeader("content-disposition", "attachment;filename=UCKeFu-XiaoE-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+		response.setHeader("content-disposition", "attachment;filename=UCKeFu-XiaoE-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 		
 		if(table!=null){
 			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
@@ -453,15 +448,12 @@ public class TopicController extends Handler{
     @Menu(type = "xiaoe" , subtype = "knowledge")
     public void expall(ModelMap map , HttpServletRequest request , HttpServletResponse response , @Valid String q , @Valid String type, @Valid String aiid) throws IOException {
     	
-    	Iterable<Topic> topicList = topicRes.getTopicByOrgi(super.getOrgi(request) , type , q) ;
+    	Iterator<Topic> topicList = topicRes.streamTopicByOrgi(super.getOrgi(request) , type , q) ;
     	
     	MetadataTable table = metadataRes.findByTablename("uk_xiaoe_topic") ;
-		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-		for(Topic topic : topicList){
-			values.add(MainUtils.transBean2Map(topic)) ;
-		}
+		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
 		
-		response.setHeader("content-disposition", "attachment;filename=UCKeFu-XiaoE-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+		response.setHeader("content-disposition", "attachment;filename=UCKeFu-XiaoE-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 		
 		if(table!=null){
 			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
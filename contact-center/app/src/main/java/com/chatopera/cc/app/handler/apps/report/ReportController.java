@@ -22,6 +22,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -295,12 +296,9 @@ public class ReportController extends Handler{
     	if(ids!=null && ids.length > 0){
     		Iterable<Report> topicList = reportRes.findAll(Arrays.asList(ids)) ;
     		MetadataTable table = metadataRes.findByTablename("uk_report") ;
-    		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-    		for(Report topic : topicList){
-    			values.add(MainUtils.transBean2Map(topic)) ;
-    		}
+    		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
     		
-    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-Report-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-Report-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
     		if(table!=null){
     			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
     			excelProcess.process();
@@ -316,12 +314,9 @@ public class ReportController extends Handler{
     	List<Report> reportList = reportRes.findByOrgiAndDicid(super.getOrgi(request) , type) ;
     	
     	MetadataTable table = metadataRes.findByTablename("uk_report") ;
-		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-		for(Report report : reportList){
-			values.add(MainUtils.transBean2Map(report)) ;
-		}
+		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(reportList) ;
 		
-		response.setHeader("content-disposition", "attachment;filename=UCKeFu-Report-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+		response.setHeader("content-disposition", "attachment;filename=UCKeFu-Report-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 		
 		if(table!=null){
 			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -47,6 +48,7 @@ import org.springframework.web.servlet.ModelAndView;
 
 import com.chatopera.cc.util.Menu;
 import com.chatopera.cc.concurrent.dsdata.export.ExcelExporterProcess;
+import com.chatopera.cc.concurrent.dsdata.export.PageIterator;
 import com.chatopera.cc.app.persistence.es.ContactsRepository;
 import com.chatopera.cc.app.persistence.repository.AgentServiceRepository;
 import com.chatopera.cc.app.persistence.repository.MetadataRepository;
@@ -170,12 +172,9 @@ public class ProcessedSummaryController extends Handler{
 	    	if(ids!=null && ids.length > 0){
 	    		Iterable<AgentServiceSummary> statusEventList = serviceSummaryRes.findAll(Arrays.asList(ids)) ;
 	    		MetadataTable table = metadataRes.findByTablename("uk_servicesummary") ;
-	    		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-	    		for(AgentServiceSummary event : statusEventList){
-	    			values.add(MainUtils.transBean2Map(event)) ;
-	    		}
+	    		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(statusEventList) ;
 	    		
-	    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-Summary-History-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+	    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-Summary-History-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 	    		
 	    		ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
 	    		excelProcess.process();
@@ -187,15 +186,13 @@ public class ProcessedSummaryController extends Handler{
 	    @RequestMapping("/expall")
 	    @Menu(type = "agent" , subtype = "processed" , access = false)
 	    public void expall(ModelMap map , HttpServletRequest request , HttpServletResponse response) throws IOException {
-	    	Iterable<AgentServiceSummary> statusEventList = serviceSummaryRes.findByChannelNotAndOrgi(MainContext.ChannelTypeEnum.PHONE.toString() , super.getOrgi(request) , new PageRequest(0, 10000));
+	    	final String orgi = super.getOrgi(request);
+	    	Iterator<AgentServiceSummary> statusEventList = new PageIterator<AgentServiceSummary>(pageable -> serviceSummaryRes.findByChannelNotAndOrgi(MainContext.ChannelTypeEnum.PHONE.toString() , orgi , pageable), 1000, new Sort(Sort.Direction.DESC, "createtime", "id"));
 	    	
 	    	MetadataTable table = metadataRes.findByTablename("uk_servicesummary") ;
-			List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-			for(AgentServiceSummary statusEvent : statusEventList){
-				values.add(MainUtils.transBean2Map(statusEvent)) ;
-			}
+			Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(statusEventList) ;
 			
-			response.setHeader("content-disposition", "attachment;filename=UCKeFu-Summary-History-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+			response.setHeader("content-disposition", "attachment;filename=UCKeFu-Summary-History-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 			
 			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
 			excelProcess.process();
@@ -206,7 +203,7 @@ public class ProcessedSummaryController extends Handler{
 	    @Menu(type = "agent" , subtype = "processed" , access = false)
 	    public void expall(ModelMap map , HttpServletRequest request  , HttpServletResponse response,@Valid final String ani , @Valid final String called , @Valid final String begin , @Valid final String end , @Valid final String direction) throws IOException {
 	    	final String orgi = super.getOrgi(request);
-	    	Page<AgentServiceSummary> page = serviceSummaryRes.findAll(new Specification<AgentServiceSummary>(){
+	    	final Specification<AgentServiceSummary> spec = new Specification<AgentServiceSummary>(){
 				@Override
 				public Predicate toPredicate(Root<AgentServiceSummary> root, CriteriaQuery<?> query,
 						CriteriaBuilder cb) {
@@ -231,14 +228,11 @@ public class ProcessedSummaryController extends Handler{
 					}
 					Predicate[] p = new Predicate[list.size()];  
 				    return cb.and(list.toArray(p));  
-				}}, new PageRequest(0, 10000 , Sort.Direction.DESC, "createtime")) ;
+				}} ;
 	    	
-	    	List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-	    	for(AgentServiceSummary summary : page){
-	    		values.add(MainUtils.transBean2Map(summary)) ;
-	    	}
+	    	Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(new PageIterator<AgentServiceSummary>(pageable -> serviceSummaryRes.findAll(spec, pageable), 1000, new Sort(Sort.Direction.DESC, "createtime", "id"))) ;
 
-	    	response.setHeader("content-disposition", "attachment;filename=UCKeFu-Summary-History-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+	    	response.setHeader("content-disposition", "attachment;filename=UCKeFu-Summary-History-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 
 	    	MetadataTable table = metadataRes.findByTablename("uk_servicesummary") ;
 	    	
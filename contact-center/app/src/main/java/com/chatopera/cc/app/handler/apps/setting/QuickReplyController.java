@@ -22,6 +22,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -282,12 +283,9 @@ public class QuickReplyController extends Handler {
     	if(ids!=null && ids.length > 0){
     		Iterable<QuickReply> topicList = quickReplyRes.findAll(Arrays.asList(ids)) ;
     		MetadataTable table = metadataRes.findByTablename("uk_quickreply") ;
-    		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-    		for(QuickReply topic : topicList){
-    			values.add(MainUtils.transBean2Map(topic)) ;
-    		}
+    		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
     		
-    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-QuickReply-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+    		response.setHeader("content-disposition", "attachment;filename=UCKeFu-QuickReply-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
     		if(table!=null){
     			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
     			excelProcess.process();
@@ -300,15 +298,12 @@ public class QuickReplyController extends Handler {
     @RequestMapping("/expall")
     @Menu(type = "setting" , subtype = "quickreplyexpall")
     public void expall(ModelMap map , HttpServletRequest request , HttpServletResponse response,@Valid String type) throws IOException {
-    	Iterable<QuickReply> topicList = quickReplyRes.getQuickReplyByOrgi(super.getOrgi(request) , !StringUtils.isBlank(type) ? type : null, MainContext.QuickTypeEnum.PUB.toString(),null) ;
+    	Iterator<QuickReply> topicList = quickReplyRes.streamQuickReplyByOrgi(super.getOrgi(request) , !StringUtils.isBlank(type) ? type : null, MainContext.QuickTypeEnum.PUB.toString(),null) ;
     	
     	MetadataTable table = metadataRes.findByTablename("uk_quickreply") ;
-		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-		for(QuickReply topic : topicList){
-			values.add(MainUtils.transBean2Map(topic)) ;
-		}
+		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
 		
-		response.setHeader("content-disposition", "attachment;filename=UCKeFu-QuickReply-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+		response.setHeader("content-disposition", "attachment;filename=UCKeFu-QuickReply-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 		
 		if(table!=null){
 			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
@@ -321,15 +316,12 @@ public class QuickReplyController extends Handler {
     @Menu(type = "setting" , subtype = "quickreplyexpsearch")
     public void expall(ModelMap map , HttpServletRequest request , HttpServletResponse response , @Valid String q , @Valid String type) throws IOException {
     	
-    	Iterable<QuickReply> topicList = quickReplyRes.getQuickReplyByOrgi(super.getOrgi(request) , type, MainContext.QuickTypeEnum.PUB.toString(), q) ;
+    	Iterator<QuickReply> topicList = quickReplyRes.streamQuickReplyByOrgi(super.getOrgi(request) , type, MainContext.QuickTypeEnum.PUB.toString(), q) ;
     	
     	MetadataTable table = metadataRes.findByTablename("uk_quickreply") ;
-		List<Map<String,Object>> values = new ArrayList<Map<String,Object>>();
-		for(QuickReply topic : topicList){
-			values.add(MainUtils.transBean2Map(topic)) ;
-		}
+		Iterator<Map<String,Object>> values = ExcelExporterProcess.beans(topicList) ;
 		
-		response.setHeader("content-disposition", "attachment;filename=UCKeFu-QuickReply-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xls");  
+		response.setHeader("content-disposition", "attachment;filename=UCKeFu-QuickReply-"+new SimpleDateFormat("yyyy-MM-dd").format(new Date())+".xlsx");  
 		
 		if(table!=null){
 			ExcelExporterProcess excelProcess = new ExcelExporterProcess( values, table, response.getOutputStream()) ;
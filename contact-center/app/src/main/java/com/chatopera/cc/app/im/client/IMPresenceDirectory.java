@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.im.client;
+
+import com.chatopera.cc.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * 用户所在节点目录
+ * <p>
+ * 在 Redis 中按 用户 → 节点集合 保存每个用户的 Socket 连接在哪些节点上（同一用户可能在多个节点上打开页面），
+ * 跨节点消息据此只发布到目标节点的频道；找不到目标节点时才广播。
+ * <p>
+ * 节点宕机或重启会留下过期的记录，由发布方（频道无人订阅）和接收方（本节点没有连接）发现后移除。
+ */
+@Component
+public class IMPresenceDirectory {
+    private final static Logger logger = LoggerFactory.getLogger(IMPresenceDirectory.class);
+
+    public final static String AGENT = "agent";
+    public final static String ONLINE_USER = "onlineuser";
+
+    /**
+     * 长期不活动的记录自动过期，每次连接时续期
+     */
+    private final static long EXPIRE_HOURS = 24;
+
+    /**
+     * 同一用户的上线和下线在本节点串行执行，避免下线时删掉刚建立的连接的记录
+     */
+    private final static int LOCK_STRIPES = 64;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Value("${application.node.id}")
+    private String appNodeId;
+
+    @Autowired
+    private StringRedisTemplate redis;
+
+    public String getNodeId() {
+        return appNodeId;
+    }
+
+    /**
+     * 用户在本节点建立连接
+     *
+     * @param namespace
+     * @param user
+     */
+    public void online(final String namespace, final String user) {
+        final String key = key(namespace, user);
+        synchronized (lock(key)) {
+            try {
+                redis.opsForSet().add(key, appNodeId);
+                redis.expire(key, EXPIRE_HOURS, TimeUnit.HOURS);
+            } catch (Exception e) {
+                logger.warn("[presence] online {} {}", namespace, user, e);
+            }
+        }
+    }
+
+    /**
+     * 用户在本节点上已经没有连接，移除前在锁内重新检查连接数，
+     * 与并发的 {@link #online(String, String)} 互斥
+     *
+     * @param namespace
+     * @param user
+     * @param connections 本节点上该用户当前的连接数
+     */
+    public void offline(final String namespace, final String user, final IntSupplier connections) {
+        synchronized (lock(key(namespace, user))) {
+            if (connections.getAsInt() == 0) {
+                remove(namespace, user, appNodeId);
+            }
+        }
+    }
+
+    public void remove(final String namespace, final String user, final String node) {
+        try {
+            redis.opsForSet().remove(key(namespace, user), node);
+        } catch (Exception e) {
+            logger.warn("[presence] remove {} {} {}", namespace, user, node, e);
+        }
+    }
+
+    /**
+     * 用户有连接的节点，查询失败时返回空集合，由调用方广播
+     *
+     * @param namespace
+     * @param user
+     * @return
+     */
+    public Set<String> getNodes(final String namespace, final String user) {
+        try {
+            Set<String> nodes = redis.opsForSet().members(key(namespace, user));
+            return nodes != null ? nodes : Collections.<String>emptySet();
+        } catch (Exception e) {
+            logger.warn("[presence] lookup {} {}", namespace, user, e);
+            return Collections.emptySet();
+        }
+    }
+
+    private Object lock(final String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private static String key(final String namespace, final String user) {
+        return String.format(Constants.INSTANT_MESSAGING_PRESENCE_PATTERN, namespace, user);
+    }
+}
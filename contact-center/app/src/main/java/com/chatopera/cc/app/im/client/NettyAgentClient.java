@@ -16,34 +16,6 @@
  */
 package com.chatopera.cc.app.im.client;
 
-import java.util.List;
-
-import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
-import com.chatopera.cc.app.basic.MainUtils;
-
-public class NettyAgentClient implements NettyClient{
-	
-	private ArrayListMultimap<String, SocketIOClient> agentClientsMap = ArrayListMultimap.create();
-	
-	public List<SocketIOClient> getClients(String key){
-		return agentClientsMap.get(key) ;
-	}
-	
-	public void putClient(String key , SocketIOClient client){
-		agentClientsMap.put(key, client) ;
-	}
+public class NettyAgentClient extends NettyClientRegistry{
 	
-	public void removeClient(String key , String id){
-		List<SocketIOClient> keyClients = this.getClients(key) ;
-		for(SocketIOClient client : keyClients){
-			if(MainUtils.getContextID(client.getSessionId().toString()).equals(id)){
-				keyClients.remove(client) ;
-				break ;
-			}
-		}
-		if(keyClients.size() == 0){
-			agentClientsMap.removeAll(key) ;
-		}
-	}
 }
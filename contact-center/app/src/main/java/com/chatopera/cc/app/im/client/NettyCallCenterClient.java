@@ -16,39 +16,11 @@
  */
 package com.chatopera.cc.app.im.client;
 
-import java.util.List;
-
-import com.chatopera.cc.app.basic.MainUtils;
-import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
-
 /**
  * 呼叫中心登录坐席
  * @author iceworld
  *
  */
-public class NettyCallCenterClient implements NettyClient{
-	
-	private ArrayListMultimap<String, SocketIOClient> callCenterMap = ArrayListMultimap.create();
-	
-	public List<SocketIOClient> getClients(String key){
-		return callCenterMap.get(key) ;
-	}
-	
-	public void putClient(String key , SocketIOClient client){
-		callCenterMap.put(key, client) ;
-	}
+public class NettyCallCenterClient extends NettyClientRegistry{
 	
-	public void removeClient(String key , String id){
-		List<SocketIOClient> keyClients = this.getClients(key) ;
-		for(SocketIOClient client : keyClients){
-			if(MainUtils.getContextID(client.getSessionId().toString()).equals(id)){
-				keyClients.remove(client) ;
-				break ;
-			}
-		}
-		if(keyClients.size() == 0){
-			callCenterMap.removeAll(key) ;
-		}
-	}
 }
@@ -15,40 +15,12 @@
  */
 package com.chatopera.cc.app.im.client;
 
-import com.chatopera.cc.app.basic.MainUtils;
-import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
-
-import java.util.List;
-
 /**
  * 呼叫中心登录坐席
  * @author Hai Liang Wang
  * @date
  *
  */
-public class NettyChatbotClient implements NettyClient{
-	
-	private ArrayListMultimap<String, SocketIOClient> _map = ArrayListMultimap.create();
-	
-	public List<SocketIOClient> getClients(String key){
-		return _map.get(key) ;
-	}
-	
-	public void putClient(String key , SocketIOClient client){
-		_map.put(key, client) ;
-	}
+public class NettyChatbotClient extends NettyClientRegistry{
 	
-	public void removeClient(String key , String id){
-		List<SocketIOClient> keyClients = this.getClients(key) ;
-		for(SocketIOClient client : keyClients){
-			if(MainUtils.getContextID(client.getSessionId().toString()).equals(id)){
-				keyClients.remove(client) ;
-				break ;
-			}
-		}
-		if(keyClients.size() == 0){
-			_map.removeAll(key) ;
-		}
-	}
 }
@@ -16,13 +16,13 @@
  */
 package com.chatopera.cc.app.im.client;
 
-import java.util.List;
+import java.util.Collection;
 
 import com.corundumstudio.socketio.SocketIOClient;
 
 public interface NettyClient {
 	
-	public List<SocketIOClient> getClients(String key) ;
+	public Collection<SocketIOClient> getClients(String key) ;
 	
 	public void putClient(String key , SocketIOClient client) ;
 	
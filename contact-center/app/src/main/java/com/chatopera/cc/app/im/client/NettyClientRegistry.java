@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.im.client;
+
+import com.chatopera.cc.app.basic.MainUtils;
+import com.corundumstudio.socketio.SocketIOClient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Socket 连接注册表
+ * <p>
+ * 按用户ID、再按会话ID（去掉 '-' 的 sessionId，只在连接时计算一次）保存连接，
+ * 可被 socket.io 的多个工作线程并发读写：读取无锁，增删为 O(1)，同时统计连接数和消息扇出。
+ */
+public class NettyClientRegistry implements NettyClient {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, SocketIOClient>> clients = new ConcurrentHashMap<String, ConcurrentMap<String, SocketIOClient>>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final LongAdder sends = new LongAdder();        // 发送请求次数
+    private final LongAdder deliveries = new LongAdder();   // 实际送达的连接数
+    private final LongAdder misses = new LongAdder();       // 本节点没有连接的发送次数
+
+    @Override
+    public Collection<SocketIOClient> getClients(String key) {
+        Map<String, SocketIOClient> userClients = key != null ? clients.get(key) : null;
+        return userClients != null ? userClients.values() : Collections.<SocketIOClient>emptyList();
+    }
+
+    public SocketIOClient getClient(String key, String id) {
+        Map<String, SocketIOClient> userClients = key != null ? clients.get(key) : null;
+        return userClients != null && id != null ? userClients.get(id) : null;
+    }
+
+    @Override
+    public void putClient(String key, final SocketIOClient client) {
+        final String id = MainUtils.getContextID(client.getSessionId().toString());
+        clients.compute(key, (k, userClients) -> {
+            if (userClients == null) {
+                userClients = new ConcurrentHashMap<String, SocketIOClient>(4);
+            }
+            if (userClients.put(id, client) == null) {
+                connections.incrementAndGet();
+            }
+            return userClients;
+        });
+    }
+
+    @Override
+    public void removeClient(String key, final String id) {
+        if (key == null || id == null) {
+            return;
+        }
+        clients.computeIfPresent(key, (k, userClients) -> {
+            if (userClients.remove(id) != null) {
+                connections.decrementAndGet();
+            }
+            return userClients.isEmpty() ? null : userClients;
+        });
+    }
+
+    /**
+     * 向用户在本节点上的所有连接发送事件
+     *
+     * @param key
+     * @param event
+     * @param data
+     * @return 送达的连接数，0 表示用户不在本节点
+     */
+    public int sendEvent(String key, String event, Object data) {
+        int delivered = 0;
+        for (SocketIOClient client : getClients(key)) {
+            client.sendEvent(event, data);
+            delivered++;
+        }
+        sends.increment();
+        if (delivered > 0) {
+            deliveries.add(delivered);
+        } else {
+            misses.increment();
+        }
+        return delivered;
+    }
+
+    /**
+     * 用户在本节点上的连接数
+     */
+    public int count(String key) {
+        Map<String, SocketIOClient> userClients = key != null ? clients.get(key) : null;
+        return userClients != null ? userClients.size() : 0;
+    }
+
+    /**
+     * 本节点上的连接总数
+     */
+    public int size() {
+        return connections.get();
+    }
+
+    /**
+     * 本节点上有连接的用户数
+     */
+    public int users() {
+        return clients.size();
+    }
+
+    public long getSends() {
+        return sends.sum();
+    }
+
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -17,18 +17,16 @@
 package com.chatopera.cc.app.im.client;
 
 import com.chatopera.cc.app.basic.MainContext;
-import com.chatopera.cc.app.basic.MainUtils;
-import com.chatopera.cc.app.im.util.IMServiceUtils;
 import com.chatopera.cc.app.schedule.WebIMAgentDispatcher;
 import com.chatopera.cc.app.schedule.WebIMOnlineUserDispatcher;
 import com.corundumstudio.socketio.SocketIOClient;
-import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 public class NettyClients {
@@ -51,6 +49,13 @@ public class NettyClients {
         return clients;
     }
 
+    /**
+     * 用户所在节点目录，跨节点消息据此定向发布
+     */
+    private IMPresenceDirectory getPresence() {
+        return MainContext.getContext().getBean(IMPresenceDirectory.class);
+    }
+
     public NettyCallCenterClient getCallCenterClients() {
         return this.callCenterClients;
     }
@@ -64,30 +69,26 @@ public class NettyClients {
 
     public void putIMEventClient(String id, SocketIOClient userClient) {
         imClients.putClient(id, userClient);
+        getPresence().online(IMPresenceDirectory.ONLINE_USER, id);
     }
 
     public void closeIMEventClient(String id, String sessionid, String orgi) {
-        List<SocketIOClient> userClients = imClients.getClients(id);
-        for (SocketIOClient userClient : userClients) {
-            if (MainUtils.getContextID(userClient.getSessionId().toString()).equals(sessionid)) {
-                userClient.disconnect();
-            }
+        SocketIOClient userClient = imClients.getClient(id, sessionid);
+        if (userClient != null) {
+            userClient.disconnect();
         }
     }
 
     public void removeIMEventClient(String id, String sessionid) {
         imClients.removeClient(id, sessionid);
+        getPresence().offline(IMPresenceDirectory.ONLINE_USER, id, () -> imClients.count(id));
     }
 
     public void publishIMEventMessage(final String id, final String event, Serializable data) {
         // 检测client是否在这台机器上
         if (!sendIMEventMessage(id, event, data)) {
             try {
-                JsonObject payload = new JsonObject();
-                payload.addProperty("event", event);
-                payload.addProperty("id", id);
-                payload.addProperty("data", IMServiceUtils.serialize(data));
-                MainContext.getContext().getBean(WebIMOnlineUserDispatcher.class).publish(payload);
+                MainContext.getContext().getBean(WebIMOnlineUserDispatcher.class).publish(id, event, data);
             } catch (IOException e) {
                 logger.error("publishIMEventMessage", e);
             }
@@ -95,11 +96,11 @@ public class NettyClients {
     }
 
     public boolean sendIMEventMessage(final String id, final String event, Object data) {
-        List<SocketIOClient> userClients = imClients.getClients(id);
-        for (SocketIOClient userClient : userClients) {
-            userClient.sendEvent(event, data);
-        }
-        return userClients.size() > 0;
+        return imClients.sendEvent(id, event, data) > 0;
+    }
+
+    public int getIMClientsNum(String id) {
+        return imClients.count(id);
     }
 
     /**
@@ -111,10 +112,12 @@ public class NettyClients {
 
     public void putAgentEventClient(String id, SocketIOClient agentClient) {
         agentClients.putClient(id, agentClient);
+        getPresence().online(IMPresenceDirectory.AGENT, id);
     }
 
     public void removeAgentEventClient(String id, String sessionid) {
         agentClients.removeClient(id, sessionid);
+        getPresence().offline(IMPresenceDirectory.AGENT, id, () -> agentClients.count(id));
     }
 
     // publish to Redis
@@ -122,11 +125,7 @@ public class NettyClients {
         // 检测client是否在这台机器上
         if (!sendAgentEventMessage(id, event, data)) {
             try {
-                JsonObject payload = new JsonObject();
-                payload.addProperty("event", event);
-                payload.addProperty("id", id);
-                payload.addProperty("data", IMServiceUtils.serialize(data));
-                MainContext.getContext().getBean(WebIMAgentDispatcher.class).publish(payload);
+                MainContext.getContext().getBean(WebIMAgentDispatcher.class).publish(id, event, data);
             } catch (IOException e) {
                 logger.error("publishAgentEventMessage", e);
             }
@@ -135,12 +134,11 @@ public class NettyClients {
 
     // 向坐席发送消息
     public boolean sendAgentEventMessage(String id, String event, Object data) {
-        List<SocketIOClient> agents = agentClients.getClients(id);
-        for (SocketIOClient agentClient : agents) {
-            agentClient.sendEvent(event, data);
-        }
+        return agentClients.sendEvent(id, event, data) > 0;
+    }
 
-        return agents.size() > 0;
+    public int getAgentClientsNum(String id) {
+        return agentClients.count(id);
     }
 
     /**
@@ -159,21 +157,15 @@ public class NettyClients {
     }
 
     public void sendEntIMEventMessage(String id, String event, Object data) {
-        List<SocketIOClient> entims = entIMClients.getClients(id);
-        for (SocketIOClient userClient : entims) {
-            userClient.sendEvent(event, data);
-        }
+        entIMClients.sendEvent(id, event, data);
     }
 
     public int getEntIMClientsNum(String user) {
-        return entIMClients.getClients(user) != null ? entIMClients.getClients(user).size() : 0;
+        return entIMClients.count(user);
     }
 
     public void sendCallCenterMessage(String id, String event, Object data) {
-        List<SocketIOClient> ccClients = callCenterClients.getClients(id);
-        for (SocketIOClient ccClient : ccClients) {
-            ccClient.sendEvent(event, data);
-        }
+        callCenterClients.sendEvent(id, event, data);
     }
 
     /**
@@ -188,11 +180,8 @@ public class NettyClients {
     }
 
     public void sendCalloutEventMessage(String id, String event, Object data) {
-        List<SocketIOClient> _clients = calloutClients.getClients(id);
-        logger.info("sendCalloutEventMessage get clients size {}", _clients.size());
-        for (SocketIOClient c : _clients) {
-            c.sendEvent(event, data);
-        }
+        int delivered = calloutClients.sendEvent(id, event, data);
+        logger.info("sendCalloutEventMessage get clients size {}", delivered);
     }
 
 
@@ -208,11 +197,32 @@ public class NettyClients {
     }
 
     public void sendChatbotEventMessage(String id, String event, Object data) {
-        List<SocketIOClient> _clients = chatbotClients.getClients(id);
-        logger.info("sendChatbotEventMessage get clients size {}", _clients.size());
-        for (SocketIOClient c : _clients) {
-            c.sendEvent(event, data);
-        }
+        int delivered = chatbotClients.sendEvent(id, event, data);
+        logger.info("sendChatbotEventMessage get clients size {}", delivered);
+    }
+
+    /**
+     * 各命名空间的连接数和消息扇出统计
+     *
+     * @return
+     */
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<String, Number>();
+        metrics(metrics, "im", imClients);
+        metrics(metrics, "agent", agentClients);
+        metrics(metrics, "entim", entIMClients);
+        metrics(metrics, "callcenter", callCenterClients);
+        metrics(metrics, "callout", calloutClients);
+        metrics(metrics, "chatbot", chatbotClients);
+        return metrics;
+    }
+
+    private void metrics(Map<String, Number> metrics, String namespace, NettyClientRegistry registry) {
+        metrics.put("netty." + namespace + ".connections", registry.size());
+        metrics.put("netty." + namespace + ".users", registry.users());
+        metrics.put("netty." + namespace + ".sends", registry.getSends());
+        metrics.put("netty." + namespace + ".deliveries", registry.getDeliveries());
+        metrics.put("netty." + namespace + ".misses", registry.getMisses());
     }
 
 }
@@ -16,38 +16,6 @@
  */
 package com.chatopera.cc.app.im.client;
 
-import java.util.List;
-
-import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
-import com.chatopera.cc.app.basic.MainUtils;
-
-public class NettyIMClient implements NettyClient{
-	
-	private ArrayListMultimap<String, SocketIOClient> imClientsMap = ArrayListMultimap.create();
-	
-	public int size(){
-		return imClientsMap.size() ;
-	}
-	
-	public List<SocketIOClient> getClients(String key){
-		return imClientsMap.get(key) ;
-	}
-	
-	public void putClient(String key , SocketIOClient client){
-		imClientsMap.put(key, client) ;
-	}
+public class NettyIMClient extends NettyClientRegistry{
 	
-	public void removeClient(String key , String id){
-		List<SocketIOClient> keyClients = this.getClients(key) ;
-		for(SocketIOClient client : keyClients){
-			if(MainUtils.getContextID(client.getSessionId().toString()).equals(id)){
-				keyClients.remove(client) ;
-				break ;
-			}
-		}
-		if(keyClients.size() == 0){
-			imClientsMap.removeAll(key) ;
-		}
-	}
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.im.codec;
+
+import com.chatopera.cc.app.im.message.ChatMessage;
+import com.chatopera.cc.app.im.message.OtherMessageItem;
+import com.chatopera.cc.app.model.AgentUser;
+import com.chatopera.cc.app.model.MessageOutContent;
+import com.chatopera.cc.app.model.SNSAccount;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 按固定字段顺序编码 ChatMessage 和 MessageOutContent，其他类型回退到 Java 序列化。
+ * <p>
+ * 第一个字节为类型标记，字段顺序即格式定义，增删字段时需要同时升级所有节点。
+ */
+public class BinaryPayloadCodec implements IMPayloadCodec {
+
+    private final static byte TYPE_JAVA = 0;
+    private final static byte TYPE_CHAT_MESSAGE = 1;
+    private final static byte TYPE_MESSAGE_OUT_CONTENT = 2;
+
+    private final JavaPayloadCodec fallback = new JavaPayloadCodec();
+
+    @Override
+    public byte[] encode(Serializable data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(baos);
+        if (data != null && data.getClass() == ChatMessage.class) {
+            out.writeByte(TYPE_CHAT_MESSAGE);
+            writeChatMessage(out, (ChatMessage) data);
+        } else if (data != null && data.getClass() == MessageOutContent.class) {
+            out.writeByte(TYPE_MESSAGE_OUT_CONTENT);
+            writeMessageOutContent(out, (MessageOutContent) data);
+        } else {
+            out.writeByte(TYPE_JAVA);
+            out.write(fallback.encode(data));
+        }
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED) {
+            // 未升级节点发出的 Java 序列化数据
+            return fallback.decode(bytes);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+        switch (bytes[0]) {
+            case TYPE_CHAT_MESSAGE:
+                return readChatMessage(in);
+            case TYPE_MESSAGE_OUT_CONTENT:
+                return readMessageOutContent(in);
+            case TYPE_JAVA:
+                byte[] payload = new byte[bytes.length - 1];
+                System.arraycopy(bytes, 1, payload, 0, payload.length);
+                return fallback.decode(payload);
+            default:
+                throw new IOException("Unknown payload type " + bytes[0]);
+        }
+    }
+
+    private static void writeChatMessage(DataOutputStream out, ChatMessage m) throws IOException {
+        writeString(out, m.getId());
+        writeString(out, m.getAppid());
+        writeString(out, m.getUserid());
+        writeString(out, m.getUsername());
+        writeString(out, m.getAiid());
+        writeString(out, m.getTouser());
+        writeString(out, m.getTousername());
+        writeString(out, m.getMsgtype());
+        writeString(out, m.getCreater());
+        writeString(out, m.getUsession());
+        writeString(out, m.getAgentserviceid());
+        writeString(out, m.getSessionid());
+        writeString(out, m.getTopicid());
+        writeString(out, m.getTopicatid());
+        writeString(out, m.getMessage());
+        writeString(out, m.getExpmsg());
+        writeString(out, m.getOrgi());
+        writeString(out, m.getChannel());
+        writeString(out, m.getModel());
+        writeString(out, m.getChatype());
+        writeString(out, m.getBatid());
+        writeString(out, m.getHeadimgurl());
+        writeString(out, m.getFilename());
+        writeString(out, m.getAttachmentid());
+        writeString(out, m.getMediaid());
+        writeString(out, m.getLocx());
+        writeString(out, m.getLocy());
+        writeString(out, m.getScale());
+        writeString(out, m.getSuggestmsg());
+        writeString(out, m.getAgentuser());
+        writeString(out, m.getType());
+        writeString(out, m.getContextid());
+        writeString(out, m.getCalltype());
+        writeString(out, m.getCreatetime());
+        writeDate(out, m.getLastagentmsgtime());
+        writeDate(out, m.getLastmsgtime());
+        writeVarint(out, m.getAgentreplytime());
+        writeVarint(out, m.getAgentreplyinterval());
+        writeVarint(out, m.getFilesize());
+        writeVarint(out, m.getDuration());
+        writeVarint(out, m.getTokenum());
+        out.writeLong(m.getUpdatetime());
+        out.writeByte((m.isCooperation() ? 1 : 0) | (m.isTopic() ? 2 : 0) | (m.isAichat() ? 4 : 0) | (m.isDatastatus() ? 8 : 0));
+    }
+
+    private static ChatMessage readChatMessage(DataInputStream in) throws IOException {
+        ChatMessage m = new ChatMessage();
+        m.setId(readString(in));
+        m.setAppid(readString(in));
+        m.setUserid(readString(in));
+        m.setUsername(readString(in));
+        m.setAiid(readString(in));
+        m.setTouser(readString(in));
+        m.setTousername(readString(in));
+        m.setMsgtype(readString(in));
+        m.setCreater(readString(in));
+        m.setUsession(readString(in));
+        m.setAgentserviceid(readString(in));
+        m.setSessionid(readString(in));
+        m.setTopicid(readString(in));
+        m.setTopicatid(readString(in));
+        m.setMessage(readString(in));
+        m.setExpmsg(readString(in));
+        m.setOrgi(readString(in));
+        m.setChannel(readString(in));
+        m.setModel(readString(in));
+        m.setChatype(readString(in));
+        m.setBatid(readString(in));
+        m.setHeadimgurl(readString(in));
+        m.setFilename(readString(in));
+        m.setAttachmentid(readString(in));
+        m.setMediaid(readString(in));
+        m.setLocx(readString(in));
+        m.setLocy(readString(in));
+        m.setScale(readString(in));
+        m.setSuggestmsg(readString(in));
+        m.setAgentuser(readString(in));
+        m.setType(readString(in));
+        m.setContextid(readString(in));
+        m.setCalltype(readString(in));
+        m.setCreatetime(readString(in));
+        m.setLastagentmsgtime(readDate(in));
+        m.setLastmsgtime(readDate(in));
+        m.setAgentreplytime(readVarint(in));
+        m.setAgentreplyinterval(readVarint(in));
+        m.setFilesize(readVarint(in));
+        m.setDuration(readVarint(in));
+        m.setTokenum(readVarint(in));
+        m.setUpdatetime(in.readLong());
+        int flags = in.readByte();
+        m.setCooperation((flags & 1) != 0);
+        m.setTopic((flags & 2) != 0);
+        m.setAichat((flags & 4) != 0);
+        m.setDatastatus((flags & 8) != 0);
+        return m;
+    }
+
+    private void writeMessageOutContent(DataOutputStream out, MessageOutContent m) throws IOException {
+        writeString(out, m.getId());
+        writeString(out, m.getNickName());
+        writeString(out, m.getOrgi());
+        writeString(out, m.getMessage());
+        writeString(out, m.getFilename());
+        writeString(out, m.getMessageType());
+        writeString(out, m.getFromUser());
+        writeString(out, m.getCalltype());
+        writeString(out, m.getToUser());
+        writeString(out, m.getAgentserviceid());
+        writeString(out, m.getAttachmentid());
+        writeString(out, m.getContextid());
+        writeString(out, m.getCreatetime());
+        writeVarint(out, m.getFilesize());
+        out.writeBoolean(m.isNoagent());
+        List<OtherMessageItem> suggest = m.getSuggest();
+        if (suggest == null) {
+            writeVarint(out, 0);
+        } else {
+            writeVarint(out, suggest.size() + 1);
+            for (OtherMessageItem item : suggest) {
+                writeString(out, item.getId());
+                writeString(out, item.getMsgtype());
+                writeString(out, item.getTitle());
+                writeString(out, item.getContent());
+            }
+        }
+        // 关联对象出现较少，仍使用 Java 序列化
+        writeObject(out, m.getSnsAccount());
+        writeObject(out, m.getAgentUser());
+        writeObject(out, m.getChannelMessage());
+        writeObject(out, m.getUser());
+    }
+
+    private MessageOutContent readMessageOutContent(DataInputStream in) throws IOException, ClassNotFoundException {
+        MessageOutContent m = new MessageOutContent();
+        m.setId(readString(in));
+        m.setNickName(readString(in));
+        m.setOrgi(readString(in));
+        m.setMessage(readString(in));
+        m.setFilename(readString(in));
+        m.setMessageType(readString(in));
+        m.setFromUser(readString(in));
+        m.setCalltype(readString(in));
+        m.setToUser(readString(in));
+        m.setAgentserviceid(readString(in));
+        m.setAttachmentid(readString(in));
+        m.setContextid(readString(in));
+        m.setCreatetime(readString(in));
+        m.setFilesize(readVarint(in));
+        m.setNoagent(in.readBoolean());
+        int suggestSize = readVarint(in);
+        if (suggestSize > 0) {
+            List<OtherMessageItem> suggest = new ArrayList<OtherMessageItem>(suggestSize - 1);
+            for (int i = 1; i < suggestSize; i++) {
+                OtherMessageItem item = new OtherMessageItem();
+                item.setId(readString(in));
+                item.setMsgtype(readString(in));
+                item.setTitle(readString(in));
+                item.setContent(readString(in));
+                suggest.add(item);
+            }
+            m.setSuggest(suggest);
+        }
+        m.setSnsAccount((SNSAccount) readObject(in));
+        m.setAgentUser((AgentUser) readObject(in));
+        m.setChannelMessage(readObject(in));
+        m.setUser(readObject(in));
+        return m;
+    }
+
+    private void writeObject(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+        } else {
+            if (!(value instanceof Serializable)) {
+                throw new NotSerializableException(value.getClass().getName());
+            }
+            byte[] bytes = fallback.encode((Serializable) value);
+            writeVarint(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    private Object readObject(DataInputStream in) throws IOException, ClassNotFoundException {
+        int length = readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return fallback.decode(bytes);
+    }
+
+    /**
+     * 字符串：长度+1 的变长整数（0 表示 null），随后是 UTF-8 字节
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getTime());
+        }
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
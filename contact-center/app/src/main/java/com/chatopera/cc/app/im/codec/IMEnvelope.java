@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.im.codec;
+
+import java.io.*;
+
+/**
+ * 跨节点 IM 消息信封，通过 Redis 频道直接以 byte[] 发布，不再经过 JSON 和 Base64
+ * <p>
+ * 格式：魔数(1字节) 发送节点 发送序号 接收者ID 事件 消息体长度 消息体
+ * <p>
+ * 发送节点和序号组成消息 ID，同一条消息被转发广播时 ID 不变，接收方据此去重。
+ */
+public class IMEnvelope {
+
+    /**
+     * 旧格式为 JSON，以 '{' 开头，以魔数区分；0xC5 为没有发送序号的格式，不再解析
+     */
+    private final static byte MAGIC = (byte) 0xC6;
+
+    private final String node;
+    private final long seq;
+    private final String id;
+    private final String event;
+    private final byte[] data;
+
+    public IMEnvelope(String node, long seq, String id, String event, byte[] data) {
+        this.node = node;
+        this.seq = seq;
+        this.id = id;
+        this.event = event;
+        this.data = data;
+    }
+
+    public static boolean isEnvelope(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length + 64);
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeByte(MAGIC);
+        out.writeUTF(node != null ? node : "");
+        out.writeLong(seq);
+        out.writeUTF(id);
+        out.writeUTF(event);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    public static IMEnvelope fromBytes(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readByte() != MAGIC) {
+            throw new IOException("Not an IM envelope");
+        }
+        String node = in.readUTF();
+        long seq = in.readLong();
+        String id = in.readUTF();
+        String event = in.readUTF();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new IMEnvelope(node, seq, id, event, data);
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * 消息 ID，在集群内唯一
+     */
+    public String getMessageId() {
+        return node + "/" + seq;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
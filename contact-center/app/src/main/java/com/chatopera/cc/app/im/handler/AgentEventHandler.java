@@ -25,6 +25,7 @@ import com.chatopera.cc.app.im.message.AgentServiceMessage;
 import com.chatopera.cc.app.im.message.AgentStatusMessage;
 import com.chatopera.cc.app.im.message.ChatMessage;
 import com.chatopera.cc.app.im.router.OutMessageRouter;
+import com.chatopera.cc.app.im.util.ChatMessagePersister;
 import com.chatopera.cc.app.model.*;
 import com.chatopera.cc.app.persistence.repository.*;
 import com.corundumstudio.socketio.AckRequest;
@@ -204,6 +205,7 @@ public class AgentEventHandler {
 //	    		agentUserTask.setReptimes("0");
 
                 agentUserTaskRes.save(agentUserTask);
+                MainContext.getContext().getBean(ChatMessagePersister.class).evict(agentUserTask.getId());
             }
 
             /**
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.im.util;
+
+import com.chatopera.cc.app.im.message.ChatMessage;
+import com.chatopera.cc.app.model.AgentUserTask;
+import com.chatopera.cc.app.persistence.repository.AgentUserTaskRepository;
+import com.chatopera.cc.app.persistence.repository.ChatMessageRepository;
+import com.chatopera.cc.app.schedule.SessionTimeoutWheel;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 访客消息的持久化
+ * <p>
+ * sync 模式下和原来一样，在发送消息前同步更新 AgentUserTask 并保存 ChatMessage；
+ * async 模式下先在内存中计算消息的统计字段，消息发送后由单个后台线程按批次写入数据库：
+ * 同一批中的 AgentUserTask 一次查询、合并更新，ChatMessage 批量插入。
+ * <p>
+ * 队列有界，队列满时调用线程阻塞等待（背压）；单线程按入队顺序写入，同一会话的消息保持有序。
+ * 停机时写完队列中剩余的消息。批量写入失败时逐条重试，只丢弃单独写入仍失败的消息。
+ * <p>
+ * 会话统计视图在每个节点上各自缓存，被其它地方修改后通过集群 Topic 通知所有节点移除。
+ */
+@Component
+public class ChatMessagePersister {
+    private final static Logger logger = LoggerFactory.getLogger(ChatMessagePersister.class);
+
+    /**
+     * 会话统计视图闲置超过该时间后移除
+     */
+    private final static long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final static String EVICTIONS = "chat_message_persister_evict";
+
+    @Value("${cskefu.im.persist.mode:async}")
+    private String mode;
+
+    @Value("${cskefu.im.persist.queue.capacity:10000}")
+    private int capacity;
+
+    @Value("${cskefu.im.persist.batch.size:200}")
+    private int batchSize;
+
+    @Value("${cskefu.im.persist.flush.interval:200}")
+    private long flushInterval;
+
+    @Autowired
+    private AgentUserTaskRepository agentUserTaskRes;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    /**
+     * 访客消息清除了超时提醒状态，需要按新的时间重新登记
+     */
+    @Autowired
+    private SessionTimeoutWheel sessionTimeoutWheel;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ITopic<String> evictions;
+
+    private BlockingQueue<ChatMessage> queue;
+
+    /**
+     * 会话(AgentUser ID) → 计算消息统计字段所需的 AgentUserTask 状态
+     */
+    private final ConcurrentMap<String, TaskView> views = new ConcurrentHashMap<String, TaskView>();
+
+    /**
+     * 会话(AgentUser ID) → 已入队还没有写入数据库的消息数量，统计视图被移除后重建时加上这些消息
+     */
+    private final ConcurrentMap<String, Integer> queued = new ConcurrentHashMap<String, Integer>();
+
+    private volatile boolean running;
+
+    private Thread worker;
+
+    private long lastSweep = System.currentTimeMillis();
+
+    @PostConstruct
+    private void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (isAsync()) {
+            evictions = hazelcastInstance.getTopic(EVICTIONS);
+            evictions.addMessageListener(message -> views.remove(message.getMessageObject()));
+            queue = new ArrayBlockingQueue<ChatMessage>(capacity);
+            running = true;
+            worker = new Thread(this::work, "chat-message-persister");
+            worker.setDaemon(true);
+            worker.start();
+            logger.info("[persist] chat message persister started, capacity {}, batch size {}", capacity, batchSize);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        if (worker != null) {
+            running = false;
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    public boolean isAsync() {
+        return !"sync".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 更新消息中的会话统计字段，并保存消息和 AgentUserTask
+     * <p>
+     * async 模式下只计算统计字段并入队，写入在后台完成
+     *
+     * @param data
+     * @throws InterruptedException 等待队列空间时被中断
+     */
+    public void persist(final ChatMessage data) throws InterruptedException {
+        if (!isAsync()) {
+            AgentUserTask agentUserTask = agentUserTaskRes.findOne(data.getAgentuser());
+            if (agentUserTask != null) {
+                stat(data, agentUserTask.getLastgetmessage(), agentUserTask.getLastmessage());
+                apply(agentUserTask, Collections.singletonList(data));
+                data.setTokenum(agentUserTask.getTokenum());
+                agentUserTaskRes.save(agentUserTask);
+                sessionTimeoutWheel.schedule(agentUserTask);
+            }
+            chatMessageRes.save(data);
+            return;
+        }
+
+        TaskView view = view(data.getAgentuser());
+        if (view != null) {
+            synchronized (view) {
+                stat(data, view.lastgetmessage, view.lastmessage);
+                view.lastmessage = new Date();
+                view.tokenum++;
+                view.touched = System.currentTimeMillis();
+                data.setTokenum(view.tokenum);
+                enqueued(data.getAgentuser(), 1);
+            }
+        } else {
+            enqueued(data.getAgentuser(), 1);
+        }
+        if (!queue.offer(data)) {
+            logger.warn("[persist] chat message queue is full, waiting");
+            queue.put(data);
+        }
+    }
+
+    /**
+     * 会话统计在其它地方被修改（坐席回复、已读）后，下一条消息重新从数据库读取，
+     * 会话的消息可能由任一节点接收，通知集群中所有节点
+     *
+     * @param agentUserId
+     */
+    public void evict(final String agentUserId) {
+        if (agentUserId != null) {
+            views.remove(agentUserId);
+            if (evictions != null) {
+                try {
+                    evictions.publish(agentUserId);
+                } catch (Exception e) {
+                    logger.warn("[persist] fail to publish eviction of {}", agentUserId, e);
+                }
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    private TaskView view(final String agentUserId) {
+        TaskView view = views.get(agentUserId);
+        if (view == null) {
+            AgentUserTask agentUserTask = agentUserTaskRes.findOne(agentUserId);
+            if (agentUserTask == null) {
+                return null;
+            }
+            view = new TaskView(agentUserTask);
+            // 移除前入队的消息还没有计入数据库
+            view.tokenum += getQueued(agentUserId);
+            TaskView exist = views.putIfAbsent(agentUserId, view);
+            if (exist != null) {
+                view = exist;
+            }
+        }
+        return view;
+    }
+
+    private void work() {
+        final List<ChatMessage> batch = new ArrayList<ChatMessage>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessage first = running ? queue.poll(flushInterval, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    write(batch);
+                    batch.clear();
+                }
+                sweep();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("[persist] chat message persister", e);
+                batch.clear();
+            }
+        }
+        logger.info("[persist] chat message persister stopped");
+    }
+
+    /**
+     * 批量写入，失败时逐条写入，每条消息一个事务
+     */
+    private void write(final List<ChatMessage> batch) {
+        try {
+            flush(batch);
+            return;
+        } catch (Exception e) {
+            logger.warn("[persist] fail to write {} chat messages, retry one by one", batch.size(), e);
+        }
+        for (ChatMessage data : batch) {
+            try {
+                flush(Collections.singletonList(data));
+            } catch (Exception e) {
+                logger.error("[persist] fail to write chat message {} of {}", data.getId(), data.getAgentuser(), e);
+                enqueued(data.getAgentuser(), -1);
+                views.remove(data.getAgentuser());
+            }
+        }
+    }
+
+    private void flush(final List<ChatMessage> batch) {
+        final Map<String, List<ChatMessage>> conversations = new LinkedHashMap<String, List<ChatMessage>>();
+        for (ChatMessage data : batch) {
+            List<ChatMessage> messages = conversations.get(data.getAgentuser());
+            if (messages == null) {
+                messages = new ArrayList<ChatMessage>();
+                conversations.put(data.getAgentuser(), messages);
+            }
+            messages.add(data);
+        }
+        final List<AgentUserTask> tasks = transactionTemplate.execute(status -> {
+            List<AgentUserTask> updated = agentUserTaskRes.findAll(conversations.keySet());
+            for (AgentUserTask agentUserTask : updated) {
+                apply(agentUserTask, conversations.get(agentUserTask.getId()));
+            }
+            for (ChatMessage data : batch) {
+                entityManager.persist(data);
+            }
+            return updated;
+        });
+        for (Map.Entry<String, List<ChatMessage>> conversation : conversations.entrySet()) {
+            TaskView view = views.get(conversation.getKey());
+            if (view != null) {
+                synchronized (view) {
+                    enqueued(conversation.getKey(), -conversation.getValue().size());
+                }
+            } else {
+                enqueued(conversation.getKey(), -conversation.getValue().size());
+            }
+        }
+        for (AgentUserTask agentUserTask : tasks) {
+            sessionTimeoutWheel.schedule(agentUserTask);
+            TaskView view = views.get(agentUserTask.getId());
+            if (view != null) {
+                synchronized (view) {
+                    if (getQueued(agentUserTask.getId()) <= 0) {
+                        // 没有未写入的消息时以数据库为准
+                        view.reset(agentUserTask);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 修改会话已入队未写入的消息数量，减到 0 时移除
+     */
+    private void enqueued(final String agentUserId, final int delta) {
+        if (agentUserId != null) {
+            queued.compute(agentUserId, (key, count) -> {
+                int value = (count != null ? count : 0) + delta;
+                return value > 0 ? value : null;
+            });
+        }
+    }
+
+    private int getQueued(final String agentUserId) {
+        Integer count = queued.get(agentUserId);
+        return count != null ? count : 0;
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < IDLE_MILLIS) {
+            return;
+        }
+        lastSweep = now;
+        for (Map.Entry<String, TaskView> entry : views.entrySet()) {
+            TaskView view = entry.getValue();
+            synchronized (view) {
+                if (getQueued(entry.getKey()) <= 0 && now - view.touched > IDLE_MILLIS) {
+                    views.remove(entry.getKey(), view);
+                }
+            }
+        }
+    }
+
+    /**
+     * 坐席上次回复消息的间隔、坐席回复消息花费时间
+     */
+    private static void stat(final ChatMessage data, final Date lastgetmessage, final Date lastmessage) {
+        if (lastgetmessage != null && lastmessage != null) {
+            data.setLastagentmsgtime(lastgetmessage);
+            data.setLastmsgtime(lastmessage);
+            data.setAgentreplyinterval((int) ((System.currentTimeMillis() - lastgetmessage.getTime()) / 1000));    //坐席上次回复消息的间隔
+            data.setAgentreplytime((int) ((System.currentTimeMillis() - lastmessage.getTime()) / 1000));        //坐席回复消息花费时间
+        }
+    }
+
+    /**
+     * 按顺序将会话中新的访客消息合并到 AgentUserTask
+     */
+    private static void apply(final AgentUserTask agentUserTask, final List<ChatMessage> messages) {
+        for (ChatMessage data : messages) {
+            agentUserTask.setUserasks(agentUserTask.getUserasks() + 1);    //总咨询记录数量
+            agentUserTask.setAgentreplytime(agentUserTask.getAgentreplytime() + data.getAgentreplyinterval());    //总时长
+            agentUserTask.setTokenum(agentUserTask.getTokenum() + 1);
+            if (data.getMessage() != null) {
+                agentUserTask.setLastmsg(data.getMessage().length() > 100 ? data.getMessage().substring(0, 100) : data.getMessage());
+            }
+        }
+        if (agentUserTask.getUserasks() > 0) {
+            agentUserTask.setAvgreplytime(agentUserTask.getAgentreplytime() / agentUserTask.getUserasks());
+        }
+
+        agentUserTask.setLastmessage(new Date());
+        agentUserTask.setWarnings("0");
+        agentUserTask.setWarningtime(null);
+
+        /**
+         * 去掉坐席超时回复消息提醒
+         */
+        agentUserTask.setReptime(null);
+        agentUserTask.setReptimes("0");
+    }
+
+    private static class TaskView {
+        private Date lastgetmessage;
+        private Date lastmessage;
+        private int tokenum;
+        private long touched = System.currentTimeMillis();
+
+        private TaskView(AgentUserTask agentUserTask) {
+            reset(agentUserTask);
+        }
+
+        private void reset(AgentUserTask agentUserTask) {
+            lastgetmessage = agentUserTask.getLastgetmessage();
+            lastmessage = agentUserTask.getLastmessage();
+            tokenum = agentUserTask.getTokenum();
+        }
+    }
+}
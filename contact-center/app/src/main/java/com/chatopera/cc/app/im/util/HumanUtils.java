@@ -20,17 +20,12 @@ import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.im.client.NettyClients;
 import com.chatopera.cc.app.im.message.ChatMessage;
 import com.chatopera.cc.app.model.AgentUser;
-import com.chatopera.cc.app.model.AgentUserTask;
 import com.chatopera.cc.app.model.MessageOutContent;
 import com.chatopera.cc.app.cache.CacheHelper;
-import com.chatopera.cc.app.persistence.repository.AgentUserTaskRepository;
-import com.chatopera.cc.app.persistence.repository.ChatMessageRepository;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-
 public class HumanUtils {
     private final static Logger logger = LoggerFactory.getLogger(HumanUtils.class);
 
@@ -96,44 +91,16 @@ public class HumanUtils {
             outMessage.setNickName(agentUser.getUsername());
             outMessage.setCreatetime(data.getCreatetime());
 
-            if (data.getType() != null && data.getType().equals(MainContext.MessageTypeEnum.MESSAGE.toString())) {
-                AgentUserTaskRepository agentUserTaskRes = MainContext.getContext().getBean(AgentUserTaskRepository.class);
-                AgentUserTask agentUserTask = agentUserTaskRes.getOne(agentUser.getId());
-                if (agentUserTask != null) {
-                    if (agentUserTask.getLastgetmessage() != null && agentUserTask.getLastmessage() != null) {
-                        data.setLastagentmsgtime(agentUserTask.getLastgetmessage());
-                        data.setLastmsgtime(agentUserTask.getLastmessage());
-                        data.setAgentreplyinterval((int) ((System.currentTimeMillis() - agentUserTask.getLastgetmessage().getTime()) / 1000));    //坐席上次回复消息的间隔
-                        data.setAgentreplytime((int) ((System.currentTimeMillis() - agentUserTask.getLastmessage().getTime()) / 1000));        //坐席回复消息花费时间
-                    }
-                    agentUserTask.setUserasks(agentUserTask.getUserasks() + 1);    //总咨询记录数量
-                    agentUserTask.setAgentreplytime(agentUserTask.getAgentreplytime() + data.getAgentreplyinterval());    //总时长
-                    if (agentUserTask.getUserasks() > 0) {
-                        agentUserTask.setAvgreplytime(agentUserTask.getAgentreplytime() / agentUserTask.getUserasks());
-                    }
-
-                    agentUserTask.setLastmessage(new Date());
-                    agentUserTask.setWarnings("0");
-                    agentUserTask.setWarningtime(null);
-
-                    /**
-                     * 去掉坐席超时回复消息提醒
-                     */
-                    agentUserTask.setReptime(null);
-                    agentUserTask.setReptimes("0");
-
-                    agentUserTask.setLastmsg(data.getMessage().length() > 100 ? data.getMessage().substring(0, 100) : data.getMessage());
-                    agentUserTask.setTokenum(agentUserTask.getTokenum() + 1);
-                    data.setTokenum(agentUserTask.getTokenum());
-                    agentUserTaskRes.save(agentUserTask);
-                }
-            }
-
             /**
-             * 保存消息
+             * 保存消息，更新会话统计；async 模式下写入在后台完成
              */
             if (MainContext.MessageTypeEnum.MESSAGE.toString().equals(data.getType())) {
-                MainContext.getContext().getBean(ChatMessageRepository.class).save(data);
+                try {
+                    MainContext.getContext().getBean(ChatMessagePersister.class).persist(data);
+                } catch (InterruptedException e) {
+                    logger.error("createMessage", e);
+                    Thread.currentThread().interrupt();
+                }
             }
         }
         if (StringUtils.isNotBlank(data.getUserid()) && MainContext.MessageTypeEnum.MESSAGE.toString().equals(data.getType())) {
@@ -2,6 +2,8 @@ package com.chatopera.cc.app.im.util;
 
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.cache.CacheHelper;
+import com.chatopera.cc.app.im.codec.BinaryPayloadCodec;
+import com.chatopera.cc.app.im.codec.IMPayloadCodec;
 import com.chatopera.cc.app.model.AgentUser;
 import com.chatopera.cc.app.persistence.impl.AgentUserService;
 import org.apache.commons.lang.StringUtils;
@@ -9,11 +11,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.Base64;
 
 public class IMServiceUtils {
     private final static Logger logger = LoggerFactory.getLogger(IMServiceUtils.class);
 
+    private static IMPayloadCodec codec = new BinaryPayloadCodec();
+
+    public static void setCodec(IMPayloadCodec codec) {
+        IMServiceUtils.codec = codec;
+    }
+
+    public static IMPayloadCodec getCodec() {
+        return codec;
+    }
+
     public static void shiftOpsType(final String userId, final String orgi, final MainContext.OptTypeEnum opsType){
         AgentUser agentUser = (AgentUser) CacheHelper.getAgentUserCacheBean().getCacheObject(userId, orgi);
         AgentUserService service = MainContext.getContext().getBean(
@@ -41,28 +52,17 @@ public class IMServiceUtils {
     }
 
     /**
-     * Write the object to a Base64 string.
+     * Write the object with the configured codec.
      */
-    public static String serialize(Serializable o) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(o);
-        oos.close();
-        return Base64.getEncoder().encodeToString(baos.toByteArray());
+    public static byte[] encode(Serializable o) throws IOException {
+        return codec.encode(o);
     }
 
-
     /**
-     * Read the object from Base64 string.
+     * Read the object with the configured codec.
      */
-    public static Object deserialize(String s) throws IOException,
-            ClassNotFoundException {
-        byte[] data = Base64.getDecoder().decode(s);
-        ObjectInputStream ois = new ObjectInputStream(
-                new ByteArrayInputStream(data));
-        Object o = ois.readObject();
-        ois.close();
-        return o;
+    public static Object decode(byte[] data) throws IOException, ClassNotFoundException {
+        return codec.decode(data);
     }
 
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.im.util;
+
+import com.chatopera.cc.app.cache.hazelcast.CacheRegion;
+import com.chatopera.cc.app.cache.hazelcast.impl.OnlineCache;
+import com.chatopera.cc.app.model.AiUser;
+import com.chatopera.cc.app.model.CousultInvite;
+import com.chatopera.cc.app.model.OnlineUser;
+import com.chatopera.cc.app.persistence.repository.ConsultInviteRepository;
+import com.chatopera.cc.app.persistence.repository.OnlineUserRepository;
+import com.chatopera.cc.util.OnlineUserUtils;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线访客的持久化
+ * <p>
+ * 在在线访客缓存上注册本地监听，只接收本节点拥有的分区中的写入事件，记录有变化的 key；
+ * 定时任务调用 {@link #flush()} 时按批次从缓存读取这些访客，同一批中按 userid 一次查询已有记录，
+ * 在一个事务中删除重复记录并保存。没有变化的访客不再读取，也不再访问数据库。
+ * <p>
+ * 分区迁移后，迁出前记录的 key 仍由原节点写入（从新的所属节点读取），之后的写入由新节点记录。
+ */
+@Component
+public class OnlineUserPersister {
+    private final static Logger logger = LoggerFactory.getLogger(OnlineUserPersister.class);
+
+    @Value("${cskefu.online.persist.batch.size:500}")
+    private int batchSize;
+
+    @Autowired
+    private OnlineCache onlineCache;
+
+    @Autowired
+    private OnlineUserRepository onlineUserRes;
+
+    @Autowired
+    private ConsultInviteRepository consultInviteRes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 上次写入后有变化的 key
+     */
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 需要检查空闲时间的机器人会话，写入时记录，移除后不再检查
+     */
+    private final Set<String> aiUsers = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    private void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        onlineCache.getRegion().getMap().addLocalEntryListener(new DirtyListener());
+    }
+
+    /**
+     * 将有变化的在线访客写入数据库
+     */
+    public void flush() {
+        final List<String> keys = new ArrayList<String>(batchSize);
+        Iterator<String> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            // 先移除再读取，读取之后的写入会重新标记，下次写入
+            keys.add(iterator.next());
+            iterator.remove();
+            if (keys.size() >= batchSize) {
+                persist(keys);
+                keys.clear();
+            }
+        }
+        if (keys.size() > 0) {
+            persist(keys);
+        }
+    }
+
+    /**
+     * 本节点记录的、仍在缓存中的机器人会话
+     *
+     * @return
+     */
+    public List<AiUser> getAiUsers() {
+        final List<AiUser> result = new ArrayList<AiUser>();
+        if (aiUsers.isEmpty()) {
+            return result;
+        }
+        Map<String, Object> values = onlineCache.getRegion().getAll(new HashSet<String>(aiUsers));
+        for (String key : aiUsers) {
+            Object value = values.get(key);
+            if (value instanceof AiUser) {
+                result.add((AiUser) value);
+            } else {
+                aiUsers.remove(key);
+            }
+        }
+        return result;
+    }
+
+    private void persist(final List<String> keys) {
+        final CacheRegion<String, Object> region = onlineCache.getRegion();
+        final List<OnlineUser> saves = new ArrayList<OnlineUser>();
+        // orgi → userid → 需要和已有记录合并的访客
+        final Map<String, Map<String, List<OnlineUser>>> merges = new HashMap<String, Map<String, List<OnlineUser>>>();
+        try {
+            for (Map.Entry<String, Object> entry : region.getAll(new HashSet<String>(keys)).entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof OnlineUser) {
+                    OnlineUser onlineUser = (OnlineUser) value;
+                    if (onlineUser.getAppid() == null || onlineUser.getUserid() == null) {
+                        saves.add(onlineUser);
+                        continue;
+                    }
+                    CousultInvite invite = OnlineUserUtils.cousult(onlineUser.getAppid(), onlineUser.getOrgi(), consultInviteRes);
+                    if (invite != null && invite.isTraceuser()) {
+                        continue;
+                    }
+                    Map<String, List<OnlineUser>> users = merges.computeIfAbsent(onlineUser.getOrgi(), orgi -> new HashMap<String, List<OnlineUser>>());
+                    users.computeIfAbsent(onlineUser.getUserid(), userid -> new ArrayList<OnlineUser>()).add(onlineUser);
+                } else if (value instanceof AiUser) {
+                    aiUsers.add(entry.getKey());
+                }
+            }
+            if (saves.isEmpty() && merges.isEmpty()) {
+                return;
+            }
+            transactionTemplate.execute(status -> {
+                final List<OnlineUser> deletes = new ArrayList<OnlineUser>();
+                for (Map.Entry<String, Map<String, List<OnlineUser>>> entry : merges.entrySet()) {
+                    Map<String, List<OnlineUser>> existed = new HashMap<String, List<OnlineUser>>();
+                    for (OnlineUser record : onlineUserRes.findByUseridInAndOrgi(entry.getValue().keySet(), entry.getKey())) {
+                        existed.computeIfAbsent(record.getUserid(), userid -> new ArrayList<OnlineUser>()).add(record);
+                    }
+                    for (Map.Entry<String, List<OnlineUser>> users : entry.getValue().entrySet()) {
+                        List<OnlineUser> records = existed.getOrDefault(users.getKey(), Collections.<OnlineUser>emptyList());
+                        for (OnlineUser onlineUser : users.getValue()) {
+                            if (records.size() > 1) {
+                                // 重复的记录只保留当前访客
+                                for (OnlineUser record : records) {
+                                    if (!record.getId().equals(onlineUser.getId())) {
+                                        deletes.add(record);
+                                    }
+                                }
+                            } else if (records.size() == 1) {
+                                onlineUser.setId(records.get(0).getId());
+                            }
+                            saves.add(onlineUser);
+                        }
+                    }
+                }
+                if (deletes.size() > 0) {
+                    onlineUserRes.delete(deletes);
+                }
+                onlineUserRes.save(saves);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("[online] fail to persist {} online users", keys.size(), e);
+        }
+    }
+
+    /**
+     * 只在拥有分区的节点上触发
+     */
+    private class DirtyListener implements EntryAddedListener<String, Object>, EntryUpdatedListener<String, Object>,
+            EntryRemovedListener<String, Object>, EntryEvictedListener<String, Object> {
+
+        @Override
+        public void entryAdded(EntryEvent<String, Object> event) {
+            dirty.add(event.getKey());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<String, Object> event) {
+            dirty.add(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, Object> event) {
+            dirty.remove(event.getKey());
+            aiUsers.remove(event.getKey());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<String, Object> event) {
+            dirty.remove(event.getKey());
+            aiUsers.remove(event.getKey());
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package com.chatopera.cc.app.model;
 
+import java.io.IOException;
 import java.util.Date;
 
 import javax.persistence.Column;
@@ -30,11 +31,17 @@ import org.apache.commons.lang3.StringUtils;
 import org.hibernate.annotations.GenericGenerator;
 
 import com.chatopera.cc.app.algorithm.AutomaticServiceDist;
+import com.chatopera.cc.app.cache.hazelcast.CachePortableFactory;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
 
 @Entity
 @Table(name = "uk_agentstatus")
 @org.hibernate.annotations.Proxy(lazy = false)
-public class AgentStatus implements java.io.Serializable ,  Comparable<AgentStatus>{
+public class AgentStatus implements java.io.Serializable ,  Comparable<AgentStatus>, Portable{
 	
 	/**
 	 * 
@@ -213,4 +220,70 @@ public class AgentStatus implements java.io.Serializable ,  Comparable<AgentStat
 	public void setWorkstatus(String workstatus) {
 		this.workstatus = workstatus;
 	}
+
+	@Transient
+	@Override
+	public int getFactoryId() {
+		return CachePortableFactory.FACTORY_ID;
+	}
+
+	@Transient
+	@Override
+	public int getClassId() {
+		return CachePortableFactory.AGENT_STATUS;
+	}
+
+	/**
+	 * ACD 查询条件中的 orgi、skill、busy、agentno 写为命名字段，Hazelcast 按字段读取属性、更新索引，
+	 * 不需要反序列化整个对象；时间写在原始数据区，放在命名字段之后
+	 */
+	@Override
+	public void writePortable(PortableWriter writer) throws IOException {
+		writer.writeUTF("id", id);
+		writer.writeUTF("agentno", agentno);
+		writer.writeUTF("status", status);
+		writer.writeUTF("orgi", orgi);
+		writer.writeUTF("agentserviceid", agentserviceid);
+		writer.writeInt("serusernum", serusernum);
+		writer.writeUTF("skill", skill);
+		writer.writeBoolean("busy", busy);
+		writer.writeUTF("skillname", skillname);
+		writer.writeInt("users", users);
+		writer.writeInt("maxusers", maxusers);
+		writer.writeInt("initmaxusers", initmaxusers);
+		writer.writeBoolean("pulluser", pulluser);
+		writer.writeUTF("username", username);
+		writer.writeUTF("name", name);
+		writer.writeUTF("workstatus", workstatus);
+		writer.writeUTF("userid", userid);
+		ObjectDataOutput out = writer.getRawDataOutput();
+		out.writeObject(logindate);
+		out.writeObject(createtime);
+		out.writeObject(updatetime);
+	}
+
+	@Override
+	public void readPortable(PortableReader reader) throws IOException {
+		id = reader.readUTF("id");
+		agentno = reader.readUTF("agentno");
+		status = reader.readUTF("status");
+		orgi = reader.readUTF("orgi");
+		agentserviceid = reader.readUTF("agentserviceid");
+		serusernum = reader.readInt("serusernum");
+		skill = reader.readUTF("skill");
+		busy = reader.readBoolean("busy");
+		skillname = reader.readUTF("skillname");
+		users = reader.readInt("users");
+		maxusers = reader.readInt("maxusers");
+		initmaxusers = reader.readInt("initmaxusers");
+		pulluser = reader.readBoolean("pulluser");
+		username = reader.readUTF("username");
+		name = reader.readUTF("name");
+		workstatus = reader.readUTF("workstatus");
+		userid = reader.readUTF("userid");
+		ObjectDataInput in = reader.getRawDataInput();
+		logindate = in.readObject();
+		createtime = in.readObject();
+		updatetime = in.readObject();
+	}
 }
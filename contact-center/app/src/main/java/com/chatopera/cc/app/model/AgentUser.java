@@ -17,18 +17,25 @@
 package com.chatopera.cc.app.model;
 
 import com.chatopera.cc.app.basic.MainUtils;
+import com.chatopera.cc.app.cache.hazelcast.CachePortableFactory;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
 import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Proxy;
 
 import javax.persistence.*;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
 
 @Entity
 @Table(name = "uk_agentuser")
 @Proxy(lazy = false)
-public class AgentUser implements Serializable, Comparable<AgentUser> {
+public class AgentUser implements Serializable, Comparable<AgentUser>, Portable {
     private static final long serialVersionUID = -8657469468192323550L;
     private String id;
     private String username;
@@ -614,4 +621,146 @@ public class AgentUser implements Serializable, Comparable<AgentUser> {
         }
         return ret;
     }
+
+    @Transient
+    @Override
+    public int getFactoryId() {
+        return CachePortableFactory.FACTORY_ID;
+    }
+
+    @Transient
+    @Override
+    public int getClassId() {
+        return CachePortableFactory.AGENT_USER;
+    }
+
+    /**
+     * 和原来 Java 序列化保存的内容一致，包括不持久化的提示、在线状态；
+     * 时间写在原始数据区，读写顺序都在命名字段之后
+     */
+    @Override
+    public void writePortable(PortableWriter writer) throws IOException {
+        writer.writeUTF("id", id);
+        writer.writeUTF("username", username);
+        writer.writeUTF("agentno", agentno);
+        writer.writeUTF("userid", userid);
+        writer.writeUTF("channel", channel);
+        writer.writeUTF("source", source);
+        writer.writeUTF("title", title);
+        writer.writeUTF("url", url);
+        writer.writeUTF("traceid", traceid);
+        writer.writeUTF("owner", owner);
+        writer.writeUTF("ipaddr", ipaddr);
+        writer.writeUTF("osname", osname);
+        writer.writeUTF("browser", browser);
+        writer.writeUTF("nickname", nickname);
+        writer.writeUTF("city", city);
+        writer.writeUTF("sessionid", sessionid);
+        writer.writeUTF("province", province);
+        writer.writeUTF("country", country);
+        writer.writeUTF("headimgurl", headimgurl);
+        writer.writeUTF("region", region);
+        writer.writeLong("sessiontimes", sessiontimes);
+        writer.writeInt("waittingtime", waittingtime);
+        writer.writeInt("tokenum", tokenum);
+        writer.writeUTF("status", status);
+        writer.writeUTF("appid", appid);
+        writer.writeUTF("sessiontype", sessiontype);
+        writer.writeUTF("contextid", contextid);
+        writer.writeUTF("agentserviceid", agentserviceid);
+        writer.writeUTF("orgi", orgi);
+        writer.writeLong("ordertime", ordertime);
+        writer.writeUTF("snsuser", snsuser);
+        writer.writeUTF("lastmsg", lastmsg);
+        writer.writeUTF("opttype", opttype);
+        writer.writeUTF("skill", skill);
+        writer.writeUTF("agent", agent);
+        writer.writeUTF("skillname", skillname);
+        writer.writeUTF("name", name);
+        writer.writeUTF("email", email);
+        writer.writeUTF("phone", phone);
+        writer.writeUTF("resion", resion);
+        writer.writeBoolean("chatbotops", chatbotops);
+        writer.writeInt("chatbotlogicerror", chatbotlogicerror);
+        writer.writeInt("chatbotround", chatbotround);
+        writer.writeBoolean("tip", tip);
+        writer.writeBoolean("agentTip", agentTip);
+        writer.writeBoolean("fromhis", fromhis);
+        writer.writeBoolean("online", online);
+        writer.writeBoolean("disconnect", disconnect);
+        writer.writeUTF("agentskill", agentskill);
+        writer.writeUTF("agentservice", agentservice);
+        ObjectDataOutput out = writer.getRawDataOutput();
+        out.writeObject(logindate);
+        out.writeObject(endtime);
+        out.writeObject(createtime);
+        out.writeObject(updatetime);
+        out.writeObject(lastmessage);
+        out.writeObject(servicetime);
+        out.writeObject(waittingtimestart);
+        out.writeObject(lastgetmessage);
+    }
+
+    @Override
+    public void readPortable(PortableReader reader) throws IOException {
+        id = reader.readUTF("id");
+        username = reader.readUTF("username");
+        agentno = reader.readUTF("agentno");
+        userid = reader.readUTF("userid");
+        channel = reader.readUTF("channel");
+        source = reader.readUTF("source");
+        title = reader.readUTF("title");
+        url = reader.readUTF("url");
+        traceid = reader.readUTF("traceid");
+        owner = reader.readUTF("owner");
+        ipaddr = reader.readUTF("ipaddr");
+        osname = reader.readUTF("osname");
+        browser = reader.readUTF("browser");
+        nickname = reader.readUTF("nickname");
+        city = reader.readUTF("city");
+        sessionid = reader.readUTF("sessionid");
+        province = reader.readUTF("province");
+        country = reader.readUTF("country");
+        headimgurl = reader.readUTF("headimgurl");
+        region = reader.readUTF("region");
+        sessiontimes = reader.readLong("sessiontimes");
+        waittingtime = reader.readInt("waittingtime");
+        tokenum = reader.readInt("tokenum");
+        status = reader.readUTF("status");
+        appid = reader.readUTF("appid");
+        sessiontype = reader.readUTF("sessiontype");
+        contextid = reader.readUTF("contextid");
+        agentserviceid = reader.readUTF("agentserviceid");
+        orgi = reader.readUTF("orgi");
+        ordertime = reader.readLong("ordertime");
+        snsuser = reader.readUTF("snsuser");
+        lastmsg = reader.readUTF("lastmsg");
+        opttype = reader.readUTF("opttype");
+        skill = reader.readUTF("skill");
+        agent = reader.readUTF("agent");
+        skillname = reader.readUTF("skillname");
+        name = reader.readUTF("name");
+        email = reader.readUTF("email");
+        phone = reader.readUTF("phone");
+        resion = reader.readUTF("resion");
+        chatbotops = reader.readBoolean("chatbotops");
+        chatbotlogicerror = reader.readInt("chatbotlogicerror");
+        chatbotround = reader.readInt("chatbotround");
+        tip = reader.readBoolean("tip");
+        agentTip = reader.readBoolean("agentTip");
+        fromhis = reader.readBoolean("fromhis");
+        online = reader.readBoolean("online");
+        disconnect = reader.readBoolean("disconnect");
+        agentskill = reader.readUTF("agentskill");
+        agentservice = reader.readUTF("agentservice");
+        ObjectDataInput in = reader.getRawDataInput();
+        logindate = in.readObject();
+        endtime = in.readObject();
+        createtime = in.readObject();
+        updatetime = in.readObject();
+        lastmessage = in.readObject();
+        servicetime = in.readObject();
+        waittingtimestart = in.readObject();
+        lastgetmessage = in.readObject();
+    }
 }
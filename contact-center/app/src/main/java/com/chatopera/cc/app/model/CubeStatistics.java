@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 报表模型的基数统计（数据表行数、字段不同值数量），主键是统计 SQL 的 MD5
+ */
+@Entity
+@Table(name = "uk_cube_statistics")
+@org.hibernate.annotations.Proxy(lazy = false)
+public class CubeStatistics implements java.io.Serializable{
+	private static final long serialVersionUID = 1L;
+
+	public static final String KIND_TABLE = "table" ;
+	public static final String KIND_COLUMN = "column" ;
+	public static final String KIND_QUERY = "query" ;
+
+	private String id ;
+	private String kind ;
+	private String tablename ;
+	private String columnname ;
+	private String sqltext ;
+	private int cardinality = -1 ;
+	private long tablerows = -1 ;	//统计时数据表的估算行数，用于判断数据变化量
+	private long costtime ;
+	private Date updatetime ;
+
+	@Id
+	@Column(length = 32)
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public String getKind() {
+		return kind;
+	}
+	public void setKind(String kind) {
+		this.kind = kind;
+	}
+	public String getTablename() {
+		return tablename;
+	}
+	public void setTablename(String tablename) {
+		this.tablename = tablename;
+	}
+	public String getColumnname() {
+		return columnname;
+	}
+	public void setColumnname(String columnname) {
+		this.columnname = columnname;
+	}
+	public String getSqltext() {
+		return sqltext;
+	}
+	public void setSqltext(String sqltext) {
+		this.sqltext = sqltext;
+	}
+	public int getCardinality() {
+		return cardinality;
+	}
+	public void setCardinality(int cardinality) {
+		this.cardinality = cardinality;
+	}
+	public long getTablerows() {
+		return tablerows;
+	}
+	public void setTablerows(long tablerows) {
+		this.tablerows = tablerows;
+	}
+	public long getCosttime() {
+		return costtime;
+	}
+	public void setCosttime(long costtime) {
+		this.costtime = costtime;
+	}
+	public Date getUpdatetime() {
+		return updatetime;
+	}
+	public void setUpdatetime(Date updatetime) {
+		this.updatetime = updatetime;
+	}
+}
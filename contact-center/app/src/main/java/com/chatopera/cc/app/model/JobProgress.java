@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.model;
+
+/**
+ * 作业执行进度
+ * <p>
+ * 只包含进度相关的字段，执行过程中按节流频率写入集群缓存，代替整个 JobDetail
+ */
+public class JobProgress implements java.io.Serializable{
+	
+	private static final long serialVersionUID = 2936106117434285871L;
+	
+	private String jobid ;
+	private String orgi ;
+	private long pages ;		//已处理
+	private int errors ;		//错误
+	private double speed ;		//处理速度（条/秒，滑动平均）
+	private int threads ;
+	private long updatetime ;
+	
+	public JobProgress(){}
+	
+	public JobProgress(String jobid, String orgi, long pages, int errors, double speed, int threads, long updatetime){
+		this.jobid = jobid ;
+		this.orgi = orgi ;
+		this.pages = pages ;
+		this.errors = errors ;
+		this.speed = speed ;
+		this.threads = threads ;
+		this.updatetime = updatetime ;
+	}
+	
+	public String getJobid() {
+		return jobid;
+	}
+	public void setJobid(String jobid) {
+		this.jobid = jobid;
+	}
+	public String getOrgi() {
+		return orgi;
+	}
+	public void setOrgi(String orgi) {
+		this.orgi = orgi;
+	}
+	public long getPages() {
+		return pages;
+	}
+	public void setPages(long pages) {
+		this.pages = pages;
+	}
+	public int getErrors() {
+		return errors;
+	}
+	public void setErrors(int errors) {
+		this.errors = errors;
+	}
+	public double getSpeed() {
+		return speed;
+	}
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+	public int getThreads() {
+		return threads;
+	}
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	public long getUpdatetime() {
+		return updatetime;
+	}
+	public void setUpdatetime(long updatetime) {
+		this.updatetime = updatetime;
+	}
+}
@@ -17,6 +17,7 @@
 
 package com.chatopera.cc.app.model;
 
+import java.io.IOException;
 import java.util.Date;
 
 import javax.persistence.Column;
@@ -26,14 +27,20 @@ import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import com.chatopera.cc.app.cache.hazelcast.CachePortableFactory;
 import com.chatopera.cc.exchange.UserEvent;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Proxy;
 
 @Entity
 @Table(name = "uk_onlineuser")
 @Proxy(lazy = false)
-public class OnlineUser implements UserEvent {
+public class OnlineUser implements UserEvent, Portable {
 	/**
 	 * 
 	 */
@@ -469,4 +476,123 @@ public class OnlineUser implements UserEvent {
     public void setPhone(String phone) {
         this.phone = phone;
     }
+
+	@Transient
+	@Override
+	public int getFactoryId() {
+		return CachePortableFactory.FACTORY_ID;
+	}
+
+	@Transient
+	@Override
+	public int getClassId() {
+		return CachePortableFactory.ONLINE_USER;
+	}
+
+	/**
+	 * 关联的联系人仍使用默认序列化，和时间一起写在原始数据区
+	 */
+	@Override
+	public void writePortable(PortableWriter writer) throws IOException {
+		writer.writeUTF("creater", creater);
+		writer.writeUTF("datastatus", datastatus);
+		writer.writeUTF("id", id);
+		writer.writeUTF("impid", impid);
+		writer.writeUTF("appid", appid);
+		writer.writeUTF("ipcode", ipcode);
+		writer.writeUTF("orgi", orgi);
+		writer.writeUTF("channel", channel);
+		writer.writeUTF("owner", owner);
+		writer.writeUTF("processid", processid);
+		writer.writeUTF("shares", shares);
+		writer.writeUTF("updateuser", updateuser);
+		writer.writeUTF("username", username);
+		writer.writeUTF("wfstatus", wfstatus);
+		writer.writeUTF("resolution", resolution);
+		writer.writeUTF("opersystem", opersystem);
+		writer.writeUTF("browser", browser);
+		writer.writeUTF("status", status);
+		writer.writeUTF("userid", userid);
+		writer.writeUTF("sessionid", sessionid);
+		writer.writeUTF("usertype", usertype);
+		writer.writeUTF("optype", optype);
+		writer.writeUTF("mobile", mobile);
+		writer.writeUTF("olduser", olduser);
+		writer.writeUTF("ip", ip);
+		writer.writeUTF("hostname", hostname);
+		writer.writeUTF("country", country);
+		writer.writeUTF("region", region);
+		writer.writeUTF("city", city);
+		writer.writeUTF("isp", isp);
+		writer.writeUTF("province", province);
+		writer.writeInt("betweentime", betweentime);
+		writer.writeUTF("datestr", datestr);
+		writer.writeUTF("keyword", keyword);
+		writer.writeUTF("source", source);
+		writer.writeUTF("title", title);
+		writer.writeUTF("url", url);
+		writer.writeUTF("useragent", useragent);
+		writer.writeUTF("phone", phone);
+		writer.writeUTF("contactsid", contactsid);
+		writer.writeInt("invitetimes", invitetimes);
+		writer.writeUTF("invitestatus", invitestatus);
+		writer.writeInt("refusetimes", refusetimes);
+		ObjectDataOutput out = writer.getRawDataOutput();
+		out.writeObject(updatetime);
+		out.writeObject(logintime);
+		out.writeObject(createtime);
+		out.writeObject(contacts);
+	}
+
+	@Override
+	public void readPortable(PortableReader reader) throws IOException {
+		creater = reader.readUTF("creater");
+		datastatus = reader.readUTF("datastatus");
+		id = reader.readUTF("id");
+		impid = reader.readUTF("impid");
+		appid = reader.readUTF("appid");
+		ipcode = reader.readUTF("ipcode");
+		orgi = reader.readUTF("orgi");
+		channel = reader.readUTF("channel");
+		owner = reader.readUTF("owner");
+		processid = reader.readUTF("processid");
+		shares = reader.readUTF("shares");
+		updateuser = reader.readUTF("updateuser");
+		username = reader.readUTF("username");
+		wfstatus = reader.readUTF("wfstatus");
+		resolution = reader.readUTF("resolution");
+		opersystem = reader.readUTF("opersystem");
+		browser = reader.readUTF("browser");
+		status = reader.readUTF("status");
+		userid = reader.readUTF("userid");
+		sessionid = reader.readUTF("sessionid");
+		usertype = reader.readUTF("usertype");
+		optype = reader.readUTF("optype");
+		mobile = reader.readUTF("mobile");
+		olduser = reader.readUTF("olduser");
+		ip = reader.readUTF("ip");
+		hostname = reader.readUTF("hostname");
+		country = reader.readUTF("country");
+		region = reader.readUTF("region");
+		city = reader.readUTF("city");
+		isp = reader.readUTF("isp");
+		province = reader.readUTF("province");
+		betweentime = reader.readInt("betweentime");
+		datestr = reader.readUTF("datestr");
+		keyword = reader.readUTF("keyword");
+		source = reader.readUTF("source");
+		title = reader.readUTF("title");
+		url = reader.readUTF("url");
+		useragent = reader.readUTF("useragent");
+		phone = reader.readUTF("phone");
+		contactsid = reader.readUTF("contactsid");
+		invitetimes = reader.readInt("invitetimes");
+		invitestatus = reader.readUTF("invitestatus");
+		refusetimes = reader.readInt("refusetimes");
+		ObjectDataInput in = reader.getRawDataInput();
+		updatetime = in.readObject();
+		logintime = in.readObject();
+		createtime = in.readObject();
+		contacts = in.readObject();
+	}
 }
@@ -70,6 +70,7 @@ public class Reporter implements java.io.Serializable{
 	private boolean out ;
 	private long start = System.currentTimeMillis() ;
 	private AtomicInteger atompages = new AtomicInteger() ;
+	private double speed = -1 ;	//执行过程中的滑动平均速度，未设置时按总时长计算
 	
 	private String organ;
 	
@@ -178,10 +179,17 @@ public class Reporter implements java.io.Serializable{
 	 */
 	@Transient
 	public double getSpeed() {
+		if(speed >= 0){
+			return speed ;
+		}
 		long times = (this.endtime.getTime() - start ) / 1000;
 		return times!= 0 ? this.atompages.intValue() / times : this.atompages.intValue() ;
 	}
 	
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+	
 	/**
 	 * @return the bytespeed
 	 */
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.model;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 已挂机通话记录的汇总（按小时 / 天 × 租户 × 语音渠道 × 坐席 × 呼叫方向 × 呼叫计划 × 部门）
+ * <p>
+ * 主键是各维度拼接后的 MD5，维度为空时保存为空字符串
+ */
+@Entity
+@Table(name = "uk_callcenter_event_rollup")
+@org.hibernate.annotations.Proxy(lazy = false)
+public class StatusEventRollup implements java.io.Serializable{
+	private static final long serialVersionUID = 1L;
+
+	public static final String GRAIN_HOUR = "H" ;
+	public static final String GRAIN_DAY = "D" ;
+
+	private String id ;
+	private String grain ;			//汇总粒度，H：小时，D：天
+	private String datestr ;
+	private String hourstr ;		//按天汇总时为空字符串
+	private String orgi ;
+	private String voicechannel ;
+	private String agent ;
+	private String agentname ;
+	private String direction ;
+	private String dialplan ;
+	private String organid ;
+	private int total ;				//通话数量
+	private int fails ;				//通话时长为 0 的数量
+	private int gt60 ;				//通话时长超过 60 秒的数量
+	private long seconds ;			//通话总时长（秒）
+	private int maxduration ;		//最长通话时长（秒）
+	private Date updatetime ;
+
+	@Id
+	@Column(length = 32)
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public String getGrain() {
+		return grain;
+	}
+	public void setGrain(String grain) {
+		this.grain = grain;
+	}
+	public String getDatestr() {
+		return datestr;
+	}
+	public void setDatestr(String datestr) {
+		this.datestr = datestr;
+	}
+	public String getHourstr() {
+		return hourstr;
+	}
+	public void setHourstr(String hourstr) {
+		this.hourstr = hourstr;
+	}
+	public String getOrgi() {
+		return orgi;
+	}
+	public void setOrgi(String orgi) {
+		this.orgi = orgi;
+	}
+	public String getVoicechannel() {
+		return voicechannel;
+	}
+	public void setVoicechannel(String voicechannel) {
+		this.voicechannel = voicechannel;
+	}
+	public String getAgent() {
+		return agent;
+	}
+	public void setAgent(String agent) {
+		this.agent = agent;
+	}
+	public String getAgentname() {
+		return agentname;
+	}
+	public void setAgentname(String agentname) {
+		this.agentname = agentname;
+	}
+	public String getDirection() {
+		return direction;
+	}
+	public void setDirection(String direction) {
+		this.direction = direction;
+	}
+	public String getDialplan() {
+		return dialplan;
+	}
+	public void setDialplan(String dialplan) {
+		this.dialplan = dialplan;
+	}
+	public String getOrganid() {
+		return organid;
+	}
+	public void setOrganid(String organid) {
+		this.organid = organid;
+	}
+	public int getTotal() {
+		return total;
+	}
+	public void setTotal(int total) {
+		this.total = total;
+	}
+	public int getFails() {
+		return fails;
+	}
+	public void setFails(int fails) {
+		this.fails = fails;
+	}
+	public int getGt60() {
+		return gt60;
+	}
+	public void setGt60(int gt60) {
+		this.gt60 = gt60;
+	}
+	public long getSeconds() {
+		return seconds;
+	}
+	public void setSeconds(long seconds) {
+		this.seconds = seconds;
+	}
+	public int getMaxduration() {
+		return maxduration;
+	}
+	public void setMaxduration(int maxduration) {
+		this.maxduration = maxduration;
+	}
+	public Date getUpdatetime() {
+		return updatetime;
+	}
+	public void setUpdatetime(Date updatetime) {
+		this.updatetime = updatetime;
+	}
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
 
 import com.chatopera.cc.app.model.QuickReply;
 
@@ -41,4 +42,10 @@ public interface QuickReplyEsCommonRepository {
 	public void deleteByCate(String cate , String orgi) ;
 
 	public List<QuickReply> getQuickReplyByOrgi(String orgi, String cate,String type, String q);
+	
+	/**
+	 * 通过 scroll 逐批读取全部快捷回复，用于导出，使用后需要关闭；
+	 * scroll 不支持排序，不按 {@link #getQuickReplyByOrgi} 的置顶、更新时间排序
+	 */
+	public CloseableIterator<QuickReply> streamQuickReplyByOrgi(String orgi, String cate,String type, String q);
 }
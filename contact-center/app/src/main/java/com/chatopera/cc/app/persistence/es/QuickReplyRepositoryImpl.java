@@ -40,6 +40,7 @@ import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.query.DeleteQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.SearchQuery;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -216,4 +217,23 @@ public class QuickReplyRepositoryImpl implements QuickReplyEsCommonRepository{
 	    }
 	    return list ; 
 	}
+	
+	@Override
+	public CloseableIterator<QuickReply> streamQuickReplyByOrgi(String orgi , String cate,String type, String q) {
+		BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
+		boolQueryBuilder.must(termQuery("orgi" , orgi)) ;
+		
+		if(!StringUtils.isBlank(cate)){
+			boolQueryBuilder.must(termQuery("cate" , cate)) ;
+		}
+		if(!StringUtils.isBlank(type)){
+			boolQueryBuilder.must(termQuery("type" , type)) ;
+		}
+	    if(!StringUtils.isBlank(q)){
+	    	boolQueryBuilder.must(new QueryStringQueryBuilder(q).defaultOperator(Operator.AND)) ;
+	    }
+		
+		SearchQuery searchQuery = new NativeSearchQueryBuilder().withQuery(boolQueryBuilder).build().setPageable(new PageRequest(0, 1000));
+		return elasticsearchTemplate.indexExists(QuickReply.class) ? elasticsearchTemplate.stream(searchQuery, QuickReply.class) : null ;
+	}
 }
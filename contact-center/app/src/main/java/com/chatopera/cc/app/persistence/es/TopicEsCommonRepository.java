@@ -21,6 +21,7 @@ import java.util.List;
 import com.chatopera.cc.app.model.Topic;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.springframework.data.domain.Page;
+import org.springframework.data.util.CloseableIterator;
 
 public interface TopicEsCommonRepository {
 	public Page<Topic> getTopicByCateAndOrgi(String cate , String orgi, String q, int p, int ps) ;
@@ -29,6 +30,12 @@ public interface TopicEsCommonRepository {
 	
 	public List<Topic> getTopicByOrgi(String orgi, String type , String q) ;
 	
+	/**
+	 * 通过 scroll 逐批读取全部知识，用于导出，使用后需要关闭；
+	 * scroll 不支持排序，不按 {@link #getTopicByOrgi} 的置顶、更新时间排序
+	 */
+	public CloseableIterator<Topic> streamTopicByOrgi(String orgi, String type , String q) ;
+	
 	public Page<Topic> getTopicByCateAndUser(String cate , String q ,String user , int p, int ps) ;
 	
 	public Page<Topic> getTopicByCon(BoolQueryBuilder booleanQueryBuilder , int p, int ps) ;
@@ -36,6 +36,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.core.query.SearchQuery;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
 import com.chatopera.cc.app.persistence.repository.XiaoEUKResultMapper;
@@ -157,4 +158,21 @@ public class TopicRepositoryImpl implements TopicEsCommonRepository{
 	    }
 	    return list ; 
 	}
+	
+	@Override
+	public CloseableIterator<Topic> streamTopicByOrgi(String orgi , String type, String q) {
+		BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
+		boolQueryBuilder.must(termQuery("orgi" , orgi)) ;
+		
+		if(!StringUtils.isBlank(type)){
+			boolQueryBuilder.must(termQuery("cate" , type)) ;
+		}
+		
+	    if(!StringUtils.isBlank(q)){
+	    	boolQueryBuilder.must(new QueryStringQueryBuilder(q).defaultOperator(Operator.AND)) ;
+	    }
+		
+		SearchQuery searchQuery = new NativeSearchQueryBuilder().withQuery(boolQueryBuilder).build().setPageable(new PageRequest(0, 1000));
+		return elasticsearchTemplate.indexExists(Topic.class) ? elasticsearchTemplate.stream(searchQuery, Topic.class) : null ;
+	}
 }
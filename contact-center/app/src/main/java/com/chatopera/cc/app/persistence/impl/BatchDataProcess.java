@@ -16,6 +16,7 @@
  */
 package com.chatopera.cc.app.persistence.impl;
 
+import java.util.List;
 import java.util.Map;
 
 import com.chatopera.cc.app.basic.MainContext;
@@ -37,25 +38,28 @@ public class BatchDataProcess implements JPAProcess{
 		builder = MainContext.getTemplet().getClient().prepareBulk() ;
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
-	public void process(Object data) {
-		UKDataBean dataBean = new UKDataBean();
-		if(data instanceof UKDataBean) {
-			dataBean = (UKDataBean)data;
-		}else {
-			dataBean.setTable(this.metadata);
-			dataBean.setValues((Map<String, Object>) data);
-		}
+	public synchronized void process(Object data) {
 		try {
-			if(builder!=null) {
-				builder.add(esDataExchangeImpl.saveBulk(dataBean)) ;
-			}else {
-				esDataExchangeImpl.saveIObject(dataBean);
+			builder.add(esDataExchangeImpl.saveBulk(toDataBean(data))) ;
+			if(builder.numberOfActions() >= 1000) {
+				flush();
 			}
-			if(builder.numberOfActions() % 1000 ==0) {
-				builder.execute().actionGet();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * 一批数据作为一个 Bulk 请求写入
+	 */
+	@Override
+	public synchronized void process(List<Object> datas) {
+		try {
+			for(Object data : datas) {
+				builder.add(esDataExchangeImpl.saveBulk(toDataBean(data))) ;
 			}
+			flush();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -63,8 +67,30 @@ public class BatchDataProcess implements JPAProcess{
 
 	@Override
 	public void end() {
-		if(builder!=null) {
-			builder.execute().actionGet();
+		flush();
+	}
+	
+	/**
+	 * 提交已累积的请求，提交后使用新的 Bulk，避免重复写入已提交的数据；
+	 * 保存游标位置前调用，保证位置之前的记录都已写入
+	 */
+	public synchronized void flush() {
+		if(builder.numberOfActions() > 0) {
+			BulkRequestBuilder current = builder ;
+			builder = MainContext.getTemplet().getClient().prepareBulk() ;
+			current.execute().actionGet();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private UKDataBean toDataBean(Object data) {
+		UKDataBean dataBean = new UKDataBean();
+		if(data instanceof UKDataBean) {
+			dataBean = (UKDataBean)data;
+		}else {
+			dataBean.setTable(this.metadata);
+			dataBean.setValues((Map<String, Object>) data);
 		}
+		return dataBean ;
 	}
 }
@@ -17,6 +17,7 @@
 package com.chatopera.cc.app.persistence.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import com.chatopera.cc.app.cache.CacheHelper;
@@ -42,9 +43,9 @@ public class CallOutQuene {
 	@SuppressWarnings("unchecked")
 	public static List<CallCenterAgent> service(){
 		List<CallCenterAgent> agentList = new ArrayList<CallCenterAgent>();
-		if(CacheHelper.getCallCenterAgentCacheBean()!=null && CacheHelper.getCallCenterAgentCacheBean().getCache()!=null) {
+		if(CacheHelper.getCallCenterAgentRegion()!=null) {
 			PagingPredicate<String, CallCenterAgent> pagingPredicate = new PagingPredicate<String, CallCenterAgent>(  new SqlPredicate( "workstatus = 'callout'") , 10 ) ;
-			agentList.addAll(((IMap<String , CallCenterAgent>) CacheHelper.getCallCenterAgentCacheBean().getCache()).values(pagingPredicate)) ;
+			agentList.addAll(CacheHelper.getCallCenterAgentRegion().values(pagingPredicate)) ;
 		}
 		return agentList ;
 	}
@@ -56,9 +57,9 @@ public class CallOutQuene {
 	@SuppressWarnings("unchecked")
 	public static List<CallCenterAgent> service(String sip){
 		List<CallCenterAgent> agentList = new ArrayList<CallCenterAgent>();
-		if(CacheHelper.getCallCenterAgentCacheBean()!=null && CacheHelper.getCallCenterAgentCacheBean().getCache()!=null) {
+		if(CacheHelper.getCallCenterAgentRegion()!=null) {
 			PagingPredicate<String, CallCenterAgent> pagingPredicate = new PagingPredicate<String, CallCenterAgent>(  new SqlPredicate( "siptrunk = '"+sip+"'") , 10 ) ;
-			agentList.addAll(((IMap<String , CallCenterAgent>) CacheHelper.getCallCenterAgentCacheBean().getCache()).values(pagingPredicate)) ;
+			agentList.addAll(CacheHelper.getCallCenterAgentRegion().values(pagingPredicate)) ;
 		}
 		return agentList ;
 	}
@@ -70,9 +71,9 @@ public class CallOutQuene {
 	@SuppressWarnings("unchecked")
 	public static List<CallCenterAgent> extention(String extno){
 		List<CallCenterAgent> agentList = new ArrayList<CallCenterAgent>();
-		if(CacheHelper.getCallCenterAgentCacheBean()!=null && CacheHelper.getCallCenterAgentCacheBean().getCache()!=null) {
+		if(CacheHelper.getCallCenterAgentRegion()!=null) {
 			PagingPredicate<String, CallCenterAgent> pagingPredicate = new PagingPredicate<String, CallCenterAgent>(  new SqlPredicate( "extno = '"+extno+"'") , 10 ) ;
-			agentList.addAll(((IMap<String , CallCenterAgent>) CacheHelper.getCallCenterAgentCacheBean().getCache()).values(pagingPredicate)) ;
+			agentList.addAll(CacheHelper.getCallCenterAgentRegion().values(pagingPredicate)) ;
 		}
 		return agentList ;
 	}
@@ -82,7 +83,7 @@ public class CallOutQuene {
 		/**
 		 * 统计当前在线的坐席数量
 		 */
-		IMap callOutMap = (IMap<String, Object>) CacheHelper.getCallOutCacheBean().getCache() ;
+		IMap callOutMap = CacheHelper.getCallOutRegion().getMap() ;
 		AiCallOutFilter filter = new AiCallOutFilter(orgi) ;
 		Long names = (Long) callOutMap.aggregate(Supplier.fromKeyPredicate(filter), Aggregations.count()) ;
 		return names!=null ? names.intValue() : 0 ;
@@ -93,7 +94,7 @@ public class CallOutQuene {
 		/**
 		 * 统计当前在线的坐席数量
 		 */
-		IMap callOutMap = (IMap<String, Object>) CacheHelper.getCallOutCacheBean().getCache() ;
+		IMap callOutMap = CacheHelper.getCallOutRegion().getMap() ;
 		AgentCallOutFilter filter = new AgentCallOutFilter(orgi) ;
 		Long names = (Long) callOutMap.aggregate(Supplier.fromKeyPredicate(filter), Aggregations.count()) ;
 		return names!=null ? names.intValue() : 0 ;
@@ -107,10 +108,10 @@ public class CallOutQuene {
 	@SuppressWarnings("unchecked")
 	public static List<UKefuCallOutNames> callOutNames(String calltype , int p , int ps){
 		List<UKefuCallOutNames> ukefuCallOutNamesList = new ArrayList<UKefuCallOutNames>();
-		if(CacheHelper.getCallOutCacheBean()!=null && CacheHelper.getCallOutCacheBean().getCache()!=null) {
+		if(CacheHelper.getCallOutRegion()!=null) {
 			PagingPredicate<String, UKefuCallOutNames> pagingPredicate = new PagingPredicate<String, UKefuCallOutNames>(  new SqlPredicate( "calltype = '"+calltype+"'") , 10 ) ;
 			pagingPredicate.setPage(p);
-			ukefuCallOutNamesList.addAll(((IMap<String , UKefuCallOutNames>) CacheHelper.getCallOutCacheBean().getCache()).values(pagingPredicate)) ;
+			ukefuCallOutNamesList.addAll((Collection<UKefuCallOutNames>) (Collection<?>) CacheHelper.getCallOutRegion().getMap().values(pagingPredicate)) ;
 		}
 		return ukefuCallOutNamesList;
 	}
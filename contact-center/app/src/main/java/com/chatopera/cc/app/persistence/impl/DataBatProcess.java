@@ -37,13 +37,9 @@ public class DataBatProcess implements JPAProcess{
 		if(data instanceof UKDataBean){
 			UKDataBean dataBean = (UKDataBean)data;
 			try {
-				if(builder!=null) {
-					builder.add(esDataExchangeImpl.saveBulk(dataBean)) ;
-				}else {
-					esDataExchangeImpl.saveIObject(dataBean);
-				}
-				if(builder.numberOfActions() % 1000 ==0) {
-					builder.execute().actionGet();
+				builder.add(esDataExchangeImpl.saveBulk(dataBean)) ;
+				if(builder.numberOfActions() >= 1000) {
+					flush();
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -53,8 +49,14 @@ public class DataBatProcess implements JPAProcess{
 
 	@Override
 	public void end() {
-		if(builder!=null) {
-			builder.execute().actionGet();
+		flush();
+	}
+	
+	private void flush() {
+		if(builder.numberOfActions() > 0) {
+			BulkRequestBuilder current = builder ;
+			builder = MainContext.getTemplet().getClient().prepareBulk() ;
+			current.execute().actionGet();
 		}
 	}
 }
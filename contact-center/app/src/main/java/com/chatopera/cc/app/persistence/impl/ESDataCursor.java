@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.impl;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import org.elasticsearch.index.query.QueryBuilder;
+import org.springframework.data.domain.PageImpl;
+
+import com.chatopera.cc.app.model.MetadataTable;
+import com.chatopera.cc.util.es.UKDataBean;
+
+/**
+ * 按 id 顺序流式读取检索结果
+ * <p>
+ * 每次读取 id 大于上一页最后一条记录的一页数据（search_after 方式，不使用 from/size 深分页，也不在 ES 上保留 scroll 上下文），
+ * 内存中最多保留一页。游标位置就是最后一条记录的 id，可以保存下来，重启后从该位置继续。
+ * <p>
+ * 每读取新的一页时回调 checkpoint，参数是上一页开始前的位置：上一页的记录已经交给调用方，
+ * 但批量写入可能还未提交，从这个位置恢复时最多重复处理一页，不会遗漏。
+ */
+public class ESDataCursor implements Iterator<UKDataBean> {
+	
+	private final ESDataExchangeImpl esDataExchange ;
+	private final QueryBuilder query ;
+	private final MetadataTable metadata ;
+	private final String types ;
+	private final int batch ;
+	private final Consumer<String> checkpoint ;
+	
+	private final ArrayDeque<UKDataBean> buffer ;
+	
+	private String fetched ;		//已读取的最后一条记录
+	private String pageStart ;		//当前页开始前的位置
+	private long total = -1 ;
+	private boolean exhausted ;
+	
+	public ESDataCursor(ESDataExchangeImpl esDataExchange , QueryBuilder query , MetadataTable metadata , String types , int batch , String after , Consumer<String> checkpoint) {
+		this.esDataExchange = esDataExchange ;
+		this.query = query ;
+		this.metadata = metadata ;
+		this.types = types ;
+		this.batch = batch ;
+		this.checkpoint = checkpoint ;
+		this.buffer = new ArrayDeque<UKDataBean>(batch) ;
+		this.fetched = after ;
+		this.pageStart = after ;
+		fetch() ;
+	}
+	
+	/**
+	 * 打开游标时剩余的记录总数
+	 */
+	public long getTotal() {
+		return total ;
+	}
+	
+	/**
+	 * 所有记录都已读取并交给调用方
+	 */
+	public boolean isExhausted() {
+		return exhausted && buffer.isEmpty() ;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if(buffer.isEmpty() && !exhausted) {
+			fetch() ;
+		}
+		return !buffer.isEmpty() ;
+	}
+
+	@Override
+	public UKDataBean next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException() ;
+		}
+		return buffer.poll() ;
+	}
+	
+	private void fetch() {
+		if(checkpoint != null && total >= 0) {
+			checkpoint.accept(pageStart);
+		}
+		pageStart = fetched ;
+		PageImpl<UKDataBean> page = esDataExchange.findAfterResult(query, metadata, types, fetched, batch) ;
+		if(total < 0) {
+			total = page.getTotalElements() ;
+		}
+		buffer.addAll(page.getContent()) ;
+		if(page.getContent().size() < batch) {
+			exhausted = true ;
+		}
+		if(!buffer.isEmpty()) {
+			fetched = buffer.peekLast().getId() ;
+		}
+	}
+}
@@ -21,13 +21,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.util.es.UKDataBean;
-import com.chatopera.cc.app.persistence.repository.UKefuCallOutTaskRepository;
-import com.chatopera.cc.app.persistence.repository.OrganRepository;
 import com.chatopera.cc.app.model.TableProperties;
-import com.chatopera.cc.app.model.User;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
@@ -35,7 +33,9 @@ import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
@@ -51,22 +51,13 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort.Order;
 import org.springframework.stereotype.Repository;
 
-import com.chatopera.cc.app.persistence.repository.UserRepository;
-import com.chatopera.cc.app.model.UKefuCallOutTask;
 import com.chatopera.cc.app.model.MetadataTable;
-import com.chatopera.cc.app.model.Organ;
 
 @Repository("esdataservice")
 public class ESDataExchangeImpl{
 
 	@Autowired
-	private UserRepository userRes ;
-	
-	@Autowired
-	private UKefuCallOutTaskRepository taskRes ;
-	
-	@Autowired
-	private OrganRepository organRes ;
+	private ReferenceResolver referenceResolver ;
 	
 	public void saveIObject(UKDataBean dataBean) throws Exception {
 		if(dataBean.getId() == null) {
@@ -250,7 +241,6 @@ public class ESDataExchangeImpl{
 			}
 		}
 		SearchResponse response = searchBuilder.setQuery(query).execute().actionGet();
-		List<String> users = new ArrayList<String>() , organs = new ArrayList<String>() , taskList = new ArrayList<String>(),batchList = new ArrayList<String>(),activityList = new ArrayList<String>();
 		for(SearchHit hit : response.getHits().getHits()){
 			UKDataBean temp = new UKDataBean() ;
 			temp.setType(hit.getType());
@@ -258,86 +248,60 @@ public class ESDataExchangeImpl{
 			temp.setValues(hit.getSource());
 			temp.setId((String)temp.getValues().get("id"));
 			dataBeanList.add(processDate(temp)) ;
-			
-			
-			if(loadRef == true) {
-				if(!StringUtils.isBlank((String)temp.getValues().get(MainContext.UKEFU_SYSTEM_DIS_AGENT))) {
-					users.add((String)temp.getValues().get(MainContext.UKEFU_SYSTEM_DIS_AGENT)) ;
-				}
-				if(!StringUtils.isBlank((String)temp.getValues().get(MainContext.UKEFU_SYSTEM_ASSUSER))) {
-					users.add((String)temp.getValues().get(MainContext.UKEFU_SYSTEM_ASSUSER)) ;
-				}
-				if(!StringUtils.isBlank((String)temp.getValues().get(MainContext.UKEFU_SYSTEM_DIS_ORGAN))) {
-					organs.add((String)temp.getValues().get(MainContext.UKEFU_SYSTEM_DIS_ORGAN)) ;
-				}
-				if(!StringUtils.isBlank((String)temp.getValues().get("taskid"))) {
-					taskList.add((String)temp.getValues().get("taskid")) ;
-				}
-				if(!StringUtils.isBlank((String)temp.getValues().get("batid"))) {
-					batchList.add((String)temp.getValues().get("batid")) ;
-				}
-				if(!StringUtils.isBlank((String)temp.getValues().get("actid"))) {
-					activityList.add((String)temp.getValues().get("actid")) ;
-				}
-			}
 		}
 		if(loadRef) {
-			if(users.size() > 0) {
-				List<User> userList = userRes.findAll(users) ;
-				for(UKDataBean dataBean : dataBeanList) {
-					String userid = (String)dataBean.getValues().get(MainContext.UKEFU_SYSTEM_DIS_AGENT) ;
-					if(!StringUtils.isBlank(userid)) {
-						for(User user : userList) {
-							if(user.getId().equals(userid)) {
-								dataBean.setUser(user);
-								break ;
-							}
-						}
-					}
-					String assuer = (String)dataBean.getValues().get(MainContext.UKEFU_SYSTEM_ASSUSER) ;
-					if(!StringUtils.isBlank(assuer)) {
-						for(User user : userList) {
-							if(user.getId().equals(assuer)) {
-								dataBean.setAssuser(user);
-								break ;
-							}
-						}
-					}
-				}
-			}
-			if(organs.size() > 0) {
-				List<Organ> organList = organRes.findAll(organs) ;
-				for(UKDataBean dataBean : dataBeanList) {
-					String organid = (String)dataBean.getValues().get(MainContext.UKEFU_SYSTEM_DIS_ORGAN) ;
-					if(!StringUtils.isBlank(organid)) {
-						for(Organ organ : organList) {
-							if(organ.getId().equals(organid)) {
-								dataBean.setOrgan(organ);
-								break ;
-							}
-						}
-					}
-				}
-			}
-			if(taskList.size() > 0) {
-				List<UKefuCallOutTask> ukefuCallOutTaskList = taskRes.findAll(taskList) ;
-				for(UKDataBean dataBean : dataBeanList) {
-					String taskid = (String)dataBean.getValues().get("taskid") ;
-					if(!StringUtils.isBlank(taskid)) {
-						for(UKefuCallOutTask task : ukefuCallOutTaskList) {
-							if(task.getId().equals(taskid)) {
-								dataBean.setTask(task);
-								break ;
-							}
-						}
-					}
-				}
-			}
+			referenceResolver.resolve(dataBeanList);
 		}
 		return new PageImpl<UKDataBean>(dataBeanList,page , (int)response.getHits().getTotalHits());
 	}
 	
 	
+	/**
+	 * 打开流式游标，按 id 顺序逐页读取，代替 from/size 深分页
+	 * @param query
+	 * @param metadata
+	 * @param types
+	 * @param batch 每页数量，也是内存中最多保留的记录数
+	 * @param after 从该 id 之后开始，为空时从头开始
+	 * @param checkpoint 可以安全恢复的位置，读取新的一页时回调
+	 * @return
+	 */
+	public ESDataCursor openCursor(QueryBuilder query , MetadataTable metadata , String types , int batch , String after , Consumer<String> checkpoint) {
+		return new ESDataCursor(this, query, metadata, types, batch, after, checkpoint) ;
+	}
+	
+	/**
+	 * 读取 id 大于 after 的一页数据，按 id 升序，不加载关联对象
+	 * @param query
+	 * @param metadata
+	 * @param types
+	 * @param after
+	 * @param size
+	 * @return
+	 */
+	public PageImpl<UKDataBean> findAfterResult(QueryBuilder query , MetadataTable metadata , String types , String after , int size) {
+		List<UKDataBean> dataBeanList = new ArrayList<UKDataBean>() ;
+		SearchRequestBuilder searchBuilder = MainContext.getTemplet().getClient().prepareSearch(MainContext.SYSTEM_INDEX);
+		if(!StringUtils.isBlank(types)) {
+			searchBuilder.setTypes(types) ;
+		}
+		BoolQueryBuilder queryBuilder = QueryBuilders.boolQuery().must(query) ;
+		if(!StringUtils.isBlank(after)) {
+			queryBuilder.filter(QueryBuilders.rangeQuery("id").gt(after)) ;
+		}
+		searchBuilder.setFrom(0).setSize(size).addSort(new FieldSortBuilder("id").unmappedType("string").order(SortOrder.ASC)) ;
+		SearchResponse response = searchBuilder.setQuery(queryBuilder).execute().actionGet();
+		for(SearchHit hit : response.getHits().getHits()){
+			UKDataBean temp = new UKDataBean() ;
+			temp.setType(hit.getType());
+			temp.setTable(metadata);
+			temp.setValues(hit.getSource());
+			temp.setId(temp.getValues().get("id") != null ? (String)temp.getValues().get("id") : hit.getId());
+			dataBeanList.add(processDate(temp)) ;
+		}
+		return new PageImpl<UKDataBean>(dataBeanList , null , response.getHits().getTotalHits());
+	}
+	
 	/**
 	 * 
 	 * @param dataBean
@@ -363,28 +327,9 @@ public class ESDataExchangeImpl{
 		
 		
 		SearchResponse response = searchBuilder.setQuery(query).execute().actionGet();
-		List<String> users = new ArrayList<String>() , organs = new ArrayList<String>() , taskList = new ArrayList<String>(),batchList = new ArrayList<String>(),activityList = new ArrayList<String>();
-		
 		if(response.getAggregations().get(aggField) instanceof Terms){
 			Terms agg = response.getAggregations().get(aggField) ;
 			if(agg!=null){
-				if(loadRef == true) {
-					if(aggField.equals(MainContext.UKEFU_SYSTEM_DIS_AGENT)) {
-						users.add(agg.getName()) ;
-					}
-					if(aggField.equals(MainContext.UKEFU_SYSTEM_DIS_ORGAN)) {
-						organs.add(agg.getName()) ;
-					}
-					if(aggField.equals("taskid")) {
-						taskList.add(agg.getName()) ;
-					}
-					if(aggField.equals("batid")) {
-						batchList.add(agg.getName()) ;
-					}
-					if(aggField.equals("actid")) {
-						activityList.add(agg.getName()) ;
-					}
-				}
 				if(agg.getBuckets()!=null && agg.getBuckets().size()>0){
 					for (Terms.Bucket entry : agg.getBuckets()) {
 						UKDataBean dataBean = new UKDataBean();
@@ -412,48 +357,7 @@ public class ESDataExchangeImpl{
 		}
 		
 		if(loadRef) {
-			if(users.size() > 0) {
-				List<User> userList = userRes.findAll(users) ;
-				for(UKDataBean dataBean : dataBeanList) {
-					String userid = (String)dataBean.getValues().get(MainContext.UKEFU_SYSTEM_DIS_AGENT) ;
-					if(!StringUtils.isBlank(userid)) {
-						for(User user : userList) {
-							if(user.getId().equals(userid)) {
-								dataBean.setUser(user);
-								break ;
-							}
-						}
-					}
-				}
-			}
-			if(organs.size() > 0) {
-				List<Organ> organList = organRes.findAll(organs) ;
-				for(UKDataBean dataBean : dataBeanList) {
-					String organid = (String)dataBean.getValues().get(MainContext.UKEFU_SYSTEM_DIS_ORGAN) ;
-					if(!StringUtils.isBlank(organid)) {
-						for(Organ organ : organList) {
-							if(organ.getId().equals(organid)) {
-								dataBean.setOrgan(organ);
-								break ;
-							}
-						}
-					}
-				}
-			}
-			if(taskList.size() > 0) {
-				List<UKefuCallOutTask> ukefuCallOutTaskList = taskRes.findAll(taskList) ;
-				for(UKDataBean dataBean : dataBeanList) {
-					String taskid = (String)dataBean.getValues().get("taskid") ;
-					if(!StringUtils.isBlank(taskid)) {
-						for(UKefuCallOutTask task : ukefuCallOutTaskList) {
-							if(task.getId().equals(taskid)) {
-								dataBean.setTask(task);
-								break ;
-							}
-						}
-					}
-				}
-			}
+			referenceResolver.resolve(dataBeanList);
 		}
 		return new PageImpl<UKDataBean>(dataBeanList,page , (int)response.getHits().getTotalHits());
 	}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.model.JobDetail;
+import com.chatopera.cc.app.model.Organ;
+import com.chatopera.cc.app.model.UKefuCallOutTask;
+import com.chatopera.cc.app.model.User;
+import com.chatopera.cc.app.persistence.repository.JobDetailRepository;
+import com.chatopera.cc.app.persistence.repository.OrganRepository;
+import com.chatopera.cc.app.persistence.repository.UKefuCallOutTaskRepository;
+import com.chatopera.cc.app.persistence.repository.UserRepository;
+import com.chatopera.cc.util.es.UKDataBean;
+
+/**
+ * 检索结果的关联对象：坐席、分配人、部门、任务、批次、活动
+ * <p>
+ * 一页结果中的 ID 去重后按类型各查询一次，用 HashMap 按 ID 关联到每条记录；
+ * 查询到的对象在本节点缓存 {@code cskefu.es.ref.cache.ttl} 毫秒，翻页和不同请求之间共享。
+ * 缓存的对象被多个请求共享，只能读取，不能修改。
+ */
+@Component
+public class ReferenceResolver {
+	
+	@Value("${cskefu.es.ref.cache.ttl:60000}")
+	private long ttl ;
+	
+	@Value("${cskefu.es.ref.cache.size:10000}")
+	private int size ;
+	
+	@Autowired
+	private UserRepository userRes ;
+	
+	@Autowired
+	private OrganRepository organRes ;
+	
+	@Autowired
+	private UKefuCallOutTaskRepository taskRes ;
+	
+	@Autowired
+	private JobDetailRepository jobDetailRes ;
+	
+	private final RefCache<User> users = new RefCache<User>() ;
+	private final RefCache<Organ> organs = new RefCache<Organ>() ;
+	private final RefCache<UKefuCallOutTask> tasks = new RefCache<UKefuCallOutTask>() ;
+	private final RefCache<JobDetail> jobs = new RefCache<JobDetail>() ;	//批次和活动
+	
+	/**
+	 * 为检索结果加载关联对象
+	 * @param dataBeanList
+	 */
+	public void resolve(List<UKDataBean> dataBeanList) {
+		Set<String> userIds = new HashSet<String>() , organIds = new HashSet<String>() , taskIds = new HashSet<String>() , jobIds = new HashSet<String>() ;
+		for(UKDataBean dataBean : dataBeanList) {
+			collect(userIds, dataBean, MainContext.UKEFU_SYSTEM_DIS_AGENT) ;
+			collect(userIds, dataBean, MainContext.UKEFU_SYSTEM_ASSUSER) ;
+			collect(organIds, dataBean, MainContext.UKEFU_SYSTEM_DIS_ORGAN) ;
+			collect(taskIds, dataBean, "taskid") ;
+			collect(jobIds, dataBean, "batid") ;
+			collect(jobIds, dataBean, "actid") ;
+		}
+		Map<String, User> userMap = users.load(userIds, ids -> userRes.findAll(ids), User::getId) ;
+		Map<String, Organ> organMap = organs.load(organIds, ids -> organRes.findAll(ids), Organ::getId) ;
+		Map<String, UKefuCallOutTask> taskMap = tasks.load(taskIds, ids -> taskRes.findAll(ids), UKefuCallOutTask::getId) ;
+		Map<String, JobDetail> jobMap = jobs.load(jobIds, ids -> jobDetailRes.findAll(ids), JobDetail::getId) ;
+		for(UKDataBean dataBean : dataBeanList) {
+			dataBean.setUser(get(userMap, dataBean, MainContext.UKEFU_SYSTEM_DIS_AGENT));
+			dataBean.setAssuser(get(userMap, dataBean, MainContext.UKEFU_SYSTEM_ASSUSER));
+			dataBean.setOrgan(get(organMap, dataBean, MainContext.UKEFU_SYSTEM_DIS_ORGAN));
+			dataBean.setTask(get(taskMap, dataBean, "taskid"));
+			dataBean.setBatch(get(jobMap, dataBean, "batid"));
+			dataBean.setActivity(get(jobMap, dataBean, "actid"));
+		}
+	}
+	
+	private static void collect(Set<String> ids , UKDataBean dataBean , String field) {
+		Object id = dataBean.getValues().get(field) ;
+		if(id instanceof String && !StringUtils.isBlank((String) id)) {
+			ids.add((String) id) ;
+		}
+	}
+	
+	private static <T> T get(Map<String, T> refs , UKDataBean dataBean , String field) {
+		Object id = dataBean.getValues().get(field) ;
+		return id instanceof String ? refs.get(id) : null ;
+	}
+	
+	private static class Ref<T> {
+		private final T value ;
+		private final long expire ;
+		
+		private Ref(T value , long expire) {
+			this.value = value ;
+			this.expire = expire ;
+		}
+	}
+	
+	private class RefCache<T> {
+		private final ConcurrentMap<String, Ref<T>> refs = new ConcurrentHashMap<String, Ref<T>>() ;
+		
+		/**
+		 * 先从缓存读取，未命中或过期的 ID 一次查询
+		 */
+		private Map<String, T> load(Set<String> ids , Function<List<String>, List<T>> loader , Function<T, String> idOf) {
+			Map<String, T> result = new HashMap<String, T>() ;
+			if(ids.isEmpty()) {
+				return result ;
+			}
+			long now = System.currentTimeMillis() ;
+			List<String> misses = new ArrayList<String>() ;
+			for(String id : ids) {
+				Ref<T> ref = refs.get(id) ;
+				if(ref != null && ref.expire > now) {
+					result.put(id, ref.value) ;
+				}else {
+					misses.add(id) ;
+				}
+			}
+			if(!misses.isEmpty()) {
+				if(refs.size() + misses.size() > size) {
+					sweep(now) ;
+				}
+				for(T value : loader.apply(misses)) {
+					String id = idOf.apply(value) ;
+					result.put(id, value) ;
+					if(refs.size() < size) {
+						refs.put(id, new Ref<T>(value, now + ttl)) ;
+					}
+				}
+			}
+			return result ;
+		}
+		
+		private void sweep(long now) {
+			refs.values().removeIf(ref -> ref.expire <= now) ;
+		}
+	}
+}
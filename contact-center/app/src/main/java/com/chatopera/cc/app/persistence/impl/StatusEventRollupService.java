@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.impl;
+
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.model.StatusEvent;
+import com.chatopera.cc.app.model.StatusEventRollup;
+import com.chatopera.cc.app.persistence.repository.StatusEventRepository;
+import com.chatopera.cc.app.persistence.repository.StatusEventRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 通话记录汇总
+ * <p>
+ * 通话记录挂机时累加到 uk_callcenter_event_rollup，坐席报表和外呼日报读取汇总表，不再扫描原始通话记录。
+ * 启用前或汇总数据有误时，通过 {@link #rebuild(String, String, String)} 从原始通话记录重新汇总租户指定日期范围的数据。
+ * {@code cskefu.callcenter.rollup.enabled=false} 时报表仍查询原始通话记录。
+ */
+@Service
+public class StatusEventRollupService {
+    private final static Logger logger = LoggerFactory.getLogger(StatusEventRollupService.class);
+
+    @Value("${cskefu.callcenter.rollup.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private StatusEventRepository statusEventRes;
+
+    @Autowired
+    private StatusEventRollupRepository statusEventRollupRes;
+
+    /**
+     * 通话记录已挂机后调用，每条通话记录只能调用一次
+     *
+     * @param se
+     */
+    public void hangup(final StatusEvent se) {
+        if (!MainContext.CallServiceStatus.HANGUP.toString().equals(se.getStatus()) || se.getDatestr() == null) {
+            return;
+        }
+        try {
+            statusEventRollupRes.increment(se.getDatestr(),
+                    se.getHourstr(),
+                    se.getOrgi(),
+                    se.getVoicechannel(),
+                    se.getAgent(),
+                    se.getAgentname(),
+                    se.getDirection(),
+                    se.getDialplan(),
+                    se.getOrganid(),
+                    se.getDuration());
+        } catch (Exception e) {
+            // 汇总失败不影响通话记录，可通过 rebuild 修复
+            logger.error("[rollup] fail to roll up status event {} of {}", se.getId(), se.getDatestr(), e);
+        }
+    }
+
+    /**
+     * 从原始通话记录重新汇总租户 [fromdate, enddate) 内的数据
+     * <p>
+     * 先覆盖写入重新汇总的结果，再删除没有被覆盖、期间也没有累加的记录，
+     * 不先删除，同时挂机的通话记录累加时不会和重新汇总冲突主键。
+     *
+     * @param orgi
+     * @param fromdate yyyy-MM-dd
+     * @param enddate  yyyy-MM-dd，不包含
+     * @return 汇总后的记录数
+     */
+    @Transactional
+    public int rebuild(final String orgi, final String fromdate, final String enddate) {
+        final Date rebuilt = statusEventRollupRes.now();
+        int rows = statusEventRollupRes.rebuild(StatusEventRollup.GRAIN_HOUR, orgi, fromdate, enddate, rebuilt)
+                + statusEventRollupRes.rebuild(StatusEventRollup.GRAIN_DAY, orgi, fromdate, enddate, rebuilt);
+        int deleted = statusEventRollupRes.deleteOutdated(orgi, fromdate, enddate, rebuilt);
+        logger.info("[rollup] rebuild {} {} ~ {}: upserted {}, deleted {}", orgi, fromdate, enddate, rows, deleted);
+        return rows;
+    }
+
+    /**
+     * 坐席报表
+     */
+    public List<Object[]> queryCalloutHangupAuditGroupByAgentAndDirection(String channel,
+                                                                           String fromdate,
+                                                                           String enddate,
+                                                                           String organ,
+                                                                           String orgi) {
+        if (enabled) {
+            return statusEventRollupRes.queryCalloutHangupAuditGroupByAgentAndDirection(channel, fromdate, enddate, organ, orgi);
+        }
+        return statusEventRes.queryCalloutHangupAuditGroupByAgentAndDirection(channel, fromdate, enddate, organ, orgi);
+    }
+
+    /**
+     * 外呼日报
+     */
+    public List<Object[]> queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection(String datestr,
+                                                                                              String channel,
+                                                                                              String direction) {
+        if (enabled) {
+            return statusEventRollupRes.queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection(datestr, channel, direction);
+        }
+        return statusEventRes.queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection(datestr, channel, direction);
+    }
+}
@@ -32,5 +32,7 @@ public abstract interface AgentUserTaskRepository  extends JpaRepository<AgentUs
 	public List<AgentUserTask> findByLastgetmessageLessThanAndStatusAndOrgi(Date start , String status , String orgi) ;
 	
 	public List<AgentUserTask> findByLogindateLessThanAndStatusAndOrgi(Date start , String status , String orgi) ;
+	
+	public List<AgentUserTask> findByStatusAndOrgi(String status , String orgi) ;
 }
 
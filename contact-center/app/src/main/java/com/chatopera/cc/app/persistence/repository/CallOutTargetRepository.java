@@ -21,5 +21,10 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.stream.Stream;
 
 public interface CallOutTargetRepository extends JpaRepository<CallOutTarget, String> {
-    public abstract Stream<CallOutTarget> findAllByOrgiAndInvalidAndDialplan(String orgi, boolean invalid, String dialplan);
+    /**
+     * 按创建时间和ID排序，中断后可以跳过已加载的数量继续加载
+     */
+    public abstract Stream<CallOutTarget> findAllByOrgiAndInvalidAndDialplanOrderByCreatetimeAscIdAsc(String orgi, boolean invalid, String dialplan);
+
+    public abstract long countByOrgiAndInvalidAndDialplan(String orgi, boolean invalid, String dialplan);
 }
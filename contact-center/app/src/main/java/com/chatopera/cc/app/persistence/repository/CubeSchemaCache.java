@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.repository;
+
+import com.chatopera.cc.app.basic.MainUtils;
+import mondrian.olap.CacheControl;
+import mondrian.olap.Connection;
+import mondrian.olap.Cube;
+import mondrian.olap.Schema;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mondrian 多维模型缓存
+ * <p>
+ * 渲染后的模型按内容的 MD5 保存为 mdx/&lt;MD5&gt;.xml，相同内容的报表请求使用同一个文件，
+ * Mondrian 按文件路径复用已加载的 Schema 和单元格缓存。模型定义变化时内容不同，自然使用新的 Schema；
+ * 数据变化无法感知，单元格缓存超过 TTL 后清除，下次查询重新读取数据库。
+ * <p>
+ * 最多保留 {@code cskefu.cube.schema.cache.size} 个模型，淘汰的模型从 Mondrian 中移除；
+ * 其它线程可能刚拿到淘汰的文件还没有建立连接，文件在淘汰 {@link #GRACE_MILLIS} 后才由 {@link #prepare} 删除。
+ * 删除文件和重新使用文件都在同一个锁中，不会返回即将删除的文件。
+ */
+@Component
+public class CubeSchemaCache {
+    private final static Logger logger = LoggerFactory.getLogger(CubeSchemaCache.class);
+
+    private final static long GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Value("${cskefu.cube.schema.cache.size:64}")
+    private int size;
+
+    /**
+     * 单元格缓存有效期（毫秒），0 表示每次查询都读取数据库
+     */
+    @Value("${cskefu.cube.cell.cache.ttl:300000}")
+    private long ttl;
+
+    private final Map<String, Entry> schemas = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * 已淘汰、等待从 Mondrian 中移除的 Schema
+     */
+    private final List<Schema> evicted = new ArrayList<Schema>();
+
+    /**
+     * 已淘汰、等待删除的模型文件，按淘汰时间排序
+     */
+    private final Map<String, Entry> expired = new LinkedHashMap<String, Entry>();
+
+    /**
+     * 获得模型文件，内容相同的模型只写一次
+     *
+     * @param dir
+     * @param content 渲染后的模型
+     * @return
+     * @throws IOException
+     */
+    public File getSchemaFile(final File dir, final String content) throws IOException {
+        // 完整内容（UTF-8）的摘要，包含中文的模型不会只按部分内容区分
+        final String fingerprint = DigestUtils.md5Hex(content.getBytes(StandardCharsets.UTF_8));
+        synchronized (schemas) {
+            Entry entry = schemas.get(fingerprint);
+            if (entry != null && entry.file.exists()) {
+                return entry.file;
+            }
+        }
+        final File file = new File(dir, fingerprint + ".xml");
+        if (!file.exists()) {
+            write(dir, fingerprint, content, file);
+        }
+        synchronized (schemas) {
+            if (!schemas.containsKey(fingerprint)) {
+                expired.remove(fingerprint);
+                schemas.put(fingerprint, new Entry(file));
+                evict();
+            }
+            if (!file.exists()) {
+                // 检查之后被 prepare 删除，已从待删除中移除，重新写入后不会再被删除
+                write(dir, fingerprint, content, file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * 先写临时文件再改名，其它线程不会读到写了一半的模型
+     */
+    private static void write(final File dir, final String fingerprint, final String content, final File file) throws IOException {
+        File temp = new File(dir, fingerprint + "." + MainUtils.getUUID() + ".tmp");
+        FileUtils.write(temp, content, "UTF-8");
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 查询前调用：清除超过 TTL 的单元格缓存，移除已淘汰的 Schema，删除淘汰超过 {@link #GRACE_MILLIS} 的文件
+     *
+     * @param file
+     * @param connection
+     */
+    public void prepare(final File file, final Connection connection) {
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        final List<Schema> flush;
+        boolean outdated = false;
+        synchronized (schemas) {
+            flush = new ArrayList<Schema>(evicted);
+            evicted.clear();
+            Iterator<Entry> iterator = expired.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (System.currentTimeMillis() - entry.evicted < GRACE_MILLIS) {
+                    break;
+                }
+                iterator.remove();
+                if (!entry.file.delete()) {
+                    logger.warn("[cube] fail to delete schema {}", entry.file.getAbsolutePath());
+                }
+            }
+            Entry entry = schemas.get(file.getName().replace(".xml", ""));
+            if (entry != null) {
+                entry.schema = connection.getSchema();
+                long now = System.currentTimeMillis();
+                if (now - entry.loaded >= ttl) {
+                    outdated = entry.loaded > 0 || ttl <= 0;
+                    entry.loaded = now;
+                }
+            }
+        }
+        for (Schema schema : flush) {
+            cacheControl.flushSchema(schema);
+        }
+        if (outdated) {
+            for (Cube cube : connection.getSchema().getCubes()) {
+                cacheControl.flush(cacheControl.createMeasuresRegion(cube));
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = schemas.entrySet().iterator();
+        while (schemas.size() > size && iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            Entry entry = next.getValue();
+            iterator.remove();
+            if (entry.schema != null) {
+                evicted.add(entry.schema);
+            }
+            entry.evicted = System.currentTimeMillis();
+            expired.put(next.getKey(), entry);
+        }
+    }
+
+    private static class Entry {
+        private final File file;
+        private Schema schema;
+        private long loaded;        // 单元格缓存开始的时间
+        private long evicted;       // 淘汰的时间
+
+        private Entry(File file) {
+            this.file = file;
+        }
+    }
+}
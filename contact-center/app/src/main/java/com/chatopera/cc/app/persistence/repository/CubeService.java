@@ -28,7 +28,6 @@ import java.util.Map;
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.util.bi.model.ValueData;
 import com.chatopera.cc.app.model.ColumnProperties;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import com.chatopera.cc.app.basic.MainUtils;
@@ -60,10 +59,9 @@ public class CubeService {
 		if(!mdxFileDir.exists()){
 			mdxFileDir.mkdirs() ;
 		}
-		schemaFile = new File(mdxFileDir , MainUtils.getUUID()+".xml") ;
 		StringWriter writer = new StringWriter();
 		IOUtils.copy(CubeService.class.getClassLoader().getResourceAsStream(SCHEMA_DATA_PATH+xml), writer, "UTF-8"); 
-		FileUtils.write(schemaFile, MainUtils.getTemplet(writer.toString(), requestValues) , "UTF-8");	//使用系统默认编码
+		schemaFile = getSchemaCache().getSchemaFile(mdxFileDir, MainUtils.getTemplet(writer.toString(), requestValues)) ;
 	}
 	
 	public CubeService(String xml , String path , DataSourceService dataSource , Map<String,Object> requestValues,boolean isContentStr) throws IOException, TemplateException {
@@ -72,16 +70,22 @@ public class CubeService {
 		if(!mdxFileDir.exists()){
 			mdxFileDir.mkdirs() ;
 		}
-		schemaFile = new File(mdxFileDir , MainUtils.getUUID()+".xml") ;
 		if(isContentStr) {
-			FileUtils.write(schemaFile, MainUtils.getTemplet(xml, requestValues) , "UTF-8");	//使用系统默认编码
+			schemaFile = getSchemaCache().getSchemaFile(mdxFileDir, MainUtils.getTemplet(xml, requestValues)) ;
 		}else {
 			StringWriter writer = new StringWriter();
 			IOUtils.copy(CubeService.class.getClassLoader().getResourceAsStream(SCHEMA_DATA_PATH+xml), writer, "UTF-8"); 
-			FileUtils.write(schemaFile, MainUtils.getTemplet(writer.toString(), requestValues) , "UTF-8");	//使用系统默认编码
+			schemaFile = getSchemaCache().getSchemaFile(mdxFileDir, MainUtils.getTemplet(writer.toString(), requestValues)) ;
 		}
 	}
 	
+	/**
+	 * 相同内容的模型复用同一个文件，Mondrian 复用已加载的 Schema 和单元格缓存
+	 */
+	private static CubeSchemaCache getSchemaCache(){
+		return MainContext.getContext().getBean(CubeSchemaCache.class) ;
+	}
+	
 	public CubeReportData execute(String mdx) throws Exception{
 		return execute(mdx , null) ;
 	}
@@ -92,6 +96,7 @@ public class CubeService {
 		CubeReportData cubeReportData = new CubeReportData();
 		try{
 			connection = dataSource.service(schemaFile.getAbsolutePath()) ;
+			getSchemaCache().prepare(schemaFile, connection) ;
 			Query query = connection.parseQuery(mdx);
 			Result result = connection.execute(query) ;
 			Axis[] axises = result.getAxes();
@@ -125,9 +130,6 @@ public class CubeService {
 			if(connection!=null){
 				connection.close();
 			}
-			if(schemaFile.exists()){
-				schemaFile.delete();
-			}
 		}
 		return cubeReportData ;
 	}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.repository;
+
+import com.chatopera.cc.app.model.CubeStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过 /metrics 暴露报表基数统计的命中、刷新和过期数量，通过 /cubestatistics 列出各条统计及过期原因
+ */
+@Component
+public class CubeStatisticsEndpoint extends AbstractEndpoint<List<Map<String, Object>>> implements PublicMetrics {
+
+    @Autowired
+    private CubeStatisticsStore cubeStatisticsStore;
+
+    public CubeStatisticsEndpoint() {
+        super("cubestatistics");
+    }
+
+    @Override
+    public List<Map<String, Object>> invoke() {
+        List<Map<String, Object>> values = new ArrayList<Map<String, Object>>();
+        for (CubeStatisticsStore.Entry entry : cubeStatisticsStore.getStatistics()) {
+            CubeStatistics stat = entry.getStat();
+            Map<String, Object> value = new LinkedHashMap<String, Object>();
+            value.put("id", stat.getId());
+            value.put("kind", stat.getKind());
+            value.put("table", stat.getTablename());
+            value.put("column", stat.getColumnname());
+            value.put("cardinality", stat.getCardinality());
+            value.put("tablerows", stat.getTablerows());
+            value.put("costtime", stat.getCosttime());
+            value.put("updatetime", stat.getUpdatetime());
+            value.put("stale", entry.getStale());
+            values.add(value);
+        }
+        return values;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        metrics.add(new Metric<Number>("cube.statistics.size", cubeStatisticsStore.size()));
+        metrics.add(new Metric<Number>("cube.statistics.stale", cubeStatisticsStore.getStaleCount()));
+        metrics.add(new Metric<Number>("cube.statistics.refreshing", cubeStatisticsStore.getRefreshing()));
+        metrics.add(new Metric<Number>("cube.statistics.hits", cubeStatisticsStore.getHits()));
+        metrics.add(new Metric<Number>("cube.statistics.misses", cubeStatisticsStore.getMisses()));
+        metrics.add(new Metric<Number>("cube.statistics.refreshes", cubeStatisticsStore.getRefreshes()));
+        metrics.add(new Metric<Number>("cube.statistics.failures", cubeStatisticsStore.getFailures()));
+        return metrics;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.repository;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.chatopera.cc.app.model.CubeStatistics;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Mondrian 基数统计（select count(*)、count(distinct ...)）的缓存
+ * <p>
+ * 统计结果按统计 SQL 的 MD5 保存在内存中，可选同时保存到 uk_cube_statistics 表，重启后不需要重新扫描大表。
+ * 模型重新加载时相同的统计 SQL 直接使用已有结果；只有第一次统计在 Mondrian 的查询线程中同步执行。
+ * <p>
+ * 统计结果在以下情况下过期：超过 {@code cskefu.cube.statistics.ttl}，或统计已超过 {@code cskefu.cube.statistics.min.age}
+ * 且数据表的估算行数（information_schema.tables.table_rows）相比统计时变化超过 {@code cskefu.cube.statistics.change.threshold}。
+ * InnoDB 的估算行数由采样得到，即使数据没有变化也可能相差数十个百分比，所以容差较大并且要求最短间隔，
+ * 只用于发现大幅增长的数据表；数据表主键是 UUID，无法按 MAX(id) 判断增长。
+ * 过期的结果继续使用，同时由后台线程重新统计，同一条统计同时只刷新一次。
+ */
+@Component
+public class CubeStatisticsStore {
+    private final static Logger logger = LoggerFactory.getLogger(CubeStatisticsStore.class);
+
+    private final static String TABLE_ROWS_SQL = "select table_name, table_rows from information_schema.tables where table_schema = database()";
+
+    /**
+     * 统计结果有效期（毫秒），0 表示不按时间过期
+     */
+    @Value("${cskefu.cube.statistics.ttl:86400000}")
+    private long ttl;
+
+    /**
+     * 数据表行数变化超过统计时行数的比例后过期，0 表示不检查行数变化
+     */
+    @Value("${cskefu.cube.statistics.change.threshold:0.5}")
+    private double threshold;
+
+    /**
+     * 统计后至少经过该时间（毫秒）才按行数变化过期
+     */
+    @Value("${cskefu.cube.statistics.min.age:3600000}")
+    private long minAge;
+
+    @Value("${cskefu.cube.statistics.persist:true}")
+    private boolean persist;
+
+    @Autowired
+    private CubeStatisticsRepository cubeStatisticsRes;
+
+    @Autowired
+    private DruidDataSource dataSource;
+
+    private final ConcurrentMap<String, Entry> statistics = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * 最近一次检查时各数据表的估算行数
+     */
+    private volatile Map<String, Long> tableRows = new HashMap<String, Long>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService executor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cube-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (persist) {
+            try {
+                for (CubeStatistics stat : cubeStatisticsRes.findAll()) {
+                    statistics.put(stat.getId(), new Entry(stat));
+                }
+                logger.info("[cube] loaded {} statistics", statistics.size());
+            } catch (Exception e) {
+                // 没有创建统计表时只保存在内存中
+                persist = false;
+                logger.warn("[cube] fail to load statistics, keep them in memory only", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 读取统计结果，没有时调用 loader 统计并保存
+     *
+     * @param kind   {@link CubeStatistics#KIND_TABLE} 等
+     * @param table  数据表，没有时为 null，不检查行数变化
+     * @param column 字段，没有时为 null
+     * @param sql    统计 SQL，后台刷新时重新执行
+     * @param loader 第一次统计，在调用线程中执行
+     * @return
+     */
+    public int get(final String kind, final String table, final String column, final String sql, final IntSupplier loader) {
+        final String id = DigestUtils.md5Hex(sql.getBytes(StandardCharsets.UTF_8));    // 报表线程并发调用，每次新建摘要
+        final Entry entry = statistics.get(id);
+        if (entry != null) {
+            hits.increment();
+            if (entry.stale == null && ttl > 0 && System.currentTimeMillis() - entry.stat.getUpdatetime().getTime() >= ttl) {
+                // 刷新失败的统计由 check() 定期重试
+                entry.stale = "ttl";
+                refresh(entry);
+            }
+            return entry.stat.getCardinality();
+        }
+        misses.increment();
+        final long start = System.currentTimeMillis();
+        final int cardinality = loader.getAsInt();
+        if (cardinality >= 0) {
+            CubeStatistics stat = new CubeStatistics();
+            stat.setId(id);
+            stat.setKind(kind);
+            stat.setTablename(table);
+            stat.setColumnname(column);
+            stat.setSqltext(sql);
+            stat.setCardinality(cardinality);
+            stat.setTablerows(rows(table));
+            stat.setCosttime(System.currentTimeMillis() - start);
+            stat.setUpdatetime(new Date());
+            statistics.put(id, new Entry(stat));
+            if (persist) {
+                submit(() -> save(stat));
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * 定期检查数据表的行数变化，过期的统计在后台刷新
+     */
+    @Scheduled(fixedDelayString = "${cskefu.cube.statistics.check.interval:600000}")
+    public void check() {
+        if (statistics.isEmpty()) {
+            return;
+        }
+        if (threshold > 0) {
+            tableRows = loadTableRows();
+        }
+        final long now = System.currentTimeMillis();
+        int stale = 0;
+        for (Entry entry : statistics.values()) {
+            if (entry.stale == null) {
+                entry.stale = staleReason(entry.stat, now);
+            }
+            if (entry.stale != null) {
+                stale++;
+                refresh(entry);
+            }
+        }
+        if (stale > 0) {
+            logger.info("[cube] {} of {} statistics are stale, refreshing", stale, statistics.size());
+        }
+    }
+
+    /**
+     * 所有统计结果，过期的统计 {@link Entry#getStale()} 返回过期原因
+     */
+    public Collection<Entry> getStatistics() {
+        return new ArrayList<Entry>(statistics.values());
+    }
+
+    public int getStaleCount() {
+        int count = 0;
+        for (Entry entry : statistics.values()) {
+            if (entry.stale != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return statistics.size();
+    }
+
+    public int getRefreshing() {
+        return refreshing.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    private String staleReason(final CubeStatistics stat, final long now) {
+        if (ttl > 0 && now - stat.getUpdatetime().getTime() >= ttl) {
+            return "ttl";
+        }
+        if (threshold > 0 && stat.getTablename() != null && now - stat.getUpdatetime().getTime() >= minAge) {
+            long current = rows(stat.getTablename());
+            if (current >= 0 && stat.getTablerows() < 0) {
+                // 统计时还没有读取过行数，以本次检查的行数为基准
+                stat.setTablerows(current);
+            } else if (current >= 0 && Math.abs(current - stat.getTablerows()) > Math.max(1, stat.getTablerows()) * threshold) {
+                return "rows " + stat.getTablerows() + " -> " + current;
+            }
+        }
+        return null;
+    }
+
+    private void refresh(final Entry entry) {
+        final CubeStatistics stat = entry.stat;
+        if (!refreshing.add(stat.getId())) {
+            return;
+        }
+        boolean submitted = submit(() -> {
+            try {
+                final long start = System.currentTimeMillis();
+                CubeStatistics fresh = new CubeStatistics();
+                fresh.setId(stat.getId());
+                fresh.setKind(stat.getKind());
+                fresh.setTablename(stat.getTablename());
+                fresh.setColumnname(stat.getColumnname());
+                fresh.setSqltext(stat.getSqltext());
+                fresh.setTablerows(rows(stat.getTablename()));
+                fresh.setCardinality(count(stat.getSqltext()));
+                fresh.setCosttime(System.currentTimeMillis() - start);
+                fresh.setUpdatetime(new Date());
+                statistics.put(fresh.getId(), new Entry(fresh));
+                refreshes.increment();
+                if (persist) {
+                    save(fresh);
+                }
+                logger.debug("[cube] refreshed statistics {} ({}): {} -> {}", stat.getId(), entry.stale, stat.getCardinality(), fresh.getCardinality());
+            } catch (Exception e) {
+                failures.increment();
+                logger.warn("[cube] fail to refresh statistics {} of {}", stat.getId(), stat.getTablename(), e);
+            } finally {
+                refreshing.remove(stat.getId());
+            }
+        });
+        if (!submitted) {
+            refreshing.remove(stat.getId());
+        }
+    }
+
+    private boolean submit(final Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void save(final CubeStatistics stat) {
+        try {
+            cubeStatisticsRes.save(stat);
+        } catch (Exception e) {
+            logger.warn("[cube] fail to save statistics {}", stat.getId(), e);
+        }
+    }
+
+    private long rows(final String table) {
+        if (table == null) {
+            return -1;
+        }
+        Long rows = tableRows.get(table.toLowerCase());
+        return rows != null ? rows : -1;
+    }
+
+    private int count(final String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getInt(1) : -1;
+        }
+    }
+
+    /**
+     * 读取数据表的估算行数，不扫描数据；不支持 information_schema 的数据库返回空，只按有效期过期
+     */
+    private Map<String, Long> loadTableRows() {
+        Map<String, Long> rows = new HashMap<String, Long>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(TABLE_ROWS_SQL)) {
+            while (resultSet.next()) {
+                rows.put(resultSet.getString(1).toLowerCase(), resultSet.getLong(2));
+            }
+        } catch (SQLException e) {
+            logger.debug("[cube] fail to read table rows", e);
+        }
+        return rows;
+    }
+
+    public static class Entry {
+        private final CubeStatistics stat;
+        private volatile String stale;      // 过期原因，未过期时为 null
+
+        private Entry(CubeStatistics stat) {
+            this.stat = stat;
+        }
+
+        public CubeStatistics getStat() {
+            return stat;
+        }
+
+        public String getStale() {
+            return stale;
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package com.chatopera.cc.app.persistence.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -30,6 +31,8 @@ public abstract interface OnlineUserRepository extends JpaRepository<OnlineUser,
 	public abstract OnlineUser findBySessionidAndOrgi(String paramString, String orgi);
 
 	public abstract List<OnlineUser> findByUseridAndOrgi(String userid, String orgi);
+
+	public abstract List<OnlineUser> findByUseridInAndOrgi(Collection<String> userids, String orgi);
 	
 	public abstract int countByUseridAndOrgi(String userid, String orgi);
 	
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.persistence.repository;
+
+import com.chatopera.cc.app.model.StatusEventRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 通话记录汇总，查询结果的列和类型与 {@link StatusEventRepository} 中对应的原始查询一致
+ */
+public interface StatusEventRollupRepository extends JpaRepository<StatusEventRollup, String> {
+
+    String COLUMNS = "id, grain, datestr, hourstr, orgi, voicechannel, agent, agentname, direction, dialplan, organid, " +
+            "total, fails, gt60, seconds, maxduration, updatetime";
+
+    /**
+     * 累加一条已挂机的通话记录，同时更新小时和天两个粒度；
+     * 维度保留原始值，null 和空字符串是不同的维度（主键中 null 用 char(0) 表示），和原始查询的分组一致
+     *
+     * @param datestr
+     * @param hourstr
+     * @param orgi
+     * @param voicechannel
+     * @param agent
+     * @param agentname
+     * @param direction
+     * @param dialplan
+     * @param organid
+     * @param duration     通话时长（秒）
+     * @return
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into uk_callcenter_event_rollup (" + COLUMNS + ") values " +
+            "(md5(concat_ws('|', 'H', ?1, ifnull(?2, ''), ifnull(?3, char(0)), ifnull(?4, char(0)), ifnull(?5, char(0)), ifnull(?7, char(0)), ifnull(?8, char(0)), ifnull(?9, char(0)))), " +
+            "  'H', ?1, ifnull(?2, ''), ?3, ?4, ?5, ?6, ?7, ?8, ?9, " +
+            "  1, if(?10 = 0, 1, 0), if(?10 >= 60, 1, 0), ?10, ?10, now()), " +
+            "(md5(concat_ws('|', 'D', ?1, '', ifnull(?3, char(0)), ifnull(?4, char(0)), ifnull(?5, char(0)), ifnull(?7, char(0)), ifnull(?8, char(0)), ifnull(?9, char(0)))), " +
+            "  'D', ?1, '', ?3, ?4, ?5, ?6, ?7, ?8, ?9, " +
+            "  1, if(?10 = 0, 1, 0), if(?10 >= 60, 1, 0), ?10, ?10, now()) " +
+            "on duplicate key update " +
+            "  total = total + 1, " +
+            "  fails = fails + values(fails), " +
+            "  gt60 = gt60 + values(gt60), " +
+            "  seconds = seconds + values(seconds), " +
+            "  maxduration = greatest(maxduration, values(maxduration)), " +
+            "  agentname = ifnull(values(agentname), agentname), " +
+            "  updatetime = now()", nativeQuery = true)
+    public int increment(String datestr,
+                         String hourstr,
+                         String orgi,
+                         String voicechannel,
+                         String agent,
+                         String agentname,
+                         String direction,
+                         String dialplan,
+                         String organid,
+                         int duration);
+
+    /**
+     * 数据库当前时间，和 {@link #increment} 写入的 updatetime 使用同一个时钟
+     */
+    @Query(value = "select now()", nativeQuery = true)
+    public Date now();
+
+    /**
+     * 删除重新汇总时没有写入、期间也没有累加的汇总记录（对应的原始通话记录已经不存在）
+     *
+     * @param orgi
+     * @param fromdate
+     * @param enddate
+     * @param rebuilt  开始重新汇总的时间
+     * @return
+     */
+    @Modifying
+    @Query(value = "delete from uk_callcenter_event_rollup where orgi = ?1 and datestr >= ?2 and datestr < ?3 and (updatetime is null or updatetime < ?4)", nativeQuery = true)
+    public int deleteOutdated(String orgi, String fromdate, String enddate, Date rebuilt);
+
+    /**
+     * 从原始通话记录重新汇总租户 [fromdate, enddate) 内的数据，已有的汇总记录直接覆盖，
+     * 不会和同时进行的 {@link #increment} 冲突主键
+     *
+     * @param grain    {@link StatusEventRollup#GRAIN_HOUR} 或 {@link StatusEventRollup#GRAIN_DAY}
+     * @param orgi
+     * @param fromdate
+     * @param enddate
+     * @param rebuilt  开始重新汇总的时间
+     * @return
+     */
+    @Modifying
+    @Query(value = "insert into uk_callcenter_event_rollup (" + COLUMNS + ") " +
+            "select md5(concat_ws('|', t.grain, t.datestr, t.hourstr, ifnull(t.orgi, char(0)), ifnull(t.voicechannel, char(0)), ifnull(t.agent, char(0)), " +
+            "  ifnull(t.direction, char(0)), ifnull(t.dialplan, char(0)), ifnull(t.organid, char(0)))), t.* from (" +
+            "  select " +
+            "    ?1 grain, datestr, if(?1 = 'H', ifnull(hourstr, ''), '') hourstr, orgi, voicechannel, " +
+            "    agent, max(agentname) agentname, direction, dialplan, organid, " +
+            "    count(*) total, " +
+            "    count(IF(DURATION = 0, 1, null)) fails, " +
+            "    count(IF(DURATION >= 60, 1, null)) gt60, " +
+            "    ifnull(sum(duration), 0) seconds, " +
+            "    ifnull(max(duration), 0) maxduration, " +
+            "    ?5 updatetime " +
+            "  from uk_callcenter_event " +
+            "  where " +
+            "    status = '已挂机' " +
+            "    and orgi = ?2 " +
+            "    and datestr >= ?3 " +
+            "    and datestr < ?4 " +
+            "  group by 1, 2, 3, 4, 5, 6, 8, 9, 10" +
+            ") t " +
+            "on duplicate key update " +
+            "  total = values(total), " +
+            "  fails = values(fails), " +
+            "  gt60 = values(gt60), " +
+            "  seconds = values(seconds), " +
+            "  maxduration = values(maxduration), " +
+            "  agentname = values(agentname), " +
+            "  updatetime = values(updatetime)", nativeQuery = true)
+    public int rebuild(String grain, String orgi, String fromdate, String enddate, Date rebuilt);
+
+    /**
+     * 坐席报表，见 {@link StatusEventRepository#queryCalloutHangupAuditGroupByAgentAndDirection}
+     */
+    @Query(value =
+            "select " +
+                    "  agent, " +
+                    "  direction, " +
+                    "  cast(sum(IF(dialplan is not null, total, 0)) as unsigned) dialplan, " +
+                    "  cast(sum(total) as unsigned) total, " +
+                    "  sum(seconds) seconds, " +
+                    "  cast(sum(fails) as unsigned) fails, " +
+                    "  cast(sum(gt60) as unsigned) gt60," +
+                    "  max(maxduration) maxduration, " +
+                    "  sum(seconds) / sum(total) avgduration, " +
+                    "  max(agentname) agentname " +
+                    "from uk_callcenter_event_rollup " +
+                    "where " +
+                    "  grain = 'D' " +
+                    "  and datestr >= ?2" +
+                    "  and datestr < ?3" +
+                    "  and voicechannel = ?1" +
+                    "  and (?4 is null or organid = ?4) " +
+                    "  and orgi = ?5" +
+                    "  and agent is not null " +
+                    "group by" +
+                    "  agent," +
+                    "  direction", nativeQuery = true)
+    public List<Object[]>
+    queryCalloutHangupAuditGroupByAgentAndDirection(String channel,
+                                                    String fromdate,
+                                                    String enddate,
+                                                    String organ,
+                                                    String orgi);
+
+    /**
+     * 外呼日报，见 {@link StatusEventRepository#queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection}
+     */
+    @Query(value = "select dialplan, " +
+            "datestr, " +
+            "cast(sum(total) as unsigned) as total, " +
+            "cast(sum(fails) as unsigned) fails, " +
+            "sum(seconds) as seconds " +
+            "from uk_callcenter_event_rollup " +
+            "where " +
+            "grain = 'D' " +
+            "and DIRECTION = ?3 " +
+            "and datestr = ?1 " +
+            "and voicechannel = ?2 " +
+            "group by dialplan, datestr", nativeQuery = true)
+    public List<Object[]> queryCallOutHangupAggsGroupByDialplanByDatestrAndChannelAndDirection(String datestr,
+                                                                                               String channel,
+                                                                                               String direction);
+}
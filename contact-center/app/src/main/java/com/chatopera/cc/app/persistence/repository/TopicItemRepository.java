@@ -16,6 +16,7 @@
  */
 package com.chatopera.cc.app.persistence.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -25,6 +26,8 @@ import com.chatopera.cc.app.model.TopicItem;
 public interface TopicItemRepository extends JpaRepository<TopicItem, String> {
 	public abstract List<TopicItem> findByTopicid(String topicid);
 	
+	public abstract List<TopicItem> findByTopicidIn(Collection<String> topicids);
+	
 	public abstract TopicItem findByIdAndOrgi(String id, String orgi);
 	
 }
@@ -25,13 +25,22 @@ import com.chatopera.cc.app.model.CallOutDialplan;
 import com.chatopera.cc.app.model.CallOutTarget;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -40,8 +49,9 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.transaction.Transactional;
-import java.util.Date;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 /**
@@ -66,6 +76,23 @@ public class CallOutPlanTask {
     @Value("${spring.redis.database}")
     private String redisDB;
 
+    @Value("${application.node.id}")
+    private String appNodeId;
+
+    @Value("${cskefu.callout.load.chunk:1000}")
+    private int loadChunk;
+
+    /**
+     * 加载锁的有效期，每推送一批续期；持有锁的节点宕机后由其它节点继续加载
+     */
+    private final static long LOAD_LOCK_TTL = TimeUnit.MINUTES.toMillis(2);
+
+    /**
+     * 只删除自己持有的锁，锁过期后被其它节点获得时不会误删
+     */
+    private final static RedisScript<Long> UNLOCK = new DefaultRedisScript<Long>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
 
     @Autowired
     private CallOutDialplanRepository callOutDialplanRes;
@@ -96,6 +123,9 @@ public class CallOutPlanTask {
             // load all jobs
             List<CallOutDialplan> dps = callOutDialplanRes.findByStatusAndIsarchive(MainContext.CallOutDialplanStatusEnum.RUNNING.toString(), false);
             for (CallOutDialplan dp : dps) {
+                if (resume(dp)) {
+                    continue;
+                }
                 Long size = redisListOps.size(String.format(Constants.FS_DIALPLAN_TARGET, dp.getVoicechannel().getBaseURL(), dp.getId()));
                 if (size > 0) {
                     logger.info("[callout executor] job [{}] is not done yet, remaining [{}]", dp.getName(), size);
@@ -111,6 +141,38 @@ public class CallOutPlanTask {
         }
     }
 
+    /**
+     * 电话列表加载中断（节点重启）的外呼计划，从中断的位置继续加载
+     *
+     * @param dp
+     * @return 该计划的电话列表还在加载中
+     */
+    private boolean resume(final CallOutDialplan dp) {
+        final String channel = dp.getVoicechannel().getBaseURL();
+        final String loadKey = String.format(Constants.FS_DIALPLAN_LOAD, channel, dp.getId());
+        final String sips = redisHashOps.get(loadKey, "sips");
+        if (sips == null) {
+            return false;
+        }
+        if (!redis.hasKey(String.format(Constants.FS_DIALPLAN_LOAD_LOCK, channel, dp.getId()))) {
+            logger.info("[callout executor] resume loading targets of dialplan [{}]", dp.getName());
+            try {
+                MainContext.getContext().getBean(CallOutPlanTask.class).run(dp, new JsonParser().parse(sips).getAsJsonArray());
+            } catch (CallOutRuntimeException e) {
+                logger.error("[callout executor] resume", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将外呼计划的电话列表分批推送到 Redis，每批一次 LPUSH，和加载进度在同一个事务（MULTI/EXEC）中提交；
+     * 中断后再次执行时跳过已提交的数量，不重复也不遗漏
+     *
+     * @param dp
+     * @param sips
+     * @throws CallOutRuntimeException
+     */
     @Async("callOutTaskExecutor")
     @Transactional
     public void run(final CallOutDialplan dp, final JsonArray sips) throws CallOutRuntimeException {
@@ -119,20 +181,54 @@ public class CallOutPlanTask {
         final String dialplanVoiceChannelIdef = dp.getVoicechannel().getBaseURL();
         final int curconcurrence = dp.getCurconcurrence();
         final String key = String.format(Constants.FS_DIALPLAN_TARGET, dialplanVoiceChannelIdef, dialplanId);
+        final String loadKey = String.format(Constants.FS_DIALPLAN_LOAD, dialplanVoiceChannelIdef, dialplanId);
+        final String lockKey = String.format(Constants.FS_DIALPLAN_LOAD_LOCK, dialplanVoiceChannelIdef, dialplanId);
 
         if(sips.size() == 0)
             throw new CallOutRuntimeException("SIP话机列表没有成员。");
 
-        try (Stream<CallOutTarget> stream = callOutTargetRes.findAllByOrgiAndInvalidAndDialplan(MainContext.SYSTEM_ORGI, false, dialplanId)) {
-            // forEach是并行执行，无法使用上层变量，除非是final
-            stream.forEach(target -> {
-                logger.info("[callout executor] target phone {}, redis {}:{} database {}", target.getPhone(), redisHost, redisPort, redisDB);
-                JsonObject payload = new JsonObject();
-                payload.addProperty("to", target.getPhone());
-                payload.addProperty("channel", dialplanVoiceChannelIdef);
-                payload.addProperty("type", Constants.FS_CALL_TYPE_CALLOUT);
-                redisListOps.leftPush(key, payload.toString());
-            });
+        final String token = appNodeId + ":" + UUID.randomUUID().toString();
+        if (!lock(lockKey, token)) {
+            logger.info("[callout executor] targets of dialplan {} are being loaded by another executor", dialplanId);
+            return;
+        }
+
+        try {
+            long loaded = 0;
+            final long total;
+            String progress = redisHashOps.get(loadKey, "loaded");
+            if (progress == null) {
+                total = callOutTargetRes.countByOrgiAndInvalidAndDialplan(MainContext.SYSTEM_ORGI, false, dialplanId);
+                Map<String, String> state = new HashMap<String, String>();
+                state.put("loaded", "0");
+                state.put("total", String.valueOf(total));
+                state.put("sips", sips.toString());
+                redisHashOps.putAll(loadKey, state);
+            } else {
+                loaded = Long.parseLong(progress);
+                total = Long.parseLong(redisHashOps.get(loadKey, "total"));
+                logger.info("[callout executor] dialplan {} continue loading from {} of {}", dialplanId, loaded, total);
+            }
+
+            // 同一计划中只有号码不同
+            final String prefix = "{\"to\":\"";
+            final String suffix = "\",\"channel\":\"" + escape(dialplanVoiceChannelIdef) + "\",\"type\":\"" + Constants.FS_CALL_TYPE_CALLOUT + "\"}";
+            final StringBuilder buffer = new StringBuilder(prefix.length() + suffix.length() + 32);
+            final List<String> chunk = new ArrayList<String>(loadChunk);
+
+            try (Stream<CallOutTarget> stream = callOutTargetRes.findAllByOrgiAndInvalidAndDialplanOrderByCreatetimeAscIdAsc(MainContext.SYSTEM_ORGI, false, dialplanId)) {
+                Iterator<CallOutTarget> targets = stream.skip(loaded).iterator();
+                while (targets.hasNext()) {
+                    buffer.setLength(0);
+                    buffer.append(prefix).append(escape(targets.next().getPhone())).append(suffix);
+                    chunk.add(buffer.toString());
+                    if (chunk.size() >= loadChunk || !targets.hasNext()) {
+                        loaded = push(key, loadKey, lockKey, token, chunk, loaded);
+                        chunk.clear();
+                        logger.info("[callout executor] dialplan {} loaded {} of {} targets", dialplanId, loaded, total);
+                    }
+                }
+            }
 
             JsonObject payload2 = new JsonObject();
             payload2.addProperty("concurrency", curconcurrence);
@@ -150,7 +246,84 @@ public class CallOutPlanTask {
             payload.addProperty("channel", dialplanVoiceChannelIdef);
             payload.add("sips", sips);
             publish(String.format(Constants.FS_CHANNEL_CC_TO_FS, dp.getVoicechannel().getBaseURL()), payload.toString());
+
+            // 加载完成
+            delKey(loadKey);
+        } finally {
+            unlock(lockKey, token);
+        }
+    }
+
+    /**
+     * 推送一批号码并提交加载进度，同时为加载锁续期；
+     * WATCH 加载锁，锁已过期或被其它节点持有时不提交
+     *
+     * @return 提交后已加载的数量
+     */
+    private long push(final String key, final String loadKey, final String lockKey, final String token, final List<String> chunk, final long loaded) {
+        final long committed = loaded + chunk.size();
+        List<Object> results = redis.execute(new SessionCallback<List<Object>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.watch(lockKey);
+                if (!token.equals(ops.opsForValue().get(lockKey))) {
+                    ops.unwatch();
+                    return null;
+                }
+                ops.multi();
+                ops.opsForList().leftPushAll(key, chunk);
+                ops.opsForHash().put(loadKey, "loaded", String.valueOf(committed));
+                ops.expire(lockKey, LOAD_LOCK_TTL, TimeUnit.MILLISECONDS);
+                return ops.exec();
+            }
+        });
+        if (results == null || results.isEmpty()) {
+            throw new IllegalStateException("Fail to push targets into " + key + ", or load lock " + lockKey + " is lost");
+        }
+        return committed;
+    }
+
+    private boolean lock(final String lockKey, final String token) {
+        Boolean locked = redis.execute((RedisCallback<Boolean>) connection -> connection.set(lockKey.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8),
+                Expiration.milliseconds(LOAD_LOCK_TTL),
+                RedisStringCommands.SetOption.SET_IF_ABSENT));
+        return locked != null && locked;
+    }
+
+    private void unlock(final String lockKey, final String token) {
+        Long released = redis.execute(UNLOCK, Collections.singletonList(lockKey), token);
+        if (released == null || released == 0) {
+            logger.warn("[callout executor] load lock {} expired before release", lockKey);
+        }
+    }
+
+    /**
+     * JSON 字符串转义
+     */
+    private static String escape(final String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                if (sb == null) {
+                    sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else {
+                    sb.append(String.format("\\u%04x", (int) c));
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
         }
+        return sb != null ? sb.toString() : value;
     }
 
     /**
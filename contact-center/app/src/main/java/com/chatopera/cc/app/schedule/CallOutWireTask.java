@@ -29,6 +29,7 @@ import com.chatopera.cc.util.mobile.MobileNumberUtils;
 import com.chatopera.cc.app.model.*;
 import com.chatopera.cc.app.cache.CacheHelper;
 import com.chatopera.cc.app.persistence.es.ContactsRepository;
+import com.chatopera.cc.app.persistence.impl.StatusEventRollupService;
 import com.chatopera.cc.app.persistence.repository.*;
 import com.chatopera.cc.util.OnlineUserUtils;
 import com.google.gson.JsonObject;
@@ -90,6 +91,9 @@ public class CallOutWireTask implements MessageListener {
     @Autowired
     OrganRepository organRes;
 
+    @Autowired
+    StatusEventRollupService statusEventRollupService;
+
     @Autowired
     private StringRedisTemplate redis;
 
@@ -386,12 +390,16 @@ public class CallOutWireTask implements MessageListener {
 
         StatusEvent se = statusEventRes.findById(as.getOwner());
         if (se != null) {
+            final boolean closed = MainContext.CallServiceStatus.HANGUP.toString().equals(se.getStatus());
             se.setStatus(MainContext.CallServiceStatus.HANGUP.toString());
             se.setEndtime(endtime);
             se.setDuration((int) (endtime.getTime() - se.getStarttime().getTime()) / 1000);
             se.setRecordingfile(recordingfile);
             // 设置录音文件位置
             statusEventRes.save(se);
+            // 重复关闭的通话记录不再汇总
+            if (!closed)
+                statusEventRollupService.hangup(se);
         }
     }
 
@@ -545,6 +553,7 @@ public class CallOutWireTask implements MessageListener {
         se.setEndtime(event.getCreatetime());
         se.setLocaldatetime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(event.getCreatetime()));
         statusEventRes.save(se);
+        statusEventRollupService.hangup(se);
     }
 
 
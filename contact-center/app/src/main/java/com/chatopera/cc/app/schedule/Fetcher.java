@@ -16,12 +16,10 @@
  */
 package com.chatopera.cc.app.schedule;
 
-import java.io.IOException;
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.chatopera.cc.app.basic.MainContext;
-import com.chatopera.cc.app.cache.CacheHelper;
 import com.chatopera.cc.app.basic.resource.Resource;
 import com.chatopera.cc.app.model.JobDetail;
 import com.chatopera.cc.app.basic.MainUtils;
@@ -39,6 +37,7 @@ public class Fetcher implements Runnable {
 	private AtomicInteger errors = new AtomicInteger(0); // total pages fetched
 	private Resource resource = null ;
 	private int processpages = 0 ;
+	private ProgressReporter progress = null ;
 	/**
 	 * 构建任务信息
 	 * @param job
@@ -59,6 +58,7 @@ public class Fetcher implements Runnable {
 			this.job.setLastindex(job.getStartindex()) ;
 			this.pages = new AtomicInteger((int)job.getReport().getPages()); // total pages fetched
 			processpages = this.pages.intValue() ;
+			progress = new ProgressReporter(job , processpages) ;
 			job.getReport().setDataid(this.job.getId());
 		}catch (Exception e1) {
 			String msg = "TaskID:"+job.getId() + " TaskName:"+job.getName()+" TaskType:"+job.getTasktype()+" Date:"+new Date()+" Exception:"+e1.getMessage() ;
@@ -79,7 +79,7 @@ public class Fetcher implements Runnable {
 			synchronized (activeThreads) {
 				activeThreads.incrementAndGet(); // count threads
 			}
-			reportStatus();
+			progress.flush(pages.intValue(), errors(), activeThreads.intValue());
 			OutputTextFormat obj;
 			while (job.isFetcher() && resource != null && (obj = resource.next()) != null) {
 				try {
@@ -110,7 +110,7 @@ public class Fetcher implements Runnable {
 				 * end中包含了 Close 方法
 				 */
 				try {
-					reportStatus();
+					progress.flush(pages.intValue(), this.job.getReport().getErrors(), activeThreads.intValue());
 					this.resource.end(this.pages.intValue()==processpages) ;
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -135,7 +135,6 @@ public class Fetcher implements Runnable {
 	
 	private void output(OutputTextFormat object)throws Exception {
 		try {
-			this.reportStatus();
 			OutputTextFormat outputTextFormat = resource.getText(object);
 			if(outputTextFormat==null){
 				return ;
@@ -144,22 +143,16 @@ public class Fetcher implements Runnable {
 				resource.process(outputTextFormat, job) ;
 				job.setStartindex(job.getStartindex()+1) ;
 			}
-			reportStatus();
+			progress.record(pages.intValue(), errors(), activeThreads.intValue());
 		} catch (Exception e) {
 			throw e;
 		}
 	}
 	
 	/**
-	 * 
-	 * @throws IOException
+	 * 执行中的错误数量，执行结束后合并到 Reporter
 	 */
-	private void reportStatus() throws IOException {
-		if(this.job!=null && this.job.getReport()!=null){
-			this.job.getReport().setPages(this.pages.intValue()) ;
-			this.job.getReport().setThreads(activeThreads.intValue()) ;
-			this.job.getReport().setStatus(new StringBuffer().append("已处理：").append(this.job.getReport().getPages()).append(", 错误：").append(this.job.getReport().getErrors()).append("，处理速度：").append(job.getReport().getSpeed()).append("条/秒，线程数：").append(this.job.getReport().getThreads()).append(this.job.getReport().getDetailmsg()!=null ? "，详细信息："+this.job.getReport().getDetailmsg() : "").toString());
-			CacheHelper.getJobCacheBean().put(job.getId(), job , job.getOrgi());
-		}
+	private int errors(){
+		return this.job.getReport().getErrors()+errors.intValue() ;
 	}
 }
\ No newline at end of file
@@ -16,30 +16,61 @@
  */
 package com.chatopera.cc.app.schedule;
 
-import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.persistence.repository.LogRepository;
+import com.chatopera.cc.util.log.LogSink;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import com.chatopera.cc.app.model.Log;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 日志批量写入数据库，写入统计通过 /metrics 暴露
+ */
 @Configuration
 @EnableScheduling
-public class LogTask {
+public class LogTask implements PublicMetrics {
+	
+	private final static int BATCH_SIZE = 500 ;
 	
 	@Autowired
 	private LogRepository logRes;
 	
-	@Scheduled(fixedDelay= 1000) // 每5秒执行一次
+	private final LongAdder written = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	
+	@Scheduled(fixedDelay= 1000) // 每1秒执行一次
 	public void log(){
 		/**
-    	 * 日志处理
+    	 * 日志处理，每批一个事务、JDBC 批量插入
     	 */
-    	Log log = null ;
-    	while((log = MainContext.tempLogQueue.poll()) != null){
-			logRes.save(log) ;
+		List<Log> logs = new ArrayList<Log>(BATCH_SIZE) ;
+		while(LogSink.drainTo(logs, BATCH_SIZE) > 0){
+			logRes.save(logs) ;
+			written.add(logs.size());
+			batches.increment();
+			logs.clear();
 		}
 	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Number>("log.sink.depth", LogSink.size()));
+		metrics.add(new Metric<Number>("log.sink.capacity", LogSink.CAPACITY));
+		metrics.add(new Metric<Number>("log.sink.accepted", LogSink.getAccepted()));
+		metrics.add(new Metric<Number>("log.sink.sampled", LogSink.getSampled()));
+		metrics.add(new Metric<Number>("log.sink.dropped", LogSink.getDropped()));
+		metrics.add(new Metric<Number>("log.sink.written", written.sum()));
+		metrics.add(new Metric<Number>("log.sink.batches", batches.sum()));
+		return metrics;
+	}
 }
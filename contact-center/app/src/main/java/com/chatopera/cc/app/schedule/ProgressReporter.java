@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.schedule;
+
+import java.util.concurrent.TimeUnit;
+
+import com.chatopera.cc.app.cache.CacheHelper;
+import com.chatopera.cc.app.cache.hazelcast.CacheRegion;
+import com.chatopera.cc.app.model.JobDetail;
+import com.chatopera.cc.app.model.JobProgress;
+import com.chatopera.cc.app.model.Reporter;
+
+/**
+ * 作业进度上报
+ * <p>
+ * 每处理一条记录调用 {@link #record}，距上次上报超过 {@link #INTERVAL} 毫秒或处理了 {@link #COUNT} 条记录时
+ * 更新 Reporter 并向集群缓存写入一条 {@link JobProgress}；开始和结束时调用 {@link #flush} 立即上报。
+ * <p>
+ * 处理速度是时间加权的指数滑动平均，窗口为 {@link #WINDOW} 毫秒。只由执行作业的线程调用，不需要同步。
+ */
+public class ProgressReporter {
+	
+	public final static long INTERVAL = 1000 ;
+	
+	public final static int COUNT = 1000 ;
+	
+	public final static long WINDOW = 10000 ;
+	
+	/**
+	 * 进度在集群缓存中的保留时间，作业结束后可查看最后一次进度
+	 */
+	private final static long TTL = 1 ;
+	
+	private final JobDetail job ;
+	
+	private long lastTime = System.currentTimeMillis() ;
+	private long lastPages ;
+	private int pending ;
+	private double speed = -1 ;
+	
+	public ProgressReporter(JobDetail job , long pages){
+		this.job = job ;
+		this.lastPages = pages ;
+	}
+	
+	/**
+	 * 处理了一条记录
+	 */
+	public void record(long pages , int errors , int threads){
+		if(++pending >= COUNT || System.currentTimeMillis() - lastTime >= INTERVAL){
+			flush(pages, errors, threads);
+		}
+	}
+	
+	/**
+	 * 立即上报
+	 */
+	public void flush(long pages , int errors , int threads){
+		long now = System.currentTimeMillis() ;
+		long elapsed = now - lastTime ;
+		if(elapsed > 0){
+			double rate = (pages - lastPages) * 1000d / elapsed ;
+			double alpha = 1 - Math.exp(-(double) elapsed / WINDOW) ;
+			speed = speed < 0 ? rate : speed + alpha * (rate - speed) ;
+			lastTime = now ;
+			lastPages = pages ;
+		}
+		pending = 0 ;
+		
+		Reporter report = job.getReport() ;
+		double current = speed < 0 ? 0 : speed ;
+		report.setPages(pages) ;
+		report.setThreads(threads) ;
+		report.setSpeed(current) ;
+		report.setStatus(new StringBuilder().append("已处理：").append(pages).append(", 错误：").append(errors).append("，处理速度：").append(Math.round(current)).append("条/秒，线程数：").append(threads).append(report.getDetailmsg()!=null ? "，详细信息："+report.getDetailmsg() : "").toString());
+		
+		CacheRegion<String, JobProgress> region = CacheHelper.getJobProgressRegion() ;
+		if(region != null){
+			region.set(job.getId(), new JobProgress(job.getId(), job.getOrgi(), pages, errors, current, threads, now), TTL, TimeUnit.HOURS) ;
+		}
+	}
+}
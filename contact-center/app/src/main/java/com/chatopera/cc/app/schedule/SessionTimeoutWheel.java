@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.schedule;
+
+import com.chatopera.cc.app.algorithm.AutomaticServiceDist;
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.basic.MainUtils;
+import com.chatopera.cc.app.cache.CacheHelper;
+import com.chatopera.cc.app.im.client.NettyClients;
+import com.chatopera.cc.app.im.message.ChatMessage;
+import com.chatopera.cc.app.im.router.OutMessageRouter;
+import com.chatopera.cc.app.model.*;
+import com.chatopera.cc.app.persistence.repository.AgentUserTaskRepository;
+import com.chatopera.cc.app.persistence.repository.ChatMessageRepository;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话超时：访客超时未回复、坐席超时未回复、排队超时
+ * <p>
+ * 每个会话在时间轮上只登记最近的一个到期时间。会话进入排队或服务状态、访客发来消息时登记；
+ * 到期后重新读取 AgentUserTask，满足超时条件时处理，然后按最新的时间登记下一次检查。
+ * 消息只会让到期时间推后，所以期间有新消息时到期检查只是提前了，不需要每条消息都取消、重新登记。
+ * <p>
+ * 同一个会话可能在多个节点上登记，处理前在集群中按 会话、超时类型、计时起点 抢占，同一次超时只处理一次。
+ * 启动后和每隔 {@code cskefu.session.timeout.reconcile.interval} 从数据库登记本节点分区中进行中的会话，
+ * 补上节点重启、分区迁移和超时配置修改后遗漏的会话。
+ */
+@Component
+public class SessionTimeoutWheel {
+    private final static Logger logger = LoggerFactory.getLogger(SessionTimeoutWheel.class);
+
+    private final static String CLAIMS = "session_timeout_claim";
+
+    /**
+     * 到期但没有处理（坐席不在线等）时，和原来的轮询一样每 5 秒再检查一次
+     */
+    private final static long RETRY_MILLIS = 5000;
+
+    @Value("${cskefu.session.timeout.threads:4}")
+    private int threads;
+
+    @Autowired
+    private AgentUserTaskRepository agentUserTaskRes;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private HashedWheelTimer timer;
+
+    private ExecutorService executor;
+
+    private IMap<String, String> claims;
+
+    /**
+     * 会话 ID → 已登记的检查
+     */
+    private final ConcurrentMap<String, Timeout> timeouts = new ConcurrentHashMap<String, Timeout>();
+
+    @PostConstruct
+    private void init() {
+        claims = hazelcastInstance.getMap(CLAIMS);
+        timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "session-timeout-wheel");
+            thread.setDaemon(true);
+            return thread;
+        }, 1, TimeUnit.SECONDS, 512);
+        final AtomicInteger sequence = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "session-timeout-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        timer.stop();
+        executor.shutdown();
+    }
+
+    /**
+     * 按缓存中的访客会话登记，还不知道提醒状态，按最早可能的时间检查
+     *
+     * @param agentUser
+     */
+    public void schedule(final AgentUser agentUser) {
+        SessionConfig sessionConfig = AutomaticServiceDist.initSessionConfig(agentUser.getOrgi());
+        if (sessionConfig != null) {
+            schedule(agentUser.getId(), deadline(sessionConfig, agentUser.getStatus(), agentUser.getLastmessage(), agentUser.getLastgetmessage(), agentUser.getLogindate(), null, null, null));
+        }
+    }
+
+    public void schedule(final AgentUserTask task) {
+        SessionConfig sessionConfig = AutomaticServiceDist.initSessionConfig(task.getOrgi());
+        if (sessionConfig != null) {
+            schedule(task.getId(), deadline(sessionConfig, task));
+        }
+    }
+
+    /**
+     * 已经登记了更早的检查时保留原来的，检查时会按最新的时间重新登记
+     *
+     * @param id
+     * @param deadline 毫秒，0 表示没有需要检查的超时
+     */
+    private void schedule(final String id, final long deadline) {
+        if (id == null || deadline <= 0) {
+            return;
+        }
+        timeouts.compute(id, (key, exist) -> {
+            if (exist != null && !exist.isExpired() && !exist.isCancelled() && ((Check) exist.task()).deadline <= deadline) {
+                return exist;
+            }
+            if (exist != null) {
+                exist.cancel();
+            }
+            long delay = Math.max(0, deadline - System.currentTimeMillis());
+            return timer.newTimeout(new Check(key, deadline), delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    public int size() {
+        return timeouts.size();
+    }
+
+    /**
+     * 登记本节点分区中进行中的会话，启动后执行一次，之后定期校对
+     */
+    @Scheduled(initialDelay = 20000, fixedDelayString = "${cskefu.session.timeout.reconcile.interval:300000}")
+    public void reconcile() {
+        List<SessionConfig> sessionConfigList = AutomaticServiceDist.initSessionConfigList();
+        if (sessionConfigList == null || MainContext.getContext() == null) {
+            return;
+        }
+        int count = 0;
+        for (SessionConfig sessionConfig : sessionConfigList) {
+            for (String status : new String[]{MainContext.AgentUserStatusEnum.INSERVICE.toString(), MainContext.AgentUserStatusEnum.INQUENE.toString()}) {
+                for (AgentUserTask task : agentUserTaskRes.findByStatusAndOrgi(status, sessionConfig.getOrgi())) {
+                    Member owner = hazelcastInstance.getPartitionService().getPartition(task.getId()).getOwner();
+                    if (owner == null || owner.localMember()) {
+                        schedule(task.getId(), deadline(sessionConfig, task));
+                        count++;
+                    }
+                }
+            }
+        }
+        logger.info("[timeout] reconciled {} sessions, {} scheduled", count, timeouts.size());
+    }
+
+    private void check(final String id) throws Exception {
+        AgentUserTask task = agentUserTaskRes.findOne(id);
+        if (task == null) {
+            return;
+        }
+        SessionConfig sessionConfig = AutomaticServiceDist.initSessionConfig(task.getOrgi());
+        if (sessionConfig == null) {
+            return;
+        }
+        if (MainContext.AgentUserStatusEnum.INSERVICE.toString().equals(task.getStatus())) {
+            visitorTimeout(sessionConfig, task);
+            agentTimeout(sessionConfig, task);
+        } else if (MainContext.AgentUserStatusEnum.INQUENE.toString().equals(task.getStatus())) {
+            queueTimeout(sessionConfig, task);
+        }
+        long deadline = deadline(sessionConfig, task);
+        if (deadline > 0) {
+            schedule(id, Math.max(deadline, System.currentTimeMillis() + RETRY_MILLIS));
+        }
+    }
+
+    /**
+     * 访客超时未回复：提醒，设置了再次超时的，再次超时后结束会话
+     */
+    private void visitorTimeout(final SessionConfig sessionConfig, final AgentUserTask task) throws Exception {
+        if (sessionConfig.isSessiontimeout()) {        //设置了启用 超时提醒
+            if (!expired(task.getLastmessage(), sessionConfig.getTimeout())) {
+                return;
+            }
+            AgentUser agentUser = (AgentUser) CacheHelper.getAgentUserCacheBean().getCacheObject(task.getUserid(), MainContext.SYSTEM_ORGI);
+            if (agentUser != null && agentUser.getAgentno() != null) {
+                AgentStatus agentStatus = (AgentStatus) CacheHelper.getAgentStatusCacheBean().getCacheObject(agentUser.getAgentno(), task.getOrgi());
+                task.setAgenttimeouttimes(task.getAgenttimeouttimes() + 1);
+                if (agentStatus != null && (task.getWarnings() == null || task.getWarnings().equals("0"))) {
+                    claimed(claim(task.getId(), "warning", task.getLastmessage()), () -> {
+                        task.setWarnings("1");
+                        task.setWarningtime(new Date());
+
+                        //发送提示消息
+                        processMessage(sessionConfig, sessionConfig.getTimeoutmsg(), agentStatus.getUsername(), agentUser, agentStatus, task);
+                        agentUserTaskRes.save(task);
+                    });
+                } else if (sessionConfig.isResessiontimeout() && agentStatus != null && expired(task.getWarningtime(), sessionConfig.getRetimeout())) {    //再次超时未回复
+                    claimed(claim(task.getId(), "finish", task.getWarningtime()), () -> {
+                        processMessage(sessionConfig, sessionConfig.getRetimeoutmsg(), sessionConfig.getServicename(), agentUser, agentStatus, task);
+                        finish(agentUser, task);
+                    });
+                }
+            }
+        } else if (sessionConfig.isResessiontimeout()) {    //未启用超时提醒，只设置了超时断开
+            if (!expired(task.getLastmessage(), sessionConfig.getRetimeout())) {
+                return;
+            }
+            AgentUser agentUser = (AgentUser) CacheHelper.getAgentUserCacheBean().getCacheObject(task.getUserid(), MainContext.SYSTEM_ORGI);
+            if (agentUser != null) {
+                AgentStatus agentStatus = (AgentStatus) CacheHelper.getAgentStatusCacheBean().getCacheObject(agentUser.getAgentno(), task.getOrgi());
+                if (agentStatus != null && expired(task.getWarningtime(), sessionConfig.getRetimeout())) {    //再次超时未回复
+                    claimed(claim(task.getId(), "finish", task.getWarningtime()), () -> {
+                        processMessage(sessionConfig, sessionConfig.getRetimeoutmsg(), agentStatus.getUsername(), agentUser, agentStatus, task);
+                        finish(agentUser, task);
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * 坐席超时未回复：提醒一次，访客再发来消息后重新计算
+     */
+    private void agentTimeout(final SessionConfig sessionConfig, final AgentUserTask task) throws Exception {
+        if (!sessionConfig.isAgentreplaytimeout() || !expired(task.getLastgetmessage(), sessionConfig.getAgenttimeout())) {
+            return;
+        }
+        AgentUser agentUser = (AgentUser) CacheHelper.getAgentUserCacheBean().getCacheObject(task.getUserid(), MainContext.SYSTEM_ORGI);
+        if (agentUser != null) {
+            AgentStatus agentStatus = (AgentStatus) CacheHelper.getAgentStatusCacheBean().getCacheObject(agentUser.getAgentno(), task.getOrgi());
+            if (agentStatus != null && ((task.getReptimes() != null && task.getReptimes().equals("0")) || task.getReptimes() == null)) {
+                claimed(claim(task.getId(), "agent", task.getLastgetmessage(), task.getLastmessage()), () -> {
+                    task.setReptimes("1");
+                    task.setReptime(new Date());
+
+                    //发送提示消息
+                    processMessage(sessionConfig, sessionConfig.getAgenttimeoutmsg(), sessionConfig.getServicename(), agentUser, agentStatus, task);
+                    agentUserTaskRes.save(task);
+                });
+            }
+        }
+    }
+
+    /**
+     * 排队超时，超时断开
+     */
+    private void queueTimeout(final SessionConfig sessionConfig, final AgentUserTask task) throws Exception {
+        if (!sessionConfig.isQuene() || !expired(task.getLogindate(), sessionConfig.getQuenetimeout())) {
+            return;
+        }
+        AgentUser agentUser = (AgentUser) CacheHelper.getAgentUserCacheBean().getCacheObject(task.getUserid(), MainContext.SYSTEM_ORGI);
+        if (agentUser != null) {
+            claimed(claim(task.getId(), "queue", task.getLogindate()), () -> {
+                processMessage(sessionConfig, sessionConfig.getQuenetimeoutmsg(), sessionConfig.getServicename(), agentUser, null, task);
+                finish(agentUser, task);
+            });
+        }
+    }
+
+    private void finish(final AgentUser agentUser, final AgentUserTask task) throws Exception {
+        AutomaticServiceDist.serviceFinish(agentUser, task.getOrgi());
+    }
+
+    /**
+     * 在集群中抢占一次超时，计时起点相同的超时只有一个节点处理
+     *
+     * @return 抢占到时返回抢占的 key，否则返回 null
+     */
+    private String claim(final String id, final String type, final Date... since) {
+        StringBuilder key = new StringBuilder(id).append(':').append(type);
+        for (Date date : since) {
+            key.append(':').append(date != null ? date.getTime() : 0);
+        }
+        return claims.putIfAbsent(key.toString(), localMember(), 1, TimeUnit.HOURS) == null ? key.toString() : null;
+    }
+
+    /**
+     * 抢占到后执行超时处理；处理失败时释放抢占并抛出，由 {@link Check} 记录日志后稍后重试，
+     * 不会因为一次失败在抢占的有效期内不再处理
+     */
+    private void claimed(final String claim, final Action action) throws Exception {
+        if (claim == null) {
+            return;
+        }
+        try {
+            action.run();
+        } catch (Exception e) {
+            claims.remove(claim, localMember());
+            throw e;
+        }
+    }
+
+    private String localMember() {
+        return hazelcastInstance.getCluster().getLocalMember().getUuid();
+    }
+
+    private static boolean expired(final Date since, final int seconds) {
+        return since != null && since.before(MainUtils.getLastTime(seconds));
+    }
+
+    private static long deadline(final SessionConfig sessionConfig, final AgentUserTask task) {
+        return deadline(sessionConfig, task.getStatus(), task.getLastmessage(), task.getLastgetmessage(), task.getLogindate(), task.getWarnings(), task.getWarningtime(), task.getReptimes());
+    }
+
+    /**
+     * 下一次可能超时的时间，和超时处理的条件对应
+     *
+     * @return 毫秒，0 表示没有需要检查的超时
+     */
+    private static long deadline(final SessionConfig sessionConfig, final String status, final Date lastmessage, final Date lastgetmessage,
+                                 final Date logindate, final String warnings, final Date warningtime, final String reptimes) {
+        long deadline = Long.MAX_VALUE;
+        if (MainContext.AgentUserStatusEnum.INSERVICE.toString().equals(status)) {
+            if (sessionConfig.isSessiontimeout()) {
+                if (warnings == null || warnings.equals("0")) {
+                    deadline = Math.min(deadline, after(lastmessage, sessionConfig.getTimeout()));
+                } else if (sessionConfig.isResessiontimeout()) {
+                    deadline = Math.min(deadline, Math.max(after(lastmessage, sessionConfig.getTimeout()), after(warningtime, sessionConfig.getRetimeout())));
+                }
+            } else if (sessionConfig.isResessiontimeout()) {
+                deadline = Math.min(deadline, Math.max(after(lastmessage, sessionConfig.getRetimeout()), after(warningtime, sessionConfig.getRetimeout())));
+            }
+            if (sessionConfig.isAgentreplaytimeout() && (reptimes == null || reptimes.equals("0"))) {
+                deadline = Math.min(deadline, after(lastgetmessage, sessionConfig.getAgenttimeout()));
+            }
+        } else if (MainContext.AgentUserStatusEnum.INQUENE.toString().equals(status) && sessionConfig.isQuene()) {
+            deadline = after(logindate, sessionConfig.getQuenetimeout());
+        }
+        return deadline != Long.MAX_VALUE ? deadline : 0;
+    }
+
+    private static long after(final Date since, final int seconds) {
+        return since != null ? since.getTime() + TimeUnit.SECONDS.toMillis(seconds) : Long.MAX_VALUE;
+    }
+
+    /**
+     * appid : appid ,
+     * userid:userid,
+     * sign:session,
+     * touser:touser,
+     * session: session ,
+     * orgi:orgi,
+     * username:agentstatus,
+     * nickname:agentstatus,
+     * message : message
+     *
+     * @param sessionConfig
+     * @param agentUser
+     * @param task
+     */
+
+    private void processMessage(SessionConfig sessionConfig, String message, String servicename, AgentUser agentUser, AgentStatus agentStatus, AgentUserTask task) {
+
+        MessageOutContent outMessage = new MessageOutContent();
+        if (StringUtils.isNotBlank(message)) {
+            outMessage.setMessage(message);
+            outMessage.setMessageType(MainContext.MediaTypeEnum.TEXT.toString());
+            outMessage.setCalltype(MainContext.CallTypeEnum.OUT.toString());
+            outMessage.setAgentUser(agentUser);
+            outMessage.setSnsAccount(null);
+
+            ChatMessage data = new ChatMessage();
+            if (agentUser != null) {
+                data.setAppid(agentUser.getAppid());
+
+                data.setUserid(agentUser.getUserid());
+                data.setUsession(agentUser.getUserid());
+                data.setTouser(agentUser.getUserid());
+                data.setOrgi(agentUser.getOrgi());
+                data.setUsername(agentUser.getUsername());
+                data.setMessage(message);
+
+                data.setId(MainUtils.getUUID());
+                data.setContextid(agentUser.getContextid());
+
+                data.setAgentserviceid(agentUser.getAgentserviceid());
+
+                data.setCalltype(MainContext.CallTypeEnum.OUT.toString());
+                if (StringUtils.isNotBlank(agentUser.getAgentno())) {
+                    data.setTouser(agentUser.getUserid());
+                }
+                data.setChannel(agentUser.getChannel());
+
+                data.setUsession(agentUser.getUserid());
+
+                outMessage.setContextid(agentUser.getContextid());
+                outMessage.setFromUser(data.getUserid());
+                outMessage.setToUser(data.getTouser());
+                outMessage.setChannelMessage(data);
+                if (agentStatus != null) {
+                    data.setUsername(agentStatus.getUsername());
+                    outMessage.setNickName(agentStatus.getUsername());
+                } else {
+                    data.setUsername(servicename);
+                    outMessage.setNickName(servicename);
+                }
+                outMessage.setCreatetime(data.getCreatetime());
+
+                /**
+                 * 保存消息
+                 */
+                MainContext.getContext().getBean(ChatMessageRepository.class).save(data);
+
+                // 同时发送消息给双方
+                if (agentUser != null && StringUtils.isNotBlank(agentUser.getAgentno())) {
+                    NettyClients.getInstance().publishAgentEventMessage(agentUser.getAgentno(), MainContext.MessageTypeEnum.MESSAGE.toString(), data);
+                }
+
+                if (StringUtils.isNotBlank(data.getTouser())) {
+                    OutMessageRouter router = null;
+                    router = (OutMessageRouter) MainContext.getContext().getBean(agentUser.getChannel());
+                    if (router != null) {
+                        router.handler(data.getTouser(), MainContext.MessageTypeEnum.MESSAGE.toString(), agentUser.getAppid(), outMessage);
+                    }
+                }
+
+            }
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private class Check implements TimerTask {
+        private final String id;
+        private final long deadline;
+
+        private Check(String id, long deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            timeouts.remove(id, timeout);
+            executor.execute(() -> {
+                try {
+                    check(id);
+                } catch (Exception e) {
+                    logger.error("[timeout] fail to check session {}", id, e);
+                    schedule(id, System.currentTimeMillis() + RETRY_MILLIS);
+                }
+            });
+        }
+    }
+}
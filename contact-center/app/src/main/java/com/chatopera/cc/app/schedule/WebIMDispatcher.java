@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.app.schedule;
+
+import com.chatopera.cc.app.im.client.IMPresenceDirectory;
+import com.chatopera.cc.app.im.codec.IMEnvelope;
+import com.chatopera.cc.app.im.util.IMServiceUtils;
+import com.chatopera.cc.util.Constants;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 跨节点消息分发
+ * <p>
+ * 按 {@link IMPresenceDirectory} 将消息发布到用户所在节点的频道，找不到目标节点时广播；
+ * 接收方本节点没有该用户的连接时，移除目录中过期的记录并改为广播，消息不会因为目录过期而丢失。
+ * 转发的广播会再次到达已经直接收到该消息的节点，接收时按消息 ID 去重，每个节点只投递一次。
+ */
+public abstract class WebIMDispatcher implements MessageListener {
+    private final static Logger logger = LoggerFactory.getLogger(WebIMDispatcher.class);
+
+    @Value("${application.node.id}")
+    protected String appNodeId;
+
+    /**
+     * 使用StringRedisTemplate而不是RedisTemplate解决序列化问题
+     * https://stackoverflow.com/questions/13215024/weird-redis-key-with-spring-data-jedis
+     */
+    @Autowired
+    protected StringRedisTemplate redis;
+
+    @Autowired
+    protected IMPresenceDirectory presence;
+
+    /**
+     * 以启动时间为起点，节点重启后不会重复使用去重窗口内的消息 ID
+     */
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() << 16);
+
+    /**
+     * 最近收到的消息 ID，转发广播在毫秒级到达，保留一分钟足够
+     */
+    private final Cache<String, Boolean> received = CacheBuilder.newBuilder()
+            .expireAfterWrite(1, TimeUnit.MINUTES).maximumSize(100000).build();
+
+    /**
+     * 目录中的类型，{@link IMPresenceDirectory#AGENT} 或 {@link IMPresenceDirectory#ONLINE_USER}
+     */
+    protected abstract String getNamespace();
+
+    /**
+     * 频道名称模板，参数为节点 ID
+     */
+    protected abstract String getChannelPattern();
+
+    /**
+     * 发送给本节点上的连接
+     *
+     * @return 是否有连接收到
+     */
+    protected abstract boolean deliver(String id, String event, Object data);
+
+    /**
+     * 本节点上该用户的连接数
+     */
+    protected abstract int connections(String id);
+
+    /**
+     * Publish binary envelope with redis PubSub to the nodes where the user is connected,
+     * broadcast only when no such node is known
+     *
+     * @param id
+     * @param event
+     * @param data
+     * @throws IOException
+     */
+    public void publish(final String id, final String event, final Serializable data) throws IOException {
+        final byte[] body = new IMEnvelope(appNodeId, sequence.incrementAndGet(), id, event, IMServiceUtils.encode(data)).toBytes();
+        final Set<String> nodes = presence.getNodes(getNamespace(), id);
+        boolean delivered = false;
+        for (String node : nodes) {
+            if (appNodeId.equals(node)) {
+                // 本节点已经没有该用户的连接
+                presence.offline(getNamespace(), id, () -> connections(id));
+                continue;
+            }
+            Long receivers = send(node, body);
+            if (receivers != null && receivers > 0) {
+                delivered = true;
+            } else {
+                // 目标节点没有订阅，已下线
+                logger.info("[instant messaging] node {} is gone, remove presence of {}", node, id);
+                presence.remove(getNamespace(), id, node);
+            }
+        }
+        if (!delivered) {
+            send(Constants.INSTANT_MESSAGING_BROADCAST_NODE, body);
+        }
+    }
+
+    private Long send(final String node, final byte[] body) {
+        final byte[] channel = String.format(getChannelPattern(), node).getBytes(StandardCharsets.UTF_8);
+        return redis.execute((RedisCallback<Long>) connection -> connection.publish(channel, body));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] bytes) {
+        logger.debug("[instant messaging] onMessage {}", message);
+        if (!IMEnvelope.isEnvelope(message.getBody())) {
+            logger.warn("[instant messaging] unknown message format on {}", new String(message.getChannel(), StandardCharsets.UTF_8));
+            return;
+        }
+        try {
+            IMEnvelope envelope = IMEnvelope.fromBytes(message.getBody());
+            if (received.asMap().putIfAbsent(envelope.getMessageId(), Boolean.TRUE) != null) {
+                logger.debug("[instant messaging] skip duplicated message {}", envelope.getMessageId());
+                return;
+            }
+            boolean sent = deliver(envelope.getId(), envelope.getEvent(), IMServiceUtils.decode(envelope.getData()));
+            if (!sent && !isBroadcast(message)) {
+                // 目录中的记录已过期，移除后广播给其它节点
+                presence.offline(getNamespace(), envelope.getId(), () -> connections(envelope.getId()));
+                send(Constants.INSTANT_MESSAGING_BROADCAST_NODE, message.getBody());
+            }
+        } catch (Exception e) {
+            logger.error("onMessage", e);
+        }
+    }
+
+    private boolean isBroadcast(Message message) {
+        return String.format(getChannelPattern(), Constants.INSTANT_MESSAGING_BROADCAST_NODE)
+                .equals(new String(message.getChannel(), StandardCharsets.UTF_8));
+    }
+}
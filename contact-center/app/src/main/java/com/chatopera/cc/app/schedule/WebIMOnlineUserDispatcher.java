@@ -16,33 +16,21 @@
 
 package com.chatopera.cc.app.schedule;
 
+import com.chatopera.cc.app.im.client.IMPresenceDirectory;
 import com.chatopera.cc.app.im.client.NettyClients;
-import com.chatopera.cc.app.im.util.IMServiceUtils;
 import com.chatopera.cc.util.Constants;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.connection.Message;
-import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.ListOperations;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.io.*;
-import java.util.Base64;
 
 /**
  * 访客消息分发
  */
 @Component
-public class WebIMOnlineUserDispatcher implements MessageListener {
-    private final static Logger logger = LoggerFactory.getLogger(WebIMOnlineUserDispatcher.class);
+public class WebIMOnlineUserDispatcher extends WebIMDispatcher {
 
     private ListOperations<String, String> redisListOps;
     private HashOperations<String, String, String> redisHashOps;
@@ -56,47 +44,29 @@ public class WebIMOnlineUserDispatcher implements MessageListener {
     @Value("${spring.redis.database}")
     private String redisDB;
 
-    @Value("${application.node.id}")
-    private String appNodeId;
-
-
-    /**
-     * 使用StringRedisTemplate而不是RedisTemplate解决序列化问题
-     * https://stackoverflow.com/questions/13215024/weird-redis-key-with-spring-data-jedis
-     */
-    @Autowired
-    private StringRedisTemplate redis;
-
     @PostConstruct
     private void init() {
         redisListOps = redis.opsForList();
         redisHashOps = redis.opsForHash();
     }
 
-    /**
-     * Publish Message into Channel with redis PubSub
-     *
-     * @param j
-     */
-    public void publish(JsonObject j) {
-        ChannelTopic ct = new ChannelTopic(String.format(Constants.INSTANT_MESSTRING_WEBIM_ONLINE_USER_PATTERN, appNodeId));
-        j.addProperty("node", appNodeId);
-        redis.convertAndSend(ct.getTopic(), j.toString());
+    @Override
+    protected String getNamespace() {
+        return IMPresenceDirectory.ONLINE_USER;
+    }
+
+    @Override
+    protected String getChannelPattern() {
+        return Constants.INSTANT_MESSTRING_WEBIM_ONLINE_USER_PATTERN;
+    }
+
+    @Override
+    protected boolean deliver(String id, String event, Object data) {
+        return NettyClients.getInstance().sendIMEventMessage(id, event, data);
     }
 
     @Override
-    public void onMessage(Message message, byte[] bytes) {
-        logger.debug("[instant messaging] onMessage {}", message);
-        String payload = new String(message.getBody());
-        JsonParser parser = new JsonParser();
-        JsonObject j = parser.parse(payload).getAsJsonObject();
-        logger.debug("[instant messaging] message body {}", j.toString());
-        try {
-            NettyClients.getInstance().sendIMEventMessage(j.get("id").getAsString(),
-                    j.get("event").getAsString(),
-                    IMServiceUtils.deserialize(j.get("data").getAsString()));
-        } catch (Exception e) {
-            logger.error("onMessage", e);
-        }
+    protected int connections(String id) {
+        return NettyClients.getInstance().getIMClientsNum(id);
     }
 }
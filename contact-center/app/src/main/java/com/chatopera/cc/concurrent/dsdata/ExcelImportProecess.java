@@ -16,36 +16,31 @@
  */
 package com.chatopera.cc.concurrent.dsdata;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
-import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.model.JobDetail;
+import com.chatopera.cc.app.model.Reporter;
 import com.chatopera.cc.app.model.SysDic;
 import com.chatopera.cc.app.model.TableProperties;
 import com.chatopera.cc.app.basic.MainUtils;
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFDataFormat;
-import org.apache.poi.hssf.usermodel.HSSFDateUtil;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.core.env.Environment;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.chatopera.cc.exchange.DataExchangeInterface;
@@ -54,12 +49,53 @@ import com.chatopera.cc.app.persistence.repository.ReporterRepository;
 import com.chatopera.cc.app.model.MetadataTable;
 import com.chatopera.cc.app.model.UKeFuDic;
 
+/**
+ * Excel 导入
+ * <p>
+ * 逐行读取文件（见 {@link ExcelRowReader}），每 {@code cskefu.import.batch.size} 行为一批，
+ * 由 {@code cskefu.import.threads} 个线程并行完成字典翻译、关联字段查找和数据校验；
+ * 转换完成的批次按读取顺序在当前线程创建对象并调用 {@link com.chatopera.cc.concurrent.dsdata.process.JPAProcess#process(List)} 批量写入。
+ * 同时处理中的批次数量有上限，读取速度超过写入速度时等待，内存占用与文件大小无关。
+ * <p>
+ * 每隔 {@code cskefu.import.report.interval} 毫秒更新一次导入进度。
+ */
 public class ExcelImportProecess extends DataProcess{
-	private DecimalFormat format = new DecimalFormat("###");
 	private AtomicInteger pages = new AtomicInteger() , errors = new AtomicInteger(); 
 	
+	private final static Pattern NUMSTR = Pattern.compile("[\\d]{1,}") ;
+	private final static Pattern DATE = Pattern.compile("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2}") ;
+	private final static Pattern DATETIME = Pattern.compile("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}") ;
+	private final static Pattern DATE_PREFIX = Pattern.compile("[\\d]{4,4}-[\\d]{2,2}-{1,1}") ;
+	
+	private final int batchSize ;
+	private final int threads ;
+	private final long interval ;
+	
+	/**
+	 * 标题行各列对应的字段
+	 */
+	private TableProperties[] columns ;
+	/**
+	 * 关联字段 → （名称 → ID）
+	 */
+	private final Map<String, Map<String, String>> refIds = new HashMap<String, Map<String, String>>() ;
+	/**
+	 * 没有预先加载关联数据的字段，由关联表处理导入的对象
+	 */
+	private final List<DataExchangeInterface> exchanges = new ArrayList<DataExchangeInterface>() ;
+	
+	private ExecutorService executor ;
+	private List<ImportRow> batch ;
+	private final LinkedList<Future<List<ImportRow>>> pending = new LinkedList<Future<List<ImportRow>>>() ;
+	private long lastReport ;
+	
 	public ExcelImportProecess(DSDataEvent event){
 		super(event);
+		Environment env = MainContext.getContext().getEnvironment() ;
+		this.batchSize = Math.max(1, env.getProperty("cskefu.import.batch.size", Integer.class, 500)) ;
+		this.threads = Math.max(1, env.getProperty("cskefu.import.threads", Integer.class, 4)) ;
+		this.interval = env.getProperty("cskefu.import.report.interval", Long.class, 3000L) ;
+		this.batch = new ArrayList<ImportRow>(batchSize) ;
 	}
 	
 	@Override
@@ -67,209 +103,45 @@ public class ExcelImportProecess extends DataProcess{
 		processExcel(event);
 	}
 	
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private void processExcel(final DSDataEvent event){
-		InputStream is = null;  
     	try {
     		event.getDSData().getReport().setTableid(event.getDSData().getTask().getId());
     		if(event.getDSData().getUser()!=null){
     			event.getDSData().getReport().setUserid(event.getDSData().getUser().getId());
     			event.getDSData().getReport().setUsername(event.getDSData().getUser().getUsername());
     		}
-    		
-            try {  
-                is = new FileInputStream(event.getDSData().getFile());  
-            } catch (FileNotFoundException ex) {  
-                ex.printStackTrace();
-            }  
-            boolean isExcel2003 = true;  
-            if (isExcel2007(event.getDSData().getFile().getName())) {  
-                isExcel2003 = false;  
-            }
             
-            Workbook wb = null;  
-            try {  
-                wb = isExcel2003 ? new HSSFWorkbook(is) : new XSSFWorkbook(is);  
-            } catch (IOException ex) {  
-                ex.printStackTrace();
-            }  
-            Sheet sheet = wb.getSheetAt(0);  
-            Row titleRow = sheet.getRow(0);
-            Row valueRow = sheet.getRow(1);
-            int totalRows = sheet.getPhysicalNumberOfRows(); 
-            int colNum = titleRow.getPhysicalNumberOfCells();
-            for(int i=2 ; i<totalRows && valueRow == null ; i++){
-            	valueRow = sheet.getRow(i);
-            	if(valueRow !=null){
-            		break ;
-            	}
-            }
             /**
              * 需要检查Mapping 是否存在
              */
             long start = System.currentTimeMillis() ;
-            Map<Object, List> refValues = new HashMap<Object , List>() ;
+            lastReport = start ;
             MetadataTable table = event.getDSData().getTask() ;
             for(TableProperties tp : table.getTableproperty()){
             	if(tp.isReffk() && !StringUtils.isBlank(tp.getReftbid())){
             		DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid()) ;
-            		refValues.put(tp.getFieldname(), exchange.getListDataByIdAndOrgi(null, null, event.getOrgi())) ;
+            		List<?> dataList = exchange.getListDataByIdAndOrgi(null, null, event.getOrgi()) ;
+            		if(dataList != null) {
+            			refIds.put(tp.getFieldname(), getRefids(dataList)) ;
+            		}else {
+            			exchanges.add(exchange) ;
+            		}
             	}
             }
             
-            for(int i=1 ; i<totalRows; i++){
-            	Row row = sheet.getRow(i) ;
-            	Object data = null ;
-            	if(row!=null){
-					if(event.getDSData().getClazz() != null) {
-						data = event.getDSData().getClazz().newInstance() ;
-					}
-					Map<Object, Object> values = new HashMap<Object , Object>() ;
-					ArrayListMultimap<String, Object> multiValues = ArrayListMultimap.create();
-					boolean skipDataVal = false; //跳过数据校验
-					StringBuffer pkStr = new StringBuffer() , allStr = new StringBuffer();
-					for(int col=0 ; col<colNum ; col++){
-						Cell value = row.getCell(col) ;
-						Cell title = titleRow.getCell(col) ;
-						String titleValue = getValue(title) ;
-						TableProperties tableProperties = getTableProperties(event, titleValue);
-						if(tableProperties!=null && value!=null){
-							String valuestr = getValue(value) ;
-							if(!StringUtils.isBlank(valuestr)) {
-								if(tableProperties.isModits()){
-									if(!StringUtils.isBlank(valuestr)) {
-										multiValues.put(tableProperties.getFieldname(), valuestr) ;
-									}
-								}else{
-									if(tableProperties.isSeldata()){
-										SysDic sysDic = UKeFuDic.getInstance().getDicItem(valuestr) ;
-										if(sysDic!=null){
-											values.put(tableProperties.getFieldname(), sysDic.getName()) ;
-										}else{
-											List<SysDic> dicItemList = UKeFuDic.getInstance().getSysDic(tableProperties.getSeldatacode());
-											if(dicItemList!=null && dicItemList.size() > 0) {
-												for(SysDic dicItem : dicItemList) {
-													if(dicItem.getName().equals(valuestr)) {
-														values.put(tableProperties.getFieldname(), dicItem.isDiscode()?dicItem.getCode():dicItem.getId()) ; break ;
-													}
-												}
-											}
-										}
-									}else if(tableProperties.isReffk() && refValues.get(tableProperties.getFieldname())!=null){
-										List keys = refValues.get(tableProperties.getFieldname()) ;
-										if(keys != null) {
-											values.put(tableProperties.getFieldname() , getRefid(tableProperties,refValues.get(tableProperties.getFieldname()) , valuestr)) ;
-										}
-									}else{
-										values.put(tableProperties.getFieldname(), valuestr) ;
-									}
-									if(tableProperties.isPk() && !tableProperties.getFieldname().equalsIgnoreCase("id")){
-										pkStr.append(valuestr) ;
-									}
-								}
-								allStr.append(valuestr) ;
-							}
-							event.getDSData().getReport().setBytes(event.getDSData().getReport().getBytes() + valuestr.length());
-							event.getDSData().getReport().getAtompages().incrementAndGet() ;
-						}
-					}
-					values.put("orgi", event.getOrgi()) ;
-					if(values.get("id") == null){
-						if(pkStr.length() > 0) {
-							values.put("id", MainUtils.md5(pkStr.append(event.getDSData().getTask().getTablename()).toString())) ;
-						}else {
-							values.put("id", MainUtils.md5(allStr.append(event.getDSData().getTask().getTablename()).toString())) ;
-						}
-					}
-					if(event.getValues()!=null && event.getValues().size() > 0){
-						values.putAll(event.getValues());
-					}
-					values.putAll(multiValues.asMap());
-					String validFaildMessage = null ;
-					for(TableProperties tp : table.getTableproperty()){
-						if(!StringUtils.isBlank(tp.getDefaultvaluetitle())) {
-							String valuestr = (String) values.get(tp.getFieldname()) ;
-							if(tp.getDefaultvaluetitle().indexOf("required") >= 0 && StringUtils.isBlank(valuestr)) {
-								skipDataVal = true ; validFaildMessage = "required" ;break ;
-							}else if(valuestr!=null && (tp.getDefaultvaluetitle().indexOf("numstr") >= 0 && !valuestr.matches("[\\d]{1,}"))) {
-								skipDataVal = true ; validFaildMessage = "numstr" ;break ;
-							}else if(valuestr!=null && (tp.getDefaultvaluetitle().indexOf("datenum") >= 0 || tp.getDefaultvaluetitle().indexOf("datetime") >= 0 )) {
-								if(!valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2}") && !valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}")) {
-									skipDataVal = true ; validFaildMessage = "datenum" ; break ;
-								}else {
-									if(valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-{1,1}")) {
-										if("date".equals(tp.getDefaultfieldvalue())) {
-											values.put(tp.getFieldname(), MainUtils.simpleDateFormat.parse(valuestr));
-										}else {
-											values.put(tp.getFieldname(), MainUtils.simpleDateFormat.format(MainUtils.simpleDateFormat.parse(valuestr)));
-										}
-									}else if(valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}")) {
-										if("date".equals(tp.getDefaultfieldvalue())) {
-											values.put(tp.getFieldname(), MainUtils.dateFormate.parse(valuestr));
-										}else {
-											values.put(tp.getFieldname(), MainUtils.simpleDateFormat.format(MainUtils.dateFormate.parse(valuestr)));
-										}
-										
-									}
-								}
-							}
-						}
-		            	if(tp.isReffk() && !StringUtils.isBlank(tp.getReftbid()) && refValues.get(tp.getFieldname()) == null){
-		            		DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid()) ;
-		            		exchange.process(data, event.getOrgi());
-		            	}
-		            }
-					
-					if(!values.containsKey("orgi")) {
-						skipDataVal = true ;
-					}
-					event.getDSData().getReport().setTotal(pages.intValue());
-					values.put("creater", event.getValues().get("creater")) ;
-					if(data!=null && skipDataVal == false) {
-						MainUtils.populate(data, values);
-						pages.incrementAndGet() ;
-						event.getDSData().getProcess().process(data);
-					}else if(data == null){
-						/**
-						 * 导入的数据，只写入ES
-						 */
-						if(skipDataVal == true) {	//跳过
-							values.put("status", "invalid") ;
-							values.put("validresult", "invalid") ;
-							values.put("validmessage", validFaildMessage!=null ? validFaildMessage : "") ;
-						}else {
-							values.put("validresult", "valid") ;
-						}
-						values.put("status", MainContext.NamesDisStatusType.NOT.toString()) ;
-						values.put("batid", event.getBatid()) ;
-						
-						values.put("createtime", System.currentTimeMillis()) ;
-						values.put("callstatus", MainContext.NameStatusTypeEnum.NOTCALL.toString()) ;
-						values.put("execid", event.getDSData().getReport().getId()) ;
-						
-						if(i%500 == 0) {
-							MainContext.getContext().getBean(ReporterRepository.class).save(event.getDSData().getReport()) ;
-						}
-						
-						if(values.get("cusid")==null) {
-							/**
-							 * 
-							 */
-							values.put("cusid", values.get("id"))  ;
-						}
-						pages.incrementAndGet() ;
-						event.getDSData().getProcess().process(values);
-						
-						/**
-						 * 访客信息表
-						 */
-					}
-					if(skipDataVal == true) {	//跳过
-						errors.incrementAndGet();
-						continue ;
-					}
-            	}
-			}
+            final AtomicInteger threadNum = new AtomicInteger() ;
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+            	Thread thread = new Thread(runnable, "excel-import-" + threadNum.incrementAndGet()) ;
+            	thread.setDaemon(true);
+            	return thread ;
+            }) ;
+            event.getDSData().getReport().setThreads(threads);
+            
+            ExcelRowReader.read(event.getDSData().getFile(), this::row);
+            submit();
+            while(pending.size() > 0) {
+            	write(pending.removeFirst());
+            }
             
             event.setTimes(System.currentTimeMillis() - start);
             event.getDSData().getReport().setEndtime(new Date());
@@ -281,12 +153,8 @@ public class ExcelImportProecess extends DataProcess{
 		} catch (Exception e) {
 			e.printStackTrace();
 		}finally{
-			if(is!=null){
-				try {
-					is.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			if(executor!=null){
+				executor.shutdownNow();
 			}
 			if(event.getDSData().getFile().exists()){
 				event.getDSData().getFile().delete() ;
@@ -314,36 +182,243 @@ public class ExcelImportProecess extends DataProcess{
 		}
 	}
 	
-	private String getRefid(TableProperties tp , List<Object> dataList , String value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException{
-		String id = "" ;
+	/**
+	 * 读取到一行，第一行为标题
+	 */
+	private void row(int index , List<String> values) throws Exception {
+		if(columns == null) {
+			columns = new TableProperties[values.size()] ;
+			for(int col = 0 ; col < values.size() ; col++) {
+				columns[col] = getTableProperties(event, values.get(col) != null ? values.get(col) : "") ;
+			}
+			return ;
+		}
+		batch.add(new ImportRow(values)) ;
+		if(batch.size() >= batchSize) {
+			submit();
+		}
+	}
+	
+	/**
+	 * 当前批次提交到转换线程，处理中的批次超过线程数时先写入最早的批次
+	 */
+	private void submit() throws Exception {
+		if(batch.size() > 0) {
+			final List<ImportRow> rows = batch ;
+			batch = new ArrayList<ImportRow>(batchSize) ;
+			pending.add(executor.submit(() -> {
+				SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd") , datetimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss") ;
+				for(ImportRow row : rows) {
+					convert(row, dateFormat, datetimeFormat);
+				}
+				return rows ;
+			})) ;
+		}
+		while(pending.size() > threads) {
+			write(pending.removeFirst());
+		}
+	}
+	
+	/**
+	 * 转换一行数据，在转换线程中执行，只读取共享数据
+	 */
+	private void convert(ImportRow row , SimpleDateFormat dateFormat , SimpleDateFormat datetimeFormat) throws Exception {
+		MetadataTable table = event.getDSData().getTask() ;
+		Map<Object, Object> values = row.values ;
+		ArrayListMultimap<String, Object> multiValues = ArrayListMultimap.create();
+		StringBuffer pkStr = new StringBuffer() , allStr = new StringBuffer();
+		for(int col=0 ; col<columns.length ; col++){
+			String valuestr = col < row.cells.size() ? row.cells.get(col) : null ;
+			TableProperties tableProperties = columns[col] ;
+			if(tableProperties!=null && valuestr!=null){
+				if(!StringUtils.isBlank(valuestr)) {
+					if(tableProperties.isModits()){
+						multiValues.put(tableProperties.getFieldname(), valuestr) ;
+					}else{
+						if(tableProperties.isSeldata()){
+							SysDic sysDic = UKeFuDic.getInstance().getDicItem(valuestr) ;
+							if(sysDic!=null){
+								values.put(tableProperties.getFieldname(), sysDic.getName()) ;
+							}else{
+								List<SysDic> dicItemList = UKeFuDic.getInstance().getSysDic(tableProperties.getSeldatacode());
+								if(dicItemList!=null && dicItemList.size() > 0) {
+									for(SysDic dicItem : dicItemList) {
+										if(dicItem.getName().equals(valuestr)) {
+											values.put(tableProperties.getFieldname(), dicItem.isDiscode()?dicItem.getCode():dicItem.getId()) ; break ;
+										}
+									}
+								}
+							}
+						}else if(tableProperties.isReffk() && refIds.get(tableProperties.getFieldname())!=null){
+							String id = refIds.get(tableProperties.getFieldname()).get(valuestr) ;
+							values.put(tableProperties.getFieldname() , id != null ? id : "") ;
+						}else{
+							values.put(tableProperties.getFieldname(), valuestr) ;
+						}
+						if(tableProperties.isPk() && !tableProperties.getFieldname().equalsIgnoreCase("id")){
+							pkStr.append(valuestr) ;
+						}
+					}
+					allStr.append(valuestr) ;
+				}
+				row.bytes += valuestr.length() ;
+				row.cellnum ++ ;
+			}
+		}
+		row.cells = null ;
+		values.put("orgi", event.getOrgi()) ;
+		if(values.get("id") == null){
+			if(pkStr.length() > 0) {
+				values.put("id", MainUtils.md5(pkStr.append(event.getDSData().getTask().getTablename()).toString())) ;
+			}else {
+				values.put("id", MainUtils.md5(allStr.append(event.getDSData().getTask().getTablename()).toString())) ;
+			}
+		}
+		if(event.getValues()!=null && event.getValues().size() > 0){
+			values.putAll(event.getValues());
+		}
+		values.putAll(multiValues.asMap());
+		String validFaildMessage = null ;
+		for(TableProperties tp : table.getTableproperty()){
+			if(!StringUtils.isBlank(tp.getDefaultvaluetitle())) {
+				String valuestr = (String) values.get(tp.getFieldname()) ;
+				if(tp.getDefaultvaluetitle().indexOf("required") >= 0 && StringUtils.isBlank(valuestr)) {
+					row.skip = true ; validFaildMessage = "required" ;break ;
+				}else if(valuestr!=null && (tp.getDefaultvaluetitle().indexOf("numstr") >= 0 && !NUMSTR.matcher(valuestr).matches())) {
+					row.skip = true ; validFaildMessage = "numstr" ;break ;
+				}else if(valuestr!=null && (tp.getDefaultvaluetitle().indexOf("datenum") >= 0 || tp.getDefaultvaluetitle().indexOf("datetime") >= 0 )) {
+					if(!DATE.matcher(valuestr).matches() && !DATETIME.matcher(valuestr).matches()) {
+						row.skip = true ; validFaildMessage = "datenum" ; break ;
+					}else {
+						if(DATE_PREFIX.matcher(valuestr).matches()) {
+							if("date".equals(tp.getDefaultfieldvalue())) {
+								values.put(tp.getFieldname(), dateFormat.parse(valuestr));
+							}else {
+								values.put(tp.getFieldname(), dateFormat.format(dateFormat.parse(valuestr)));
+							}
+						}else if(DATETIME.matcher(valuestr).matches()) {
+							if("date".equals(tp.getDefaultfieldvalue())) {
+								values.put(tp.getFieldname(), datetimeFormat.parse(valuestr));
+							}else {
+								values.put(tp.getFieldname(), dateFormat.format(datetimeFormat.parse(valuestr)));
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		if(!values.containsKey("orgi")) {
+			row.skip = true ;
+		}
+		values.put("creater", event.getValues().get("creater")) ;
+		if(event.getDSData().getClazz() == null){
+			/**
+			 * 导入的数据，只写入ES
+			 */
+			if(row.skip == true) {	//跳过
+				values.put("status", "invalid") ;
+				values.put("validresult", "invalid") ;
+				values.put("validmessage", validFaildMessage!=null ? validFaildMessage : "") ;
+			}else {
+				values.put("validresult", "valid") ;
+			}
+			values.put("status", MainContext.NamesDisStatusType.NOT.toString()) ;
+			values.put("batid", event.getBatid()) ;
+			
+			values.put("createtime", System.currentTimeMillis()) ;
+			values.put("callstatus", MainContext.NameStatusTypeEnum.NOTCALL.toString()) ;
+			values.put("execid", event.getDSData().getReport().getId()) ;
+			
+			if(values.get("cusid")==null) {
+				values.put("cusid", values.get("id"))  ;
+			}
+		}
+	}
+	
+	/**
+	 * 等待一批数据转换完成，创建对象后批量写入
+	 */
+	private void write(Future<List<ImportRow>> future) throws Exception {
+		List<ImportRow> rows ;
+		try {
+			rows = future.get() ;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e ;
+		}
+		Reporter report = event.getDSData().getReport() ;
+		List<Object> datas = new ArrayList<Object>(rows.size()) ;
+		for(ImportRow row : rows) {
+			report.setBytes(report.getBytes() + row.bytes);
+			report.getAtompages().addAndGet(row.cellnum) ;
+			Object data = null ;
+			if(event.getDSData().getClazz() != null) {
+				data = event.getDSData().getClazz().newInstance() ;
+			}
+			for(DataExchangeInterface exchange : exchanges) {
+				exchange.process(data, event.getOrgi());
+			}
+			if(data!=null && row.skip == false) {
+				MainUtils.populate(data, row.values);
+				pages.incrementAndGet() ;
+				datas.add(data) ;
+			}else if(data == null){
+				pages.incrementAndGet() ;
+				datas.add(row.values) ;
+			}
+			if(row.skip == true) {	//跳过
+				errors.incrementAndGet();
+			}
+		}
+		if(datas.size() > 0) {
+			event.getDSData().getProcess().process(datas);
+		}
+		report.setTotal(pages.intValue());
+		
+		long now = System.currentTimeMillis() ;
+		if(now - lastReport >= interval) {
+			lastReport = now ;
+			report.setPages(pages.intValue());
+			report.setErrors(errors.intValue());
+			report.setSpeed(pages.intValue() * 1000d / Math.max(1, now - report.getStart()));
+			MainContext.getContext().getBean(ReporterRepository.class).save(report) ;
+		}
+	}
+	
+	/**
+	 * 关联数据的名称到 ID 的索引，与逐条比较的结果一致：
+	 * 名称（name、tag）相同时取最后一条，否则取第一条标题（title）或 ID 相同的数据
+	 */
+	private Map<String, String> getRefids(List<?> dataList) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException{
+		Map<String, String> names = new HashMap<String, String>() , others = new HashMap<String, String>() ;
 		for(Object data : dataList){
-			Object target = null ;
+			String id = BeanUtils.getProperty(data, "id") ;
 			if(PropertyUtils.isReadable(data, "name")){
-				target = BeanUtils.getProperty(data, "name") ;
-				if(target!=null && target.equals(value)){
-					id = BeanUtils.getProperty(data, "id") ;
+				String target = BeanUtils.getProperty(data, "name") ;
+				if(target!=null){
+					names.put(target, id) ;
 				}
 			}
 			if(PropertyUtils.isReadable(data, "tag")){
-				target = BeanUtils.getProperty(data, "tag") ;
-				if(target!=null && target.equals(value)){
-					id = BeanUtils.getProperty(data, "id") ;
+				String target = BeanUtils.getProperty(data, "tag") ;
+				if(target!=null){
+					names.put(target, id) ;
 				}
 			}
-			if(StringUtils.isBlank(id) && PropertyUtils.isReadable(data, "title")){
-				target = BeanUtils.getProperty(data, "title") ; 
-				if(target!=null && target.equals(value)){
-					id = BeanUtils.getProperty(data, "id") ;
+			if(PropertyUtils.isReadable(data, "title")){
+				String target = BeanUtils.getProperty(data, "title") ;
+				if(target!=null && !others.containsKey(target)){
+					others.put(target, id) ;
 				}
 			}
-			if(StringUtils.isBlank(id)){
-				target = BeanUtils.getProperty(data, "id") ; 
-				if(target!=null && target.equals(value)){
-					id = target.toString() ;
-				}
+			if(id!=null && !others.containsKey(id)){
+				others.put(id, id) ;
 			}
 		}
-		return id ;
+		for(Map.Entry<String, String> entry : names.entrySet()) {
+			others.put(entry.getKey(), entry.getValue()) ;
+		}
+		return others ;
 	}
 	
 	private TableProperties getTableProperties(DSDataEvent event , String title){
@@ -356,211 +431,15 @@ public class ExcelImportProecess extends DataProcess{
 		return tableProperties;
 	}
 	
-	private boolean isExcel2007(String fileName) {  
-        return fileName.matches("^.+\\.(?i)(xlsx)$");  
-    } 
-	@SuppressWarnings("deprecation")
-	private String getValue(Cell cell){
-		String strCell = "";
-		if(cell!=null){
-			short dt = cell.getCellStyle().getDataFormat() ;
-	        switch (cell.getCellType()) {
-		        case HSSFCell.CELL_TYPE_STRING:
-		            strCell = cell.getStringCellValue();
-		            break;
-		        case HSSFCell.CELL_TYPE_BOOLEAN:
-		            strCell = String.valueOf(cell.getBooleanCellValue());
-		            break;
-		        case HSSFCell.CELL_TYPE_BLANK:
-		            strCell = "";
-		            break;
-		        case HSSFCell.CELL_TYPE_NUMERIC:
-		        	if (HSSFDateUtil.isCellDateFormatted(cell)) {
-		        		SimpleDateFormat sdf = null;  
-		                if (cell.getCellStyle().getDataFormat() == HSSFDataFormat.getBuiltinFormat("h:mm")) {  
-		                    sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");  
-		                } else {// 日期  
-		                    sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");  
-		                }  
-		                strCell = sdf.format(cell.getDateCellValue());  
-		        	} else if (cell.getCellStyle().getDataFormat() == 58) {  
-		                // 处理自定义日期格式：m月d日(通过判断单元格的格式id解决，id的值是58)  
-		                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");  
-		                double value = cell.getNumericCellValue();  
-		                strCell = sdf.format(org.apache.poi.ss.usermodel.DateUtil.getJavaDate(value));  
-		            }else{
-		            	
-		            	if (HSSFDateUtil.isCellDateFormatted(cell)) {
-		            		SimpleDateFormat sdf = null;  
-			                if (cell.getCellStyle().getDataFormat() == HSSFDataFormat.getBuiltinFormat("h:mm")) {  
-			                    sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");  
-			                } else {// 日期  
-			                    sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");  
-			                }  
-			                strCell = sdf.format(cell.getDateCellValue());  
-			        	}else{
-			            	boolean isNumber = isNumberFormat(dt) ;
-			        		if(isNumber){
-			        			DecimalFormat numberFormat = getNumberFormat(cell.getCellStyle().getDataFormatString()) ;
-			        			if(numberFormat!=null){
-			        				strCell = String.valueOf(numberFormat.format(cell.getNumericCellValue()));
-			        			}else{
-			        				strCell = String.valueOf(cell.getNumericCellValue());
-			        			}
-			        		}else{
-			        			strCell = String.valueOf(format.format(cell.getNumericCellValue())) ;
-			        		}
-			        	}
-	                }
-		            break;
-		        case HSSFCell.CELL_TYPE_FORMULA: {
-	                // 判断当前的cell是否为Date
-		        	boolean isNumber = isNumberFormat(dt) ;
-		        	try{
-		        		if(isNumber){
-		        			strCell = String.valueOf(cell.getNumericCellValue());
-			        	}else{
-			        		strCell = "";
-			        	}
-		        	}catch(Exception ex){
-		        		ex.printStackTrace();
-		        		strCell = cell.getRichStringCellValue().getString();  
-		        	}
-	                break;
-	            }
-		        default:
-		            strCell = "";
-		            break;
-	        }
-	        if (strCell.equals("") || strCell == null) {
-	            return "";
-	        }
-		}
-        return strCell;
-	}
-	
-	@SuppressWarnings({ "deprecation", "unused" })
-	private String getDataType(Cell cell){
-		String dataType = "string";
-		if(cell!=null){
-			short dt = cell.getCellStyle().getDataFormat() ;
-	        switch (cell.getCellType()) {
-		        case HSSFCell.CELL_TYPE_STRING:
-		        	dataType = "string";
-		            break;
-		        case HSSFCell.CELL_TYPE_BOOLEAN:
-		        	dataType = "number";
-		            break;
-		        case HSSFCell.CELL_TYPE_BLANK:
-		        	if (HSSFDateUtil.isCellDateFormatted(cell)) {
-		        		if (cell.getCellStyle().getDataFormat() == HSSFDataFormat.getBuiltinFormat("h:mm")) {  
-		        			dataType = "datetime" ;  
-		                } else {// 日期  
-		                	dataType = "datetime" ;  
-		                }  
-		        		
-		        	} else if (cell.getCellStyle().getDataFormat() == 58){
-		        		dataType = "datetime" ;
-		        	}else{
-		        		boolean isNumber = isNumberFormat(dt) ;
-		        		if(isNumber){
-		        			dataType = "number";
-		        		}else{
-		        			dataType = "string";
-		        		}
-		        	}
-		            break;
-		        case HSSFCell.CELL_TYPE_NUMERIC:
-		        	if (HSSFDateUtil.isCellDateFormatted(cell)) {
-		        		if (cell.getCellStyle().getDataFormat() == HSSFDataFormat.getBuiltinFormat("h:mm")) {  
-		        			dataType = "datetime" ;  
-		                } else {// 日期  
-		                	dataType = "datetime" ;  
-		                }  
-		        		
-		        	} else if (cell.getCellStyle().getDataFormat() == 58){
-		        		dataType = "datetime" ;
-		        	}else{
-		        		if (HSSFDateUtil.isCellDateFormatted(cell)) {
-			        		if (cell.getCellStyle().getDataFormat() == HSSFDataFormat.getBuiltinFormat("h:mm")) {  
-			        			dataType = "datetime" ;  
-			                } else {// 日期  
-			                	dataType = "datetime" ;  
-			                }  
-			        	}else{
-			        		boolean isNumber = isNumberFormat(dt) ;
-			        		if(isNumber){
-			        			dataType = "number";
-			        		}else{
-			        			dataType = "string";
-			        		}
-			        	}
-	                }
-		            break;
-		        case HSSFCell.CELL_TYPE_FORMULA: {
-	                // 判断当前的cell是否为Date
-		        	boolean isNumber = isNumberFormat(dt) ;
-	        		if(isNumber){
-	        			dataType = "number";
-	        		}else{
-	        			dataType = "string";
-	        		}
-	                break;
-	            }
-		        default:
-		        	dataType = "string";
-		            break;
-	        }
-	       
-		}
-        return dataType;
-	}
-	
-	private DecimalFormat getNumberFormat(String dataformat){
-		DecimalFormat numberFormat = null ;
-		int index = dataformat.indexOf("_") > 0 ?  dataformat.indexOf("_") : dataformat.indexOf(";") ;
-		if(index > 0){
-			String format = dataformat.substring( 0 , index) ;
-			if(format.matches("[\\d.]{1,}")){
-				numberFormat = new DecimalFormat(format);
-			}
-		}
+	private static class ImportRow {
+		private List<String> cells ;
+		private final Map<Object, Object> values = new HashMap<Object , Object>() ;
+		private boolean skip ;	//跳过数据校验
+		private long bytes ;
+		private int cellnum ;
 		
-		return numberFormat ;
-	}
-	
-	private boolean isNumberFormat(short dataType){
-		boolean number = false ;
-		switch(dataType){
-			case 180 : number = true  ; break; 
-			case 181 : number = true  ; break; 
-			case 182 : number = true  ; break;
-			case 178 : number = true  ; break;
-			case 177 : number = true  ; break;
-			case 176 : number = true  ; break;
-			case 183 : number = true  ; break; 
-			case 185 : number = true  ; break; 
-			case 186 : number = true  ; break;
-			case 179 : number = true  ; break;
-			case 187 : number = true  ; break; 
-			case 7 : number = true  ; break; 
-			case 8 : number = true  ; break; 
-			case 44 : number = true  ; break; 
-			case 10 : number = true  ; break; 
-			case 12 : number = true  ; break; 
-			case 13 : number = true  ; break; 
-			case 188 : number = true  ; break; 
-			case 189 : number = true  ; break; 
-			case 190 : number = true  ; break; 
-			case 191 : number = true  ; break; 
-			case 192 : number = true  ; break; 
-			case 193 : number = true  ; break; 
-			case 194 : number = true  ; break; 
-			case 11 : number = true  ; break; 
-
+		private ImportRow(List<String> cells) {
+			this.cells = cells ;
 		}
-		return number ;
 	}
-
-
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.concurrent.dsdata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * 逐行读取上传的 Excel 第一个工作表
+ * <p>
+ * xlsx 使用 SAX 事件方式解析工作表，共享字符串只读访问，内存占用与行数无关；
+ * xls 最多 65536 行，仍使用 HSSFWorkbook 读取。单元格统一转换为字符串，日期格式为 yyyy-MM-dd HH:mm:ss，
+ * 两种格式的转换规则相同。
+ */
+public class ExcelRowReader {
+	
+	public interface RowHandler {
+		/**
+		 * @param index 行号，从 0 开始，空行不回调
+		 * @param values 各列的值，缺少的单元格为 null
+		 * @throws Exception
+		 */
+		public void row(int index , List<String> values) throws Exception ;
+	}
+	
+	public static boolean isExcel2007(String fileName) {  
+		return fileName.matches("^.+\\.(?i)(xlsx)$");  
+	}
+	
+	public static void read(File file , RowHandler handler) throws Exception {
+		if(isExcel2007(file.getName())) {
+			readXlsx(file, handler);
+		}else {
+			readXls(file, handler);
+		}
+	}
+	
+	private static void readXlsx(File file , RowHandler handler) throws Exception {
+		OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ) ;
+		try {
+			XSSFReader reader = new XSSFReader(pkg) ;
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg) ;
+			XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData() ;
+			if(!sheets.hasNext()) {
+				return ;
+			}
+			InputStream sheet = sheets.next() ;
+			try {
+				XMLReader parser = SAXHelper.newXMLReader() ;
+				parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, strings, new SheetHandler(handler), new CellFormatter(), false));
+				parser.parse(new InputSource(sheet));
+			} catch (RowHandlerException e) {
+				throw (Exception) e.getCause() ;
+			} finally {
+				sheet.close();
+			}
+		} finally {
+			pkg.revert();	//只读打开，不写回文件
+		}
+	}
+	
+	private static void readXls(File file , RowHandler handler) throws Exception {
+		InputStream is = new FileInputStream(file) ;
+		try {
+			HSSFWorkbook wb = new HSSFWorkbook(is) ;
+			Sheet sheet = wb.getSheetAt(0) ;
+			CellFormatter formatter = new CellFormatter() ;
+			for(int i = sheet.getFirstRowNum() ; i <= sheet.getLastRowNum() ; i++) {
+				Row row = sheet.getRow(i) ;
+				if(row != null) {
+					List<String> values = new ArrayList<String>() ;
+					for(int col = 0 ; col < row.getLastCellNum() ; col++) {
+						Cell cell = row.getCell(col) ;
+						values.add(cell != null ? getValue(formatter, cell) : null) ;
+					}
+					handler.row(i, values);
+				}
+			}
+		} finally {
+			is.close();
+		}
+	}
+	
+	@SuppressWarnings("deprecation")
+	private static String getValue(CellFormatter formatter , Cell cell){
+		String strCell = "";
+		switch (cell.getCellType()) {
+			case HSSFCell.CELL_TYPE_STRING:
+				strCell = cell.getStringCellValue();
+				break;
+			case HSSFCell.CELL_TYPE_BOOLEAN:
+				strCell = String.valueOf(cell.getBooleanCellValue());
+				break;
+			case HSSFCell.CELL_TYPE_NUMERIC:
+				strCell = formatter.formatRawCellContents(cell.getNumericCellValue(), cell.getCellStyle().getDataFormat(), cell.getCellStyle().getDataFormatString()) ;
+				break;
+			case HSSFCell.CELL_TYPE_FORMULA: {
+				try{
+					if(isNumberFormat(cell.getCellStyle().getDataFormat())){
+						strCell = String.valueOf(cell.getNumericCellValue());
+					}
+				}catch(Exception ex){
+					strCell = cell.getRichStringCellValue().getString();  
+				}
+				break;
+			}
+			default:
+				break;
+		}
+		return strCell != null ? strCell : "";
+	}
+	
+	private static DecimalFormat getNumberFormat(String dataformat){
+		DecimalFormat numberFormat = null ;
+		if(dataformat != null) {
+			int index = dataformat.indexOf("_") > 0 ?  dataformat.indexOf("_") : dataformat.indexOf(";") ;
+			if(index > 0){
+				String format = dataformat.substring( 0 , index) ;
+				if(format.matches("[\\d.]{1,}")){
+					numberFormat = new DecimalFormat(format);
+				}
+			}
+		}
+		return numberFormat ;
+	}
+	
+	private static boolean isNumberFormat(int dataType){
+		switch(dataType){
+			case 7 : case 8 : case 10 : case 11 : case 12 : case 13 : case 44 :
+			case 176 : case 177 : case 178 : case 179 : case 180 : case 181 : case 182 : case 183 :
+			case 185 : case 186 : case 187 : case 188 : case 189 : case 190 : case 191 : case 192 : case 193 : case 194 :
+				return true ;
+			default :
+				return false ;
+		}
+	}
+	
+	/**
+	 * 数值单元格的转换：日期、自定义日期格式（m月d日，格式 ID 58）、数字格式，其它按整数输出
+	 */
+	private static class CellFormatter extends DataFormatter {
+		private final DecimalFormat format = new DecimalFormat("###");
+		private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		
+		@Override
+		public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+			if((DateUtil.isADateFormat(formatIndex, formatString) || formatIndex == 58) && DateUtil.isValidExcelDate(value)) {
+				return dateFormat.format(DateUtil.getJavaDate(value, use1904Windowing)) ;
+			}else if(isNumberFormat(formatIndex)) {
+				DecimalFormat numberFormat = getNumberFormat(formatString) ;
+				return numberFormat != null ? numberFormat.format(value) : String.valueOf(value) ;
+			}
+			return format.format(value) ;
+		}
+	}
+	
+	private static class SheetHandler implements SheetContentsHandler {
+		private final RowHandler handler ;
+		private List<String> values = new ArrayList<String>() ;
+		
+		private SheetHandler(RowHandler handler) {
+			this.handler = handler ;
+		}
+
+		@Override
+		public void startRow(int rowNum) {
+			values = new ArrayList<String>() ;
+		}
+
+		@Override
+		public void endRow(int rowNum) {
+			try {
+				handler.row(rowNum, values);
+			} catch (RuntimeException e) {
+				throw e ;
+			} catch (Exception e) {
+				throw new RowHandlerException(e) ;
+			}
+		}
+
+		@Override
+		public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+			int col = cellReference != null ? new CellReference(cellReference).getCol() : values.size() ;
+			while(values.size() < col) {
+				values.add(null) ;
+			}
+			values.add(formattedValue != null ? formattedValue : "") ;
+		}
+
+		@Override
+		public void headerFooter(String text, boolean isHeader, String tagName) {
+		}
+	}
+	
+	/**
+	 * 从 SAX 回调中带出 RowHandler 的异常
+	 */
+	private static class RowHandlerException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		private RowHandlerException(Exception cause) {
+			super(cause) ;
+		}
+	}
+}
@@ -16,60 +16,112 @@
  */
 package com.chatopera.cc.concurrent.dsdata.export;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.basic.MainUtils;
 import com.chatopera.cc.app.model.SysDic;
 import com.chatopera.cc.app.model.TableProperties;
 import org.apache.commons.lang.StringUtils;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFRichTextString;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.chatopera.cc.exchange.DataExchangeInterface;
 import com.chatopera.cc.app.model.MetadataTable;
 import com.chatopera.cc.app.model.UKeFuDic;
 
+/**
+ * 导出 .xlsx
+ * <p>
+ * 逐行读取数据并写入 SXSSF 工作簿，内存中只保留最近 {@link #ROW_ACCESS_WINDOW} 行，其余行写入临时文件，
+ * 内存占用与导出行数无关；数据可以是 {@link Iterator}，调用方从数据库分页或 ES scroll 中逐批读取。
+ * 列宽根据标题和前 {@link #SAMPLE_ROWS} 行内容估算，不再调用 autoSizeColumn 扫描整个工作表。
+ * 数据超过工作表最大行数时，最后一行写入截断提示。
+ */
 @SuppressWarnings("deprecation")
 public class ExcelExporterProcess {
-	private HSSFWorkbook  wb; 
+	private final static Logger logger = LoggerFactory.getLogger(ExcelExporterProcess.class);
+	
+	private static final int ROW_ACCESS_WINDOW = 100 ;
+	
+	private static final int SAMPLE_ROWS = 100 ;
+	
+	private static final int MAX_COLUMN_CHARS = 60 ;
+	
+	private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows() ;
+	
+	private SXSSFWorkbook  wb; 
 	private Sheet sheet; 
 	private CellStyle firstStyle = null ;
 	
 	private int rowNum ;
 	
-	private List<Map<String ,Object>> values ;
+	private Iterator<Map<String ,Object>> values ;
 	private MetadataTable table ;
 	private OutputStream output ;
 	private Row titleRow ;
 	
+	private final List<Integer> widths = new ArrayList<Integer>();	//估算的列宽（字符数）
+	
 	public ExcelExporterProcess(List<Map<String ,Object>> values , MetadataTable table , OutputStream output) {
+		this(values.iterator() , table , output) ;
+	}
+	
+	public ExcelExporterProcess(Iterator<Map<String ,Object>> values , MetadataTable table , OutputStream output) {
 		this.values = values ;
 		this.table = table ;
 		this.output = output;
-		wb = new HSSFWorkbook();
+		wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+		wb.setCompressTempFiles(true);
 		sheet = wb.createSheet();
 		firstStyle = createFirstCellStyle();
 		createHead() ;
 	}
+	
+	/**
+	 * 将实体逐个转换为导出数据，不在内存中保留整个结果集；beans 实现 Closeable 时（ES scroll）导出结束后关闭
+	 * @param beans
+	 * @return
+	 */
+	public static Iterator<Map<String ,Object>> beans(final Iterator<?> beans){
+		return new BeanIterator(beans != null ? beans : Collections.emptyIterator()) ;
+	}
+	
+	public static Iterator<Map<String ,Object>> beans(final Iterable<?> beans){
+		return beans(beans != null ? beans.iterator() : null) ;
+	}
+	
 	public void process() throws IOException{
-		createContent();
-		if(table!=null){
-			for(TableProperties tp : table.getTableproperty()){
-				sheet.autoSizeColumn(table.getTableproperty().indexOf(tp)) ;
+		try {
+			createContent();
+			if(table!=null){
+				for(int i=0 ; i<widths.size() ; i++){
+					sheet.setColumnWidth(i, (Math.min(widths.get(i), MAX_COLUMN_CHARS) + 2) * 256) ;
+				}
+				wb.write(this.output);
+			}
+		} finally {
+			wb.dispose() ;		//删除临时文件
+			if(values instanceof Closeable) {
+				((Closeable) values).close();
 			}
-			wb.write(this.output);
 		}
 	}
 	
@@ -80,9 +132,10 @@ public class ExcelExporterProcess {
 		titleRow = sheet.createRow(rowNum);
 		if(table!=null && table.getTableproperty()!=null){
 			for(TableProperties tp : table.getTableproperty()){
-				Cell cell2 = titleRow.createCell(table.getTableproperty().indexOf(tp)); 
+				int col = table.getTableproperty().indexOf(tp) ;
+				Cell cell2 = titleRow.createCell(col); 
 				cell2.setCellStyle(firstStyle); 
-				cell2.setCellValue(new HSSFRichTextString(tp.getName()));
+				setCellValue(cell2 , col , tp.getName());
 			}
 		}
 		rowNum ++ ;
@@ -131,11 +184,13 @@ public class ExcelExporterProcess {
 	private synchronized void createContent(){
 		CellStyle cellStyle = createContentStyle() ;
 		if(table!=null && table.getTableproperty()!=null){
-			for(Map<String , Object> value:values){
+			while(values.hasNext() && rowNum < MAX_ROWS - 1){
+				Map<String , Object> value = values.next() ;
 				Row row2 = sheet.createRow(rowNum);
 				List<ExportData> tempExportDatas = new ArrayList<ExportData>();
 				int cols = 0 ;
 				for(TableProperties tp : table.getTableproperty()){
+					final int col = cols ;
 					Cell cell2 = row2.createCell(cols++); 
 					cell2.setCellStyle(cellStyle); 
 					if(value.get(tp.getFieldname())!=null){
@@ -143,7 +198,7 @@ public class ExcelExporterProcess {
 							@SuppressWarnings("unchecked")
 							List<String> list = (List<String>)value.get(tp.getFieldname());
 							if(list.size()>0) {
-								cell2.setCellValue(new HSSFRichTextString(list.remove(0)));
+								setCellValue(cell2 , col , list.remove(0));
 							}
 							ExportData expData = new ExportData(tp , list) ;
 							if(list.size()>0) {
@@ -155,7 +210,7 @@ public class ExcelExporterProcess {
 						}else if(tp.isSeldata()){
 							SysDic sysDic = UKeFuDic.getInstance().getDicItem(String.valueOf(value.get(tp.getFieldname()))) ;
 							if(sysDic!=null) {
-								cell2.setCellValue(new HSSFRichTextString(sysDic.getName()));
+								setCellValue(cell2 , col , sysDic.getName());
 							}else {
 								List<SysDic> dicItemList = UKeFuDic.getInstance().getSysDic(tp.getSeldatacode());
 								if(dicItemList!=null && dicItemList.size() > 0) {
@@ -168,7 +223,7 @@ public class ExcelExporterProcess {
 											s= String.valueOf(value.get(tp.getFieldname()));
 										}
 										if(dicItem.getCode().equals(s)) {
-											cell2.setCellValue(new HSSFRichTextString(dicItem.getName())); break ;
+											setCellValue(cell2 , col , dicItem.getName()); break ;
 										}
 									}
 								}
@@ -180,35 +235,60 @@ public class ExcelExporterProcess {
 			            		DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid()) ;
 			            		Object refvalue = exchange.getDataByIdAndOrgi(key, orgi) ;
 			            		if(refvalue!=null) {
-			            			cell2.setCellValue(new HSSFRichTextString(refvalue.toString()));
+			            			setCellValue(cell2 , col , refvalue.toString());
 			            		}
 							}
 						}else{
-							cell2.setCellValue(new HSSFRichTextString(String.valueOf(value.get(tp.getFieldname()))));
+							setCellValue(cell2 , col , String.valueOf(value.get(tp.getFieldname())));
 						}
 					}
 				}
 				if(tempExportDatas.size() > 0) {
 					for(ExportData expData : tempExportDatas) {
-						for(int i=0 ; i<expData.getMaxcols() ; i++) {
+						// 标题行超出行窗口写入临时文件后不能再修改，之后的行出现更多的扩展列时没有标题
+						for(int i=0 ; rowNum < ROW_ACCESS_WINDOW && i<expData.getMaxcols() ; i++) {
 							if(titleRow.getCell(cols + i) == null) {
 								Cell title = titleRow.createCell(cols + i); 
 								title.setCellStyle(firstStyle); 
-								title.setCellValue(new HSSFRichTextString(expData.getTp().getName()));
+								setCellValue(title , cols + i , expData.getTp().getName());
 							}
 						}
 						
 						for(String itemValue : expData.getValues()) {
-							Cell cell2 = row2.createCell(cols++);
-							cell2.setCellValue(new HSSFRichTextString(itemValue));
+							Cell cell2 = row2.createCell(cols);
+							setCellValue(cell2 , cols++ , itemValue);
 						}
 					}
 				}
 				rowNum ++ ;
 			}
+			if(values.hasNext()) {
+				// 最后一行保留给截断提示
+				logger.warn("[export] {} exceeds the maximum {} rows of a sheet, the rest is not exported", table.getTablename(), MAX_ROWS);
+				Cell cell = sheet.createRow(rowNum++).createCell(0);
+				cell.setCellValue("数据超过 Excel 最大行数（" + MAX_ROWS + "），其余数据没有导出");
+			}
 		}
 	}
 	
+	/**
+	 * 写入单元格，前 SAMPLE_ROWS 行同时记录列宽
+	 */
+	private void setCellValue(Cell cell , int col , String value){
+		cell.setCellValue(value);
+		if(rowNum <= SAMPLE_ROWS && value != null) {
+			while(widths.size() <= col) {
+				widths.add(0) ;
+			}
+			int width = 0 ;
+			for(int i=0 ; i<value.length() && width < MAX_COLUMN_CHARS ; i++) {
+				width += value.charAt(i) < 0x80 ? 1 : 2 ;		//中文字符按两个字符宽度
+			}
+			if(width > widths.get(col)) {
+				widths.set(col, width) ;
+			}
+		}
+	}
 	
 	private CellStyle baseCellStyle(){
 		CellStyle cellStyle = wb.createCellStyle();
@@ -230,4 +310,29 @@ public class ExcelExporterProcess {
 		
 		return cellStyle;
 	}
+	
+	private static class BeanIterator implements Iterator<Map<String ,Object>> , Closeable {
+		private final Iterator<?> beans ;
+		
+		private BeanIterator(Iterator<?> beans) {
+			this.beans = beans ;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return beans.hasNext();
+		}
+		
+		@Override
+		public Map<String, Object> next() {
+			return MainUtils.transBean2Map(beans.next());
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(beans instanceof Closeable) {
+				((Closeable) beans).close();
+			}
+		}
+	}
 }
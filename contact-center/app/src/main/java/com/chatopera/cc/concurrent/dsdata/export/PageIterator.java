@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.concurrent.dsdata.export;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * 按页读取查询结果，内存中只保留当前页，用于导出大量数据
+ */
+public class PageIterator<T> implements Iterator<T> {
+
+    private final Function<Pageable, Page<T>> loader;
+    private final int size;
+    private final Sort sort;
+
+    private Page<T> page;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    /**
+     * @param loader 查询一页数据，通常是 Repository 的分页查询方法
+     * @param size   每页数量
+     * @param sort   排序，分页读取需要稳定的顺序
+     */
+    public PageIterator(Function<Pageable, Page<T>> loader, int size, Sort sort) {
+        this.loader = loader;
+        this.size = size;
+        this.sort = sort;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (page != null && !page.hasNext()) {
+                return false;
+            }
+            page = loader.apply(new PageRequest(page == null ? 0 : page.getNumber() + 1, size, sort));
+            if (page == null || !page.hasContent()) {
+                return false;
+            }
+            current = page.getContent().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
@@ -16,6 +16,9 @@
  */
 package com.chatopera.cc.concurrent.dsdata.process;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.chatopera.cc.app.persistence.es.ContactsRepository;
 import com.chatopera.cc.app.model.Contacts;
 
@@ -31,6 +34,15 @@ public class ContactsProcess implements JPAProcess{
 	public void process(Object data) {
 		contactsRes.save((Contacts)data) ;
 	}
+	
+	@Override
+	public void process(List<Object> datas) {
+		List<Contacts> list = new ArrayList<Contacts>(datas.size()) ;
+		for(Object data : datas) {
+			list.add((Contacts)data) ;
+		}
+		contactsRes.save(list) ;
+	}
 
 	@Override
 	public void end() {
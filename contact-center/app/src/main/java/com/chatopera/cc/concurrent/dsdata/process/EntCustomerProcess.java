@@ -16,6 +16,9 @@
  */
 package com.chatopera.cc.concurrent.dsdata.process;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.chatopera.cc.app.persistence.es.EntCustomerRepository;
 import com.chatopera.cc.app.model.EntCustomer;
 
@@ -31,6 +34,15 @@ public class EntCustomerProcess implements JPAProcess{
 	public void process(Object data) {
 		entCustomerRes.save((EntCustomer)data) ;
 	}
+	
+	@Override
+	public void process(List<Object> datas) {
+		List<EntCustomer> list = new ArrayList<EntCustomer>(datas.size()) ;
+		for(Object data : datas) {
+			list.add((EntCustomer)data) ;
+		}
+		entCustomerRes.save(list) ;
+	}
 
 	@Override
 	public void end() {
@@ -16,7 +16,18 @@
  */
 package com.chatopera.cc.concurrent.dsdata.process;
 
+import java.util.List;
+
 public interface JPAProcess {
 	public void process(Object data) ;
+	/**
+	 * 批量写入，导入时按批次调用；默认逐条写入，支持批量保存的实现应覆盖此方法
+	 * @param datas
+	 */
+	public default void process(List<Object> datas) {
+		for(Object data : datas) {
+			process(data) ;
+		}
+	}
 	public void end();
 }
@@ -16,6 +16,9 @@
  */
 package com.chatopera.cc.concurrent.dsdata.process;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.chatopera.cc.app.persistence.es.QuickReplyRepository;
 import com.chatopera.cc.app.model.QuickReply;
 
@@ -31,6 +34,15 @@ public class QuickReplyProcess implements JPAProcess{
 	public void process(Object data) {
 		quickReplyRes.save((QuickReply)data) ;
 	}
+	
+	@Override
+	public void process(List<Object> datas) {
+		List<QuickReply> list = new ArrayList<QuickReply>(datas.size()) ;
+		for(Object data : datas) {
+			list.add((QuickReply)data) ;
+		}
+		quickReplyRes.save(list) ;
+	}
 
 	@Override
 	public void end() {
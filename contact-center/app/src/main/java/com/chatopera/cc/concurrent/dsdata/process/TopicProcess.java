@@ -16,8 +16,11 @@
  */
 package com.chatopera.cc.concurrent.dsdata.process;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.chatopera.cc.app.basic.MainContext;
 import com.chatopera.cc.app.persistence.es.TopicRepository;
@@ -41,6 +44,35 @@ public class TopicProcess implements JPAProcess{
 		topicRes.save(topic) ;
 		this.process(data, topic.getOrgi());
 	}
+	
+	/**
+	 * 批量保存知识，类似问题一次查询、批量删除和写入
+	 */
+	@Override
+	public void process(List<Object> datas) {
+		List<Topic> topicList = new ArrayList<Topic>(datas.size()) ;
+		Map<String, List<TopicItem>> items = new LinkedHashMap<String, List<TopicItem>>() ;	//同一批中重复的知识以最后一条为准
+		for(Object data : datas) {
+			Topic topic = (Topic) data ;
+			topicList.add(topic) ;
+			if(topic.getSilimar()!=null && topic.getSilimar().size() > 0) {
+				items.put(topic.getId(), similar(topic)) ;
+			}
+		}
+		topicRes.save(topicList) ;
+		if(items.size() > 0) {
+			TopicItemRepository topicItemRes = MainContext.getContext().getBean(TopicItemRepository.class) ;
+			List<TopicItem> exists = topicItemRes.findByTopicidIn(items.keySet()) ;
+			if(exists!=null && exists.size() > 0) {
+				topicItemRes.deleteInBatch(exists);
+			}
+			List<TopicItem> topicItemList = new ArrayList<TopicItem>() ;
+			for(List<TopicItem> topicItems : items.values()) {
+				topicItemList.addAll(topicItems) ;
+			}
+			topicItemRes.save(topicItemList) ;
+		}
+	}
 	/**
 	 * 只处理 类似问题
 	 * @param data
@@ -54,21 +86,26 @@ public class TopicProcess implements JPAProcess{
 			if(topicItemList!=null && topicItemList.size() > 0) {
 				topicItemRes.delete(topicItemList);
 			}
-			topicItemList.clear(); 
-			for(String item : topic.getSilimar()) {
-				TopicItem topicItem = new TopicItem();
-				topicItem.setTitle(item);
-				topicItem.setTopicid(topic.getId());
-				topicItem.setOrgi(topic.getOrgi());
-				topicItem.setCreater(topic.getCreater());
-				topicItem.setCreatetime(new Date());
-				topicItemList.add(topicItem) ;
-			}
+			topicItemList = similar(topic) ;
 			if(topicItemList.size() > 0) {
 				topicItemRes.save(topicItemList) ;
 			}
 		}
 	}
+	
+	private List<TopicItem> similar(Topic topic) {
+		List<TopicItem> topicItemList = new ArrayList<TopicItem>() ;
+		for(String item : topic.getSilimar()) {
+			TopicItem topicItem = new TopicItem();
+			topicItem.setTitle(item);
+			topicItem.setTopicid(topic.getId());
+			topicItem.setOrgi(topic.getOrgi());
+			topicItem.setCreater(topic.getCreater());
+			topicItem.setCreatetime(new Date());
+			topicItemList.add(topicItem) ;
+		}
+		return topicItemList ;
+	}
 
 	@Override
 	public void end() {
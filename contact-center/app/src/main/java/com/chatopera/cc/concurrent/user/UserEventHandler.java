@@ -16,51 +16,146 @@
  */
 package com.chatopera.cc.concurrent.user;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.exchange.UserEvent;
 import com.chatopera.cc.util.mail.Mail;
 import com.chatopera.cc.app.persistence.repository.OnlineUserRepository;
-import com.chatopera.cc.app.persistence.repository.UserEventRepository;
-import com.chatopera.cc.app.persistence.repository.UserTraceRepository;
 import com.chatopera.cc.app.model.OnlineUser;
 import com.chatopera.cc.app.model.UserTraceHistory;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.lmax.disruptor.EventHandler;
 import com.chatopera.cc.app.basic.MainUtils;
-import com.chatopera.cc.app.persistence.repository.RequestLogRepository;
 import com.chatopera.cc.app.model.RequestLog;
 import com.chatopera.cc.app.model.UserHistory;
 
 
+/**
+ * 访客轨迹、访问日志等记录的写入
+ * <p>
+ * 同一批次（endOfBatch 之前）的记录合并在一个事务中写入，
+ * 新记录使用 persist 以便 JDBC 批量插入；单个事务最多写入 {@link #MAX_BATCH} 条。
+ * 批量写入失败时逐条重试，每条记录一个事务，只丢弃单独写入仍失败的记录。
+ */
 public class UserEventHandler implements EventHandler<UserDataEvent>{
+	private final static Logger logger = LoggerFactory.getLogger(UserEventHandler.class);
+
+	private final static int MAX_BATCH = 256 ;
+
+	private final TransactionTemplate transactionTemplate ;
+
+	private final EntityManager entityManager ;
+
+	private final List<UserEvent> batch = new ArrayList<UserEvent>();
+
+	/**
+	 * 同一批次中重复的访客只检查、写入一次
+	 */
+	private final Map<String, OnlineUser> onlineUsers = new LinkedHashMap<String, OnlineUser>();
+
+	public UserEventHandler(PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory){
+		this.transactionTemplate = new TransactionTemplate(transactionManager) ;
+		this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory) ;
+	}
 
 	@Override
-	public void onEvent(UserDataEvent arg0, long arg1, boolean arg2)
+	public void onEvent(UserDataEvent arg0, long arg1, boolean endOfBatch)
 			throws Exception {
-		if(arg0.getEvent() instanceof UserHistory){
-			UserEventRepository userEventRes = MainContext.getContext().getBean(UserEventRepository.class) ;
-			userEventRes.save((UserHistory)arg0.getEvent()) ;
-		}else if(arg0.getEvent() instanceof UserTraceHistory){
-			UserTraceRepository userTraceRes = MainContext.getContext().getBean(UserTraceRepository.class) ;
-			userTraceRes.save((UserTraceHistory)arg0.getEvent()) ;
-		}else if(arg0.getEvent() instanceof RequestLog){
-			RequestLogRepository requestLogRes = MainContext.getContext().getBean(RequestLogRepository.class) ;
-			requestLogRes.save((RequestLog)arg0.getEvent()) ;
-		}else if(arg0.getEvent() instanceof OnlineUser){
-			OnlineUserRepository onlineUserRes = MainContext.getContext().getBean(OnlineUserRepository.class) ;
-			OnlineUser onlineUser = (OnlineUser)arg0.getEvent() ;
-			List<OnlineUser> onlineUserList = onlineUserRes.findByUseridAndOrgi(onlineUser.getUserid(), onlineUser.getOrgi()) ;
-			if(onlineUserList.size() == 0){
-				onlineUserRes.save(onlineUser) ;
+		UserEvent event = arg0.getEvent() ;
+		arg0.setEvent(null);		//释放 RingBuffer 对事件的引用
+		try{
+			if(event instanceof UserHistory || event instanceof UserTraceHistory || event instanceof RequestLog){
+				batch.add(event) ;
+			}else if(event instanceof OnlineUser){
+				OnlineUser onlineUser = (OnlineUser)event ;
+				String key = onlineUser.getUserid() + ":" + onlineUser.getOrgi() ;
+				if(!onlineUsers.containsKey(key)){
+					onlineUsers.put(key, onlineUser) ;
+				}
+			}if(event instanceof Mail){
+				Mail mail = (Mail)event ;
+				if(null!=mail&&!StringUtils.isBlank(mail.getEmail())) {
+					MainUtils.sendMail(mail.getEmail(), mail.getCc(), mail.getSubject(), mail.getContent(), mail.getFilenames());
+				}
 			}
-		}if(arg0.getEvent() instanceof Mail){
-			Mail mail = (Mail)arg0.getEvent() ;
-			if(null!=mail&&!StringUtils.isBlank(mail.getEmail())) {
-				MainUtils.sendMail(mail.getEmail(), mail.getCc(), mail.getSubject(), mail.getContent(), mail.getFilenames());
+		}finally{
+			if(endOfBatch || batch.size() + onlineUsers.size() >= MAX_BATCH){
+				flush() ;
 			}
 		}
 	}
 
+	private void flush(){
+		if(batch.isEmpty() && onlineUsers.isEmpty()){
+			return ;
+		}
+		final OnlineUserRepository onlineUserRes = MainContext.getContext().getBean(OnlineUserRepository.class) ;
+		try{
+			transactionTemplate.execute(status -> {
+				for(OnlineUser onlineUser : onlineUsers.values()){
+					save(onlineUserRes, onlineUser) ;
+				}
+				for(UserEvent event : batch){
+					save(event) ;
+				}
+				return null ;
+			}) ;
+		}catch(Exception e){
+			logger.warn("[user event] fail to write {} records, retry one by one", batch.size() + onlineUsers.size(), e);
+			for(OnlineUser onlineUser : onlineUsers.values()){
+				try{
+					transactionTemplate.execute(status -> {
+						save(onlineUserRes, onlineUser) ;
+						return null ;
+					}) ;
+				}catch(Exception ex){
+					logger.error("[user event] fail to write online user {}", onlineUser.getUserid(), ex);
+				}
+			}
+			for(UserEvent event : batch){
+				if(event instanceof RequestLog){
+					((RequestLog)event).setId(null) ;	//回滚的事务中生成的 ID 没有写入，重新生成
+				}
+				try{
+					transactionTemplate.execute(status -> {
+						save(event) ;
+						return null ;
+					}) ;
+				}catch(Exception ex){
+					logger.error("[user event] fail to write {}", event.getClass().getSimpleName(), ex);
+				}
+			}
+		}finally{
+			batch.clear();
+			onlineUsers.clear();
+		}
+	}
+
+	private void save(OnlineUserRepository onlineUserRes, OnlineUser onlineUser){
+		if(onlineUserRes.findByUseridAndOrgi(onlineUser.getUserid(), onlineUser.getOrgi()).size() == 0){
+			entityManager.merge(onlineUser) ;
+		}
+	}
+
+	private void save(UserEvent event){
+		if(event instanceof UserTraceHistory){
+			entityManager.merge(event) ;	//同一轨迹会多次更新
+		}else{
+			entityManager.persist(event) ;
+		}
+	}
+
 }
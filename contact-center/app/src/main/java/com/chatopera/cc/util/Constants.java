@@ -49,12 +49,15 @@ public class Constants {
 
 
     /**
-     * Instant Messaging Events
+     * Instant Messaging Events, channel per target node
      */
     public final static String INSTANT_MESSTRING_WEBIM_AGENT_PATTERN = "im:webim:agent:%s:events";
-    public final static String INSTANT_MESSAGING_WEBIM_AGENT_CHANNEL = String.format(INSTANT_MESSTRING_WEBIM_AGENT_PATTERN, "*");
     public final static String INSTANT_MESSTRING_WEBIM_ONLINE_USER_PATTERN = "im:webim:onlineuser:%s:events";
-    public final static String INSTANT_MESSAGING_WEBIM_ONLINE_USER_CHANNEL = String.format(INSTANT_MESSTRING_WEBIM_ONLINE_USER_PATTERN, "*");
+    public final static String INSTANT_MESSAGING_BROADCAST_NODE = "broadcast";
+    public final static String INSTANT_MESSAGING_WEBIM_AGENT_BROADCAST_CHANNEL = String.format(INSTANT_MESSTRING_WEBIM_AGENT_PATTERN, INSTANT_MESSAGING_BROADCAST_NODE);
+    public final static String INSTANT_MESSAGING_WEBIM_ONLINE_USER_BROADCAST_CHANNEL = String.format(INSTANT_MESSTRING_WEBIM_ONLINE_USER_PATTERN, INSTANT_MESSAGING_BROADCAST_NODE);
+    // user -> nodes
+    public final static String INSTANT_MESSAGING_PRESENCE_PATTERN = "im:presence:%s:%s";
 
     /**
      * Attachment File Type
@@ -62,6 +65,11 @@ public class Constants {
     public final static String ATTACHMENT_TYPE_IMAGE = "image";
     public final static String ATTACHMENT_TYPE_FILE = "file";
 
+    /**
+     * Batch Job
+     */
+    public final static String JOB_CURSOR = "job:%s:cursor:%s";   // 名单分配、回收任务的检索游标位置
+
     /**
      * FreeSwitch Communication
      */
@@ -69,6 +77,8 @@ public class Constants {
     public final static String FS_CHANNEL_CC_TO_FS = "pbx:%s:execute"; // 发送外呼执行信号
     public final static String FS_DIALPLAN_STATUS = "pbx:%s:status"; // 外呼执行状态存储
     public final static String FS_DIALPLAN_TARGET = "pbx:%s:targets:%s";   // 外呼计划电话列表
+    public final static String FS_DIALPLAN_LOAD = "pbx:%s:load:%s";   // 外呼计划电话列表加载进度
+    public final static String FS_DIALPLAN_LOAD_LOCK = "pbx:%s:load:%s:lock";   // 外呼计划电话列表加载锁
     public final static String FS_CHANNEL_FS_TO_CC = "pbx:*:events";    // freeswitch 通知消息
     public final static String FS_BRIDGE_CONNECT = "callOutConnect";
     public final static String FS_LEG_ANSWER = "answer";
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * 编译后的 FreeMarker 模板缓存
+ * <p>
+ * 所有模板共用一个 Configuration，初始化后不再修改，可以多线程共享；编译后的 Template 也是线程安全的。
+ * 按模板内容的 MD5 缓存，内容修改后自然使用新的模板，最多保留 {@link #CAPACITY} 个，超过后淘汰最久未使用的。
+ * 模板修改、删除后调用 {@link #invalidate(String)} 及时释放旧模板。
+ */
+public final class TempletCache {
+	
+	public final static int CAPACITY = 1000 ;
+	
+	@SuppressWarnings("deprecation")
+	private final static Configuration cfg = new Configuration() ;
+	
+	static {
+		cfg.setDefaultEncoding("UTF-8");
+	}
+	
+	private final static Map<String, Entry> templates = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if(size() > CAPACITY) {
+				evictions.increment();
+				return true ;
+			}
+			return false ;
+		}
+	};
+	
+	private final static LongAdder hits = new LongAdder();
+	private final static LongAdder misses = new LongAdder();
+	private final static LongAdder evictions = new LongAdder();
+	private final static LongAdder invalidations = new LongAdder();
+	private final static LongAdder parseNanos = new LongAdder();	// 编译模板的累计耗时
+	
+	private TempletCache() {
+	}
+	
+	/**
+	 * 获得编译后的模板，缓存中没有时编译并放入缓存
+	 * 
+	 * @param templet 模板内容
+	 * @return
+	 * @throws IOException 模板语法错误
+	 */
+	public static Template getTemplate(String templet) throws IOException {
+		String key = fingerprint(templet) ;
+		Entry entry ;
+		synchronized (templates) {
+			entry = templates.get(key) ;
+		}
+		if(entry != null && entry.source.equals(templet)) {
+			hits.increment();
+			return entry.template ;
+		}
+		misses.increment();
+		long start = System.nanoTime() ;
+		Template template = new Template("", new StringReader(templet), cfg) ;
+		parseNanos.add(System.nanoTime() - start);
+		synchronized (templates) {
+			templates.put(key, new Entry(templet, template)) ;
+		}
+		return template ;
+	}
+	
+	/**
+	 * 模板修改或删除后移除旧内容的缓存
+	 * 
+	 * @param templet 旧的模板内容
+	 */
+	public static void invalidate(String templet) {
+		if(templet != null) {
+			invalidations.increment();
+			synchronized (templates) {
+				templates.remove(fingerprint(templet)) ;
+			}
+		}
+	}
+	
+	public static void clear() {
+		invalidations.increment();
+		synchronized (templates) {
+			templates.clear();
+		}
+	}
+	
+	public static int size() {
+		synchronized (templates) {
+			return templates.size() ;
+		}
+	}
+	
+	public static long getHits() {
+		return hits.sum();
+	}
+	
+	public static long getMisses() {
+		return misses.sum();
+	}
+	
+	public static long getEvictions() {
+		return evictions.sum();
+	}
+	
+	public static long getInvalidations() {
+		return invalidations.sum();
+	}
+	
+	public static long getParseMillis() {
+		return parseNanos.sum() / 1000000 ;
+	}
+	
+	private static String fingerprint(String templet) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(templet.getBytes(StandardCharsets.UTF_8)) ;
+			StringBuilder strb = new StringBuilder(digest.length * 2) ;
+			for(byte b : digest) {
+				strb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16)) ;
+			}
+			return strb.toString() ;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e) ;
+		}
+	}
+	
+	private static class Entry {
+		private final String source ;	//MD5 相同时比较内容，避免冲突时使用错误的模板
+		private final Template template ;
+		
+		private Entry(String source , Template template) {
+			this.source = source ;
+			this.template = template ;
+		}
+	}
+}
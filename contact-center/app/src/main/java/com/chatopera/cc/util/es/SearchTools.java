@@ -20,6 +20,7 @@ import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.chatopera.cc.app.basic.MainContext;
 import org.apache.commons.lang3.StringUtils;
@@ -31,6 +32,7 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 
+import com.chatopera.cc.app.persistence.impl.ESDataCursor;
 import com.chatopera.cc.app.persistence.impl.ESDataExchangeImpl;
 import com.chatopera.cc.app.model.FormFilter;
 import com.chatopera.cc.app.model.FormFilterItem;
@@ -98,6 +100,22 @@ public class SearchTools {
 	}
 	
 	public static PageImpl<UKDataBean> dissearch(String orgi , FormFilter formFilter , List<FormFilterItem> itemList , MetadataTable metadataTable , int p, int ps){
+		return search(disquery(orgi, formFilter, itemList), metadataTable, false, p, ps);
+	}
+	
+	/**
+	 * 流式读取待分配的名单
+	 * @param after 从该位置之后继续，为空时从头开始
+	 * @param checkpoint 可以安全恢复的位置
+	 */
+	public static ESDataCursor discursor(String orgi , FormFilter formFilter , List<FormFilterItem> itemList , MetadataTable metadataTable , int batch , String after , Consumer<String> checkpoint){
+		return cursor(disquery(orgi, formFilter, itemList), metadataTable, batch, after, checkpoint) ;
+	}
+	
+	/**
+	 * 待分配的有效名单
+	 */
+	private static BoolQueryBuilder disquery(String orgi , FormFilter formFilter , List<FormFilterItem> itemList){
 		BoolQueryBuilder queryBuilder = new BoolQueryBuilder();
 		queryBuilder.must(termQuery("orgi", orgi)) ;
 		queryBuilder.must(termQuery("status", MainContext.NamesDisStatusType.NOT.toString())) ;
@@ -154,10 +172,26 @@ public class SearchTools {
 		if(orNums > 0) {
 			queryBuilder.must(orBuilder) ;
 		}
-		return search(queryBuilder, metadataTable, false, p, ps);
+		return queryBuilder ;
 	}
 	
 	public static PageImpl<UKDataBean> recoversearch(String orgi , String cmd ,String id, MetadataTable metadataTable , int p, int ps){
+		return search(recoverquery(orgi, cmd, id), metadataTable, false, p, ps);
+	}
+	
+	/**
+	 * 流式读取待回收的名单
+	 * @param after 从该位置之后继续，为空时从头开始
+	 * @param checkpoint 可以安全恢复的位置
+	 */
+	public static ESDataCursor recovercursor(String orgi , String cmd ,String id, MetadataTable metadataTable , int batch , String after , Consumer<String> checkpoint){
+		return cursor(recoverquery(orgi, cmd, id), metadataTable, batch, after, checkpoint) ;
+	}
+	
+	/**
+	 * 已分配、待回收的有效名单
+	 */
+	private static BoolQueryBuilder recoverquery(String orgi , String cmd ,String id){
 		BoolQueryBuilder queryBuilder = new BoolQueryBuilder();
 		queryBuilder.must(termQuery("orgi", orgi)) ;
 		queryBuilder.mustNot(termQuery("status", MainContext.NamesDisStatusType.NOT.toString())) ;
@@ -174,8 +208,7 @@ public class SearchTools {
 			case "filterskill" : queryBuilder.must(termQuery("filterid", id)).must(termQuery("status", MainContext.NamesDisStatusType.DISAGENT.toString())) ; break ;
 			default : queryBuilder.must(termQuery("actid", "NOT_EXIST_KEY")) ;  //必须传入一个进来;
 		}
-		
-		return search(queryBuilder, metadataTable, false, p, ps);
+		return queryBuilder ;
 	}
 	/**
 	 * 
@@ -290,6 +323,11 @@ public class SearchTools {
 		return esDataExchange.findPageResult(queryBuilder, MainContext.SYSTEM_INDEX, metadataTable, new PageRequest(p, ps , Sort.Direction.ASC, "createtime") , loadRef) ;
 	}
 	
+	private static ESDataCursor cursor(BoolQueryBuilder queryBuilder , MetadataTable metadataTable , int batch , String after , Consumer<String> checkpoint){
+		ESDataExchangeImpl esDataExchange = MainContext.getContext().getBean(ESDataExchangeImpl.class);
+		return esDataExchange.openCursor(queryBuilder, metadataTable, metadataTable!=null ? metadataTable.getTablename() : null, batch, after, checkpoint) ;
+	}
+	
 	/**
 	 * 
 	 * @param queryBuilder
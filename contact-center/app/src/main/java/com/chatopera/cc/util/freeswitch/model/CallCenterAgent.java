@@ -16,11 +16,18 @@
  */
 package com.chatopera.cc.util.freeswitch.model;
 
+import java.io.IOException;
 import java.util.Date;
 
+import com.chatopera.cc.app.cache.hazelcast.CachePortableFactory;
 import com.chatopera.cc.app.model.Extention;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
 
-public class CallCenterAgent implements java.io.Serializable{
+public class CallCenterAgent implements java.io.Serializable, Portable{
 	/**
 	 * 
 	 */
@@ -40,6 +47,12 @@ public class CallCenterAgent implements java.io.Serializable{
 	
 	private String nameid ;
 	
+	/**
+	 * Portable 反序列化时使用
+	 */
+	public CallCenterAgent() {
+	}
+	
 	public CallCenterAgent(String userid, String extno , String orgi) {
 		this.userid = userid ;
 		this.extno = extno ;
@@ -118,4 +131,47 @@ public class CallCenterAgent implements java.io.Serializable{
 	public void setSiptrunk(String siptrunk) {
 		this.siptrunk = siptrunk;
 	}
+
+	@Override
+	public int getFactoryId() {
+		return CachePortableFactory.FACTORY_ID;
+	}
+
+	@Override
+	public int getClassId() {
+		return CachePortableFactory.CALLCENTER_AGENT;
+	}
+
+	/**
+	 * 外呼按 workstatus、siptrunk、extno 查询坐席，分机配置写在原始数据区
+	 */
+	@Override
+	public void writePortable(PortableWriter writer) throws IOException {
+		writer.writeUTF("userid", userid);
+		writer.writeUTF("extno", extno);
+		writer.writeUTF("orgi", orgi);
+		writer.writeUTF("status", status);
+		writer.writeUTF("workstatus", workstatus);
+		writer.writeUTF("siptrunk", siptrunk);
+		writer.writeUTF("eventid", eventid);
+		writer.writeUTF("nameid", nameid);
+		ObjectDataOutput out = writer.getRawDataOutput();
+		out.writeObject(updatetime);
+		out.writeObject(extention);
+	}
+
+	@Override
+	public void readPortable(PortableReader reader) throws IOException {
+		userid = reader.readUTF("userid");
+		extno = reader.readUTF("extno");
+		orgi = reader.readUTF("orgi");
+		status = reader.readUTF("status");
+		workstatus = reader.readUTF("workstatus");
+		siptrunk = reader.readUTF("siptrunk");
+		eventid = reader.readUTF("eventid");
+		nameid = reader.readUTF("nameid");
+		ObjectDataInput in = reader.getRawDataInput();
+		updatetime = in.readObject();
+		extention = in.readObject();
+	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 Chatopera Inc, <https://www.chatopera.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.util.log;
+
+import ch.qos.logback.classic.Level;
+import com.chatopera.cc.app.model.Log;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 待写入数据库的日志缓冲
+ * <p>
+ * 多个日志线程写入、LogTask 批量取出。容量有限：超过高水位后 ERROR 日志照常保留，
+ * 其它级别的日志每 {@link #SAMPLE_RATE} 条保留一条；缓冲满时丢弃，并统计丢弃数量。
+ */
+public final class LogSink {
+
+	public final static int CAPACITY = 10000;
+
+	private final static int HIGH_WATER = CAPACITY * 3 / 4;
+
+	private final static int SAMPLE_RATE = 10;
+
+	private final static BlockingQueue<Log> queue = new ArrayBlockingQueue<Log>(CAPACITY);
+
+	private final static AtomicLong sequence = new AtomicLong();
+
+	private final static LongAdder accepted = new LongAdder();
+	private final static LongAdder sampled = new LongAdder();	// 高水位时采样丢弃
+	private final static LongAdder dropped = new LongAdder();	// 缓冲满时丢弃
+
+	private LogSink() {
+	}
+
+	/**
+	 * 在创建日志对象之前判断是否接收，避免日志风暴时为丢弃的日志分配对象
+	 *
+	 * @param level
+	 * @return
+	 */
+	public static boolean admit(Level level) {
+		int size = queue.size();
+		if (size >= CAPACITY) {
+			dropped.increment();
+			return false;
+		}
+		if (size >= HIGH_WATER && !Level.ERROR.equals(level) && sequence.incrementAndGet() % SAMPLE_RATE != 0) {
+			sampled.increment();
+			return false;
+		}
+		return true;
+	}
+
+	public static void offer(Log log) {
+		if (queue.offer(log)) {
+			accepted.increment();
+		} else {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * 取出最多 max 条日志
+	 */
+	public static int drainTo(Collection<Log> logs, int max) {
+		return queue.drainTo(logs, max);
+	}
+
+	public static int size() {
+		return queue.size();
+	}
+
+	public static long getAccepted() {
+		return accepted.sum();
+	}
+
+	public static long getSampled() {
+		return sampled.sum();
+	}
+
+	public static long getDropped() {
+		return dropped.sum();
+	}
+}
@@ -18,23 +18,41 @@ package com.chatopera.cc.util.log;
 
 import java.util.Date;
 
+import org.apache.commons.lang3.time.FastDateFormat;
+
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 
 import com.chatopera.cc.app.basic.MainContext;
-import com.chatopera.cc.app.basic.MainUtils;
 import com.chatopera.cc.app.model.Log;
 
 public class UKeFuAppender extends ch.qos.logback.core.ConsoleAppender<ILoggingEvent> {
+	/**
+	 * 线程安全，日志线程之间共用
+	 */
+	private final static FastDateFormat LOGTIME_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss");
+
 	@Override
 	public void append(ILoggingEvent event) {
 		super.append(event);
 		try {
-			Log log = new Log(MainContext.SYSTEM_ORGI , null , event.getFormattedMessage() , event.getLevel().toString() , event.getThreadName());
+			if(!LogSink.admit(event.getLevel())){
+				return ;
+			}
+			Date logtime = new Date(event.getTimeStamp()) ;
+			/**
+			 * 主键由数据库写入时生成，批量写入时不再逐条查询
+			 */
+			Log log = new Log();
+			log.setOrgi(MainContext.SYSTEM_ORGI);
+			log.setCreatedate(logtime);
+			log.setMsg(event.getFormattedMessage());
+			log.setLevels(event.getLevel().toString());
+			log.setThread(event.getThreadName());
 			log.setClazz(event.getLoggerName()) ;
 			if(event.getFormattedMessage()!=null && event.getFormattedMessage().length() < 255){
 				log.setMemo(event.getFormattedMessage());
-			}else{
+			}else if(event.getFormattedMessage()!=null){
 				log.setMemo(event.getFormattedMessage().substring(0 ,255));
 			}
 			if(event.getThrowableProxy()!=null){
@@ -44,11 +62,11 @@ public class UKeFuAppender extends ch.qos.logback.core.ConsoleAppender<ILoggingE
 			
 			log.setMethod(event.getThreadName());
 			log.setLogtype(event.getLevel().toString().equals(Level.ERROR.toString()) ? "1" : "0") ;
-			log.setLogtime(String.valueOf(MainUtils.dateFormate.format(new Date()))) ;
+			log.setLogtime(LOGTIME_FORMAT.format(logtime)) ;
 			/**
 			 * 临时缓存
 			 */
-			MainContext.tempLogQueue.add(log) ;
+			LogSink.offer(log) ;
 		} catch (Throwable sqle) {
 			sqle.printStackTrace();
 		}
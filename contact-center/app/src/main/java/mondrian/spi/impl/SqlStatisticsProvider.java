@@ -12,10 +12,15 @@ package mondrian.spi.impl;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.function.IntSupplier;
 
 import javax.sql.DataSource;
 
-import com.chatopera.cc.app.basic.MainUtils;
+import com.chatopera.cc.app.basic.MainContext;
+import com.chatopera.cc.app.model.CubeStatistics;
+import com.chatopera.cc.app.persistence.repository.CubeStatisticsStore;
+
+import org.springframework.context.ApplicationContext;
 
 import mondrian.rolap.RolapUtil;
 import mondrian.rolap.SqlStatement;
@@ -31,7 +36,7 @@ import mondrian.spi.StatisticsProvider;
 public class SqlStatisticsProvider implements StatisticsProvider {
     public int getTableCardinality(
         Dialect dialect,
-        DataSource dataSource,
+        final DataSource dataSource,
         String catalog,
         String schema,
         String table,
@@ -40,32 +45,20 @@ public class SqlStatisticsProvider implements StatisticsProvider {
         StringBuilder buf = new StringBuilder("select count(*) from ");
         dialect.quoteIdentifier(buf, catalog, schema, table);
         final String sql = buf.toString();
-        SqlStatement stmt =
-            RolapUtil.executeQuery(
-                dataSource,
-                sql,
-                new Locus(
-                    execution,
-                    "SqlStatisticsProvider.getTableCardinality",
-                    "Reading row count from table "
-                    + Arrays.asList(catalog, schema, table)));
-        try {
-            ResultSet resultSet = stmt.getResultSet();
-            if (resultSet.next()) {
-                ++stmt.rowCount;
-                return resultSet.getInt(1);
-            }
-            return -1; // huh?
-        } catch (SQLException e) {
-            throw stmt.handle(e);
-        } finally {
-            stmt.close();
-        }
+        final Locus locus =
+            new Locus(
+                execution,
+                "SqlStatisticsProvider.getTableCardinality",
+                "Reading row count from table "
+                + Arrays.asList(catalog, schema, table));
+        return cardinality(
+            CubeStatistics.KIND_TABLE, table, null, sql,
+            () -> count(dataSource, sql, locus));
     }
 
     public int getQueryCardinality(
         Dialect dialect,
-        DataSource dataSource,
+        final DataSource dataSource,
         String sql,
         Execution execution)
     {
@@ -81,31 +74,19 @@ public class SqlStatisticsProvider implements StatisticsProvider {
             dialect.quoteIdentifier(buf, "init");
         }
         final String countSql = buf.toString();
-        SqlStatement stmt =
-            RolapUtil.executeQuery(
-                dataSource,
-                countSql,
-                new Locus(
-                    execution,
-                    "SqlStatisticsProvider.getQueryCardinality",
-                    "Reading row count from query [" + sql + "]"));
-        try {
-            ResultSet resultSet = stmt.getResultSet();
-            if (resultSet.next()) {
-                ++stmt.rowCount;
-                return resultSet.getInt(1);
-            }
-            return -1; // huh?
-        } catch (SQLException e) {
-            throw stmt.handle(e);
-        } finally {
-            stmt.close();
-        }
+        final Locus locus =
+            new Locus(
+                execution,
+                "SqlStatisticsProvider.getQueryCardinality",
+                "Reading row count from query [" + sql + "]");
+        return cardinality(
+            CubeStatistics.KIND_QUERY, null, null, countSql,
+            () -> count(dataSource, countSql, locus));
     }
 
     public int getColumnCardinality(
         Dialect dialect,
-        DataSource dataSource,
+        final DataSource dataSource,
         String catalog,
         String schema,
         String table,
@@ -118,29 +99,50 @@ public class SqlStatisticsProvider implements StatisticsProvider {
         if (sql == null) {
             return -1;
         }
-        String sqlId = MainUtils.md5(sql);
-    	SqlStatement stmt =
-    			RolapUtil.executeQuery(
-    					dataSource,
-    					sql,
-    					new Locus(
-    							execution,
-    							"SqlStatisticsProvider.getColumnCardinality",
-    							"Reading cardinality for column "
-    									+ Arrays.asList(catalog, schema, table, column)));
-    	try {
-    		ResultSet resultSet = stmt.getResultSet();
-    		if (resultSet.next()) {
-    			++stmt.rowCount;
-    			int value = resultSet.getInt(1) ;
-    			return value;
-    		}
-    		return -1; // huh?
-    	} catch (SQLException e) {
-    		throw stmt.handle(e);
-    	} finally {
-    		stmt.close();
-    	}
+        final Locus locus =
+            new Locus(
+                execution,
+                "SqlStatisticsProvider.getColumnCardinality",
+                "Reading cardinality for column "
+                + Arrays.asList(catalog, schema, table, column));
+        return cardinality(
+            CubeStatistics.KIND_COLUMN, table, column, sql,
+            () -> count(dataSource, sql, locus));
+    }
+
+    /**
+     * 统计结果按 SQL 的 MD5 保存在 {@link CubeStatisticsStore} 中，
+     * 模型重新加载后不再重复扫描数据表
+     */
+    private static int cardinality(
+        String kind,
+        String table,
+        String column,
+        String sql,
+        IntSupplier loader)
+    {
+        final ApplicationContext context = MainContext.getContext();
+        if (context == null) {
+            return loader.getAsInt();
+        }
+        return context.getBean(CubeStatisticsStore.class)
+            .get(kind, table, column, sql, loader);
+    }
+
+    private static int count(DataSource dataSource, String sql, Locus locus) {
+        SqlStatement stmt = RolapUtil.executeQuery(dataSource, sql, locus);
+        try {
+            ResultSet resultSet = stmt.getResultSet();
+            if (resultSet.next()) {
+                ++stmt.rowCount;
+                return resultSet.getInt(1);
+            }
+            return -1; // huh?
+        } catch (SQLException e) {
+            throw stmt.handle(e);
+        } finally {
+            stmt.close();
+        }
     }
 
     private static String generateColumnCardinalitySql(
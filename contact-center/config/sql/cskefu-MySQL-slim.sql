@@ -1094,6 +1094,33 @@ CREATE TABLE `uk_callcenter_event` (
   PRIMARY KEY (`ID`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 ROW_FORMAT=COMPACT COMMENT='通话记录表';
 
+-- ----------------------------
+-- Table structure for uk_callcenter_event_rollup
+-- ----------------------------
+DROP TABLE IF EXISTS `uk_callcenter_event_rollup`;
+CREATE TABLE `uk_callcenter_event_rollup` (
+  `id` varchar(32) NOT NULL COMMENT '主键ID（维度的MD5，NULL 和空字符串是不同的维度）',
+  `grain` varchar(1) NOT NULL COMMENT '汇总粒度（H：小时，D：天）',
+  `datestr` varchar(32) NOT NULL COMMENT '日期',
+  `hourstr` varchar(32) NOT NULL DEFAULT '' COMMENT '小时',
+  `orgi` varchar(32) DEFAULT NULL COMMENT '租户ID',
+  `voicechannel` varchar(255) DEFAULT NULL COMMENT '语音渠道',
+  `agent` varchar(50) DEFAULT NULL COMMENT '坐席',
+  `agentname` varchar(255) DEFAULT NULL COMMENT '坐席名字',
+  `direction` varchar(50) DEFAULT NULL COMMENT '呼叫方向',
+  `dialplan` varchar(32) DEFAULT NULL COMMENT '呼叫计划',
+  `organid` varchar(32) DEFAULT NULL COMMENT '部门ID',
+  `total` int(11) NOT NULL DEFAULT '0' COMMENT '通话数量',
+  `fails` int(11) NOT NULL DEFAULT '0' COMMENT '失败数量',
+  `gt60` int(11) NOT NULL DEFAULT '0' COMMENT '通话超过60秒数量',
+  `seconds` bigint(20) NOT NULL DEFAULT '0' COMMENT '通话总时长（秒）',
+  `maxduration` int(11) NOT NULL DEFAULT '0' COMMENT '最长通话时长（秒）',
+  `updatetime` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_rollup_channel_date` (`grain`,`voicechannel`,`datestr`),
+  KEY `idx_rollup_date` (`datestr`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='通话记录汇总表';
+
 -- ----------------------------
 -- Table structure for uk_callcenter_extention
 -- ----------------------------
@@ -1757,6 +1784,23 @@ CREATE TABLE `uk_cubemetadata` (
   PRIMARY KEY (`ID`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='模型元数据表';
 
+-- ----------------------------
+-- Table structure for uk_cube_statistics
+-- ----------------------------
+DROP TABLE IF EXISTS `uk_cube_statistics`;
+CREATE TABLE `uk_cube_statistics` (
+  `id` varchar(32) NOT NULL COMMENT '主键ID（统计SQL的MD5）',
+  `kind` varchar(10) DEFAULT NULL COMMENT '类型（table/column/query）',
+  `tablename` varchar(255) DEFAULT NULL COMMENT '数据表名',
+  `columnname` varchar(255) DEFAULT NULL COMMENT '字段名称',
+  `sqltext` longtext COMMENT '统计SQL',
+  `cardinality` int(11) DEFAULT '-1' COMMENT '行数或不同值数量',
+  `tablerows` bigint(20) DEFAULT '-1' COMMENT '统计时数据表的估算行数',
+  `costtime` bigint(20) DEFAULT '0' COMMENT '统计耗时（毫秒）',
+  `updatetime` datetime DEFAULT NULL COMMENT '统计时间',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='报表模型基数统计表';
+
 -- ----------------------------
 -- Table structure for uk_datadic
 -- ----------------------------